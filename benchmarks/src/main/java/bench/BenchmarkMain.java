@@ -0,0 +1,41 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. It accepts the usual JMH command line options, but unless told otherwise
+ * it writes the results as JSON to jmh-result.json, so that runs of different releases can be compared.
+ * <p>
+ * java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexps]
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Utility class, it cannot be instantiated.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * It runs the benchmarks.
+     *
+     * @param args JMH command line options
+     * @throws Exception if the options are wrong or the benchmarks fail
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(cli)
+                .resultFormat(cli.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(cli.getResult().orElse("jmh-result.json"))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.Block;
+import model.Location;
+import model.Material;
+import model.SolidBlock;
+import model.World;
+import model.exceptions.BadLocationException;
+import model.exceptions.WrongMaterialException;
+import model.storage.BlockEdits;
+
+/**
+ * Storing a box of 32x32x32 blocks in an already generated world: block by block with addBlock, with
+ * World.fill and with a batch of edits given to World.apply. Each operation is the whole box.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockEditBenchmark {
+    /**
+     * side of the box.
+     */
+    private static final int SIDE = 32;
+
+    World world;
+    Block stone;
+    Location corner, opposite;
+    BlockEdits edits;
+
+    @Setup(Level.Trial)
+    public void setUp() throws WrongMaterialException {
+        Silence.on();
+        world = new World(1234L, 100, "bench");
+        Silence.off();
+        stone = new SolidBlock(Material.STONE);
+        // a box away from the player, who is at (0,*,0)
+        corner = new Location(world, 10, 40, 10);
+        opposite = new Location(world, 10 + SIDE - 1, 40 + SIDE - 1, 10 + SIDE - 1);
+        edits = new BlockEdits();
+        for (int x = 10; x < 10 + SIDE; x++)
+            for (int y = 40; y < 40 + SIDE; y++)
+                for (int z = 10; z < 10 + SIDE; z++)
+                    edits.set(x, y, z, stone);
+    }
+
+    @Benchmark
+    public void addBlock() throws BadLocationException {
+        for (int x = 10; x < 10 + SIDE; x++)
+            for (int y = 40; y < 40 + SIDE; y++)
+                for (int z = 10; z < 10 + SIDE; z++)
+                    world.addBlock(new Location(world, x, y, z), stone);
+    }
+
+    @Benchmark
+    public int fill() throws BadLocationException {
+        return world.fill(corner, opposite, stone);
+    }
+
+    @Benchmark
+    public int apply() throws BadLocationException {
+        return world.apply(edits);
+    }
+}
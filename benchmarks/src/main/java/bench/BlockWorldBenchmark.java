@@ -0,0 +1,74 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.BlockWorld;
+import model.CommandReader;
+
+/**
+ * BlockWorld.play over a scripted game (commands.txt): it creates a world and then moves the player around,
+ * orientates, selects and uses items and shows the player information, reading the script with a Scanner
+ * (play) or with a CommandReader (playReader). Each operation is a whole game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockWorldBenchmark {
+
+    /**
+     * the commands of the game.
+     */
+    String script;
+    /**
+     * the commands of the game, encoded.
+     */
+    byte[] scriptBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (InputStream in = BlockWorldBenchmark.class.getResourceAsStream("/commands.txt")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                bytes.write(buffer, 0, n);
+            scriptBytes = bytes.toByteArray();
+            script = new String(scriptBytes, StandardCharsets.UTF_8);
+        }
+        Silence.on();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Silence.off();
+    }
+
+    @Benchmark
+    public BlockWorld play() {
+        BlockWorld game = BlockWorld.getInstance();
+        game.play(new Scanner(script));
+        return game;
+    }
+
+    @Benchmark
+    public BlockWorld playReader() throws IOException {
+        BlockWorld game = BlockWorld.getInstance();
+        game.play(new CommandReader(Channels.newChannel(new ByteArrayInputStream(scriptBytes))));
+        return game;
+    }
+}
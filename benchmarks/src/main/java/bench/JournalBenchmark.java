@@ -0,0 +1,82 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.CommandJournal;
+import model.World;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+import model.exceptions.EntityIsDeadException;
+
+/**
+ * CommandJournal: appending commands and replaying a journal of orientate commands on the player of a world.
+ * Each operation is one command, so the score is the number of commands per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    static final int COMMANDS = 1_000_000;
+
+    World world;
+    Player player;
+    Path dir;
+    Path journal;
+    Path appended;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Silence.on();
+        world = new World(1234L, 100, "bench");
+        Silence.off();
+        player = world.getPlayer();
+        dir = Files.createTempDirectory("journal");
+        journal = dir.resolve("replay.journal");
+        appended = dir.resolve("append.journal");
+        try (CommandJournal out = new CommandJournal(journal, world)) {
+            for (int i = 0; i < COMMANDS; i++)
+                out.append(CommandJournal.ORIENTATE, (i & 1) == 0 ? 1 : -1, 0, 0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(appended);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long replay() throws IOException {
+        return CommandJournal.replay(journal, 0, (command, a, b, c) -> {
+            try {
+                player.orientate(a, b, c);
+            } catch (BadLocationException | EntityIsDeadException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long append() throws IOException {
+        try (CommandJournal out = new CommandJournal(appended, world)) {
+            for (int i = 0; i < COMMANDS; i++)
+                out.append(CommandJournal.MOVE, i, 0, 0);
+            return out.size();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.Location;
+import model.World;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+import model.exceptions.EntityIsDeadException;
+
+/**
+ * Player.move: the player jumps up into the air above the surface and comes back down, so every move is valid
+ * and the world does not change. Each operation is one move.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerBenchmark {
+
+    @Param({"100"})
+    int size;
+
+    World world;
+    Player player;
+    /**
+     * direction of the next move, 1 up and -1 down.
+     */
+    int dy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Silence.on();
+        world = new World(1234L, size, "bench");
+        Silence.off();
+        player = world.getPlayer();
+        dy = 1;
+    }
+
+    @Benchmark
+    public Location move() throws EntityIsDeadException, BadLocationException {
+        // moving costs food; keep the player alive
+        player.setFoodLevel(Player.MAX_FOODLEVEL);
+        Location location = player.move(0, dy, 0);
+        dy = -dy;
+        return location;
+    }
+}
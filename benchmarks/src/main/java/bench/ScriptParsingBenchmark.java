@@ -0,0 +1,67 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.CommandReader;
+import model.exceptions.UnknownGameCommandException;
+
+/**
+ * Reading the commands of a script without executing them: a Scanner per line, as BlockWorld.play(Scanner) does,
+ * against a CommandReader. Each operation is one command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptParsingBenchmark {
+
+    static final int COMMANDS = 100_000;
+
+    String script;
+    byte[] scriptBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        String[] commands = {"move 1 0 -1", "orientate 0 0 1", "useItem 3", "selectItem 12"};
+        for (int i = 0; i < COMMANDS; i++)
+            builder.append(commands[i & 3]).append('\n');
+        script = builder.toString();
+        scriptBytes = script.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void scanner(Blackhole bh) {
+        Scanner sc = new Scanner(script);
+        while (sc.hasNextLine()) {
+            Scanner line = new Scanner(sc.nextLine());
+            bh.consume(line.next());
+            while (line.hasNextInt())
+                bh.consume(line.nextInt());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void reader(Blackhole bh) throws IOException, UnknownGameCommandException {
+        CommandReader reader = new CommandReader(Channels.newChannel(new ByteArrayInputStream(scriptBytes)));
+        while (reader.hasNextLine()) {
+            bh.consume(reader.nextCommand());
+            bh.consume(reader.getArgument(0));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * World generation and the game commands print their progress on the console; the benchmarks discard it,
+ * so that they measure the game and not the terminal.
+ */
+final class Silence {
+    /**
+     * standard output before silencing it.
+     */
+    private static PrintStream out;
+    /**
+     * error output before silencing it.
+     */
+    private static PrintStream err;
+
+    /**
+     * Utility class, it cannot be instantiated.
+     */
+    private Silence() {
+    }
+
+    /**
+     * It replaces the standard and error outputs with streams that discard everything.
+     */
+    static void on() {
+        if (out == null) {
+            out = System.out;
+            err = System.err;
+            PrintStream nowhere = new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+            System.setOut(nowhere);
+            System.setErr(nowhere);
+        }
+    }
+
+    /**
+     * It restores the standard and error outputs.
+     */
+    static void off() {
+        if (out != null) {
+            System.setOut(out);
+            System.setErr(err);
+            out = null;
+            err = null;
+        }
+    }
+}
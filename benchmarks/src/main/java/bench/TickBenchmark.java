@@ -0,0 +1,61 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.GenerationMode;
+import model.World;
+import model.WorldTicker;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+/**
+ * WorldTicker.tick(): one tick of the creatures and liquids of the chunks around 1, 4 and 16 players.
+ * The players are healed after every tick, so that the monsters do not kill them and their chunks stay active.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark {
+
+    @Param({"1", "4", "16"})
+    int players;
+
+    WorldTicker ticker;
+    Player[] alive;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Silence.on();
+        World world = new World(1, 512, "ticks", GenerationMode.PARALLEL);
+        for (int i = 1; i < players; i++) {
+            int x = -224 + (i % 4) * 128, z = -224 + (i / 4) * 128;
+            for (int dx = 0; ; dx++) {
+                try {
+                    world.addPlayer("player" + i, x + dx, z);
+                    break;
+                } catch (BadLocationException ex) {
+                    // a creature is standing there
+                }
+            }
+        }
+        ticker = new WorldTicker(world, 20);
+        alive = world.getPlayers().toArray(new Player[0]);
+        Silence.off();
+    }
+
+    @Benchmark
+    public WorldTicker tick() {
+        ticker.tick();
+        for (Player player : alive)
+            player.setHealth(Player.MAX_HEALTH);
+        return ticker;
+    }
+}
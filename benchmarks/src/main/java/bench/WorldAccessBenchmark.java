@@ -0,0 +1,145 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.Block;
+import model.Location;
+import model.World;
+import model.entities.Creature;
+import model.exceptions.BadLocationException;
+
+/**
+ * Block lookups on an already generated world: getBlockAt and isFree at random and sequential locations,
+ * getNeighbourhoodString, Location.getNeighborhood and the creatures within 16 blocks. Each operation is one lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldAccessBenchmark {
+    /**
+     * number of precomputed random locations (a power of two).
+     */
+    private static final int LOCATIONS = 1 << 16;
+
+    @Param({"100"})
+    int size;
+
+    World world;
+    /**
+     * random locations of the world, as locations and as block coordinates.
+     */
+    Location[] locations;
+    int[] xs, ys, zs;
+    /**
+     * next random location to use.
+     */
+    int next;
+    /**
+     * next sequential location, walking the world column by column from bottom to top.
+     */
+    int seqX, seqY, seqZ;
+    int negativeWorldLimit, positiveWorldLimit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Silence.on();
+        world = new World(1234L, size, "bench");
+        Silence.off();
+        positiveWorldLimit = size / 2;
+        negativeWorldLimit = (size % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+        Random rng = new Random(42);
+        locations = new Location[LOCATIONS];
+        xs = new int[LOCATIONS];
+        ys = new int[LOCATIONS];
+        zs = new int[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            xs[i] = negativeWorldLimit + rng.nextInt(size);
+            ys[i] = rng.nextInt((int) Location.UPPER_Y_VALUE + 1);
+            zs[i] = negativeWorldLimit + rng.nextInt(size);
+            locations[i] = new Location(world, xs[i], ys[i], zs[i]);
+        }
+        seqX = negativeWorldLimit;
+        seqZ = negativeWorldLimit;
+    }
+
+    /**
+     * index of the next random location.
+     */
+    private int nextRandom() {
+        return next = (next + 1) & (LOCATIONS - 1);
+    }
+
+    /**
+     * It advances the sequential location.
+     */
+    private void nextSequential() {
+        if (++seqY > Location.UPPER_Y_VALUE) {
+            seqY = 0;
+            if (++seqZ > positiveWorldLimit) {
+                seqZ = negativeWorldLimit;
+                if (++seqX > positiveWorldLimit)
+                    seqX = negativeWorldLimit;
+            }
+        }
+    }
+
+    @Benchmark
+    public Block getBlockAtRandom() throws BadLocationException {
+        return world.getBlockAt(locations[nextRandom()]);
+    }
+
+    @Benchmark
+    public Block getBlockAtRandomCoordinates() {
+        int i = nextRandom();
+        return world.getBlockAt(xs[i], ys[i], zs[i]);
+    }
+
+    @Benchmark
+    public Block getBlockAtSequential() throws BadLocationException {
+        nextSequential();
+        return world.getBlockAt(new Location(world, seqX, seqY, seqZ));
+    }
+
+    @Benchmark
+    public boolean isFreeRandom() throws BadLocationException {
+        return world.isFree(locations[nextRandom()]);
+    }
+
+    @Benchmark
+    public boolean isFreeSequential() throws BadLocationException {
+        nextSequential();
+        return world.isFree(new Location(world, seqX, seqY, seqZ));
+    }
+
+    @Benchmark
+    public String getNeighbourhoodString() throws BadLocationException {
+        return world.getNeighbourhoodString(locations[nextRandom()]);
+    }
+
+    @Benchmark
+    public Set<Location> getNeighborhood() {
+        return locations[nextRandom()].getNeighborhood();
+    }
+
+    @Benchmark
+    public void getNeighbourhoodStringAroundPlayer(Blackhole bh) throws BadLocationException {
+        bh.consume(world.getNeighbourhoodString(world.getPlayer().getLocation()));
+    }
+
+    @Benchmark
+    public Collection<Creature> getCreaturesWithin16() throws BadLocationException {
+        return world.getCreaturesWithin(locations[nextRandom()], 16);
+    }
+}
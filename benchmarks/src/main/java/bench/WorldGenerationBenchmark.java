@@ -0,0 +1,44 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.GenerationMode;
+import model.World;
+
+/**
+ * Time to create a world (new World(seed, size, name)) of several sizes with each generation algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldGenerationBenchmark {
+
+    @Param({"10", "50", "100", "200"})
+    int size;
+
+    @Param({"CLASSIC", "PARALLEL", "LAZY"})
+    GenerationMode mode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Silence.on();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Silence.off();
+    }
+
+    @Benchmark
+    public World generate() {
+        return new World(1234L, size, "bench", mode);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * @author agata.koziol
+ */
+package bench;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.CommandJournal;
+import model.GenerationMode;
+import model.WorldHost;
+
+/**
+ * WorldHost: orientate commands sent round-robin to many hosted games, which run them in parallel.
+ * Each operation is one command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldHostBenchmark {
+
+    static final int COMMANDS = 100_000;
+
+    @Param({"1", "16", "256"})
+    int worlds;
+
+    WorldHost host;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Silence.on();
+        host = new WorldHost();
+        CompletableFuture<?>[] created = new CompletableFuture<?>[worlds];
+        for (int i = 0; i < worlds; i++)
+            created[i] = host.createWorld(i, 32, "world" + i, GenerationMode.PARALLEL);
+        CompletableFuture.allOf(created).join();
+        Silence.off();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        host.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void orientate() {
+        CompletableFuture<?>[] last = new CompletableFuture<?>[worlds];
+        for (int i = 0; i < COMMANDS; i++) {
+            int w = i % worlds;
+            last[w] = host.execute("world" + w, CommandJournal.ORIENTATE, (i & 1) == 0 ? 1 : -1, 0, 0);
+        }
+        CompletableFuture.allOf(last).join();
+    }
+}
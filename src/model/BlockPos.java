@@ -0,0 +1,233 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.storage.BlockKey;
+
+/**
+ * Integer coordinates of a block, or a displacement between blocks. Unlike Location it is immutable and it does not
+ * refer to a world, so it can be shared and kept without copies; operations return new positions.
+ * Location is left for positions that may be fractional.
+ * <p>
+ * The hash code is computed once, mixing the three coordinates, so positions that are close to each other do not
+ * collide in hash tables. Positions only hold three ints and their hash, so short-lived ones are cheap and can be
+ * removed by escape analysis.
+ */
+public final class BlockPos {
+    /**
+     * coordinates.
+     */
+    private final int x, y, z;
+    /**
+     * hash code of the position.
+     */
+    private final int hash;
+
+    /**
+     * It creates a position.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     */
+    public BlockPos(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        hash = hash(x, y, z);
+    }
+
+    /**
+     * It returns the position of the block that contains a location.
+     *
+     * @param loc location
+     * @return the coordinates of the location rounded down
+     */
+    public static BlockPos of(Location loc) {
+        return new BlockPos((int) Math.floor(loc.getX()), (int) Math.floor(loc.getY()), (int) Math.floor(loc.getZ()));
+    }
+
+    /**
+     * It returns the position of a block key (see BlockKey).
+     *
+     * @param key block key
+     * @return the position of the key
+     */
+    public static BlockPos of(long key) {
+        return new BlockPos(BlockKey.x(key), BlockKey.y(key), BlockKey.z(key));
+    }
+
+    /**
+     * It mixes the coordinates of a position into a hash code: the finalizer of MurmurHash3 (see Location.mix())
+     * applied to their block key, which is different for every block of a world.
+     */
+    private static int hash(int x, int y, int z) {
+        return (int) Location.mix(BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return x coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return y coordinate
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return z coordinate
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * It returns the position displaced (dx,dy,dz) from this one.
+     *
+     * @param dx displacement along the x axis
+     * @param dy displacement along the y axis
+     * @param dz displacement along the z axis
+     * @return the displaced position
+     */
+    public BlockPos offset(int dx, int dy, int dz) {
+        return (dx == 0 && dy == 0 && dz == 0) ? this : new BlockPos(x + dx, y + dy, z + dz);
+    }
+
+    /**
+     * It returns the sum of this position and another one.
+     *
+     * @param pos position or displacement to add
+     * @return the sum of both
+     */
+    public BlockPos add(BlockPos pos) {
+        return offset(pos.x, pos.y, pos.z);
+    }
+
+    /**
+     * It returns the difference between this position and another one.
+     *
+     * @param pos position to subtract
+     * @return the displacement from pos to this position
+     */
+    public BlockPos subtract(BlockPos pos) {
+        return offset(-pos.x, -pos.y, -pos.z);
+    }
+
+    /**
+     * It returns this position multiplied by a factor.
+     *
+     * @param factor factor
+     * @return the multiplied position
+     */
+    public BlockPos multiply(int factor) {
+        return (factor == 1) ? this : new BlockPos(x * factor, y * factor, z * factor);
+    }
+
+    /**
+     * It returns the position just above this one.
+     *
+     * @return the position (x,y+1,z)
+     */
+    public BlockPos above() {
+        return new BlockPos(x, y + 1, z);
+    }
+
+    /**
+     * It returns the position just below this one.
+     *
+     * @return the position (x,y-1,z)
+     */
+    public BlockPos below() {
+        return new BlockPos(x, y - 1, z);
+    }
+
+    /**
+     * It checks if a position is adjacent to this one: it differs by at most one in every coordinate and it is not
+     * this position.
+     *
+     * @param pos position to check
+     * @return true if the positions are adjacent
+     */
+    public boolean isAdjacent(BlockPos pos) {
+        int dx = Math.abs(pos.x - x), dy = Math.abs(pos.y - y), dz = Math.abs(pos.z - z);
+        return dx <= 1 && dy <= 1 && dz <= 1 && (dx | dy | dz) != 0;
+    }
+
+    /**
+     * It calculates the euclidean distance to another position.
+     *
+     * @param pos another position
+     * @return distance between both positions
+     */
+    public double distance(BlockPos pos) {
+        double dx = pos.x - x, dy = pos.y - y, dz = pos.z - z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * It returns the block key of this position (see BlockKey).
+     *
+     * @return the packed coordinates
+     */
+    public long key() {
+        return BlockKey.pack(x, y, z);
+    }
+
+    /**
+     * It creates a location of a world with the coordinates of this position.
+     *
+     * @param world world of the location, or null
+     * @return a new location
+     */
+    public Location toLocation(World world) {
+        return new Location(world, x, y, z);
+    }
+
+    /**
+     * Two positions are equal if they have the same coordinates.
+     *
+     * @param obj The object which should be checked
+     * @return whether the objects are the same
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        BlockPos other = (BlockPos) obj;
+        return x == other.x && y == other.y && z == other.z;
+    }
+
+    /**
+     * It returns the hash code computed when the position was created.
+     *
+     * @return hashCode.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Creates a string with the coordinates of the position.
+     *
+     * @return a string with the format (x,y,z).
+     */
+    @Override
+    public String toString() {
+        return "(" + x + "," + y + "," + z + ")";
+    }
+}
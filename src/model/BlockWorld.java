@@ -5,14 +5,24 @@ package model;
 
 import model.entities.*;
 import model.exceptions.*;
+import model.metrics.Counter;
+import model.metrics.Histogram;
+import model.metrics.Metrics;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
  * The class BlockWorld represents the whole game and its basic functionality;
  * consequently there will only be a single instance of it- singleton design pattern implemented.
+ * Games hosted by a WorldHost have their own instances.
+ * The methods that act on a player (movePlayer(), useItem()...) can be called by many threads at the same time
+ * for different players of the same world: they lock the chunks around the player (see World.lockAround()).
  */
 public class BlockWorld {
     /**
@@ -23,6 +33,46 @@ public class BlockWorld {
      * instance of the class itself, is private in order to prevent creating many instances of this class.
      */
     private static BlockWorld blockWorldInstance;
+    /**
+     * file where play() journals the commands it applies, or null.
+     */
+    private Path journalFile;
+    /**
+     * number of commands between two checkpoints of the journal.
+     */
+    private int checkpointInterval;
+    /**
+     * whether recover() is replaying a journal, so the commands do not print what they found.
+     */
+    private boolean replaying;
+    /**
+     * renderers of the neighbourhood of the players shown by showPlayerInfo(), so each player's view is only
+     * drawn again where it changed.
+     */
+    private final Map<Player, NeighbourhoodRenderer> neighbourhoods = new IdentityHashMap<>();
+    /**
+     * number of renderers kept after the renderers of removed players were last dropped.
+     */
+    private int prunedSize;
+    /**
+     * number of blocks drawn in every direction around the player by showPlayerInfo().
+     */
+    private int neighbourhoodRadius = 1;
+    /**
+     * time taken by the commands of the scripts, in nanoseconds, by command code (see CommandJournal and
+     * CommandReader.SHOW), in the default metrics.
+     */
+    private static final Histogram[] COMMAND_LATENCY = new Histogram[CommandReader.SHOW + 1];
+    /**
+     * number of exceptions thrown by the commands of the scripts and the journals.
+     */
+    private static final Counter EXCEPTIONS = Metrics.getDefault().counter("blockworld.exceptions");
+
+    static {
+        String[] names = {"unknown", "move", "orientate", "useItem", "selectItem", "show"};
+        for (int code = 0; code < COMMAND_LATENCY.length; code++)
+            COMMAND_LATENCY[code] = Metrics.getDefault().histogram("blockworld.command." + names[code]);
+    }
 
     /**
      * responsible for creating that instance and saving a reference to it in the ‘instance’ attribute the first time it is invoked.
@@ -38,9 +88,10 @@ public class BlockWorld {
     }
 
     /**
-     * private contructor of the class.
+     * contructor of the class. Outside this package the only instance is the one returned by getInstance();
+     * WorldHost creates one for each game it hosts.
      */
-    private BlockWorld() {
+    BlockWorld() {
         world = null;
     }
 
@@ -54,23 +105,110 @@ public class BlockWorld {
      */
     public World createWorld(long seed, int size, String name) {
         World w = new World(seed, size, name);
-        this.world = w;
+        setWorld(w);
         return w;
     }
 
+    /**
+     * It calls the constructor of World to create a new world, generated with the given algorithm.
+     *
+     * @param seed is a seed parameter for world creation.
+     * @param size is a size of the world to be created.
+     * @param name is a name of the world to be created.
+     * @param mode generation algorithm
+     * @return new world instance with assigned parameters.
+     */
+    public World createWorld(long seed, int size, String name, GenerationMode mode) {
+        World w = new World(seed, size, name, mode);
+        setWorld(w);
+        return w;
+    }
+
+    /**
+     * It calls the constructor of World to create a new world, generated with the given algorithm and whose
+     * blocks are kept in the given storage. The world that is replaced is not unloaded.
+     *
+     * @param seed    is a seed parameter for world creation.
+     * @param size    is a size of the world to be created.
+     * @param name    is a name of the world to be created.
+     * @param mode    generation algorithm
+     * @param storage where the blocks of the world are kept
+     * @return new world instance with assigned parameters.
+     */
+    public World createWorld(long seed, int size, String name, GenerationMode mode, StorageMode storage) {
+        World w = new World(seed, size, name, mode, storage);
+        setWorld(w);
+        return w;
+    }
+
+    /**
+     * It makes a world the world of the game, removing the gauges of the previous one and dropping the renderers of
+     * its players.
+     *
+     * @param w the new world
+     */
+    private void setWorld(World w) {
+        if (world != null && world != w)
+            world.unregisterMetrics();
+        world = w;
+        synchronized (neighbourhoods) {
+            neighbourhoods.clear();
+            prunedSize = 0;
+        }
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return the world of the game, or null if it has not been created yet.
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * It changes how many blocks around the player showPlayerInfo() shows.
+     *
+     * @param radius number of blocks shown in every direction; 1 (the default) shows the adjacent blocks
+     * @throws IllegalArgumentException if the radius is negative
+     */
+    public void setNeighbourhoodRadius(int radius) {
+        if (radius < 0)
+            throw new IllegalArgumentException("Negative radius " + radius);
+        synchronized (neighbourhoods) {
+            neighbourhoodRadius = radius;
+            neighbourhoods.clear();
+            prunedSize = 0;
+        }
+    }
+
     /**
      * Creates a string with the information about the player and the neighbouhood of the player's location,
-     * using the methods Player.toString() and World.getNeighbourhoodString().
+     * using the method Player.toString() and a NeighbourhoodRenderer, in the format of World.getNeighbourhoodString().
+     * Each player keeps its renderer, so showing the same player again only draws the blocks that may have changed.
+     * The renderers of the players removed from their world are dropped whenever the number of renderers has doubled.
      *
      * @param player instance of player class from which we want to obtain the info.
      * @return information about the player and what is in his or her adjacent locations.
      */
     public String showPlayerInfo(Player player) {
         String info;
+        Location location = player.getLocation();
+        NeighbourhoodRenderer renderer;
+        synchronized (neighbourhoods) {
+            renderer = neighbourhoods.get(player);
+            if (renderer == null || renderer.getWorld() != location.getWorld()) {
+                if (renderer == null && neighbourhoods.size() >= 2 * prunedSize + 16) {
+                    neighbourhoods.keySet().removeIf(p -> !p.getLocation().getWorld().hasPlayer(p));
+                    prunedSize = neighbourhoods.size();
+                }
+                neighbourhoods.put(player, renderer = new NeighbourhoodRenderer(location.getWorld(), neighbourhoodRadius));
+            }
+        }
         try {
-            info = player.toString() + "\n"
-                    + player.getLocation().getWorld().getNeighbourhoodString(player.getLocation());
-
+            synchronized (renderer) {
+                info = player.toString() + "\n" + renderer.renderChanges(location);
+            }
         } catch (BadLocationException ex) {
             throw new RuntimeException(ex);
         }
@@ -89,16 +227,23 @@ public class BlockWorld {
      * @throws BadLocationException  if the target location is not adjacent to the current one, is occupied or is not valid.
      */
     public void movePlayer(Player p, int dx, int dy, int dz) throws BadLocationException, EntityIsDeadException {
-
-        p.move(dx, dy, dz);
-        if (world.getBlockAt(p.getLocation()) != null) {
-            if (world.getBlockAt(p.getLocation()).getType().isLiquid())
-                p.damage(world.getBlockAt(p.getLocation()).getType().getValue());
-        }
-        System.out.println(world.getItemsAt(p.getLocation()));
-        if (world.getItemsAt(p.getLocation()) != null) {
-            p.addItemsToInventory(world.getItemsAt(p.getLocation()));
-            world.removeItemsAt(p.getLocation());
+        // the target and its items are locked until they are taken, so two players cannot move to the same location
+        long held = world.lockAround(p.getLocation());
+        try {
+            p.move(dx, dy, dz);
+            BlockPos at = p.getBlockPosition();
+            Block block = world.getBlockAt(at);
+            if (block != null && block.getType().isLiquid())
+                p.damage(block.getType().getValue());
+            ItemStack items = world.getItemsAt(at);
+            if (!replaying)
+                System.out.println(items);
+            if (items != null) {
+                p.addItemsToInventory(items);
+                world.removeItemsAt(p.getLocation());
+            }
+        } finally {
+            world.unlock(held);
         }
     }
 
@@ -122,6 +267,7 @@ public class BlockWorld {
      * @throws IllegalArgumentException if the argument ‘times’ is less than or equal to zero.
      */
     public void useItem(Player p, int times) throws EntityIsDeadException, IllegalArgumentException {
+        long held = world.lockAround(p.getLocation());
         try {
             ItemStack usedItem = p.useItemInHand(times);
             if (usedItem != null) {
@@ -179,6 +325,8 @@ public class BlockWorld {
             }
         } catch (BadLocationException ex) {
             throw new RuntimeException();
+        } finally {
+            world.unlock(held);
         }
     }
 
@@ -198,15 +346,25 @@ public class BlockWorld {
     }
 
     /**
-     * Opens the given input file and executes each one of its commands (by calling play(Scanner)).
+     * Opens the given input file and executes each one of its commands (by calling play(CommandReader)).
+     * If the file cannot be read to its end, the error is printed to the error output.
      *
      * @param path path to the document
      * @throws FileNotFoundException if the file is not found.
      */
     public void playFile(String path) throws FileNotFoundException {
-        Scanner fileScanner = new Scanner(new File(path));
-        play(fileScanner);
-
+        FileInputStream file = new FileInputStream(path);
+        try {
+            play(new CommandReader(file.getChannel()));
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
     }
 
     /**
@@ -218,6 +376,104 @@ public class BlockWorld {
 
     }
 
+    /**
+     * It makes play() keep a journal of the commands it executes (move, orientate, useItem and selectItem)
+     * and take a checkpoint of the world every checkpointInterval commands, so that the game can be recovered
+     * with recover() if it stops. The journal and its checkpoints are replaced every time play() starts.
+     *
+     * @param file               journal file, or null to stop journaling
+     * @param checkpointInterval number of commands between two checkpoints
+     * @throws IllegalArgumentException if checkpointInterval is not greater than zero
+     */
+    public void setJournal(Path file, int checkpointInterval) {
+        if (checkpointInterval <= 0)
+            throw new IllegalArgumentException("Wrong checkpoint interval " + checkpointInterval);
+        this.journalFile = file;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * It recovers the world of a game journaled by play(): it loads its latest checkpoint, or creates the world
+     * again if there is none, and applies the commands of the journal that follow it. Unlike play(), it does not
+     * print the items found by the moves it replays.
+     *
+     * @param file journal file
+     * @return the recovered world, which becomes the world of the game
+     * @throws IOException if the journal or its checkpoint cannot be read
+     */
+    public World recover(Path file) throws IOException {
+        long checkpoint = CommandJournal.lastCheckpoint(file);
+        if (checkpoint >= 0) {
+            setWorld(World.load(CommandJournal.checkpointFile(file, checkpoint)));
+        } else {
+            setWorld(CommandJournal.createWorld(file));
+            checkpoint = 0;
+        }
+        replaying = true;
+        try {
+            CommandJournal.replay(file, checkpoint, this::replay);
+        } finally {
+            replaying = false;
+        }
+        return world;
+    }
+
+    /**
+     * It applies a command read from a journal, printing to the error output the message of the exception
+     * it throws, if any.
+     *
+     * @param command code of the command
+     * @param a       first argument
+     * @param b       second argument
+     * @param c       third argument
+     */
+    private void replay(byte command, int a, int b, int c) {
+        try {
+            execute(command, a, b, c);
+        } catch (Exception ex) {
+            countException(ex);
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * It counts an exception thrown by a command, in total and by its class ("blockworld.exceptions.ClassName").
+     *
+     * @param ex exception
+     */
+    private static void countException(Exception ex) {
+        EXCEPTIONS.increment();
+        Metrics.getDefault().counter("blockworld.exceptions." + ex.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * It applies a command to the player of the world.
+     *
+     * @param command code of the command (see CommandJournal)
+     * @param a       first argument
+     * @param b       second argument
+     * @param c       third argument
+     * @throws Exception if the command cannot be applied
+     */
+    void execute(byte command, int a, int b, int c) throws Exception {
+        switch (command) {
+            case CommandJournal.MOVE:
+                movePlayer(world.getPlayer(), a, b, c);
+                break;
+            case CommandJournal.ORIENTATE:
+                orientatePlayer(world.getPlayer(), a, b, c);
+                break;
+            case CommandJournal.USE_ITEM:
+                useItem(world.getPlayer(), a);
+                break;
+            case CommandJournal.SELECT_ITEM:
+                selectItem(world.getPlayer(), a);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command code " + command);
+        }
+    }
+
     /**
      * Executes the commands it reads, line by line, from the Scanner object passed as argument.
      * It catches the exceptions that may occur during the execution of these commands,
@@ -225,6 +481,10 @@ public class BlockWorld {
      * If an unknown command is found, it displays an appropriate error message through the error output
      * and continues reading the next command. It stops reading from the Scanner object if
      * there is nothing left to read or the player has died.
+     * If a journal has been set (see setJournal()), every well-formed command except show is appended to it
+     * before being executed, even if it fails, so that replaying the journal has the same effects.
+     * The time taken by each kind of command and the exceptions thrown are recorded in the default metrics
+     * (see Metrics), together with the gauges of the world (see World.registerMetrics()) while it is played.
      *
      * @param sc scanner
      */
@@ -232,41 +492,170 @@ public class BlockWorld {
 
         String[] worldInfo = sc.nextLine().split(" ", 3);
         createWorld(Long.parseLong(worldInfo[0]), Integer.parseInt(worldInfo[1]), worldInfo[2]);
+        world.registerMetrics(Metrics.getDefault());
+        CommandJournal journal = openJournal();
 
-        while (sc.hasNextLine() && !world.getPlayer().isDead()) {
-            try {
-                String line = sc.nextLine();
-                Scanner lineScanner = new Scanner(line);
-                String command = lineScanner.next();
-
-                switch (command) {
-                    case "move":
-                        movePlayer(world.getPlayer(), lineScanner.nextInt(), lineScanner.nextInt(), lineScanner.nextInt());
-                        break;
-                    case "orientate":
-                        orientatePlayer(world.getPlayer(), lineScanner.nextInt(), lineScanner.nextInt(), lineScanner.nextInt());
-                        break;
-                    case "useItem":
-                        useItem(world.getPlayer(), lineScanner.nextInt());
-                        break;
-                    case "show":
-                        System.out.println(showPlayerInfo(world.getPlayer()));
-                        break;
-                    case "selectItem":
-                        selectItem(world.getPlayer(), lineScanner.nextInt());
-                        break;
-                    default:
-                        throw new UnknownGameCommandException(command);
+        try {
+            while (sc.hasNextLine() && !world.getPlayer().isDead()) {
+                try {
+                    String line = sc.nextLine();
+                    Scanner lineScanner = new Scanner(line);
+                    String command = lineScanner.next();
+                    byte code;
+                    int a = 0, b = 0, c = 0;
+
+                    switch (command) {
+                        case "move":
+                            code = CommandJournal.MOVE;
+                            a = lineScanner.nextInt();
+                            b = lineScanner.nextInt();
+                            c = lineScanner.nextInt();
+                            break;
+                        case "orientate":
+                            code = CommandJournal.ORIENTATE;
+                            a = lineScanner.nextInt();
+                            b = lineScanner.nextInt();
+                            c = lineScanner.nextInt();
+                            break;
+                        case "useItem":
+                            code = CommandJournal.USE_ITEM;
+                            a = lineScanner.nextInt();
+                            break;
+                        case "show":
+                            code = CommandReader.SHOW;
+                            break;
+                        case "selectItem":
+                            code = CommandJournal.SELECT_ITEM;
+                            a = lineScanner.nextInt();
+                            break;
+                        default:
+                            throw new UnknownGameCommandException(command);
+
+                    }
+                    apply(journal, code, a, b, c);
+
+
+                } catch (Exception ex) {
+                    //  ex.printStackTrace();
+                    countException(ex);
+                    System.err.println(ex.getMessage());
+                }
+
+            }
+        } finally {
+            closeJournal(journal);
+            world.unregisterMetrics();
+        }
+    }
 
+    /**
+     * It does the same as play(Scanner), reading the script with a CommandReader, which does not create
+     * any object per command, so long scripts are played as fast as they can be read.
+     *
+     * @param reader reader of the script
+     * @throws IOException if the script cannot be read
+     */
+    public void play(CommandReader reader) throws IOException {
+
+        long seed = reader.nextLong();
+        int size = reader.nextInt();
+        createWorld(seed, size, reader.nextLine());
+        world.registerMetrics(Metrics.getDefault());
+        CommandJournal journal = openJournal();
+
+        try {
+            while (reader.hasNextLine() && !world.getPlayer().isDead()) {
+                try {
+                    byte code = reader.nextCommand();
+                    apply(journal, code, reader.getArgument(0), reader.getArgument(1), reader.getArgument(2));
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    countException(ex);
+                    System.err.println(ex.getMessage());
                 }
+            }
+        } finally {
+            closeJournal(journal);
+            world.unregisterMetrics();
+        }
+    }
 
+    /**
+     * It creates the journal set with setJournal() for the world that has just been created, if any.
+     *
+     * @return the journal, or null if there is none or it cannot be created
+     */
+    private CommandJournal openJournal() {
+        if (journalFile == null)
+            return null;
+        try {
+            return new CommandJournal(journalFile, world);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return null;
+        }
+    }
 
-            } catch (Exception ex) {
-                //  ex.printStackTrace();
+    /**
+     * It closes a journal opened with openJournal().
+     *
+     * @param journal journal or null
+     */
+    private void closeJournal(CommandJournal journal) {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
                 System.err.println(ex.getMessage());
             }
+        }
+    }
 
+    /**
+     * It executes a command read from a script: it shows the player information or it journals
+     * and executes the command, taking a checkpoint when it is due.
+     *
+     * @param journal journal or null
+     * @param code    code of the command (CommandReader.SHOW or a command of CommandJournal)
+     * @param a       first argument
+     * @param b       second argument
+     * @param c       third argument
+     * @throws Exception if the command cannot be executed or journaled
+     */
+    private void apply(CommandJournal journal, byte code, int a, int b, int c) throws Exception {
+        long start = System.nanoTime();
+        if (code == CommandReader.SHOW) {
+            System.out.println(showPlayerInfo(world.getPlayer()));
+            COMMAND_LATENCY[code].lap(start);
+            return;
+        }
+        if (journal != null)
+            journal.append(code, a, b, c);
+        try {
+            execute(code, a, b, c);
+        } catch (Exception ex) {
+            // the failed command is journaled too, so the checkpoint is still due, but it must not hide ex
+            try {
+                checkpoint(journal);
+            } catch (IOException checkpointFailure) {
+                ex.addSuppressed(checkpointFailure);
+            }
+            throw ex;
+        } finally {
+            COMMAND_LATENCY[(code > 0 && code < COMMAND_LATENCY.length) ? code : 0].lap(start);
         }
+        checkpoint(journal);
     }
-}
 
+    /**
+     * It takes a checkpoint of the world if it is due after the last command appended to the journal.
+     *
+     * @param journal journal or null
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void checkpoint(CommandJournal journal) throws IOException {
+        if (journal != null && journal.size() % checkpointInterval == 0)
+            journal.checkpoint(world);
+    }
+}
@@ -0,0 +1,611 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.entities.*;
+import model.exceptions.*;
+import model.metrics.Histogram;
+import model.metrics.Metrics;
+import model.storage.BlockKey;
+import model.storage.BlockStates;
+import model.storage.Chunk;
+import model.storage.ChunkStore;
+import model.storage.LongMap;
+import model.storage.StripedLongMap;
+
+/**
+ * Generates a world chunk by chunk, either all at once in parallel (see GenerationMode.PARALLEL)
+ * or each chunk the first time it is accessed (see GenerationMode.LAZY).
+ * <p>
+ * It follows the same five phases as World.generate(): terrain surface and strata, caves, mineral veins,
+ * liquids and surface entities. Each phase runs as one task per chunk on a ForkJoinPool, and every chunk draws
+ * its random numbers from a seed derived from the world seed, the chunk coordinates and the phase.
+ * Caves and veins cross chunk borders, so they are first planned per chunk as lists of spheroids,
+ * which are then handed to the chunks they touch in a fixed order; liquids do not spread out of their chunk.
+ * That way the result does not depend on the number of threads or on the order in which chunks are processed.
+ * <p>
+ * Unlike in CLASSIC worlds, a pool of water or lava can therefore end at a chunk border, next to an empty block
+ * it would have flooded. Letting it cross the border would make a chunk depend on the liquids of its neighbours,
+ * which are generated at the same time in PARALLEL worlds and may not exist yet in LAZY ones. Such a liquid
+ * spreads to the neighbour chunk only when it is updated while the world is played (see LiquidFlow).
+ * <p>
+ * When a single chunk is populated, the caves and veins that can reach it are planned again from their origin chunks
+ * (plans are cached, as neighbouring chunks need the same ones), so a chunk is the same whether it is generated
+ * with the rest of the world or on its own, early or late.
+ * <p>
+ * Chunk coordinates, like the height map, start at 0 in the north-west corner of the world.
+ */
+class ChunkGenerator implements ChunkStore.Populator {
+    /**
+     * salt for the seed of each generation phase.
+     */
+    private static final long STRATA = 1, CAVES = 2, VEINS = 3, LIQUIDS = 4, SURFACE = 5;
+    /**
+     * maximum distance, in chunks, between the chunk where a cave (or vein) starts and the chunks it can reach:
+     * a cave moves one block per step for less than 200 steps and its spheroids have a radius below 9 blocks;
+     * a vein moves for less than 38 steps and its spheroids have a radius up to 1.5 blocks.
+     */
+    private static final int CAVE_REACH = 14, VEIN_REACH = 3;
+    /**
+     * materials of the mineral veins and their abundance.
+     */
+    private static final Material[] VEIN_MATERIALS = {Material.GRANITE, Material.OBSIDIAN};
+    private static final double[] VEIN_ABUNDANCE = {0.5, 0.3};
+    /**
+     * time taken to populate each chunk of a LAZY world, in nanoseconds, in the default metrics.
+     */
+    private static final Histogram POPULATE = Metrics.getDefault().histogram("world.generate.chunk");
+
+    /**
+     * A spheroid of blocks to remove (caves) or to replace with a mineral (veins).
+     * Its center uses the coordinates of the height map.
+     */
+    private static final class Spheroid {
+        final double x, y, z, radius;
+        final Material material;
+
+        Spheroid(double x, double y, double z, double radius, Material material) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.radius = radius;
+            this.material = material;
+        }
+    }
+
+    /**
+     * A generation phase applied to one chunk.
+     */
+    private interface Phase {
+        void run(int chunkX, int chunkZ) throws WrongMaterialException, StackSizeException, BadLocationException;
+    }
+
+    /**
+     * world being generated.
+     */
+    private final World world;
+    private final ChunkStore blocks;
+    private final World.HeightMap heightMap;
+    private final StripedLongMap<ItemStack> items;
+    private final StripedLongMap<Creature> creatures;
+    /**
+     * items and creatures of the chunk being populated, before they are added to the world;
+     * they are reused by every call to populate(), which is why it must not run concurrently.
+     */
+    private final LongMap<ItemStack> populatedItems;
+    private final LongMap<Creature> populatedCreatures;
+    /**
+     * seed and size of the world.
+     */
+    private final long seed;
+    private final int size;
+    private final int chunksPerSide;
+    /**
+     * noise of the terrain, it only depends on the world seed and can be shared by all threads.
+     */
+    private final TerrainNoise noise;
+    /**
+     * plans of the caves and veins that start in each chunk, by chunk index; only used when populating single chunks.
+     * They are not thread safe (a lookup reorders the entries), see populate().
+     */
+    private final Map<Integer, List<Spheroid>> cavePlans;
+    private final Map<Integer, List<Spheroid>> veinPlans;
+    /**
+     * pool that runs the tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * It creates a generator that fills the given (empty) storage of a world.
+     *
+     * @param world     world to generate
+     * @param blocks    blocks of the world
+     * @param heightMap height map of the world
+     * @param items     items of the world
+     * @param creatures creatures of the world
+     */
+    ChunkGenerator(World world, ChunkStore blocks, World.HeightMap heightMap, StripedLongMap<ItemStack> items,
+                   StripedLongMap<Creature> creatures) {
+        this.world = world;
+        this.blocks = blocks;
+        this.heightMap = heightMap;
+        this.items = items;
+        this.creatures = creatures;
+        populatedItems = new LongMap<>();
+        populatedCreatures = new LongMap<>();
+        seed = world.getSeed();
+        size = world.getSize();
+        chunksPerSide = blocks.getChunksPerSide();
+        noise = TerrainNoise.forSeed(seed);
+        cavePlans = planCache((2 * CAVE_REACH + 1) * (2 * CAVE_REACH + 1) * 2);
+        veinPlans = planCache((2 * VEIN_REACH + 1) * (2 * VEIN_REACH + 1) * 2);
+        pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * It creates a cache of plans that discards the least recently used one when it is full.
+     *
+     * @param capacity maximum number of plans
+     * @return empty cache
+     */
+    private static Map<Integer, List<Spheroid>> planCache(final int capacity) {
+        return new LinkedHashMap<Integer, List<Spheroid>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Spheroid>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * It generates the whole world.
+     */
+    void generateAll() {
+        int chunks = chunksPerSide * chunksPerSide;
+        System.out.println("Generando superficie del mundo y terreno...");
+        // the strata noise of every chunk is kept until its surface is generated
+        double[][] strata = new double[chunks][];
+        forEachChunk((chunkX, chunkZ) -> strata[index(chunkX, chunkZ)] = generateStrata(chunkX, chunkZ));
+
+        System.out.println("Generando cuevas y vetas de minerales...");
+        List<List<Spheroid>> plannedCaves = new ArrayList<>(chunks);
+        List<List<Spheroid>> plannedVeins = new ArrayList<>(chunks);
+        List<List<Spheroid>> caves = new ArrayList<>(chunks);
+        List<List<Spheroid>> veins = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            plannedCaves.add(null);
+            plannedVeins.add(null);
+            caves.add(new ArrayList<>());
+            veins.add(new ArrayList<>());
+        }
+        forEachChunk((chunkX, chunkZ) -> {
+            plannedCaves.set(index(chunkX, chunkZ), planCaves(chunkX, chunkZ));
+            plannedVeins.set(index(chunkX, chunkZ), planVeins(chunkX, chunkZ));
+        });
+        for (List<Spheroid> planned : plannedCaves)
+            distribute(planned, caves);
+        for (List<Spheroid> planned : plannedVeins)
+            distribute(planned, veins);
+        forEachChunk((chunkX, chunkZ) -> carve(chunkX, chunkZ, caves.get(index(chunkX, chunkZ))));
+        forEachChunk((chunkX, chunkZ) -> carve(chunkX, chunkZ, veins.get(index(chunkX, chunkZ))));
+
+        System.out.println("Creando fuentes de agua y erupciones de lava...");
+        forEachChunk(this::generateLiquids);
+
+        System.out.println("Generando superficie del terreno, entidades e items...");
+        List<LongMap<ItemStack>> chunkItems = new ArrayList<>(chunks);
+        List<LongMap<Creature>> chunkCreatures = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            chunkItems.add(new LongMap<>());
+            chunkCreatures.add(new LongMap<>());
+        }
+        forEachChunk((chunkX, chunkZ) -> generateSurface(chunkX, chunkZ, strata[index(chunkX, chunkZ)],
+                chunkItems.get(index(chunkX, chunkZ)), chunkCreatures.get(index(chunkX, chunkZ))));
+        for (int i = 0; i < chunks; i++) {
+            chunkItems.get(i).forEach(items::put);
+            chunkCreatures.get(i).forEach(creatures::put);
+        }
+    }
+
+    /**
+     * It generates a single chunk, on the calling thread. The chunk must be empty, and the chunks around it
+     * are neither read nor modified.
+     * <p>
+     * It is not thread safe: it reuses the item and creature maps and the plan caches of the generator, so calls
+     * must not overlap, even for distant chunks. World guarantees it by guarding LAZY worlds with a single lock
+     * instead of one lock per region (see RegionLocks), which serialises every access to their chunks.
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     */
+    @Override
+    public void populate(int chunkX, int chunkZ) {
+        long start = System.nanoTime();
+        try {
+            double[] strata = generateStrata(chunkX, chunkZ);
+            carve(chunkX, chunkZ, gather(chunkX, chunkZ, CAVE_REACH, cavePlans, false));
+            carve(chunkX, chunkZ, gather(chunkX, chunkZ, VEIN_REACH, veinPlans, true));
+            generateLiquids(chunkX, chunkZ);
+            populatedItems.clear();
+            populatedCreatures.clear();
+            generateSurface(chunkX, chunkZ, strata, populatedItems, populatedCreatures);
+            populatedItems.forEach(items::put);
+            populatedCreatures.forEach(creatures::put);
+        } catch (WrongMaterialException | StackSizeException | BadLocationException e) {
+            // no debe suceder
+            throw new RuntimeException(e);
+        }
+        POPULATE.lap(start);
+    }
+
+    /**
+     * It collects the spheroids of the caves (or veins) that touch a chunk, in the same order as generateAll()
+     * hands them out: by origin chunk and then in the order they were planned.
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @param reach  maximum distance, in chunks, from the origin chunk
+     * @param plans  cache of plans
+     * @param veins  whether to plan veins instead of caves
+     * @return spheroids to apply to the chunk
+     */
+    private List<Spheroid> gather(int chunkX, int chunkZ, int reach, Map<Integer, List<Spheroid>> plans, boolean veins) {
+        List<Spheroid> touching = new ArrayList<>();
+        for (int originX = Math.max(0, chunkX - reach); originX <= Math.min(chunksPerSide - 1, chunkX + reach); originX++) {
+            for (int originZ = Math.max(0, chunkZ - reach); originZ <= Math.min(chunksPerSide - 1, chunkZ + reach); originZ++) {
+                List<Spheroid> planned = plans.get(index(originX, originZ));
+                if (planned == null) {
+                    planned = veins ? planVeins(originX, originZ) : planCaves(originX, originZ);
+                    plans.put(index(originX, originZ), planned);
+                }
+                for (Spheroid s : planned)
+                    if (firstChunk(s.x, s.radius) <= chunkX && chunkX <= lastChunk(s.x, s.radius)
+                            && firstChunk(s.z, s.radius) <= chunkZ && chunkZ <= lastChunk(s.z, s.radius))
+                        touching.add(s);
+            }
+        }
+        return touching;
+    }
+
+    /**
+     * It runs a phase for every chunk of the world, in parallel, and waits until all of them have finished.
+     *
+     * @param phase phase to run
+     */
+    private void forEachChunk(Phase phase) {
+        pool.invoke(new ChunkRange(phase, 0, chunksPerSide * chunksPerSide));
+    }
+
+    /**
+     * Task that runs a phase over a range of chunk indexes, splitting it in halves.
+     */
+    private class ChunkRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Phase phase;
+        private final int from, to;
+
+        ChunkRange(Phase phase, int from, int to) {
+            this.phase = phase;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    phase.run(from / chunksPerSide, from % chunksPerSide);
+                } catch (WrongMaterialException | StackSizeException | BadLocationException e) {
+                    // no debe suceder
+                    throw new RuntimeException(e);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkRange(phase, from, middle), new ChunkRange(phase, middle, to));
+            }
+        }
+    }
+
+    /**
+     * index of a chunk in the lists of this generator.
+     */
+    private int index(int chunkX, int chunkZ) {
+        return chunkX * chunksPerSide + chunkZ;
+    }
+
+    /**
+     * first height map coordinate of a chunk.
+     */
+    private static int first(int chunk) {
+        return chunk * Chunk.SIZE;
+    }
+
+    /**
+     * last height map coordinate of a chunk, the world may end before the chunk does.
+     */
+    private int last(int chunk) {
+        return Math.min(size, first(chunk) + Chunk.SIZE) - 1;
+    }
+
+    /**
+     * It derives the seed of a chunk for a generation phase.
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @param phase  salt of the phase
+     * @return seed for the random number generator of the chunk
+     */
+    private long chunkSeed(int chunkX, int chunkZ, long phase) {
+        long h = seed ^ (chunkX * 0x9E3779B97F4A7C15L) ^ (chunkZ * 0xC2B2AE3D27D4EB4FL) ^ (phase * 0x165667B19E3779F9L);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * It turns an expected number of features into an integer number, rounding up the fractional part
+     * with that probability, so that small chunks still get their share.
+     *
+     * @param rng      random number generator of the chunk
+     * @param expected expected number of features
+     * @return number of features
+     */
+    private static int count(Random rng, double expected) {
+        int n = (int) expected;
+        return (rng.nextDouble() < expected - n) ? n + 1 : n;
+    }
+
+    /**
+     * Phase 1: surface height and strata of the columns of a chunk.
+     *
+     * @return the strata noise of the columns of the chunk, by x and then by z (see TerrainNoise.columns())
+     */
+    private double[] generateStrata(int chunkX, int chunkZ) throws WrongMaterialException, StackSizeException {
+        Random rng = new Random(chunkSeed(chunkX, chunkZ, STRATA));
+        int width = last(chunkX) - first(chunkX) + 1, depth = last(chunkZ) - first(chunkZ) + 1;
+        double[] heights = new double[width * depth];
+        double[] strata = new double[width * depth];
+        noise.columns(first(chunkX), first(chunkZ), width, depth, heights, strata);
+        for (int x = first(chunkX); x <= last(chunkX); x++) {
+            for (int z = first(chunkZ); z <= last(chunkZ); z++) {
+                int column = (x - first(chunkX)) * depth + z - first(chunkZ);
+                heightMap.setAt(x, z, heights[column]);
+
+                double dirtThickness = strata[column] / 24 - 4;
+                double dirtTransition = heightMap.getAt(x, z);
+                double stoneTransition = dirtTransition + dirtThickness;
+                for (int y = 0; y <= dirtTransition; y++) {
+                    Material material;
+                    if (y == 0) material = Material.BEDROCK;
+                    else if (y <= stoneTransition) material = Material.STONE;
+                    else material = Material.DIRT;
+                    Block block = BlockStates.solid(material, rng.nextDouble() < 0.5);
+                    blocks.put(x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit, block);
+                }
+            }
+        }
+        return strata;
+    }
+
+    /**
+     * Phase 2: caves that start in a chunk; they can reach other chunks.
+     *
+     * @return spheroids to remove, in order
+     */
+    private List<Spheroid> planCaves(int chunkX, int chunkZ) {
+        Random rng = new Random(chunkSeed(chunkX, chunkZ, CAVES));
+        int width = last(chunkX) - first(chunkX) + 1;
+        int depth = last(chunkZ) - first(chunkZ) + 1;
+        int numCuevas = count(rng, width * depth * 256 / 8192.0);
+        List<Spheroid> planned = new ArrayList<>();
+        for (int cueva = 0; cueva < numCuevas; cueva++) {
+            double x = first(chunkX) + rng.nextInt(width);
+            double y = rng.nextInt((int) Location.UPPER_Y_VALUE);
+            double z = first(chunkZ) + rng.nextInt(depth);
+            double caveLength = rng.nextDouble() * rng.nextDouble() * 200;
+            double theta = rng.nextDouble() * Math.PI * 2;
+            double deltaTheta = 0.0;
+            double phi = rng.nextDouble() * Math.PI * 2;
+            double deltaPhi = 0.0;
+            double caveRadius = rng.nextDouble() * rng.nextDouble();
+
+            for (int i = 1; i <= (int) caveLength; i++) {
+                x += Math.sin(theta) * Math.cos(phi);
+                y += Math.cos(theta) * Math.cos(phi);
+                z += Math.sin(phi);
+                theta += deltaTheta * 0.2;
+                deltaTheta *= 0.9;
+                deltaTheta += rng.nextDouble();
+                deltaTheta -= rng.nextDouble();
+                phi /= 2.0;
+                phi += deltaPhi / 4.0;
+                deltaPhi *= 0.75;
+                deltaPhi += rng.nextDouble();
+                deltaPhi -= rng.nextDouble();
+                if (rng.nextDouble() >= 0.25) {
+                    double centerX = x + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double centerY = y + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double centerZ = z + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double radius = (Location.UPPER_Y_VALUE - centerY) / Location.UPPER_Y_VALUE;
+                    radius = 1.2 + (radius * 3.5 + 1) * caveRadius;
+                    radius *= Math.sin(i * Math.PI / caveLength);
+                    planned.add(new Spheroid(centerX, centerY, centerZ, radius, null));
+                }
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * Phase 3: mineral veins that start in a chunk; they can reach other chunks.
+     *
+     * @return spheroids to fill with minerals, in order
+     */
+    private List<Spheroid> planVeins(int chunkX, int chunkZ) {
+        Random rng = new Random(chunkSeed(chunkX, chunkZ, VEINS));
+        int width = last(chunkX) - first(chunkX) + 1;
+        int depth = last(chunkZ) - first(chunkZ) + 1;
+        List<Spheroid> planned = new ArrayList<>();
+        for (int numVein = 0; numVein < VEIN_MATERIALS.length; numVein++) {
+            double abundance = VEIN_ABUNDANCE[numVein];
+            int numVeins = count(rng, width * depth * 256 * abundance / 16384);
+            for (int v = 0; v < numVeins; v++) {
+                double x = first(chunkX) + rng.nextInt(width);
+                double y = rng.nextInt((int) Location.UPPER_Y_VALUE);
+                double z = first(chunkZ) + rng.nextInt(depth);
+                double veinLength = rng.nextDouble() * rng.nextDouble() * 75 * abundance;
+                double theta = rng.nextDouble() * Math.PI * 2;
+                double deltaTheta = 0.0;
+                double phi = rng.nextDouble() * Math.PI * 2;
+                double deltaPhi = 0.0;
+                for (int len = 0; len < (int) veinLength; len++) {
+                    x += Math.sin(theta) * Math.cos(phi);
+                    y += Math.cos(theta) * Math.cos(phi);
+                    z += Math.sin(phi);
+                    theta += deltaTheta * 0.2;
+                    deltaTheta *= 0.9;
+                    deltaTheta += rng.nextDouble();
+                    deltaTheta -= rng.nextDouble();
+                    phi /= 2.0;
+                    phi += deltaPhi / 4.0;
+                    deltaPhi *= 0.9;
+                    deltaPhi += rng.nextDouble();
+                    deltaPhi -= rng.nextDouble();
+                    double radius = abundance * Math.sin(len * Math.PI / veinLength) + 1;
+                    planned.add(new Spheroid(x, y, z, radius, VEIN_MATERIALS[numVein]));
+                }
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * It appends each spheroid to the list of every chunk it touches.
+     *
+     * @param planned spheroids planned by one chunk
+     * @param target  lists of spheroids of every chunk
+     */
+    private void distribute(List<Spheroid> planned, List<List<Spheroid>> target) {
+        for (Spheroid s : planned) {
+            int fromX = Math.max(0, firstChunk(s.x, s.radius));
+            int toX = Math.min(chunksPerSide - 1, lastChunk(s.x, s.radius));
+            int fromZ = Math.max(0, firstChunk(s.z, s.radius));
+            int toZ = Math.min(chunksPerSide - 1, lastChunk(s.z, s.radius));
+            for (int chunkX = fromX; chunkX <= toX; chunkX++)
+                for (int chunkZ = fromZ; chunkZ <= toZ; chunkZ++)
+                    target.get(index(chunkX, chunkZ)).add(s);
+        }
+    }
+
+    /**
+     * first chunk coordinate touched by a spheroid along an axis.
+     */
+    private static int firstChunk(double center, double radius) {
+        return (int) Math.floor(center - radius) >> 4;
+    }
+
+    /**
+     * last chunk coordinate touched by a spheroid along an axis.
+     */
+    private static int lastChunk(double center, double radius) {
+        return (int) Math.floor(center + radius) >> 4;
+    }
+
+    /**
+     * Phases 2 and 3: it applies the spheroids that touch a chunk, without modifying other chunks.
+     */
+    private void carve(int chunkX, int chunkZ, List<Spheroid> spheroids) throws WrongMaterialException {
+        int minX = first(chunkX) + heightMap.negativeWorldLimit;
+        int maxX = last(chunkX) + heightMap.negativeWorldLimit;
+        int minZ = first(chunkZ) + heightMap.negativeWorldLimit;
+        int maxZ = last(chunkZ) + heightMap.negativeWorldLimit;
+        for (Spheroid s : spheroids)
+            world.fillOblateSpheroid(s.x, s.y, s.z, s.radius, s.material, minX, maxX, minZ, maxZ);
+    }
+
+    /**
+     * Phase 4: water and lava sources of a chunk, flooding only that chunk, even where the liquid would flow
+     * across its border.
+     */
+    private void generateLiquids(int chunkX, int chunkZ) throws WrongMaterialException, BadLocationException {
+        Random rng = new Random(chunkSeed(chunkX, chunkZ, LIQUIDS));
+        int width = last(chunkX) - first(chunkX) + 1;
+        int depth = last(chunkZ) - first(chunkZ) + 1;
+        int minX = first(chunkX) + heightMap.negativeWorldLimit;
+        int minZ = first(chunkZ) + heightMap.negativeWorldLimit;
+        int maxX = minX + width - 1;
+        int maxZ = minZ + depth - 1;
+
+        int numWaterSources = count(rng, width * depth / 800.0);
+        for (int w = 0; w < numWaterSources; w++) {
+            int x = minX + rng.nextInt(width);
+            int z = minZ + rng.nextInt(depth);
+            int y = (int) Location.SEA_LEVEL - 1 - rng.nextInt(2);
+            world.floodFill(Material.WATER, new Location(world, x, y, z), minX, maxX, minZ, maxZ);
+        }
+        int numLavaSources = count(rng, width * depth / 2000.0);
+        for (int w = 0; w < numLavaSources; w++) {
+            int x = minX + rng.nextInt(width);
+            int z = minZ + rng.nextInt(depth);
+            int y = (int) ((Location.SEA_LEVEL - 3) * rng.nextDouble() * rng.nextDouble());
+            world.floodFill(Material.LAVA, new Location(world, x, y, z), minX, maxX, minZ, maxZ);
+        }
+    }
+
+    /**
+     * Phase 5: surface blocks, creatures and items of a chunk.
+     *
+     * @param strata       strata noise of the columns of the chunk, as returned by generateStrata()
+     * @param newItems     map where the items of the chunk are put
+     * @param newCreatures map where the creatures of the chunk are put
+     */
+    private void generateSurface(int chunkX, int chunkZ, double[] strata, LongMap<ItemStack> newItems,
+                                 LongMap<Creature> newCreatures)
+            throws WrongMaterialException, StackSizeException, BadLocationException {
+        Random rng = new Random(chunkSeed(chunkX, chunkZ, SURFACE));
+        int depth = last(chunkZ) - first(chunkZ) + 1;
+        double entitySpawnChance = 0.05;
+        double itemsSpawnChance = 0.10;
+        double foodChance = 0.8;
+        double toolChance = 0.1;
+
+        for (int x = first(chunkX); x <= last(chunkX); x++) {
+            for (int z = first(chunkZ); z <= last(chunkZ); z++) {
+                Material surfaceMaterial = (strata[(x - first(chunkX)) * depth + z - first(chunkZ)] > 8.0) ? Material.SAND : Material.GRASS;
+                int y = (int) heightMap.getAt(x, z);
+                int worldX = x + heightMap.negativeWorldLimit;
+                int worldZ = z + heightMap.negativeWorldLimit;
+                Block surface = BlockStates.solid(surfaceMaterial, rng.nextDouble() < 0.5);
+                blocks.put(worldX, y, worldZ, surface);
+
+                // el bloque encima de la superficie está libre (es AIR)
+                Location aboveSurface = new Location(world, worldX, y, worldZ).above();
+                long key = BlockKey.pack(worldX, y + 1, worldZ);
+                if (rng.nextDouble() < entitySpawnChance) {
+                    double entityHealth = rng.nextInt((int) LivingEntity.MAX_HEALTH) + 1;
+                    if (rng.nextDouble() < 0.75)
+                        newCreatures.put(key, new Monster(aboveSurface, entityHealth));
+                    else
+                        newCreatures.put(key, new Animal(aboveSurface, entityHealth));
+                } else if (rng.nextDouble() < itemsSpawnChance) {
+                    Material itemMaterial;
+                    int amount = 1;
+                    double rand = rng.nextDouble();
+                    if (rand < foodChance) {
+                        itemMaterial = Material.getRandomItem(rng, 8, 11);
+                        amount = rng.nextInt(5) + 1;
+                    } else if (rand < foodChance + toolChance)
+                        itemMaterial = Material.getRandomItem(rng, 12, 13);
+                    else
+                        itemMaterial = Material.getRandomItem(rng, 14, 15);
+                    newItems.put(key, new ItemStack(itemMaterial, amount));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary, append-only journal of the commands applied to a world, with periodic checkpoints.
+ * <p>
+ * The journal starts with a header (magic number, format version and the seed, size, generation mode, storage
+ * mode and name of the world)
+ * followed by one record of fixed size per command: its code and three int arguments (unused ones are 0).
+ * Records are gathered in a buffer and written to the file when it fills up, on flush() and on checkpoint().
+ * As every record has the same size, the n-th command is found without reading the ones before it.
+ * <p>
+ * A checkpoint is a snapshot of the world (see World.save()) taken after a number of commands; it is stored
+ * beside the journal, in a file named after the journal and that number. Recovering a world means loading the
+ * latest checkpoint and replaying only the commands that follow it. A record that was only partly written
+ * (because the program stopped while writing it) is ignored.
+ */
+public class CommandJournal implements Closeable {
+    /**
+     * It applies the commands read from a journal.
+     */
+    public interface Handler {
+        /**
+         * It is called once for every command, in the order they were appended.
+         *
+         * @param command code of the command (MOVE, ORIENTATE, USE_ITEM or SELECT_ITEM)
+         * @param a       first argument
+         * @param b       second argument
+         * @param c       third argument
+         */
+        void apply(byte command, int a, int b, int c);
+    }
+
+    /**
+     * code of the command move (arguments dx, dy, dz).
+     */
+    public static final byte MOVE = 1;
+    /**
+     * code of the command orientate (arguments dx, dy, dz).
+     */
+    public static final byte ORIENTATE = 2;
+    /**
+     * code of the command useItem (argument times).
+     */
+    public static final byte USE_ITEM = 3;
+    /**
+     * code of the command selectItem (argument pos).
+     */
+    public static final byte SELECT_ITEM = 4;
+
+    /**
+     * first four bytes of a journal ("BWJL").
+     */
+    private static final int MAGIC = 0x42574A4C;
+    /**
+     * version of the format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * size of a record: command code and three arguments.
+     */
+    private static final int RECORD_SIZE = 1 + 3 * 4;
+    /**
+     * records kept in the buffer before writing them.
+     */
+    private static final int BUFFERED_RECORDS = 4096;
+    /**
+     * records mapped at a time when replaying a journal (about 64 MB), so that journals of any length can be read.
+     */
+    private static final int REPLAYED_RECORDS = (64 << 20) / RECORD_SIZE;
+    /**
+     * suffix of the checkpoint files.
+     */
+    private static final String CHECKPOINT_SUFFIX = ".snap";
+
+    /**
+     * journal file.
+     */
+    private final Path file;
+    /**
+     * channel of the journal file, positioned at its end.
+     */
+    private final FileChannel channel;
+    /**
+     * records not written yet.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * number of commands in the journal, including the buffered ones.
+     */
+    private long size;
+    /**
+     * number of commands of the last checkpoint, or -1 if there is none.
+     */
+    private long checkpoint;
+
+    /**
+     * It creates a new journal for a world, replacing the file and removing its checkpoints, if any.
+     *
+     * @param file  journal file
+     * @param world world whose commands will be appended; its seed, size, modes and name are written in the header
+     * @throws IOException if the file cannot be written
+     */
+    public CommandJournal(Path file, World world) throws IOException {
+        this.file = file;
+        for (long commands : checkpoints(file))
+            Files.deleteIfExists(checkpointFile(file, commands));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * RECORD_SIZE);
+        checkpoint = -1;
+        byte[] name = world.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + 8 + 4 + 1 + 1 + 4 + name.length);
+        header.putInt(MAGIC).putInt(VERSION).putLong(world.getSeed()).putInt(world.getSize());
+        header.put((byte) world.getGenerationMode().ordinal()).put((byte) world.getStorageMode().ordinal());
+        header.putInt(name.length).put(name);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header);
+    }
+
+    /**
+     * It appends a command to the journal.
+     *
+     * @param command code of the command
+     * @param a       first argument
+     * @param b       second argument
+     * @param c       third argument
+     * @throws IOException if the buffer was full and could not be written
+     */
+    public void append(byte command, int a, int b, int c) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE)
+            flush();
+        buffer.put(command).putInt(a).putInt(b).putInt(c);
+        size++;
+    }
+
+    /**
+     * It writes the buffered commands to the file.
+     *
+     * @throws IOException if they cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * It writes the buffered commands and a checkpoint of the world, and removes the previous checkpoint.
+     * A checkpoint file is always complete, as World.save() replaces files in a single step.
+     *
+     * @param world world after applying all the commands of the journal
+     * @throws IOException if the journal or the checkpoint cannot be written
+     */
+    public void checkpoint(World world) throws IOException {
+        flush();
+        channel.force(false);
+        world.save(checkpointFile(file, size));
+        if (checkpoint >= 0 && checkpoint != size)
+            Files.deleteIfExists(checkpointFile(file, checkpoint));
+        checkpoint = size;
+    }
+
+    /**
+     * number of commands appended.
+     *
+     * @return size of the journal
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * It writes the buffered commands and closes the file.
+     *
+     * @throws IOException if the commands cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * It returns the file of the checkpoint taken after a number of commands of a journal.
+     *
+     * @param file     journal file
+     * @param commands number of commands
+     * @return the checkpoint file, beside the journal
+     */
+    public static Path checkpointFile(Path file, long commands) {
+        return file.resolveSibling(file.getFileName() + "." + commands + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * It finds the latest checkpoint of a journal.
+     *
+     * @param file journal file
+     * @return number of commands of the latest checkpoint, or -1 if there is none
+     * @throws IOException if the directory of the journal cannot be read
+     */
+    public static long lastCheckpoint(Path file) throws IOException {
+        long last = -1;
+        for (long commands : checkpoints(file))
+            last = Math.max(last, commands);
+        return last;
+    }
+
+    /**
+     * It finds the checkpoints of a journal.
+     *
+     * @param file journal file
+     * @return number of commands of every checkpoint
+     * @throws IOException if the directory of the journal cannot be read
+     */
+    private static List<Long> checkpoints(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> checkpoints = Files.newDirectoryStream(dir, glob(prefix) + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path checkpoint : checkpoints) {
+                String name = checkpoint.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(prefix.length(), name.length() - CHECKPOINT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // not a checkpoint of this journal
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * It escapes the characters of a file name that are special in a glob pattern.
+     */
+    private static String glob(String name) {
+        return name.replaceAll("([\\\\*?\\[\\]{}])", "\\\\$1");
+    }
+
+    /**
+     * It creates the world of a journal, as it was before its first command, from its seed, size, modes and name.
+     *
+     * @param file journal file
+     * @return a new world
+     * @throws IOException if the file cannot be read or it is not a journal
+     */
+    public static World createWorld(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(in.size(), 1 << 16));
+            readHeader(header, file);
+            long seed = header.getLong();
+            int size = header.getInt();
+            GenerationMode mode = GenerationMode.values()[header.get() & 0xFF];
+            StorageMode storage = StorageMode.values()[header.get() & 0xFF];
+            byte[] name = new byte[header.getInt()];
+            header.get(name);
+            return new World(seed, size, new String(name, StandardCharsets.UTF_8), mode, storage);
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt journal " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * It applies the commands of a journal, starting at a given one.
+     * The records are mapped in windows of REPLAYED_RECORDS records, one after the other.
+     *
+     * @param file    journal file
+     * @param from    number of commands to skip (usually, the ones of a checkpoint)
+     * @param handler handler of the commands
+     * @return number of commands applied
+     * @throws IOException if the file cannot be read or it is not a journal
+     */
+    public static long replay(Path file, long from, Handler handler) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(in.size(), 1 << 16));
+            readHeader(header, file);
+            int nameLength = header.getInt(header.position() + 8 + 4 + 2);
+            long start = header.position() + 8 + 4 + 2 + 4 + (long) nameLength;
+            long total = (in.size() - start) / RECORD_SIZE;
+            long applied = 0;
+            for (long first = from; first < total; first += REPLAYED_RECORDS) {
+                int count = (int) Math.min(REPLAYED_RECORDS, total - first);
+                MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, start + first * RECORD_SIZE,
+                        (long) count * RECORD_SIZE);
+                for (int i = 0; i < count; i++) {
+                    // the arguments are evaluated from left to right
+                    handler.apply(records.get(), records.getInt(), records.getInt(), records.getInt());
+                    applied++;
+                }
+            }
+            return applied;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException("Corrupt journal " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * It reads and checks the magic number and the version of a journal.
+     */
+    private static void readHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a command journal");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported journal version " + version + " in " + file);
+    }
+}
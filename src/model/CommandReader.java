@@ -0,0 +1,327 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.exceptions.UnknownGameCommandException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reader of the commands of a game script (see BlockWorld.play()), one per line.
+ * <p>
+ * The script is read from a channel in blocks of bytes and tokenized byte by byte: command names are compared
+ * with the known ones without building Strings and int arguments are decoded in place, so reading a command
+ * creates no objects and a script of any size is read in constant memory. Only ASCII spaces, tabs and carriage
+ * returns separate tokens; lines end with '\n'. As with a Scanner, the tokens that follow the arguments of a
+ * command on its line are ignored.
+ */
+public class CommandReader {
+    /**
+     * code of the command show, which has no arguments. The other commands have the codes of CommandJournal.
+     */
+    public static final byte SHOW = 5;
+
+    /**
+     * names of the commands, indexed by their codes.
+     */
+    private static final byte[][] NAMES = new byte[SHOW + 1][];
+    /**
+     * number of int arguments of the commands, indexed by their codes.
+     */
+    private static final int[] ARGUMENTS = new int[SHOW + 1];
+
+    static {
+        define(CommandJournal.MOVE, "move", 3);
+        define(CommandJournal.ORIENTATE, "orientate", 3);
+        define(CommandJournal.USE_ITEM, "useItem", 1);
+        define(CommandJournal.SELECT_ITEM, "selectItem", 1);
+        define(SHOW, "show", 0);
+    }
+
+    /**
+     * size of the blocks read from the channel.
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+    /**
+     * longest command name that is kept to report it as unknown.
+     */
+    private static final int MAX_NAME = 64;
+
+    /**
+     * channel of the script.
+     */
+    private final ReadableByteChannel channel;
+    /**
+     * bytes of the current block.
+     */
+    private final byte[] block;
+    /**
+     * buffer that wraps the block, to read from the channel.
+     */
+    private final ByteBuffer blockBuffer;
+    /**
+     * position of the next byte in the block.
+     */
+    private int position;
+    /**
+     * number of bytes in the block.
+     */
+    private int limit;
+    /**
+     * whether the channel has been read to its end.
+     */
+    private boolean eof;
+    /**
+     * name of the last command read.
+     */
+    private final byte[] name;
+    /**
+     * arguments of the last command read.
+     */
+    private final int[] arguments;
+
+    /**
+     * It creates a reader of the script in the given channel.
+     *
+     * @param channel channel of the script, positioned at its first byte
+     */
+    public CommandReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        block = new byte[BLOCK_SIZE];
+        blockBuffer = ByteBuffer.wrap(block);
+        name = new byte[MAX_NAME];
+        arguments = new int[3];
+    }
+
+    /**
+     * It registers the name and number of arguments of a command.
+     */
+    private static void define(byte code, String name, int arguments) {
+        NAMES[code] = name.getBytes(StandardCharsets.US_ASCII);
+        ARGUMENTS[code] = arguments;
+    }
+
+    /**
+     * It checks whether there is something left to read.
+     *
+     * @return true if there is at least one more line
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean hasNextLine() throws IOException {
+        return peek() >= 0;
+    }
+
+    /**
+     * It reads the command in the next line and its arguments, which can be obtained with getArgument().
+     * If the line does not hold a valid command, the whole line is skipped before throwing the exception,
+     * so the next call reads the following line.
+     *
+     * @return the code of the command: CommandJournal.MOVE, ORIENTATE, USE_ITEM, SELECT_ITEM or SHOW
+     * @throws NoSuchElementException       if the line is empty or an argument is missing
+     * @throws InputMismatchException       if an argument is not an int
+     * @throws UnknownGameCommandException  if the command is unknown
+     * @throws IOException                  if the channel cannot be read
+     */
+    public byte nextCommand() throws IOException, UnknownGameCommandException {
+        try {
+            skipSpaces();
+            int length = 0, next;
+            boolean tooLong = false;
+            while ((next = peek()) >= 0 && !isSeparator(next)) {
+                if (length < MAX_NAME)
+                    name[length++] = (byte) next;
+                else
+                    tooLong = true;
+                position++;
+            }
+            if (length == 0)
+                throw new NoSuchElementException();
+            byte code = find(length, tooLong);
+            if (code < 0)
+                throw new UnknownGameCommandException(new String(name, 0, length, StandardCharsets.ISO_8859_1));
+            for (int i = 0; i < ARGUMENTS[code]; i++)
+                arguments[i] = readInt();
+            return code;
+        } finally {
+            skipLine();
+        }
+    }
+
+    /**
+     * It returns an argument of the last command read.
+     *
+     * @param index index of the argument, from 0
+     * @return the argument
+     */
+    public int getArgument(int index) {
+        return arguments[index];
+    }
+
+    /**
+     * It reads a long from the current line.
+     *
+     * @return the long
+     * @throws NoSuchElementException if there is nothing left in the line
+     * @throws InputMismatchException if the next token is not a long
+     * @throws IOException            if the channel cannot be read
+     */
+    public long nextLong() throws IOException {
+        return readNumber(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * It reads an int from the current line.
+     *
+     * @return the int
+     * @throws NoSuchElementException if there is nothing left in the line
+     * @throws InputMismatchException if the next token is not an int
+     * @throws IOException            if the channel cannot be read
+     */
+    public int nextInt() throws IOException {
+        return readInt();
+    }
+
+    /**
+     * It reads the rest of the current line, without the separator that precedes it and the line end.
+     *
+     * @return the rest of the line
+     * @throws IOException if the channel cannot be read
+     */
+    public String nextLine() throws IOException {
+        int next = peek();
+        if (next == ' ' || next == '\t')
+            position++;
+        byte[] line = new byte[16];
+        int length = 0;
+        while ((next = peek()) >= 0 && next != '\n') {
+            if (length == line.length)
+                line = Arrays.copyOf(line, length * 2);
+            line[length++] = (byte) next;
+            position++;
+        }
+        if (next == '\n')
+            position++;
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * code of the command whose name has been read, or -1 if it is unknown.
+     */
+    private byte find(int length, boolean tooLong) {
+        if (!tooLong) {
+            for (byte code = 1; code < NAMES.length; code++) {
+                byte[] known = NAMES[code];
+                if (known.length == length) {
+                    int i = 0;
+                    while (i < length && known[i] == name[i])
+                        i++;
+                    if (i == length)
+                        return code;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * It reads an int token.
+     */
+    private int readInt() throws IOException {
+        return (int) readNumber(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * It reads a decimal integer token between min and max.
+     * If the token is not such a number, it is skipped.
+     */
+    private long readNumber(long min, long max) throws IOException {
+        skipSpaces();
+        int next = peek();
+        if (next < 0 || next == '\n')
+            throw new NoSuchElementException();
+        boolean negative = next == '-';
+        if (next == '-' || next == '+')
+            position++;
+        // accumulated as a negative number, which has room for min
+        long value = 0;
+        long limit = negative ? min : -max;
+        long multiplicationLimit = limit / 10;
+        int digits = 0;
+        boolean valid = true;
+        while ((next = peek()) >= 0 && !isSeparator(next)) {
+            position++;
+            int digit = next - '0';
+            if (digit < 0 || digit > 9 || value < multiplicationLimit || value * 10 < limit + digit) {
+                valid = false;
+            } else {
+                value = value * 10 - digit;
+                digits++;
+            }
+        }
+        if (!valid || digits == 0)
+            throw new InputMismatchException();
+        return negative ? value : -value;
+    }
+
+    /**
+     * It skips the spaces before the next token of the line.
+     */
+    private void skipSpaces() throws IOException {
+        int next;
+        while ((next = peek()) == ' ' || next == '\t' || next == '\r')
+            position++;
+    }
+
+    /**
+     * It skips the rest of the current line, including its end.
+     */
+    private void skipLine() throws IOException {
+        int next;
+        while ((next = peek()) >= 0) {
+            position++;
+            if (next == '\n')
+                return;
+        }
+    }
+
+    /**
+     * It checks whether a byte ends a token.
+     */
+    private static boolean isSeparator(int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * It returns the next byte without consuming it, reading a new block if needed.
+     *
+     * @return the byte, or -1 at the end of the script
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            if (eof)
+                return -1;
+            blockBuffer.clear();
+            int read;
+            do {
+                read = channel.read(blockBuffer);
+            } while (read == 0);
+            if (read < 0) {
+                eof = true;
+                limit = position = 0;
+                return -1;
+            }
+            position = 0;
+            limit = read;
+        }
+        return block[position] & 0xFF;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+/**
+ * Algorithms available to generate the terrain of a world.
+ */
+public enum GenerationMode {
+    /**
+     * The whole world is generated on a single thread with a single random number generator.
+     * Worlds of the assignments (and their tests) are generated this way.
+     */
+    CLASSIC,
+    /**
+     * The world is generated chunk by chunk on a ForkJoinPool. Every chunk draws its random numbers from a seed
+     * derived from the world seed and the chunk coordinates, so the result only depends on the seed and the size,
+     * not on the number of threads. Worlds differ from CLASSIC ones with the same seed; in particular, liquids
+     * are generated chunk by chunk and stop at chunk borders.
+     */
+    PARALLEL,
+    /**
+     * Each chunk is generated the first time it is accessed, so creating a world is fast and its memory use depends
+     * on how much of it has been explored, not on its size. Chunks are generated as in PARALLEL mode,
+     * so a LAZY world is equal to the PARALLEL world with the same seed and size. LAZY worlds are not thread safe.
+     */
+    LAZY
+}
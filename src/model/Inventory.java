@@ -11,12 +11,50 @@ import java.util.*;
  * The player has an inventory of infinite capacity; in each position of the inventory he or she can keep a stack of items (ItemStack).
  * A special position (called ‘inHand’) corresponds to the item that the player holds in his or her hand.
  * The player is created with an item in his hand that is a wooden sword (WOOD_SWORD material).
+ * <p>
+ * Inventories with a fixed capacity can be created too, and merge() adds items to the stacks of the same material
+ * before taking new positions.
+ * <p>
+ * The stacks are kept in an array of slots, in the order of their positions. Clearing a position does not move
+ * the stacks that follow it: the slot is left empty and a Fenwick tree that counts the occupied slots translates
+ * positions into slots, so clear() and getItem() take logarithmic time instead of shifting the whole inventory.
+ * The array is compacted once half of its slots are empty. The slots of each material are kept in a bitset, so
+ * first() does not look at the stacks of other materials.
  */
 public class Inventory {
     /**
-     * array list that consist of itemstack class objects and  represents player's inventory.
+     * capacity of the inventories of unlimited size.
      */
-    private ArrayList<ItemStack> inventory;
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * stacks of the inventory by slot; slots below 'end' that are not occupied were cleared.
+     */
+    private ItemStack[] slots;
+    /**
+     * occupied slots.
+     */
+    private BitSet occupied;
+    /**
+     * Fenwick tree of the number of occupied slots: tree[i] counts the slots (i - (i &amp; -i), i], numbered from 1.
+     */
+    private int[] tree;
+    /**
+     * number of slots used, occupied or cleared.
+     */
+    private int end;
+    /**
+     * number of stacks (positions) of the inventory.
+     */
+    private int size;
+    /**
+     * occupied slots of each material that has any.
+     */
+    private EnumMap<Material, BitSet> materials;
+    /**
+     * maximum number of positions of the inventory.
+     */
+    private final int capacity;
     /**
      * ItemStack class object that represents the item user hold in hand.
      */
@@ -26,29 +64,119 @@ public class Inventory {
      * It creates an empty inventory.
      */
     public Inventory() {
-            inventory = new ArrayList<>();
-            inHand = null;
+        this(UNLIMITED);
+    }
+
+    /**
+     * It creates an empty inventory with a limited number of positions.
+     *
+     * @param capacity maximum number of positions, or UNLIMITED
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public Inventory(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        this.capacity = capacity;
+        reset(16);
+        inHand = null;
+    }
 
+    /**
+     * It creates a copy of an inventory; the stacks of items are copied too.
+     *
+     * @param other inventory to copy
+     */
+    public Inventory(Inventory other) {
+        capacity = other.capacity;
+        reset(Math.max(16, other.size));
+        for (int slot = other.occupied.nextSetBit(0); slot >= 0; slot = other.occupied.nextSetBit(slot + 1)) {
+            ItemStack items = other.slots[slot];
+            append((items == null) ? null : new ItemStack(items));
+        }
+        inHand = (other.inHand == null) ? null : new ItemStack(other.inHand);
     }
 
+    /**
+     * It empties the slots, leaving room for the given number of them.
+     */
+    private void reset(int length) {
+        slots = new ItemStack[length];
+        tree = new int[length + 1];
+        occupied = new BitSet(length);
+        materials = new EnumMap<>(Material.class);
+        end = 0;
+        size = 0;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return maximum number of positions of the inventory, or UNLIMITED
+     */
+    public int getCapacity() {
+        return capacity;
+    }
 
     /**
      * It adds a stack of items to the inventory in a new position.
      * Items of the same material can exist in different inventory positions.
      *
      * @param items instance of ItemStack class to be added to the inventory.
-     * @return the number of items added.
+     * @return the number of items added, 0 if the inventory is full.
      */
     public int addItem(ItemStack items) {
-        inventory.add(items);
+        if (size == capacity)
+            return 0;
+        append(items);
         return items.getAmount();
     }
 
+    /**
+     * It adds items to the inventory, filling first the stacks of the same material that are not full, in the
+     * order of their positions, and then a new position; tools and weapons, which cannot be stacked, always take
+     * a new position. The given stack is stored as it is if none of its items fit in the existing stacks.
+     *
+     * @param items items to add
+     * @return the number of items added, fewer than those of the stack if the inventory is full.
+     */
+    public int merge(ItemStack items) {
+        Material type = items.getType();
+        int left = items.getAmount();
+        BitSet stacks = materials.get(type);
+        if (stacks != null && !type.isTool() && !type.isWeapon()) {
+            for (int slot = stacks.nextSetBit(0); slot >= 0 && left > 0; slot = stacks.nextSetBit(slot + 1)) {
+                ItemStack stack = slots[slot];
+                int moved = Math.min(left, ItemStack.MAX_STACK_SIZE - stack.getAmount());
+                if (moved > 0) {
+                    try {
+                        stack.setAmount(stack.getAmount() + moved);
+                    } catch (StackSizeException e) {
+                        // Should never happen
+                        e.printStackTrace();
+                    }
+                    left -= moved;
+                }
+            }
+        }
+        if (left == items.getAmount())
+            return addItem(items);
+        if (left > 0 && size < capacity) {
+            try {
+                append(new ItemStack(type, left));
+                left = 0;
+            } catch (StackSizeException e) {
+                // Should never happen
+                e.printStackTrace();
+            }
+        }
+        return items.getAmount() - left;
+    }
+
     /**
      * It empties the inventory, including the item in the player’s hand.
      */
     public void clear() {
-        inventory.clear();
+        reset(16);
         inHand = null;
     }
 
@@ -59,9 +187,18 @@ public class Inventory {
      * @throws BadInventoryPositionException if the given position does not exist.
      */
     public void clear(int slot) throws BadInventoryPositionException {
-        if (0<=slot && slot<getSize()) {
-            inventory.remove(slot);
-
+        if (0 <= slot && slot < getSize()) {
+            int index = index(slot);
+            removeFromMaterial(index);
+            slots[index] = null;
+            occupied.clear(index);
+            count(index, -1);
+            size--;
+            // the empty slots at the end are reused, the others are compacted once they are half of them
+            while (end > 0 && !occupied.get(end - 1))
+                end--;
+            if (end - size > 16 && end - size > size)
+                compact();
         } else {
             throw new BadInventoryPositionException(slot);
         }
@@ -75,11 +212,10 @@ public class Inventory {
      * @return the index of the first position or -1 if there are no items of such type.
      */
     public int first(Material material) {
-        for (ItemStack it : inventory) {
-            if (it.getType() == material)
-                return inventory.indexOf(it);
-        }
-        return -1;
+        BitSet stacks = materials.get(material);
+        if (stacks == null)
+            return -1;
+        return position(stacks.nextSetBit(0));
     }
 
     /**
@@ -89,8 +225,8 @@ public class Inventory {
      * @return the item in the given position or null if the position does not exist.
      */
     public ItemStack getItem(int slot) {
-        if (slot < inventory.size() && slot >= 0) {
-            return inventory.get(slot);
+        if (slot < size && slot >= 0) {
+            return slots[index(slot)];
         } else return null;
     }
 
@@ -111,7 +247,7 @@ public class Inventory {
      * @return inventory size, excluding the item inHand.
      */
     public int getSize() {
-        return inventory.size();
+        return size;
     }
 
     /**
@@ -123,9 +259,12 @@ public class Inventory {
      * @throws BadInventoryPositionException if the position does not exist (counting from zero).
      */
     public void setItem(int pos, ItemStack items) throws BadInventoryPositionException {
-        if (pos >= 0 && inventory.size() > pos)
-            inventory.set(pos, items);
-        else
+        if (pos >= 0 && size > pos) {
+            int index = index(pos);
+            removeFromMaterial(index);
+            slots[index] = items;
+            addToMaterial(index, items);
+        } else
             throw new BadInventoryPositionException(pos);
     }
 
@@ -139,18 +278,142 @@ public class Inventory {
         inHand = item;
     }
 
+    /**
+     * It stores a stack in a new slot after the last one.
+     */
+    private void append(ItemStack items) {
+        if (end == slots.length) {
+            if (end - size >= slots.length / 4)
+                compact();
+            else
+                grow();
+        }
+        slots[end] = items;
+        occupied.set(end);
+        count(end, 1);
+        addToMaterial(end, items);
+        end++;
+        size++;
+    }
+
+    /**
+     * It doubles the number of slots.
+     */
+    private void grow() {
+        slots = Arrays.copyOf(slots, slots.length * 2);
+        rebuildTree();
+    }
+
+    /**
+     * It moves the stacks to the first slots, removing the cleared ones between them.
+     */
+    private void compact() {
+        ItemStack[] stacks = new ItemStack[size];
+        int n = 0;
+        for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1))
+            stacks[n++] = slots[slot];
+        Arrays.fill(slots, null);
+        occupied.clear();
+        materials.clear();
+        for (int slot = 0; slot < n; slot++) {
+            slots[slot] = stacks[slot];
+            occupied.set(slot);
+            addToMaterial(slot, stacks[slot]);
+        }
+        end = size;
+        rebuildTree();
+    }
+
+    /**
+     * It computes the Fenwick tree again from the occupied slots.
+     */
+    private void rebuildTree() {
+        tree = new int[slots.length + 1];
+        for (int i = 1; i <= slots.length; i++) {
+            if (occupied.get(i - 1))
+                tree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= slots.length)
+                tree[parent] += tree[i];
+        }
+    }
+
+    /**
+     * It adds a number to the count of occupied slots of a slot.
+     */
+    private void count(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    /**
+     * slot of a position: the one after 'position' occupied slots.
+     */
+    private int index(int position) {
+        if (end == size)
+            return position;
+        int index = 0, left = position + 1;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            int next = index + step;
+            if (next <= slots.length && tree[next] < left) {
+                index = next;
+                left -= tree[next];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * position of an occupied slot: the number of occupied slots before it.
+     */
+    private int position(int index) {
+        if (end == size)
+            return index;
+        int position = 0;
+        for (int i = index; i > 0; i -= i & -i)
+            position += tree[i];
+        return position;
+    }
+
+    /**
+     * It adds a slot to the slots of the material of its stack.
+     */
+    private void addToMaterial(int index, ItemStack items) {
+        if (items != null)
+            materials.computeIfAbsent(items.getType(), material -> new BitSet()).set(index);
+    }
+
+    /**
+     * It removes a slot from the slots of the material of its stack.
+     */
+    private void removeFromMaterial(int index) {
+        ItemStack items = slots[index];
+        if (items == null)
+            return;
+        BitSet stacks = materials.get(items.getType());
+        stacks.clear(index);
+        if (stacks.isEmpty())
+            materials.remove(items.getType());
+    }
+
     /**
      * Creates a string that represents the contents of the inventory.
      *
      * @return string that contains info about the inventory content.
      */
     public String toString() {
-
-        return "(inHand="+inHand+","+ inventory+")";
+        StringBuilder items = new StringBuilder("[");
+        for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1)) {
+            if (items.length() > 1)
+                items.append(", ");
+            items.append(slots[slot]);
+        }
+        return "(inHand="+inHand+","+ items.append(']')+")";
     }
 
     /**
      * Generated automatically that creates hashCode.
+     * The stacks contribute as those of a list, so it does not depend on how they are stored.
      *
      * @return hashCode.
      */
@@ -159,7 +422,10 @@ public class Inventory {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((inHand == null) ? 0 : inHand.hashCode());
-        result = prime * result + ((inventory == null) ? 0 : inventory.hashCode());
+        int items = 1;
+        for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1))
+            items = prime * items + ((slots[slot] == null) ? 0 : slots[slot].hashCode());
+        result = prime * result + items;
         return result;
     }
 
@@ -182,11 +448,12 @@ public class Inventory {
                 return false;
         } else if (!inHand.equals(other.inHand))
             return false;
-        if (inventory == null) {
-            if (other.inventory != null)
-                return false;
-        } else if (!inventory.equals(other.inventory))
+        if (size != other.size)
             return false;
+        for (int a = occupied.nextSetBit(0), b = other.occupied.nextSetBit(0); a >= 0;
+             a = occupied.nextSetBit(a + 1), b = other.occupied.nextSetBit(b + 1))
+            if (!Objects.equals(slots[a], other.slots[b]))
+                return false;
         return true;
     }
 }
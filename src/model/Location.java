@@ -19,6 +19,20 @@ import static java.lang.StrictMath.sqrt;
  */
 
 public class Location {
+    /**
+     * It visits the locations adjacent to a location, given by their coordinates so that no Location is created.
+     */
+    public interface NeighbourVisitor {
+        /**
+         * It is called once for every adjacent location.
+         *
+         * @param x x coordinate of the adjacent location
+         * @param y y coordinate of the adjacent location
+         * @param z z coordinate of the adjacent location
+         */
+        void visit(double x, double y, double z);
+    }
+
     /**
      * <p>
      * World to which location is associated.
@@ -340,20 +354,35 @@ public class Location {
 
     /**
      * <p>
-     * Calculates hash code by following the formula.
+     * Calculates hash code from all the bits of the coordinates (adding 0.0 so that -0.0, which is equal to 0.0,
+     * has its hash code) and the world, mixed with the finalizer of MurmurHash3 (see mix()), so locations that only
+     * differ in the fractional part of a coordinate do not collide.
      * </p>
      *
      * @return hashCode calculated.
      */
     @Override
     public int hashCode() {
-        int prime = 31;
-        int result = 1;
-        result = prime * result + (int) x;
-        result = prime * result + (int) y;
-        result = prime * result + (int) z;
-        result = prime * result + ((world == null) ? 0 : world.hashCode());
-        return result;
+        long h = mix(Double.doubleToLongBits(x + 0.0));
+        h = mix(h + Double.doubleToLongBits(y + 0.0));
+        h = mix(h + Double.doubleToLongBits(z + 0.0));
+        return (int) mix(h + ((world == null) ? 0 : world.hashCode()));
+    }
+
+    /**
+     * finalizer of MurmurHash3: every bit of the result depends on every bit of h. The coordinates of most
+     * locations only use the highest bits of a double, so they are mixed before being combined.
+     * It is also the hash of BlockPos, so both hashes mix their bits in the same way.
+     *
+     * @param h bits to mix
+     * @return the mixed bits
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
     }
 
     /**
@@ -479,5 +508,60 @@ public class Location {
 
     }
 
-}
+    /**
+     * It visits the locations adjacent to this one, the same ones getNeighborhood() returns,
+     * without creating any object.
+     *
+     * @param visitor visitor of the adjacent locations.
+     */
+    public void forEachNeighbour(NeighbourVisitor visitor) {
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++)
+                for (int k = -1; k <= 1; k++)
+                    if (((i != 0) || (j != 0) || (k != 0)) && (world == null || check(world, x + i, y + j, z + k)))
+                        visitor.visit(x + i, y + j, z + k);
+    }
 
+    /**
+     * It checks if a location is adjacent to this one, i.e. if it is one of the locations returned by getNeighborhood().
+     *
+     * @param loc location to check.
+     * @return true if the location is adjacent and valid, false otherwise.
+     */
+    public boolean isAdjacent(Location loc) {
+        if (loc == null || (world == null ? loc.world != null : !world.equals(loc.world)))
+            return false;
+        return isAdjacent(loc.x, loc.y, loc.z);
+    }
+
+    /**
+     * It checks if the coordinates (x,y,z) of the world of this location are adjacent to this one
+     * and, if the location belongs to a world, within its limits.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return true if (x,y,z) is one of the locations returned by getNeighborhood().
+     */
+    public boolean isAdjacent(double x, double y, double z) {
+        int i = step(this.x, x), j = step(this.y, y), k = step(this.z, z);
+        if (i > 1 || j > 1 || k > 1 || (i == 0 && j == 0 && k == 0))
+            return false;
+        return world == null || check(world, x, y, z);
+    }
+
+    /**
+     * It returns the step (-1, 0 or 1) that takes a coordinate to another one.
+     *
+     * @param from first coordinate
+     * @param to   second coordinate
+     * @return -1, 0 or 1 if from + step == to, 2 if there is no such step.
+     */
+    private static int step(double from, double to) {
+        for (int i = -1; i <= 1; i++)
+            if (from + i == to)
+                return i;
+        return 2;
+    }
+
+}
@@ -186,4 +186,18 @@ public enum Material {
         int i = rng.nextInt(last - first + 1) + first;
         return values()[i];
     }
+
+    /**
+     * It returns a random material between the ‘first’ and ‘last’ positions of the enumerated type, both included,
+     * drawn from the given random number generator instead of the shared one.
+     *
+     * @param random random number generator to use
+     * @param first  first boundry position of the enumerated type to look beetween
+     * @param last   last boundry position of the enumerated type to look beetween
+     * @return random material.
+     */
+    public static Material getRandomItem(Random random, int first, int last) {
+        int i = random.nextInt(last - first + 1) + first;
+        return values()[i];
+    }
 }
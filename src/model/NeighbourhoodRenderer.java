@@ -0,0 +1,254 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.entities.Creature;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+import model.storage.BlockKey;
+import model.storage.Chunk;
+import model.storage.ChunkStore;
+import model.storage.RegionLocks;
+import model.storage.SpatialLongMap;
+import model.storage.StripedLongMap;
+
+/**
+ * It draws the cube of blocks around a location of a world as text, in the format of
+ * World.getNeighbourhoodString(): one line per z coordinate, each with one group of characters per height, from
+ * the highest to the lowest, separated by spaces, and one character per x coordinate in each group. Each block is
+ * drawn with the symbol of the item, creature, player or block in it, in this order, an 'X' if it is outside the
+ * world or a '.' if it is empty.
+ * <p>
+ * The text is drawn in a buffer that is reused by every call, reading the blocks of each chunk of the cube from
+ * the chunk itself, and the creatures with one box query. A renderer also remembers what it last drew: render()
+ * draws every block again, while renderChanges() only draws the chunks of the cube whose blocks, items,
+ * creatures or players may have changed since the last call (see Chunk.getModifications() and
+ * StripedLongMap.version()), or everything if the cube has moved, so redrawing a view that rarely changes costs
+ * almost nothing.
+ * <p>
+ * A renderer is not thread safe; each viewer must have its own.
+ */
+public class NeighbourhoodRenderer {
+    /**
+     * world that is drawn.
+     */
+    private final World world;
+    /**
+     * number of blocks drawn in every direction from the center.
+     */
+    private final int radius;
+    /**
+     * number of blocks along each side of the cube.
+     */
+    private final int side;
+    /**
+     * number of characters of a line, without the line break.
+     */
+    private final int lineLength;
+    /**
+     * text of the cube.
+     */
+    private final char[] buffer;
+    /**
+     * number of chunks along each side of the area that can be touched by the cube.
+     */
+    private final int chunksPerSide;
+    /**
+     * chunks drawn by the last call and their versions, by [i * chunksPerSide + j] where i and j are the
+     * positions of the chunk along the x and z axes, from the one of the first column of the cube.
+     */
+    private final Chunk[] chunks;
+    private final long[] versions;
+    /**
+     * center of the last cube drawn; valid is false until one has been drawn completely.
+     */
+    private int centerX, centerY, centerZ;
+    private boolean valid;
+    /**
+     * number of blocks drawn by the last call.
+     */
+    private int drawn;
+
+    /**
+     * It creates a renderer of the cube of blocks around a location.
+     *
+     * @param world  world to draw
+     * @param radius number of blocks drawn in every direction from the center; 1 draws the adjacent blocks
+     * @throws IllegalArgumentException if the radius is negative
+     */
+    public NeighbourhoodRenderer(World world, int radius) {
+        if (radius < 0)
+            throw new IllegalArgumentException("Negative radius " + radius);
+        this.world = world;
+        this.radius = radius;
+        side = 2 * radius + 1;
+        lineLength = side * side + side - 1;
+        buffer = new char[side * (lineLength + 1) - 1];
+        for (int line = 0; line < side; line++) {
+            int start = line * (lineLength + 1);
+            for (int group = 1; group < side; group++)
+                buffer[start + group * (side + 1) - 1] = ' ';
+            if (line < side - 1)
+                buffer[start + lineLength] = '\n';
+        }
+        chunksPerSide = (side + Chunk.SIZE - 2) / Chunk.SIZE + 1;
+        chunks = new Chunk[chunksPerSide * chunksPerSide];
+        versions = new long[chunksPerSide * chunksPerSide];
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return world that is drawn
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return number of blocks drawn in every direction from the center
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * number of blocks drawn by the last call to render() or renderChanges().
+     *
+     * @return blocks drawn
+     */
+    public int getDrawnBlocks() {
+        return drawn;
+    }
+
+    /**
+     * It draws every block of the cube around a location.
+     *
+     * @param loc center of the cube
+     * @return the text of the cube
+     * @throws BadLocationException if the location does not belong to the world of this renderer
+     */
+    public String render(Location loc) throws BadLocationException {
+        valid = false;
+        return renderChanges(loc);
+    }
+
+    /**
+     * It draws the cube around a location, drawing again only the chunks that may have changed since the last
+     * call if the cube has not moved.
+     *
+     * @param loc center of the cube
+     * @return the text of the cube
+     * @throws BadLocationException if the location does not belong to the world of this renderer
+     */
+    public String renderChanges(Location loc) throws BadLocationException {
+        if (!world.belongs(loc))
+            throw new BadLocationException("Location does not belong to this world.");
+        int cx = (int) Math.floor(loc.getX()), cy = (int) Math.floor(loc.getY()), cz = (int) Math.floor(loc.getZ());
+        boolean redraw = !valid || cx != centerX || cy != centerY || cz != centerZ;
+        valid = false;
+        centerX = cx;
+        centerY = cy;
+        centerZ = cz;
+        drawn = 0;
+        RegionLocks locks = world.getLocks();
+        ChunkStore blocks = world.getBlockStore();
+        int minX = cx - radius, maxX = cx + radius, minZ = cz - radius, maxZ = cz + radius;
+        long held = locks.lockArea(minX, minZ, maxX, maxZ);
+        try {
+            int firstX = blocks.getChunkOrigin(minX), firstZ = blocks.getChunkOrigin(minZ);
+            for (int i = 0; i < chunksPerSide; i++)
+                for (int j = 0; j < chunksPerSide; j++) {
+                    int x0 = firstX + i * Chunk.SIZE, z0 = firstZ + j * Chunk.SIZE;
+                    int fromX = Math.max(x0, minX), toX = Math.min(x0 + Chunk.SIZE - 1, maxX);
+                    int fromZ = Math.max(z0, minZ), toZ = Math.min(z0 + Chunk.SIZE - 1, maxZ);
+                    if (fromX > toX || fromZ > toZ)
+                        continue;
+                    Chunk chunk = blocks.getChunk(fromX, fromZ);
+                    long version = version(chunk, fromX, fromZ);
+                    int slot = i * chunksPerSide + j;
+                    if (!redraw && chunk == chunks[slot] && version == versions[slot])
+                        continue;
+                    chunks[slot] = chunk;
+                    versions[slot] = version;
+                    draw(chunk, x0, z0, fromX, toX, fromZ, toZ);
+                }
+        } finally {
+            locks.unlock(held);
+        }
+        valid = true;
+        return new String(buffer);
+    }
+
+    /**
+     * It returns the version of everything drawn in a chunk: the changes made to its blocks and to the items,
+     * creatures and players of its stripe. They only grow, so their sum only changes if one of them does.
+     */
+    private long version(Chunk chunk, int x, int z) {
+        long version = world.getItemMap().version(x, z) + world.getCreatureMap().version(x, z)
+                + world.getPlayerMap().version(x, z);
+        return (chunk == null) ? version : version + chunk.getModifications();
+    }
+
+    /**
+     * It draws the blocks of the cube that are in the columns [fromX, toX] x [fromZ, toZ] of a chunk.
+     *
+     * @param chunk the chunk or null if it does not exist or is outside the world
+     * @param x0    x coordinate of the first column of the chunk
+     * @param z0    z coordinate of the first column of the chunk
+     */
+    private void draw(Chunk chunk, int x0, int z0, int fromX, int toX, int fromZ, int toZ) {
+        StripedLongMap<ItemStack> items = world.getItemMap();
+        StripedLongMap<Player> players = world.getPlayerMap();
+        SpatialLongMap<Creature> creatures = world.getCreatureMap();
+        int minY = centerY - radius, maxY = centerY + radius;
+        for (int z = fromZ; z <= toZ; z++)
+            for (int x = fromX; x <= toX; x++) {
+                boolean inside = Location.check(world, x, 0, z);
+                for (int y = minY; y <= maxY; y++) {
+                    char symbol;
+                    if (!inside || y < 0 || y > Location.UPPER_Y_VALUE) {
+                        symbol = 'X';
+                    } else {
+                        long key = BlockKey.pack(x, y, z);
+                        ItemStack item;
+                        Player player;
+                        Block block;
+                        if ((item = items.get(key)) != null)
+                            symbol = symbol(item);
+                        else if ((player = players.get(key)) != null)
+                            symbol = player.getSymbol();
+                        else if (chunk != null && (block = chunk.get(x - x0, y, z - z0)) != null)
+                            symbol = block.getType().getSymbol();
+                        else
+                            symbol = '.';
+                    }
+                    buffer[offset(x, y, z)] = symbol;
+                    drawn++;
+                }
+            }
+        // creatures are drawn over players and blocks, but not over items
+        creatures.forEachInBox(fromX, minY, fromZ, toX, maxY, toZ, (key, creature) -> {
+            if (items.get(key) == null)
+                buffer[offset(BlockKey.x(key), BlockKey.y(key), BlockKey.z(key))] = creature.getSymbol();
+        });
+    }
+
+    /**
+     * symbol of an item: that of its material, in upper case for block materials.
+     */
+    private static char symbol(ItemStack item) {
+        char symbol = item.getType().getSymbol();
+        return item.getType().isBlock() ? Character.toUpperCase(symbol) : symbol;
+    }
+
+    /**
+     * position in the buffer of the character of the block (x,y,z) of the cube.
+     */
+    private int offset(int x, int y, int z) {
+        return (z - centerZ + radius) * (lineLength + 1) + (centerY + radius - y) * (side + 1) + x - centerX + radius;
+    }
+}
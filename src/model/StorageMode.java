@@ -0,0 +1,21 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+/**
+ * Places where the blocks of a world can be kept.
+ */
+public enum StorageMode {
+    /**
+     * The voxels of the chunks are kept in arrays of the Java heap. Worlds of the assignments are stored this way.
+     */
+    HEAP,
+    /**
+     * The voxels of the chunks are kept in direct buffers, outside the Java heap, so the work of the garbage
+     * collector does not grow with the size of the world. The memory is taken in large pages that are shared by
+     * the sections of the world and given back when the world is unloaded (see World.unload()).
+     * The palettes of the sections, which are small, are still kept in the heap.
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,144 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import org.bukkit.util.noise.NoiseGenerator;
+import org.bukkit.util.noise.PerlinOctaveGenerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Noise used to generate the terrain of a world: the height of the surface and the thickness of the dirt of
+ * every column, and whether its surface is sand.
+ * <p>
+ * The generators of the noise library that World.generate() used to create (two CombinedNoiseGenerator of two
+ * PerlinOctaveGenerator each, and three more PerlinOctaveGenerator) are all seeded with new Random(seed), so
+ * their octaves are the same: those of a single PerlinOctaveGenerator of 8 octaves, of which the 6 octave
+ * generator has the first 6. This class keeps those octaves once per seed and evaluates them as the library
+ * does, in the same order, so the terrain is exactly the same; but each value is computed only once: both
+ * combined generators give the same noise, the 6 octave noise is the first part of the 8 octave one, and the
+ * strata and the sand use the same 8 octave noise, so callers keep it for the surface.
+ * <p>
+ * The octaves only read their state, so an instance can be shared by every thread and every world with the same
+ * seed; the last instances created are kept in a small cache.
+ */
+final class TerrainNoise {
+    /**
+     * number of seeds whose noise is kept.
+     */
+    private static final int CACHE_SIZE = 8;
+    /**
+     * number of octaves of the generators of the library, and of the one that decides the kind of terrain.
+     */
+    private static final int OCTAVES = 8, TERRAIN_OCTAVES = 6;
+    /**
+     * frequency and amplitude of every octave relative to the previous one.
+     */
+    private static final double FREQUENCY = 0.5, AMPLITUDE = 2.0;
+
+    /**
+     * noise of the last seeds used, the least recently used first.
+     */
+    private static final Map<Long, TerrainNoise> cache = new LinkedHashMap<Long, TerrainNoise>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TerrainNoise> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * octaves of the noise.
+     */
+    private final NoiseGenerator[] octaves;
+
+    /**
+     * It creates the noise of a seed.
+     *
+     * @param seed seed of the world
+     */
+    private TerrainNoise(long seed) {
+        octaves = new PerlinOctaveGenerator(seed, OCTAVES).getOctaves();
+    }
+
+    /**
+     * It returns the noise of a seed, creating it if it is not in the cache.
+     *
+     * @param seed seed of the world
+     * @return the noise of the seed
+     */
+    static TerrainNoise forSeed(long seed) {
+        synchronized (cache) {
+            TerrainNoise noise = cache.get(seed);
+            if (noise == null)
+                cache.put(seed, noise = new TerrainNoise(seed));
+            return noise;
+        }
+    }
+
+    /**
+     * It computes the height of the surface and the strata noise of a rectangle of columns at once.
+     * Columns use the coordinates of the height map (0 to size-1); their values are stored by x and then by z,
+     * column (x0 + i, z0 + j) at index i * depth + j.
+     *
+     * @param x0      x coordinate of the first column
+     * @param z0      z coordinate of the first column
+     * @param width   number of columns along the x axis
+     * @param depth   number of columns along the z axis
+     * @param heights array where the height of the surface of every column is stored
+     * @param strata  array where the strata noise of every column is stored: the thickness of its dirt is
+     *                strata / 24 - 4, and its surface is sand if the noise is greater than 8
+     */
+    void columns(int x0, int z0, int width, int depth, double[] heights, double[] strata) {
+        for (int i = 0; i < width; i++)
+            for (int j = 0; j < depth; j++) {
+                int x = x0 + i, z = z0 + j;
+                double combined = combined(x * 1.3, z * 1.3);
+                double heightLow = combined / 6.0 - 4.0;
+                double heightHigh = combined / 5.0 + 6.0;
+                // the first octaves decide the kind of terrain, all of them give the strata
+                double sum = 0.0, amplitude = 1.0, frequency = 1.0;
+                for (int o = 0; o < TERRAIN_OCTAVES; o++) {
+                    sum += octaves[o].noise(x * frequency, z * frequency, 0.0) * amplitude;
+                    frequency *= FREQUENCY;
+                    amplitude *= AMPLITUDE;
+                }
+                double heightResult;
+                if (sum / 8.0 > 0.0)
+                    heightResult = heightLow;
+                else
+                    heightResult = Math.max(heightHigh, heightLow);
+                heightResult /= 2.0;
+                if (heightResult < 0.0)
+                    heightResult = heightResult * 8.0 / 10.0;
+                heights[i * depth + j] = Math.floor(heightResult + Location.SEA_LEVEL);
+                for (int o = TERRAIN_OCTAVES; o < OCTAVES; o++) {
+                    sum += octaves[o].noise(x * frequency, z * frequency, 0.0) * amplitude;
+                    frequency *= FREQUENCY;
+                    amplitude *= AMPLITUDE;
+                }
+                strata[i * depth + j] = sum;
+            }
+    }
+
+    /**
+     * noise of all the octaves at (x,y), as PerlinOctaveGenerator.noise(x, y, 0.5, 2.0).
+     */
+    private double octaves(double x, double y) {
+        double sum = 0.0, amplitude = 1.0, frequency = 1.0;
+        for (NoiseGenerator octave : octaves) {
+            sum += octave.noise(x * frequency, y * frequency, 0.0) * amplitude;
+            frequency *= FREQUENCY;
+            amplitude *= AMPLITUDE;
+        }
+        return sum;
+    }
+
+    /**
+     * noise of a CombinedNoiseGenerator at (x,y): the noise of the octaves with x displaced by their own noise.
+     */
+    private double combined(double x, double y) {
+        return octaves(x + octaves(x, y), y);
+    }
+}
@@ -3,21 +3,45 @@
  */
 package model;
 
-import org.bukkit.util.noise.CombinedNoiseGenerator;
-import org.bukkit.util.noise.OctaveGenerator;
-import org.bukkit.util.noise.PerlinOctaveGenerator;
-
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 import model.entities.*;
 import model.exceptions.*;
+import model.metrics.Histogram;
+import model.metrics.Metrics;
+import model.storage.BlockEdits;
+import model.storage.BlockStates;
+import model.storage.BlockKey;
+import model.storage.ChunkPager;
+import model.storage.ChunkStore;
+import model.storage.FloodFill;
+import model.storage.LiquidFlow;
+import model.storage.LongMap;
+import model.storage.RegionLocks;
+import model.storage.SpatialLongMap;
+import model.storage.StripedLongMap;
 
 /**
  * class World
  */
 public class World {
 
+    /**
+     * time taken by the phases of generate() and by the whole generation of the worlds, in nanoseconds,
+     * in the default metrics.
+     */
+    private static final Histogram GENERATE_HEIGHTS = Metrics.getDefault().histogram("world.generate.heights"),
+            GENERATE_STRATA = Metrics.getDefault().histogram("world.generate.strata"),
+            GENERATE_CAVES = Metrics.getDefault().histogram("world.generate.caves"),
+            GENERATE_VEINS = Metrics.getDefault().histogram("world.generate.veins"),
+            GENERATE_LIQUIDS = Metrics.getDefault().histogram("world.generate.liquids"),
+            GENERATE_SURFACE = Metrics.getDefault().histogram("world.generate.surface"),
+            GENERATE_WORLD = Metrics.getDefault().histogram("world.generate.total");
 
     /**
      * name of the world
@@ -35,23 +59,46 @@ public class World {
     private long seed;
 
     /**
-     * bloques de este mundo
+     * bloques de este mundo, agrupados en chunks de 16x16x256 posiciones
      */
-    private Map<Location, Block> blocks;
+    private ChunkStore blocks;
 
     /**
      * Items depositados en algĂşn lugar de este mundo.
      */
-    private Map<Location, ItemStack> items;
+    private StripedLongMap<ItemStack> items;
 
     /**
      * Creatures placed in different world locations.
      */
-    private Map<Location, Creature> creatures;
+    private SpatialLongMap<Creature> creatures;
+
+    /**
+     * Players of the world, by the key of the block where they stand.
+     */
+    private StripedLongMap<Player> players;
+
+    /**
+     * Locks of the chunks of the world; items, creatures and players are split by the same stripes.
+     */
+    private RegionLocks locks;
+
+    /**
+     * Blocks that liquids may flow into, advanced by a WorldTicker.
+     */
+    private LiquidFlow liquids;
 
+    /**
+     * metrics where the gauges of the world are registered, or null (see registerMetrics()).
+     */
+    private Metrics metrics;
+    /**
+     * gauges registered in metrics: number of blocks, items, creatures and players.
+     */
+    private LongSupplier[] gauges;
 
     /**
-     * El jugador
+     * El jugador, the first player of the world.
      */
     private Player player;
 
@@ -80,12 +127,10 @@ public class World {
      * <p>
      * de forma anĂĄloga, si queremos modificar el valor 'y' almacenado, haremos
      * set(-24,24,70)
+     * <p>
+     * The heights are kept in the chunks of the world (see ChunkStore), together with their blocks.
      */
     class HeightMap {
-        /**
-         * map of the height in the world.
-         */
-        double[][] heightMap;
         /**
          * value of the positive limit of the world
          */
@@ -100,7 +145,6 @@ public class World {
          * @param worldsize size of the world
          */
         HeightMap(int worldsize) {
-            heightMap = new double[worldsize][worldsize];
             positiveWorldLimit = worldsize / 2;
             negativeWorldLimit = (worldsize % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
         }
@@ -113,7 +157,7 @@ public class World {
          * @return the y axis coordinate
          */
         double get(double x, double z) {
-            return heightMap[(int) x - negativeWorldLimit][(int) z - negativeWorldLimit];
+            return blocks.getHeight(blockCoordinate(x), blockCoordinate(z));
         }
 
         /**
@@ -123,7 +167,28 @@ public class World {
          * @param y y axis parameter
          */
         void set(double x, double z, double y) {
-            heightMap[(int) x - negativeWorldLimit][(int) z - negativeWorldLimit] = y;
+            blocks.setHeight(blockCoordinate(x), blockCoordinate(z), y);
+        }
+
+        /**
+         * obtiene la altura del terreno en la columna (x,z) del mapa, con 'x' y 'z' entre 0 y worldsize-1
+         *
+         * @param x x coordinate from 0 to worldsize-1
+         * @param z z coordinate from 0 to worldsize-1
+         * @return the y axis coordinate
+         */
+        double getAt(int x, int z) {
+            return blocks.getHeight(x + negativeWorldLimit, z + negativeWorldLimit);
+        }
+
+        /**
+         * simple setter, with 'x' and 'z' between 0 and worldsize-1
+         * @param x x axis parameter from 0 to worldsize-1
+         * @param z z axis parameter from 0 to worldsize-1
+         * @param y y axis parameter
+         */
+        void setAt(int x, int z, double y) {
+            blocks.setHeight(x + negativeWorldLimit, z + negativeWorldLimit, y);
         }
 
     }
@@ -136,6 +201,11 @@ public class World {
      */
     private HeightMap heightMap;
 
+    /**
+     * Algorithm used to generate the terrain of this world.
+     */
+    private GenerationMode generationMode;
+
     /**
      * It creates a world of size size*size in the plane (x,z).
      * inicializes blocks, items and creatures maps.
@@ -147,20 +217,288 @@ public class World {
      * @throws IllegalArgumentException if the given size is not greater than zero
      */
     public World(long seed, int size, String name) throws IllegalArgumentException {
+        this(seed, size, name, GenerationMode.CLASSIC);
+    }
+
+    /**
+     * It creates a world of size size*size in the plane (x,z), generating its terrain with the given algorithm.
+     *
+     * @param seed is the seed for the land generator
+     * @param size seize of the world to be generated.
+     * @param name name of the world
+     * @param mode generation algorithm
+     * @throws IllegalArgumentException if the given size is not greater than zero
+     */
+    public World(long seed, int size, String name, GenerationMode mode) throws IllegalArgumentException {
+        this(seed, size, name, mode, StorageMode.HEAP, true);
+    }
+
+    /**
+     * It creates a world of size size*size in the plane (x,z), generating its terrain with the given algorithm
+     * and keeping its blocks in the given storage. An OFF_HEAP world should be unloaded (see unload()) once it
+     * is not needed any more.
+     *
+     * @param seed    is the seed for the land generator
+     * @param size    seize of the world to be generated.
+     * @param name    name of the world
+     * @param mode    generation algorithm
+     * @param storage where the blocks of the world are kept
+     * @throws IllegalArgumentException if the given size is not greater than zero
+     */
+    public World(long seed, int size, String name, GenerationMode mode, StorageMode storage) throws IllegalArgumentException {
+        this(seed, size, name, mode, storage, true);
+    }
+
+    /**
+     * It creates a world of size size*size in the plane (x,z).
+     * If generate is false, the world is left empty and without player, so that its contents can be restored
+     * from a snapshot (see WorldSnapshot); a LAZY world still generates the chunks that are not restored.
+     *
+     * @param seed     is the seed for the land generator
+     * @param size     seize of the world to be generated.
+     * @param name     name of the world
+     * @param mode     generation algorithm
+     * @param storage  where the blocks of the world are kept
+     * @param generate whether to generate the terrain and the player
+     * @throws IllegalArgumentException if the given size is not greater than zero
+     */
+    World(long seed, int size, String name, GenerationMode mode, StorageMode storage, boolean generate) throws IllegalArgumentException {
 
         if (size > 0) {
             this.seed = seed;
             this.worldSize = size;
             this.name = name;
-            blocks = new HashMap<>();
-            items = new HashMap<>();
-            creatures = new HashMap<>();
-            generate(seed, size);
+            this.generationMode = mode;
+            blocks = new ChunkStore(size, storage);
+            // lazily generated chunks share the caches of the generator, so they cannot be populated concurrently:
+            // a single lock makes ChunkGenerator.populate() run on one thread at a time
+            locks = new RegionLocks(size, mode != GenerationMode.LAZY);
+            items = new StripedLongMap<>(locks);
+            creatures = new SpatialLongMap<>(locks, size);
+            players = new StripedLongMap<>(locks);
+            liquids = new LiquidFlow(blocks);
+            long start = System.nanoTime();
+            if (mode == GenerationMode.CLASSIC) {
+                if (generate)
+                    generate(seed, size);
+                else
+                    heightMap = new HeightMap(size);
+            } else {
+                heightMap = new HeightMap(size);
+                ChunkGenerator generator = new ChunkGenerator(this, blocks, heightMap, items, creatures);
+                if (mode == GenerationMode.LAZY)
+                    blocks.setPopulator(generator);
+                else if (generate)
+                    generator.generateAll();
+            }
+            if (generate && mode != GenerationMode.LAZY)
+                GENERATE_WORLD.lap(start);
+            if (generate)
+                createPlayer();
         } else throw new IllegalArgumentException();
 
     }
 
 
+    /**
+     * It saves the world (its blocks, items, creatures and player) to a file, replacing it atomically.
+     * The chunks of a LAZY world that have not been generated yet are not saved.
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        long held = locks.lockAll();
+        try {
+            WorldSnapshot.save(this, file);
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It unloads the world: it removes its blocks and gives back the memory that keeps them outside the heap and
+     * the region file of its pager, if any. The world must not be used afterwards.
+     */
+    public void unload() {
+        unregisterMetrics();
+        long held = locks.lockAll();
+        try {
+            blocks.release();
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It registers gauges with the number of blocks, items, creatures and players of the world, named
+     * "world.name.blocks", "world.name.items", "world.name.creatures" and "world.name.players".
+     * They replace those of any other world with the same name. They may be read by any thread (for instance, by
+     * JMX), so they count with the locks of the whole world held.
+     *
+     * @param metrics registry of the gauges
+     */
+    public void registerMetrics(Metrics metrics) {
+        unregisterMetrics();
+        gauges = new LongSupplier[]{locked(blocks::size), locked(items::size), locked(creatures::size),
+                locked(players::size)};
+        for (int i = 0; i < gauges.length; i++)
+            metrics.gauge(gaugeName(i), gauges[i]);
+        this.metrics = metrics;
+    }
+
+    /**
+     * It removes the gauges registered by registerMetrics(), if any and if they have not been replaced by those of
+     * another world, so the registry does not keep the world.
+     */
+    public void unregisterMetrics() {
+        if (metrics != null) {
+            for (int i = 0; i < gauges.length; i++)
+                metrics.removeGauge(gaugeName(i), gauges[i]);
+            metrics = null;
+            gauges = null;
+        }
+    }
+
+    /**
+     * It makes a gauge that is read with the locks of the whole world held.
+     */
+    private LongSupplier locked(LongSupplier gauge) {
+        return () -> {
+            long held = locks.lockAll();
+            try {
+                return gauge.getAsLong();
+            } finally {
+                locks.unlock(held);
+            }
+        };
+    }
+
+    /**
+     * name of a gauge of registerMetrics().
+     */
+    private String gaugeName(int gauge) {
+        return "world." + name + "." + new String[]{"blocks", "items", "creatures", "players"}[gauge];
+    }
+
+    /**
+     * It starts keeping only the most recently used chunks of the world in memory, and the rest in a region file
+     * (see ChunkPager), so the memory used by the blocks is bounded however much of the world is explored.
+     * Evicted chunks are read back when they are accessed again. Only the blocks and heights are paged;
+     * items, creatures and players stay in memory.
+     * Only LAZY worlds, which are used by one thread at a time, can page their chunks.
+     *
+     * @param file   region file, which is created or emptied, and deleted when the world is unloaded
+     * @param budget maximum number of chunks in memory, at least ChunkPager.MIN_BUDGET
+     * @return the pager, which tells how paging performs and whose budget can be changed
+     * @throws IOException              if the file cannot be opened
+     * @throws IllegalArgumentException if the budget is too small
+     * @throws IllegalStateException    if the world is not LAZY or it is already paging its chunks
+     */
+    public ChunkPager enablePaging(Path file, int budget) throws IOException {
+        if (generationMode != GenerationMode.LAZY)
+            throw new IllegalStateException("Only LAZY worlds can page their chunks");
+        long held = locks.lockAll();
+        try {
+            return blocks.enablePaging(file, budget);
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * Trivial getter to obtain the pager of the chunks of this world.
+     *
+     * @return the pager, or null if the world keeps all its chunks in memory
+     */
+    public ChunkPager getPager() {
+        return blocks.getPager();
+    }
+
+    /**
+     * It loads a world saved with save().
+     *
+     * @param file file to read
+     * @return the world, as it was saved
+     * @throws IOException if the file cannot be read or it is not a valid snapshot
+     */
+    public static World load(Path file) throws IOException {
+        return WorldSnapshot.load(file);
+    }
+
+    /**
+     * block storage of the world, for the snapshots.
+     *
+     * @return blocks of the world
+     */
+    ChunkStore getBlockStore() {
+        return blocks;
+    }
+
+    /**
+     * items of the world by BlockKey of their location, for the snapshots.
+     *
+     * @return items of the world
+     */
+    StripedLongMap<ItemStack> getItemMap() {
+        return items;
+    }
+
+    /**
+     * creatures of the world by BlockKey of their location, for the snapshots and the simulation.
+     *
+     * @return creatures of the world
+     */
+    SpatialLongMap<Creature> getCreatureMap() {
+        return creatures;
+    }
+
+    /**
+     * players of the world by BlockKey of their location, for the renderers of the neighbourhood.
+     *
+     * @return players of the world
+     */
+    StripedLongMap<Player> getPlayerMap() {
+        return players;
+    }
+
+    /**
+     * locks of the chunks of the world, for the simulation.
+     *
+     * @return the locks
+     */
+    RegionLocks getLocks() {
+        return locks;
+    }
+
+    /**
+     * blocks of the world that liquids may flow into, for the simulation.
+     *
+     * @return the flow of the liquids
+     */
+    LiquidFlow getLiquidFlow() {
+        return liquids;
+    }
+
+    /**
+     * It sets the player of a world that was created without generating it.
+     *
+     * @param player the player
+     */
+    void setPlayer(Player player) {
+        this.player = player;
+        players.put(key(player.getLocation()), player);
+    }
+
+    /**
+     * It adds a player to a world that was created without generating it, where the player was.
+     *
+     * @param player the player, which is not the first one of the world
+     */
+    void restorePlayer(Player player) {
+        players.put(key(player.getLocation()), player);
+    }
+
     /**
      * Trivial getter, to obtain size of the world
      *
@@ -179,6 +517,24 @@ public class World {
         return seed;
     }
 
+    /**
+     * Trivial getter to obtain the algorithm used to generate this world.
+     *
+     * @return generation mode.
+     */
+    public GenerationMode getGenerationMode() {
+        return generationMode;
+    }
+
+    /**
+     * Trivial getter to obtain where the blocks of this world are kept.
+     *
+     * @return storage mode.
+     */
+    public StorageMode getStorageMode() {
+        return blocks.getStorageMode();
+    }
+
     /**
      * Trivial getter to obtain name of the world.
      *
@@ -205,10 +561,108 @@ public class World {
      * @throws BadLocationException It returns the block in the given location or null if there is no block there.
      */
     public Block getBlockAt(Location loc) throws BadLocationException {
-        if (!this.equals(loc.getWorld())) throw new BadLocationException("Location does not belong to this world.");
+        if (!belongs(loc)) throw new BadLocationException("Location does not belong to this world.");
         if (loc.getWorld() == null) throw new BadLocationException("Location does not have an associated world.");
-        Block copyBlock = blocks.getOrDefault(loc, null);
-        return copyBlock;
+        return getBlockAt(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()));
+    }
+
+    /**
+     * It returns the block at the given block coordinates of this world.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return a copy of the block or null if there is no block there (or the coordinates are outside the world).
+     */
+    public Block getBlockAt(int x, int y, int z) {
+        long held = locks.lock(x, z);
+        try {
+            Block block = blocks.get(x, y, z);
+            return (block == null) ? null : block.clone();
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It returns the block at the given block position of this world.
+     *
+     * @param pos block position
+     * @return a copy of the block or null if there is no block there (or the position is outside the world).
+     */
+    public Block getBlockAt(BlockPos pos) {
+        return getBlockAt(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * It returns the block stored at the given location without copying it. The block is shared with every other
+     * location of its chunk section that holds a block of the same state, so it must not be modified.
+     *
+     * @param loc location of this world
+     * @return the stored block or null if there is no block there.
+     */
+    private Block peekBlockAt(Location loc) {
+        return blocks.get(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()));
+    }
+
+    /**
+     * It converts a location coordinate into the coordinate of the block that contains it.
+     *
+     * @param coordinate x, y or z coordinate of a location
+     * @return the block coordinate
+     */
+    private static int blockCoordinate(double coordinate) {
+        return (int) Math.floor(coordinate);
+    }
+
+    /**
+     * It returns the key of the block that contains the location, used to index items and creatures.
+     *
+     * @param loc location
+     * @return packed block coordinates
+     */
+    private static long key(Location loc) {
+        return BlockKey.pack(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()));
+    }
+
+    /**
+     * It checks that the location belongs to this world. Locations usually reference this very instance,
+     * so identity is tested before falling back to equals(), which compares names.
+     *
+     * @param loc location
+     * @return true if the location's world is this world.
+     */
+    boolean belongs(Location loc) {
+        World w = loc.getWorld();
+        return w == this || this.equals(w);
+    }
+
+    /**
+     * It checks whether a player stands in the block with the given key.
+     *
+     * @param key packed block coordinates
+     * @return true if a player is there.
+     */
+    private boolean isPlayerAt(long key) {
+        return players.containsKey(key);
+    }
+
+    /**
+     * It checks whether a player is in this world: it has not been removed from it.
+     *
+     * @param p player
+     * @return true if the player is in this world.
+     */
+    boolean hasPlayer(Player p) {
+        if (p == player) return true;
+        Location loc = p.getLocation();
+        if (loc.getWorld() != this) return false;
+        long held = lock(loc);
+        try {
+            return players.get(key(loc)) == p;
+        } finally {
+            locks.unlock(held);
+        }
     }
 
     /**
@@ -220,10 +674,35 @@ public class World {
      */
     public Location getHighestLocationAt(Location ground) throws BadLocationException {
         if (this.equals(ground.getWorld())) {
-            return new Location(ground.getWorld(), ground.getX(), heightMap.get(ground.getX(), ground.getZ()), ground.getZ());
+            long held = lock(ground);
+            try {
+                return new Location(ground.getWorld(), ground.getX(), heightMap.get(ground.getX(), ground.getZ()), ground.getZ());
+            } finally {
+                locks.unlock(held);
+            }
         } else throw new BadLocationException("Location does not belong to this world.");
     }
 
+    /**
+     * It returns the height of the ground at the column (x,z), as getHighestLocationAt() does, without creating
+     * any location.
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return the height of the highest block of the column.
+     * @throws BadLocationException if the column is outside the world limits.
+     */
+    public int getHighestY(int x, int z) throws BadLocationException {
+        if (!Location.check(this, x, 0, z))
+            throw new BadLocationException("Column (" + x + "," + z + ") is not in the world bounds");
+        long held = locks.lock(x, z);
+        try {
+            return (int) blocks.getHeight(x, z);
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
     /**
      * It returns the items that are in the given location, or null if there are none.
      *
@@ -232,12 +711,47 @@ public class World {
      * @throws BadLocationException if the location does not belong to this world.
      */
     public ItemStack getItemsAt(Location loc) throws BadLocationException {
-        if (this.equals(loc.getWorld())) {
-            return items.getOrDefault(loc, null);
+        if (belongs(loc)) {
+            int x = blockCoordinate(loc.getX()), z = blockCoordinate(loc.getZ());
+            long held = locks.lock(x, z);
+            try {
+                blocks.touch(x, z);
+                return items.get(key(loc));
+            } finally {
+                locks.unlock(held);
+            }
         } else throw new BadLocationException("Location does not belong to this world.");
 
     }
 
+    /**
+     * It returns the items at the given block coordinates of this world.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return the items or null if there are none.
+     */
+    public ItemStack getItemsAt(int x, int y, int z) {
+        long held = locks.lock(x, z);
+        try {
+            blocks.touch(x, z);
+            return items.get(BlockKey.pack(x, y, z));
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It returns the items at the given block position of this world.
+     *
+     * @param pos block position
+     * @return the items or null if there are none.
+     */
+    public ItemStack getItemsAt(BlockPos pos) {
+        return getItemsAt(pos.getX(), pos.getY(), pos.getZ());
+    }
+
 
     /**
      * It returns a string representing the locations adjacent to the given location.
@@ -245,44 +759,14 @@ public class World {
      * or a dot (‘.’) if it is empty.
      * For blocks, tools, food or weapons, the corresponding symbol will be used.
      * For living entities their symbol is used. For locations beyond the limits of the world,
-     * the letter ‘X’ (uppercase) is used.
+     * the letter ‘X’ (uppercase) is used. The string is drawn by a NeighbourhoodRenderer of radius 1.
      *
      * @param loc location of which the neighbourhood we want to obtain.
      * @return a string representing the locations adjacent to the given location.
      * @throws BadLocationException if the location does not belong to this world.
      */
     public String getNeighbourhoodString(Location loc) throws BadLocationException {
-
-        if (!this.equals(loc.getWorld())) throw new BadLocationException("Location does not belong to this world.");
-        StringBuilder neighbourhoodString = new StringBuilder();
-        Location temploc;
-        for (int i = -1; i <= 1; i++) {
-            for (int j = 1; j >= -1; j--) {
-                for (int k = -1; k <= 1; k++) {
-                    temploc = new Location(this, loc.getX() + k, loc.getY() + j, loc.getZ() + i);
-                    if (getItemsAt(temploc) != null)
-                        if (getItemsAt(temploc).getType().isBlock())
-                            neighbourhoodString.append(Character.toUpperCase(getItemsAt(temploc).getType().getSymbol()));
-                        else neighbourhoodString.append(getItemsAt(temploc).getType().getSymbol());
-
-                    else if (getCreatureAt(temploc) != null)
-                        neighbourhoodString.append(getCreatureAt(temploc).getSymbol());
-                    else if (temploc.equals(getPlayer().getLocation()))
-                        neighbourhoodString.append(player.getSymbol());
-                    else if (getBlockAt(temploc) != null)
-                        neighbourhoodString.append(getBlockAt(temploc).getType().getSymbol());
-                    else if (!Location.check(temploc))
-                        neighbourhoodString.append("X");
-                    else if (temploc.isFree())
-                        neighbourhoodString.append(".");
-                }
-                if(j>=0)
-                neighbourhoodString.append(" ");
-            }
-            if(i<1)
-            neighbourhoodString.append("\n");
-        }
-        return neighbourhoodString.toString();
+        return new NeighbourhoodRenderer(this, 1).render(loc);
     }
 
     /**
@@ -293,12 +777,40 @@ public class World {
      * @throws BadLocationException if the location does not belong to this world.
      */
     public boolean isFree(Location loc) throws BadLocationException {
-        if (!this.equals(loc.getWorld())) throw new BadLocationException("Location does not belong to this world.");
-        return ((getBlockAt(loc) == null || getBlockAt(loc).getType().isLiquid()) &&
-                !loc.equals(getPlayer().getLocation()) &&
-                getCreatureAt(loc) == null);
+        if (!belongs(loc)) throw new BadLocationException("Location does not belong to this world.");
+        return isFree(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()));
+    }
 
+    /**
+     * It checks if the block at the given coordinates of this world is free,
+     * i.e. if it is not occupied by a solid block, the player or any living creature.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return true if the location is free, false otherwise.
+     */
+    public boolean isFree(int x, int y, int z) {
+        long held = locks.lock(x, z);
+        try {
+            Block block = blocks.get(x, y, z);
+            long key = BlockKey.pack(x, y, z);
+            return ((block == null || block.getType().isLiquid()) &&
+                    !isPlayerAt(key) &&
+                    !creatures.containsKey(key));
+        } finally {
+            locks.unlock(held);
+        }
+    }
 
+    /**
+     * It checks if the block at the given block position of this world is free (see isFree(int, int, int)).
+     *
+     * @param pos block position
+     * @return true if the position is free, false otherwise.
+     */
+    public boolean isFree(BlockPos pos) {
+        return isFree(pos.getX(), pos.getY(), pos.getZ());
     }
 
     /**
@@ -308,8 +820,15 @@ public class World {
      * @throws BadLocationException if the location does not beong to this world.
      */
     public void removeItemsAt(Location loc) throws BadLocationException {
-        if (this.equals(loc.getWorld()) ) {
-            items.remove(loc);
+        if (belongs(loc)) {
+            int x = blockCoordinate(loc.getX()), z = blockCoordinate(loc.getZ());
+            long held = locks.lock(x, z);
+            try {
+                blocks.touch(x, z);
+                items.remove(key(loc));
+            } finally {
+                locks.unlock(held);
+            }
         } else throw new BadLocationException("Location does not belong to this world.");
     }
 
@@ -378,39 +897,30 @@ public class World {
         creatures.clear();
         items.clear();
 
+        long phase = System.nanoTime();
         // Paso 1: generar nuevo mapa de alturas del terreno
         heightMap = new HeightMap(size);
-        CombinedNoiseGenerator noise1 = new CombinedNoiseGenerator(this);
-        CombinedNoiseGenerator noise2 = new CombinedNoiseGenerator(this);
-        OctaveGenerator noise3 = new PerlinOctaveGenerator(this, 6);
+        TerrainNoise noise = TerrainNoise.forSeed(getSeed());
+        // the noise of the strata is computed with the heights, one row of columns at a time; the surface uses it too
+        double[] heights = new double[size];
+        double[][] strata = new double[size][size];
 
         System.out.println("Generando superficie del mundo...");
         for (int x = 0; x < size; x++) {
-            for (int z = 0; z < size; z++) {
-                double heightLow = noise1.noise(x * 1.3, z * 1.3) / 6.0 - 4.0;
-                double heightHigh = noise2.noise(x * 1.3, z * 1.3) / 5.0 + 6.0;
-                double heightResult = 0.0;
-                if (noise3.noise(x, z, 0.5, 2) / 8.0 > 0.0)
-                    heightResult = heightLow;
-                else
-                    heightResult = Math.max(heightHigh, heightLow);
-                heightResult /= 2.0;
-                if (heightResult < 0.0)
-                    heightResult = heightResult * 8.0 / 10.0;
-                heightMap.heightMap[x][z] = Math.floor(heightResult + Location.SEA_LEVEL);
-            }
+            noise.columns(x, 0, 1, size, heights, strata[x]);
+            for (int z = 0; z < size; z++)
+                heightMap.setAt(x, z, heights[z]);
         }
 
+        phase = GENERATE_HEIGHTS.lap(phase);
         // Paso 2: generar estratos
-        SolidBlock block = null;
-        Location location = null;
+        // the blocks are the shared ones of their state (see BlockStates), so no block is created per voxel
         Material material = null;
-        OctaveGenerator noise = new PerlinOctaveGenerator(this, 8);
         System.out.println("Generando terreno...");
         for (int x = 0; x < size; x++) {
             for (int z = 0; z < size; z++) {
-                double dirtThickness = noise.noise(x, z, 0.5, 2.0) / 24 - 4;
-                double dirtTransition = heightMap.heightMap[x][z];
+                double dirtThickness = strata[x][z] / 24 - 4;
+                double dirtTransition = heightMap.getAt(x, z);
                 double stoneTransition = dirtTransition + dirtThickness;
                 for (int y = 0; y <= dirtTransition; y++) {
                     if (y == 0) material = Material.BEDROCK;
@@ -419,12 +929,10 @@ public class World {
                     else // if (y <= dirtTransition)
                         material = Material.DIRT;
                     try {
-                        location = new Location(this, x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit);
-                        block = new SolidBlock(material);
-                        if (rng.nextDouble() < 0.5) // los bloques contendrĂĄn item con un 50% de probabilidad
-                            block.setDrops(block.getType(), 1);
-                        blocks.put(location, block);
-                    } catch (WrongMaterialException | StackSizeException e) {
+                        // los bloques contendrĂĄn item con un 50% de probabilidad
+                        Block block = BlockStates.solid(material, rng.nextDouble() < 0.5);
+                        blocks.put(x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit, block);
+                    } catch (WrongMaterialException e) {
                         // Should never happen
                         e.printStackTrace();
                     }
@@ -433,6 +941,7 @@ public class World {
             }
         }
 
+        phase = GENERATE_STRATA.lap(phase);
         // Paso 3: Crear cuevas
         int numCuevas = size * size * 256 / 8192;
         double theta = 0.0;
@@ -468,15 +977,15 @@ public class World {
                 deltaPhi += rng.nextDouble();
                 deltaPhi -= rng.nextDouble();
                 if (rng.nextDouble() >= 0.25) {
-                    Location centerPos = new Location(cavePos);
-                    centerPos.setX(centerPos.getX() + (rng.nextDouble() * 4.0 - 2.0) * 0.2);
-                    centerPos.setY(centerPos.getY() + (rng.nextDouble() * 4.0 - 2.0) * 0.2);
-                    centerPos.setZ(centerPos.getZ() + (rng.nextDouble() * 4.0 - 2.0) * 0.2);
-                    double radius = (Location.UPPER_Y_VALUE - centerPos.getY()) / Location.UPPER_Y_VALUE;
+                    double centerX = cavePos.getX() + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double centerY = cavePos.getY() + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double centerZ = cavePos.getZ() + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+                    double radius = (Location.UPPER_Y_VALUE - centerY) / Location.UPPER_Y_VALUE;
                     radius = 1.2 + (radius * 3.5 + 1) * caveRadius;
                     radius *= Math.sin(i * Math.PI / caveLength);
                     try {
-                        fillOblateSpheroid(centerPos, radius, null);
+                        fillOblateSpheroid(centerX, centerY, centerZ, radius, null, heightMap.negativeWorldLimit,
+                                heightMap.positiveWorldLimit, heightMap.negativeWorldLimit, heightMap.positiveWorldLimit);
                     } catch (WrongMaterialException e) {
                         // Should not occur
                         e.printStackTrace();
@@ -487,6 +996,7 @@ public class World {
         }
         System.out.println();
 
+        phase = GENERATE_CAVES.lap(phase);
         // Paso 4: crear vetas de minerales
         // Abundancia de cada mineral
         double abundance[] = new double[2];
@@ -538,6 +1048,7 @@ public class World {
 
         System.out.println();
 
+        phase = GENERATE_VEINS.lap(phase);
         // flood-fill water
         char water = Material.WATER.getSymbol();
 
@@ -579,11 +1090,10 @@ public class World {
         }
         System.out.println();
 
+        phase = GENERATE_LIQUIDS.lap(phase);
         // Paso 5. crear superficie, criaturas e items
         // Las entidades aparecen sĂłlo en superficie (no en cuevas, por ejemplo)
 
-        OctaveGenerator onoise1 = new PerlinOctaveGenerator(this, 8);
-        OctaveGenerator onoise2 = new PerlinOctaveGenerator(this, 8);
         boolean sandChance = false;
         double entitySpawnChance = 0.05;
         double itemsSpawnChance = 0.10;
@@ -594,22 +1104,18 @@ public class World {
         System.out.println("Generando superficie del terreno, entidades e items...");
         for (x = 0; x < size; x++) {
             for (z = 0; z < size; z++) {
-                sandChance = onoise1.noise(x, z, 0.5, 2.0) > 8.0;
-                y = (int) heightMap.heightMap[(int) x][(int) z];
+                sandChance = strata[x][z] > 8.0;
+                y = (int) heightMap.getAt(x, z);
                 Location surface = new Location(this, x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit); // la posiciĂłn (x,y+1,z) no estĂĄ ocupada (es AIR)
                 try {
                     if (sandChance) {
-                        SolidBlock sand = new SolidBlock(Material.SAND);
-                        if (rng.nextDouble() < 0.5)
-                            sand.setDrops(Material.SAND, 1);
-                        blocks.put(surface, sand);
+                        Block sand = BlockStates.solid(Material.SAND, rng.nextDouble() < 0.5);
+                        blocks.put(x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit, sand);
                     } else {
-                        SolidBlock grass = new SolidBlock(Material.GRASS);
-                        if (rng.nextDouble() < 0.5)
-                            grass.setDrops(Material.GRASS, 1);
-                        blocks.put(surface, grass);
+                        Block grass = BlockStates.solid(Material.GRASS, rng.nextDouble() < 0.5);
+                        blocks.put(x + heightMap.negativeWorldLimit, y, z + heightMap.negativeWorldLimit, grass);
                     }
-                } catch (WrongMaterialException | StackSizeException ex) {
+                } catch (WrongMaterialException ex) {
                     // will never happen
                     ex.printStackTrace();
                 }
@@ -624,7 +1130,7 @@ public class World {
                             entity = new Monster(aboveSurface, entityHealth);
                         else
                             entity = new Animal(aboveSurface, entityHealth);
-                        creatures.put(aboveSurface, entity);
+                        creatures.put(key(aboveSurface), entity);
                     } else {
                         // si no, intentamos crear unos items de varios tipos (comida, armas, herramientas)
                         // dentro de cofres
@@ -643,7 +1149,7 @@ public class World {
                                 // hay dos tipos de item arma, en las posiciones 14 a 15 del array 'materiales'
                                 itemMaterial = Material.getRandomItem(14, 15);
 
-                            items.put(aboveSurface, new ItemStack(itemMaterial, amount));
+                            items.put(key(aboveSurface), new ItemStack(itemMaterial, amount));
                         }
                     }
                 } catch (BadLocationException | StackSizeException e) {
@@ -657,13 +1163,19 @@ public class World {
 
         // TODO: Crear plantas
 
-        // Generar jugador
+        GENERATE_SURFACE.lap(phase);
+    }
+
+    /**
+     * Genera el jugador una vez generado el terreno.
+     */
+    private void createPlayer() {
         player = new Player("Steve", this);
         // El jugador se crea en la superficie (posiciĂłn (0,*,0)). AsegurĂŠmonos de que no hay nada mĂĄs ahĂ­
-        Location playerLocation = player.getLocation();
-        creatures.remove(playerLocation);
-        items.remove(playerLocation);
-
+        long playerKey = key(player.getLocation());
+        creatures.remove(playerKey);
+        items.remove(playerKey);
+        players.put(playerKey, player);
     }
 
     /**
@@ -675,31 +1187,73 @@ public class World {
      * @throws WrongMaterialException if 'material' is not a block material
      */
     private void fillOblateSpheroid(Location centerPos, double radius, Material material) throws WrongMaterialException {
+        fillOblateSpheroid(centerPos.getX(), centerPos.getY(), centerPos.getZ(), radius, material,
+                heightMap.negativeWorldLimit, heightMap.positiveWorldLimit, heightMap.negativeWorldLimit, heightMap.positiveWorldLimit);
+    }
 
-        for (double x = centerPos.getX() - radius; x < centerPos.getX() + radius; x += 1.0) {
-            for (double y = centerPos.getY() - radius; y < centerPos.getY() + radius; y += 1.0) {
-                for (double z = centerPos.getZ() - radius; z < centerPos.getZ() + radius; z += 1.0) {
-                    double dx = x - centerPos.getX();
-                    double dy = y - centerPos.getY();
-                    double dz = z - centerPos.getZ();
-
-                    if ((dx * dx + 2 * dy * dy + dz * dz) < radius * radius) {
-                        // point (x,y,z) falls within level bounds ?
-                        // we don't need to check it, just remove or replace that location from the blocks map.
-                        Location loc = new Location(this, Math.floor(x + heightMap.negativeWorldLimit), Math.floor(y), Math.floor(z + heightMap.negativeWorldLimit));
-                        if (material == null)
-                            blocks.remove(loc);
-                        else
-                            try { //if ((Math.abs(x) < worldSize/2.0-1.0) && (Math.abs(z) < worldSize/2.0-1.0) && y>0.0 && y<=Location.UPPER_Y_VALUE)
-                                SolidBlock veinBlock = new SolidBlock(material);
-                                // los bloques de veta siempre contienen material
-                                veinBlock.setDrops(material, 1);
-                                blocks.replace(loc, veinBlock);
-                            } catch (StackSizeException ex) {
-                                // will never happen
-                                ex.printStackTrace();
-                            }
+    /**
+     * Fills an oblate spheroid like fillOblateSpheroid(Location, double, Material), but only touching the blocks
+     * whose x and z coordinates lie between the given limits; the blocks outside are left as they are.
+     * The center uses the coordinates of the height map (0 to size-1), the limits those of the world.
+     *
+     * @param centerX  x coordinate of the central point
+     * @param centerY  y coordinate of the central point
+     * @param centerZ  z coordinate of the central point
+     * @param radius   radius around central point
+     * @param material material to fill with, or null to remove the blocks
+     * @param minX     smallest x coordinate that can be modified
+     * @param maxX     largest x coordinate that can be modified
+     * @param minZ     smallest z coordinate that can be modified
+     * @param maxZ     largest z coordinate that can be modified
+     * @throws WrongMaterialException if 'material' is not a block material
+     */
+    void fillOblateSpheroid(double centerX, double centerY, double centerZ, double radius, Material material,
+                            int minX, int maxX, int minZ, int maxZ) throws WrongMaterialException {
+        // every block of the vein gets the same state, so its shared block is stored everywhere
+        // (los bloques de veta siempre contienen material)
+        SolidBlock veinBlock = (material == null) ? null : BlockStates.solid(material, true);
+        double r2 = radius * radius;
+        // the z coordinates are visited once per row, so their blocks and squared distances are computed once;
+        // they are accumulated as in a loop z += 1.0, so the same points are tested and the result does not change
+        int steps = 0;
+        for (double z = centerZ - radius; z < centerZ + radius; z += 1.0)
+            steps++;
+        int[] bzs = new int[steps];
+        double[] dz2 = new double[steps];
+        boolean[] inside = new boolean[steps];
+        int k = 0;
+        for (double z = centerZ - radius; z < centerZ + radius; z += 1.0, k++) {
+            double dz = z - centerZ;
+            dz2[k] = dz * dz;
+            bzs[k] = blockCoordinate(z + heightMap.negativeWorldLimit);
+        }
+
+        for (double x = centerX - radius; x < centerX + radius; x += 1.0) {
+            int bx = blockCoordinate(x + heightMap.negativeWorldLimit);
+            if (bx < minX || bx > maxX)
+                continue;
+            double dx = x - centerX;
+            double dx2 = dx * dx;
+            if (dx2 >= r2)
+                continue;
+            for (double y = centerY - radius; y < centerY + radius; y += 1.0) {
+                double dy = y - centerY;
+                double dxy = dx2 + 2 * dy * dy;
+                int by = blockCoordinate(y);
+                if (dxy >= r2 || by < 0 || by > Location.UPPER_Y_VALUE)
+                    continue;
+                for (int i = 0; i < steps; i++)
+                    inside[i] = (dxy + dz2[i]) < r2;
+                // the points inside are changed in runs of consecutive blocks, one row of a chunk at a time
+                int run = -1;
+                for (int i = 0; i <= steps; i++) {
+                    boolean in = i < steps && inside[i] && bzs[i] >= minZ && bzs[i] <= maxZ;
+                    if (run >= 0 && !(in && bzs[i] == bzs[i - 1] + 1)) {
+                        blocks.replaceRow(bx, by, bzs[run], bzs[i - 1], veinBlock);
+                        run = -1;
                     }
+                    if (in && run < 0)
+                        run = i;
                 }
             }
         }
@@ -713,40 +1267,31 @@ public class World {
      * @throws BadLocationException when the location is wrong
      */
     private void floodFill(Material liquid, Location from) throws WrongMaterialException, BadLocationException {
-        if (!liquid.isLiquid())
-            throw new WrongMaterialException(liquid);
-        if (!blocks.containsKey(from)) {
-            blocks.put(from, BlockFactory.createBlock(liquid));
-            items.remove(from);
-            Set<Location> floodArea = getFloodNeighborhood(from);
-            for (Location loc : floodArea)
-                floodFill(liquid, loc);
-        }
+        floodFill(liquid, from, heightMap.negativeWorldLimit, heightMap.positiveWorldLimit,
+                heightMap.negativeWorldLimit, heightMap.positiveWorldLimit);
     }
 
     /**
-     * Obtiene las posiciones adyacentes a esta que no estĂĄn por encima y estĂĄn libres
-     *
-     * @param location location considered.
-     * @return si esta posiciĂłn pertenece a un mundo, devuelve sĂłlo aquellas posiciones adyacentes vĂĄlidas para ese mundo,  si no, devuelve todas las posiciones adyacentes
-     * @throws BadLocationException cuando la posiciĂłn es de otro mundo
+     * fills the given location with the given liquidblock, spreading only over the blocks
+     * whose x and z coordinates lie between the given limits.
+     * @param liquid liquid we want to put
+     * @param from location to be filled
+     * @param minX smallest x coordinate the liquid can reach
+     * @param maxX largest x coordinate the liquid can reach
+     * @param minZ smallest z coordinate the liquid can reach
+     * @param maxZ largest z coordinate the liquid can reach
+     * @throws WrongMaterialException  when the block is not of the liquid type.
+     * @throws BadLocationException when the location is wrong
      */
-    private Set<Location> getFloodNeighborhood(Location location) throws BadLocationException {
-        if (location.getWorld() != null && location.getWorld() != this)
-            throw new BadLocationException("Esta posiciĂłn no es de este mundo");
-        Set<Location> neighborhood = location.getNeighborhood();
-        Iterator<Location> iter = neighborhood.iterator();
-        while (iter.hasNext()) {
-            Location loc = iter.next();
-            try {
-                if ((loc.getY() > location.getY()) || getBlockAt(loc) != null)
-                    iter.remove();
-            } catch (BadLocationException e) {
-                throw new RuntimeException(e);
-                // no sucederĂĄ
-            }
-        }
-        return neighborhood;
+    void floodFill(Material liquid, Location from, int minX, int maxX, int minZ, int maxZ)
+            throws WrongMaterialException, BadLocationException {
+        if (!liquid.isLiquid())
+            throw new WrongMaterialException(liquid);
+        if (from.getWorld() != null && !belongs(from))
+            throw new BadLocationException("Location does not belong to this world.");
+        new FloodFill(blocks, minX, maxX, minZ, maxZ, Integer.MAX_VALUE).fill(
+                blockCoordinate(from.getX()), blockCoordinate(from.getY()), blockCoordinate(from.getZ()),
+                BlockFactory.createBlock(liquid), (x, y, z) -> items.remove(BlockKey.pack(x, y, z)));
     }
 
     /**
@@ -762,18 +1307,25 @@ public class World {
         if (!Location.check(loc)){
             throw new BadLocationException("Location "+loc+" is not in the world bounds");
         }
-        if (player.getLocation().equals(loc) && !block.getType().isLiquid())
-            throw new BadLocationException("Cannot place a block at the players location");
-        if (blocks.containsKey(loc)) {
-            blocks.remove(loc);
-        } else {
-            if(heightMap.get(loc.getX(),loc.getZ())<loc.getY()){
-                heightMap.set(loc.getX(),loc.getZ(),loc.getY());
+        // a liquid looks for the empty blocks around it, so the columns next to it are locked as well
+        boolean flowing = block.getType().isLiquid() && liquids.isAttached();
+        long held = flowing ? lockAround(loc) : lock(loc);
+        try {
+            if (isPlayerAt(key(loc)) && !block.getType().isLiquid())
+                throw new BadLocationException("Cannot place a block at the players location");
+            Block previous = blocks.put(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()), block);
+            if (previous == null) {
+                if(heightMap.get(loc.getX(),loc.getZ())<loc.getY()){
+                    heightMap.set(loc.getX(),loc.getZ(),loc.getY());
+                }
             }
+            items.remove(key(loc));
+            creatures.remove(key(loc));
+            if (flowing)
+                liquids.scheduleNeighbours(blockCoordinate(loc.getX()), blockCoordinate(loc.getY()), blockCoordinate(loc.getZ()));
+        } finally {
+            locks.unlock(held);
         }
-        items.remove(loc);
-        creatures.remove(loc);
-        blocks.put(loc,block);
     }
 
     /**
@@ -787,9 +1339,15 @@ public class World {
             throw new BadLocationException("creature’s location does not belong to this world");
         if (!Location.check(creature.getLocation()))
             throw new BadLocationException("the location is out of world limits. ");
-        if (!creature.getLocation().isFree()) throw new BadLocationException("the location is  occupied.");
-        if (getItemsAt(creature.getLocation()) != null) items.remove((creature.getLocation()));
-        creatures.put(creature.getLocation(), creature);
+        long held = lock(creature.getLocation());
+        try {
+            if (!creature.getLocation().isFree()) throw new BadLocationException("the location is  occupied.");
+            long key = key(creature.getLocation());
+            items.remove(key);
+            creatures.put(key, creature);
+        } finally {
+            locks.unlock(held);
+        }
     }
 
     /**
@@ -802,9 +1360,13 @@ public class World {
     public void addItems(Location loc, ItemStack item) throws BadLocationException {
         if (this != loc.getWorld()) throw new BadLocationException("location does not belong to this world");
         if (!Location.check(loc)) throw new BadLocationException("the location is out of world limits. ");
-        if (!loc.isFree()) throw new BadLocationException("the location is  occupied.");
-        if (getItemsAt(loc) == null) items.remove(loc);
-        items.put(loc, item);
+        long held = lock(loc);
+        try {
+            if (!loc.isFree()) throw new BadLocationException("the location is  occupied.");
+            items.put(key(loc), item);
+        } finally {
+            locks.unlock(held);
+        }
     }
 
     /**
@@ -818,27 +1380,222 @@ public class World {
      */
     public void destroyBlockAt(Location loc) throws BadLocationException {
         if (this != loc.getWorld()) throw new BadLocationException("location does not belong to this world");
-        else if (getBlockAt(loc) == null) throw new BadLocationException("No block in this location");
-        else if (loc.getY() == 0) throw new BadLocationException("Block is at zero height");
-        if (blocks.containsKey(loc)) {
-            if (blocks.get(loc).getClass()==SolidBlock.class) {
-                if (heightMap.get(loc.getX(), loc.getZ()) == loc.getY()) {
-                    Location tempLoc = new Location(loc.below());
-                    while (!blocks.containsKey(tempLoc) && tempLoc.getY() >= 0) {
-                        tempLoc = tempLoc.below();
+        long held = lock(loc);
+        try {
+            if (getBlockAt(loc) == null) throw new BadLocationException("No block in this location");
+            else if (loc.getY() == 0) throw new BadLocationException("Block is at zero height");
+            int x = blockCoordinate(loc.getX());
+            int y = blockCoordinate(loc.getY());
+            int z = blockCoordinate(loc.getZ());
+            Block removed = blocks.remove(x, y, z);
+            if (removed != null) {
+                if (removed.getClass()==SolidBlock.class) {
+                    if (heightMap.get(loc.getX(), loc.getZ()) == loc.getY()) {
+                        heightMap.set(loc.getX(), loc.getZ(), Math.max(0, blocks.topBelow(x, y, z)));
+                    }
+                    SolidBlock block = (SolidBlock) removed;
+                    if (block.getDrops() != null) {
+                        items.put(BlockKey.pack(x, y, z), new ItemStack(block.getDrops()));
                     }
-                    heightMap.set(tempLoc.getX(), tempLoc.getZ(), Math.max(tempLoc.getY(), 0));
                 }
-                SolidBlock block = (SolidBlock) blocks.get(loc);
-                if (block.getDrops() != null) {
-                    items.put(loc, block.getDrops());
+                // a liquid next to the block can flow into it now
+                liquids.schedule(x, y, z);
+            } else {
+                throw new BadLocationException("No block to remove at "+loc);
+            }
+        } finally {
+            locks.unlock(held);
+        }
+
+    }
+
+    /**
+     * It stores a block in every location of the box between two corners, or removes the blocks of the box.
+     * The box is checked and locked once and then changed chunk by chunk (see ChunkStore.fill()). As with
+     * addBlock(), the items and creatures where a block is stored disappear; unlike destroyBlockAt(), the blocks
+     * removed leave no items. The height of every column of the box is updated once, at the end.
+     *
+     * @param corner   a corner of the box
+     * @param opposite the opposite corner
+     * @param block    block to store, or null to remove the blocks
+     * @return number of blocks changed
+     * @throws BadLocationException if a corner does not belong to this world or is outside its limits, or a
+     *                              player is in the box and the block is not a liquid.
+     */
+    public int fill(Location corner, Location opposite, Block block) throws BadLocationException {
+        return fill(corner, opposite, block, null);
+    }
+
+    /**
+     * It replaces with another block the blocks of a material in the box between two corners, as fill() does.
+     *
+     * @param corner   a corner of the box
+     * @param opposite the opposite corner
+     * @param from     material of the blocks to replace
+     * @param to       block to store instead, or null to remove them
+     * @return number of blocks replaced
+     * @throws BadLocationException if a corner does not belong to this world or is outside its limits, or a
+     *                              player is in the location of a block to replace and the block is not a liquid.
+     */
+    public int replace(Location corner, Location opposite, Material from, Block to) throws BadLocationException {
+        return fill(corner, opposite, to, previous -> previous != null && previous.getType() == from);
+    }
+
+    /**
+     * It applies a batch of block changes. The edits are checked and their area is locked once before any of
+     * them is applied, so either all of them or none are applied; then they are applied chunk by chunk (see
+     * ChunkStore.apply()) and the heights of their columns are updated. Edits behave as in fill().
+     *
+     * @param edits edits to apply
+     * @return number of blocks changed
+     * @throws BadLocationException if an edit is outside the limits of the world, or stores a block that is
+     *                              not a liquid at the location of a player.
+     */
+    public int apply(BlockEdits edits) throws BadLocationException {
+        if (edits.isEmpty())
+            return 0;
+        for (int i = 0; i < edits.size(); i++) {
+            long key = edits.key(i);
+            if (!blocks.inBounds(BlockKey.x(key), BlockKey.y(key), BlockKey.z(key)))
+                throw new BadLocationException("Block (" + BlockKey.x(key) + "," + BlockKey.y(key) + ","
+                        + BlockKey.z(key) + ") is not in the world bounds");
+        }
+        // liquids look for their neighbours, so the columns around the area are locked as well
+        boolean flowing = liquids.isAttached();
+        int margin = flowing ? 1 : 0;
+        long held = locks.lockArea(edits.getMinX() - margin, edits.getMinZ() - margin, edits.getMaxX() + margin,
+                edits.getMaxZ() + margin);
+        try {
+            for (int i = 0; i < edits.size(); i++) {
+                Block block = edits.block(i);
+                if (block != null && !block.getType().isLiquid() && isPlayerAt(edits.key(i)))
+                    throw new BadLocationException("Cannot place a block at the players location");
+            }
+            int changed = blocks.apply(edits, (x, y, z, previous, block) -> edited(x, y, z, block, flowing));
+            // first the columns grow up to the blocks stored, then they go down below the blocks removed
+            for (int i = 0; i < edits.size(); i++) {
+                long key = edits.key(i);
+                int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+                if (edits.block(i) != null && blocks.getHeight(x, z) < y)
+                    blocks.setHeight(x, z, y);
+            }
+            for (int i = 0; i < edits.size(); i++) {
+                long key = edits.key(i);
+                if (edits.block(i) == null)
+                    lowerHeight(BlockKey.x(key), BlockKey.z(key));
+            }
+            return changed;
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It fills a box as fill() does, only changing the locations whose current block is accepted by a filter.
+     *
+     * @param only filter of the current blocks, or null to change every location of the box
+     */
+    private int fill(Location corner, Location opposite, Block block, Predicate<Block> only) throws BadLocationException {
+        if (this != corner.getWorld() || this != opposite.getWorld())
+            throw new BadLocationException("location does not belong to this world");
+        if (!Location.check(corner) || !Location.check(opposite))
+            throw new BadLocationException("the box is out of world limits.");
+        int minX = blockCoordinate(Math.min(corner.getX(), opposite.getX()));
+        int minY = blockCoordinate(Math.min(corner.getY(), opposite.getY()));
+        int minZ = blockCoordinate(Math.min(corner.getZ(), opposite.getZ()));
+        int maxX = blockCoordinate(Math.max(corner.getX(), opposite.getX()));
+        int maxY = blockCoordinate(Math.max(corner.getY(), opposite.getY()));
+        int maxZ = blockCoordinate(Math.max(corner.getZ(), opposite.getZ()));
+        // liquids look for their neighbours, so the columns around the box are locked as well
+        boolean flowing = liquids.isAttached();
+        int margin = flowing ? 1 : 0;
+        long held = locks.lockArea(minX - margin, minZ - margin, maxX + margin, maxZ + margin);
+        try {
+            if (block != null && !block.getType().isLiquid()) {
+                boolean[] blocked = {false};
+                players.forEach(held, (key, inside) -> {
+                    int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ
+                            && (only == null || only.test(blocks.get(x, y, z))))
+                        blocked[0] = true;
+                });
+                if (blocked[0])
+                    throw new BadLocationException("Cannot place a block at the players location");
+            }
+            int width = maxZ - minZ + 1;
+            // highest block stored in each column of the box
+            int[] tops = new int[(maxX - minX + 1) * width];
+            Arrays.fill(tops, -1);
+            boolean liquid = block != null && block.getType().isLiquid();
+            // a full box changes all its blocks alike, so liquids can only flow across its faces; a replace
+            // may leave liquids anywhere in the box
+            int changed = blocks.fill(minX, minY, minZ, maxX, maxY, maxZ, block, only, (x, y, z, previous, stored) -> {
+                boolean border = only != null || x == minX || x == maxX || y == minY || y == maxY
+                        || z == minZ || z == maxZ;
+                if (stored == null) {
+                    if (flowing && border)
+                        liquids.scheduleIfReached(x, y, z);
+                } else {
+                    if (liquid && flowing && border)
+                        liquids.scheduleNeighbours(x, y, z);
+                    tops[(x - minX) * width + z - minZ] = Math.max(tops[(x - minX) * width + z - minZ], y);
+                }
+            });
+            // the items and creatures of the box are few, so they are looked for once instead of for every block
+            if (block != null) {
+                List<Long> covered = new ArrayList<>();
+                LongMap.Visitor<Object> inBox = (key, value) -> {
+                    int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ
+                            && blocks.contains(x, y, z))
+                        covered.add(key);
+                };
+                items.forEach(held, inBox);
+                creatures.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, inBox);
+                for (long key : covered) {
+                    items.remove(key);
+                    creatures.remove(key);
                 }
             }
-            blocks.remove(loc);
-        } else {
-            throw new BadLocationException("No block to remove at "+loc);
+            for (int x = minX; x <= maxX; x++)
+                for (int z = minZ; z <= maxZ; z++) {
+                    int top = tops[(x - minX) * width + z - minZ];
+                    if (blocks.getHeight(x, z) < top)
+                        blocks.setHeight(x, z, top);
+                    else
+                        lowerHeight(x, z);
+                }
+            return changed;
+        } finally {
+            locks.unlock(held);
         }
+    }
 
+    /**
+     * It updates the items, creatures and liquids of a location whose block has been changed by apply().
+     *
+     * @param flowing whether liquids are simulated, in which case the columns around the location are locked
+     */
+    private void edited(int x, int y, int z, Block block, boolean flowing) {
+        if (block != null) {
+            long key = BlockKey.pack(x, y, z);
+            items.remove(key);
+            creatures.remove(key);
+            if (flowing && block.getType().isLiquid())
+                liquids.scheduleNeighbours(x, y, z);
+        } else if (flowing) {
+            // a liquid next to the block can flow into it now
+            liquids.scheduleIfReached(x, y, z);
+        }
+    }
+
+    /**
+     * It lowers the height of the column (x,z) to its highest block if the block at its height has been removed.
+     */
+    private void lowerHeight(int x, int z) {
+        int height = (int) blocks.getHeight(x, z);
+        if (height > 0 && !blocks.contains(x, height, z))
+            blocks.setHeight(x, z, Math.max(0, blocks.topBelow(x, height, z)));
     }
 
     /**
@@ -851,7 +1608,41 @@ public class World {
      */
     public Creature getCreatureAt(Location loc) throws BadLocationException {
         if (this != loc.getWorld()) throw new BadLocationException("location does not belong to this world");
-        return creatures.getOrDefault(loc, null);
+        long held = lock(loc);
+        try {
+            blocks.touch(blockCoordinate(loc.getX()), blockCoordinate(loc.getZ()));
+            return creatures.get(key(loc));
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It returns the creature at the given block coordinates of this world.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return the creature or null if there is none.
+     */
+    public Creature getCreatureAt(int x, int y, int z) {
+        long held = locks.lock(x, z);
+        try {
+            blocks.touch(x, z);
+            return creatures.get(BlockKey.pack(x, y, z));
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It returns the creature at the given block position of this world.
+     *
+     * @param pos block position
+     * @return the creature or null if there is none.
+     */
+    public Creature getCreatureAt(BlockPos pos) {
+        return getCreatureAt(pos.getX(), pos.getY(), pos.getZ());
     }
 
     /**
@@ -866,13 +1657,85 @@ public class World {
 
         Collection<Creature> nearbyCreatures = new ArrayList<>();
 
-        for (Location l : loc.getNeighborhood()) {
-            if (getCreatureAt(l) != null) nearbyCreatures.add(getCreatureAt(l));
-
+        long held = lockAround(loc);
+        try {
+            loc.forEachNeighbour((x, y, z) -> {
+                int bx = blockCoordinate(x), bz = blockCoordinate(z);
+                blocks.touch(bx, bz);
+                Creature creature = creatures.get(BlockKey.pack(bx, blockCoordinate(y), bz));
+                if (creature != null) nearbyCreatures.add(creature);
+            });
+        } finally {
+            locks.unlock(held);
         }
         return nearbyCreatures;
     }
 
+    /**
+     * It returns the creatures whose location is at a distance of at most 'radius' from the given one.
+     * Only the chunks around the location are looked at (see SpatialLongMap).
+     *
+     * @param center location
+     * @param radius distance, in blocks
+     * @return collection of creatures
+     * @throws BadLocationException     if the location does not belong to this world.
+     * @throws IllegalArgumentException if the radius is negative or not a number.
+     */
+    public Collection<Creature> getCreaturesWithin(Location center, double radius) throws BadLocationException {
+        if (this != center.getWorld()) throw new BadLocationException("location does not belong to this world");
+        if (!(radius >= 0)) throw new IllegalArgumentException("Wrong radius " + radius);
+        double cx = center.getX(), cy = center.getY(), cz = center.getZ();
+        double squared = radius * radius;
+        Collection<Creature> found = new ArrayList<>();
+        // the box is clamped to the world before its bounds become ints, so a huge radius cannot overflow them
+        int minX = (int) Math.max(heightMap.negativeWorldLimit, Math.ceil(cx - radius));
+        int maxX = (int) Math.min(heightMap.positiveWorldLimit, Math.floor(cx + radius));
+        int minZ = (int) Math.max(heightMap.negativeWorldLimit, Math.ceil(cz - radius));
+        int maxZ = (int) Math.min(heightMap.positiveWorldLimit, Math.floor(cz + radius));
+        int minY = (int) Math.max(0, Math.ceil(cy - radius));
+        int maxY = (int) Math.min(Location.UPPER_Y_VALUE, Math.floor(cy + radius));
+        long held = locks.lockArea(minX, minZ, maxX, maxZ);
+        try {
+            creatures.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ,
+                    (key, creature) -> {
+                        double dx = BlockKey.x(key) - cx, dy = BlockKey.y(key) - cy, dz = BlockKey.z(key) - cz;
+                        if (dx * dx + dy * dy + dz * dz <= squared) found.add(creature);
+                    });
+        } finally {
+            locks.unlock(held);
+        }
+        return found;
+    }
+
+    /**
+     * It returns the creatures inside the box with the given opposite corners, both included.
+     * Only the chunks that overlap the box are looked at (see SpatialLongMap).
+     *
+     * @param corner   a corner of the box
+     * @param opposite the opposite corner
+     * @return collection of creatures
+     * @throws BadLocationException if a corner does not belong to this world.
+     */
+    public Collection<Creature> getCreaturesIn(Location corner, Location opposite) throws BadLocationException {
+        if (this != corner.getWorld() || this != opposite.getWorld())
+            throw new BadLocationException("location does not belong to this world");
+        // the box is clamped to the world before its bounds become ints, so far corners cannot overflow them
+        int minX = (int) Math.max(heightMap.negativeWorldLimit, Math.floor(Math.min(corner.getX(), opposite.getX())));
+        int minY = (int) Math.max(0, Math.floor(Math.min(corner.getY(), opposite.getY())));
+        int minZ = (int) Math.max(heightMap.negativeWorldLimit, Math.floor(Math.min(corner.getZ(), opposite.getZ())));
+        int maxX = (int) Math.min(heightMap.positiveWorldLimit, Math.floor(Math.max(corner.getX(), opposite.getX())));
+        int maxY = (int) Math.min(Location.UPPER_Y_VALUE, Math.floor(Math.max(corner.getY(), opposite.getY())));
+        int maxZ = (int) Math.min(heightMap.positiveWorldLimit, Math.floor(Math.max(corner.getZ(), opposite.getZ())));
+        Collection<Creature> found = new ArrayList<>();
+        long held = locks.lockArea(minX, minZ, maxX, maxZ);
+        try {
+            creatures.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (key, creature) -> found.add(creature));
+        } finally {
+            locks.unlock(held);
+        }
+        return found;
+    }
+
     /**
      * It remove from the world the creature in the given location.
      *
@@ -882,8 +1745,125 @@ public class World {
      */
     public void killCreature(Location loc) throws BadLocationException {
         if (this != loc.getWorld()) throw new BadLocationException("location does not belong to this world");
-        if (getCreatureAt(loc) == null) throw new BadLocationException("no creature in that location.");
-        creatures.remove(loc);
+        long held = lock(loc);
+        try {
+            if (creatures.remove(key(loc)) == null) throw new BadLocationException("no creature in that location.");
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It adds a new player to this world, standing on the highest block of the column (x,z).
+     *
+     * @param name name of the player
+     * @param x    x coordinate of the column
+     * @param z    z coordinate of the column
+     * @return the new player
+     * @throws BadLocationException if the column is outside the world limits, or the location above its highest
+     *                              block is outside them or is occupied.
+     */
+    public Player addPlayer(String name, int x, int z) throws BadLocationException {
+        if (!Location.check(this, x, 0, z))
+            throw new BadLocationException("Column (" + x + "," + z + ") is not in the world bounds");
+        long held = locks.lock(x, z);
+        try {
+            Location spawn = new Location(this, x, getHighestY(x, z) + 1, z);
+            if (!isFree(spawn)) throw new BadLocationException("the location " + spawn + " is occupied.");
+            Player added = new Player(name, spawn);
+            players.put(key(spawn), added);
+            return added;
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It removes a player from this world. The first player of the world (see getPlayer()) cannot be removed.
+     *
+     * @param removed player to be removed
+     * @return true if the player was in this world and has been removed.
+     */
+    public boolean removePlayer(Player removed) {
+        if (removed == player) return false;
+        Location loc = removed.getLocation();
+        long held = lock(loc);
+        try {
+            long key = key(loc);
+            if (players.get(key) != removed) return false;
+            players.remove(key);
+            return true;
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It returns the players of this world.
+     *
+     * @return the players, in no particular order
+     */
+    public Collection<Player> getPlayers() {
+        Collection<Player> all = new ArrayList<>();
+        long held = locks.lockAll();
+        try {
+            players.forEach((key, p) -> all.add(p));
+        } finally {
+            locks.unlock(held);
+        }
+        return all;
+    }
+
+    /**
+     * It updates the location of a player of this world after it has moved. It is called by Player.move().
+     *
+     * @param moved player, already in its new location
+     * @param from  previous location of the player
+     */
+    public void playerMoved(Player moved, Location from) {
+        Location to = moved.getLocation();
+        int fromX = blockCoordinate(from.getX()), fromZ = blockCoordinate(from.getZ());
+        int toX = blockCoordinate(to.getX()), toZ = blockCoordinate(to.getZ());
+        long held = locks.lockArea(Math.min(fromX, toX), Math.min(fromZ, toZ), Math.max(fromX, toX), Math.max(fromZ, toZ));
+        try {
+            long fromKey = key(from);
+            if (players.get(fromKey) == moved) {
+                players.remove(fromKey);
+                players.put(key(to), moved);
+            }
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It takes the locks of the chunks around a location: the ones of its column and of the columns next to it.
+     * While they are held, no other thread changes the blocks, items, creatures or players of those columns, so
+     * a player can check a neighbouring location and then act on it (see BlockWorld.movePlayer()).
+     * Threads working on other chunks are not stopped.
+     *
+     * @param loc location
+     * @return the locks taken, to be given to unlock()
+     */
+    public long lockAround(Location loc) {
+        int x = blockCoordinate(loc.getX()), z = blockCoordinate(loc.getZ());
+        return locks.lockArea(x - 1, z - 1, x + 1, z + 1);
+    }
+
+    /**
+     * It releases the locks taken by lockAround().
+     *
+     * @param held the locks
+     */
+    public void unlock(long held) {
+        locks.unlock(held);
+    }
+
+    /**
+     * It takes the lock of the column of a location.
+     */
+    private long lock(Location loc) {
+        return locks.lock(blockCoordinate(loc.getX()), blockCoordinate(loc.getZ()));
     }
 
 }
\ No newline at end of file
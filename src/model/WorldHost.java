@@ -0,0 +1,358 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Host of many independent games, each one with its own world, identified by the name of the world.
+ * <p>
+ * Every game has its own serial executor: the tasks sent to a game run one at a time and in the order they were
+ * sent, so a world and its player are only used by one thread at a time, while the tasks of different games run
+ * in parallel on a pool shared by all of them. Games do not share locks: the games are kept in a concurrent map
+ * and each serial executor queues its tasks in a lock-free queue. Many more games than threads can be hosted,
+ * since a game that has nothing to do does not hold a thread.
+ * <p>
+ * The items of CLASSIC worlds are drawn from Material.rng, which is shared by all the worlds, so CLASSIC worlds
+ * created at the same time are not repeatable; PARALLEL and LAZY worlds do not depend on it.
+ */
+public class WorldHost implements AutoCloseable {
+    /**
+     * Task that uses a game.
+     *
+     * @param <T> type of the result
+     */
+    public interface Task<T> {
+        /**
+         * It runs the task on the game; it is never called by two threads at the same time for the same game.
+         *
+         * @param game the game, whose world is the one of the task
+         * @return the result of the task
+         * @throws Exception if the task fails
+         */
+        T run(BlockWorld game) throws Exception;
+    }
+
+    /**
+     * Executor that runs its tasks one after another on another executor.
+     */
+    private static class SerialExecutor implements Executor {
+        /**
+         * maximum number of tasks run in a row.
+         */
+        private static final int BATCH = 64;
+        /**
+         * executor that runs the tasks.
+         */
+        private final Executor executor;
+        /**
+         * tasks waiting to run.
+         */
+        private final Queue<Runnable> tasks;
+        /**
+         * whether a task of this executor has been sent to the executor and has not finished yet.
+         */
+        private final AtomicBoolean running;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+            tasks = new ConcurrentLinkedQueue<>();
+            running = new AtomicBoolean();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        /**
+         * It sends the next task to the executor unless there is one running.
+         */
+        private void schedule() {
+            if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::runNext);
+                } catch (RejectedExecutionException ex) {
+                    running.set(false);
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * It runs the waiting tasks, up to BATCH of them so that other games get their turn, and schedules
+         * the rest; tasks sent meanwhile are not missed, because schedule() is called again after running is cleared.
+         */
+        private void runNext() {
+            try {
+                Runnable task;
+                for (int i = 0; i < BATCH && (task = tasks.poll()) != null; i++)
+                    task.run();
+            } finally {
+                running.set(false);
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * A hosted game.
+     */
+    private static class Session {
+        /**
+         * the game, which holds the world.
+         */
+        final BlockWorld game;
+        /**
+         * executor of the tasks of the game.
+         */
+        final SerialExecutor executor;
+
+        Session(BlockWorld game, SerialExecutor executor) {
+            this.game = game;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * games by name of their worlds.
+     */
+    private final ConcurrentHashMap<String, Session> sessions;
+    /**
+     * executor shared by all the games.
+     */
+    private final Executor executor;
+    /**
+     * the executor, if it was created by the host and must be shut down with it; null otherwise.
+     */
+    private final ExecutorService ownExecutor;
+    /**
+     * whether the host has been closed, after which it does not accept new games.
+     */
+    private volatile boolean closed;
+
+    /**
+     * It creates a host whose games run on a pool with one thread per processor.
+     */
+    public WorldHost() {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "world-host");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * It creates a host whose games run on the given executor, which is not shut down by close().
+     *
+     * @param executor executor shared by all the games
+     */
+    public WorldHost(Executor executor) {
+        this(executor, false);
+    }
+
+    private WorldHost(Executor executor, boolean own) {
+        this.executor = executor;
+        this.ownExecutor = own ? (ExecutorService) executor : null;
+        sessions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * It creates a world and a game for it. The world is generated by the executor of the new game.
+     *
+     * @param seed seed of the world
+     * @param size size of the world
+     * @param name name of the world, which identifies the game
+     * @param mode generation algorithm
+     * @return future of the new world; it fails with IllegalArgumentException if the size is not valid,
+     * and then the game is removed
+     * @throws IllegalArgumentException if there is already a game with that name
+     * @throws IllegalStateException    if the host has been closed
+     */
+    public CompletableFuture<World> createWorld(long seed, int size, String name, GenerationMode mode) {
+        return createWorld(seed, size, name, mode, StorageMode.HEAP);
+    }
+
+    /**
+     * It creates a world, whose blocks are kept in the given storage, and a game for it. The world is generated by
+     * the executor of the new game, and its gauges are registered in the default metrics until the game is removed.
+     * An OFF_HEAP world is unloaded when its game is removed.
+     *
+     * @param seed    seed of the world
+     * @param size    size of the world
+     * @param name    name of the world, which identifies the game
+     * @param mode    generation algorithm
+     * @param storage where the blocks of the world are kept
+     * @return future of the new world; it fails with IllegalArgumentException if the size is not valid,
+     * and then the game is removed, and with IllegalStateException if the game is removed before its world
+     * is created
+     * @throws IllegalArgumentException if there is already a game with that name
+     * @throws IllegalStateException    if the host has been closed
+     */
+    public CompletableFuture<World> createWorld(long seed, int size, String name, GenerationMode mode,
+                                                StorageMode storage) {
+        Session session = new Session(new BlockWorld(), new SerialExecutor(executor));
+        if (sessions.putIfAbsent(name, session) != null)
+            throw new IllegalArgumentException("There is already a world named " + name);
+        // checked after adding the game, so close() either sees the game or the game sees that it is closing
+        if (closed) {
+            sessions.remove(name, session);
+            throw new IllegalStateException("The host has been closed");
+        }
+        return submit(session, game -> {
+            // a game removed before this task has had its unload queued already, so it must not get a world
+            if (sessions.get(name) != session)
+                throw new IllegalStateException("The game of " + name + " has been removed");
+            try {
+                World world = game.createWorld(seed, size, name, mode, storage);
+                world.registerMetrics(Metrics.getDefault());
+                return world;
+            } catch (RuntimeException ex) {
+                sessions.remove(name, session);
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * It returns the world of a game. It must only be used by tasks of that game, or once they have finished.
+     *
+     * @param name name of the world
+     * @return the world, or null if there is no such game or its world has not been created yet
+     */
+    public World getWorld(String name) {
+        Session session = sessions.get(name);
+        return (session == null) ? null : session.game.getWorld();
+    }
+
+    /**
+     * names of the worlds of the games.
+     *
+     * @return the names, as a view that changes with the host
+     */
+    public Set<String> getWorldNames() {
+        return Collections.unmodifiableSet(sessions.keySet());
+    }
+
+    /**
+     * It removes a game. The tasks already sent to it still run; then, if its world keeps its blocks off the heap
+     * or pages them to a region file, the world is unloaded.
+     *
+     * @param name name of the world
+     * @return true if there was such game
+     */
+    public boolean removeWorld(String name) {
+        Session session = sessions.remove(name);
+        if (session == null)
+            return false;
+        unload(session);
+        return true;
+    }
+
+    /**
+     * It removes the gauges of the world of a removed game (see World.registerMetrics()), after the tasks sent to
+     * it, and unloads the world if its blocks are kept off the heap or paged to a region file.
+     */
+    private static CompletableFuture<Void> unload(Session session) {
+        return submit(session, game -> {
+            World world = game.getWorld();
+            if (world != null) {
+                world.unregisterMetrics();
+                if (world.getStorageMode() == StorageMode.OFF_HEAP || world.getPager() != null)
+                    world.unload();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * It runs a task on a game, after the tasks sent to it before.
+     *
+     * @param name name of the world of the game
+     * @param task task
+     * @param <T>  type of the result of the task
+     * @return future of the result, which fails with the exception of the task, if any
+     * @throws IllegalArgumentException if there is no such game
+     */
+    public <T> CompletableFuture<T> submit(String name, Task<T> task) {
+        Session session = sessions.get(name);
+        if (session == null)
+            throw new IllegalArgumentException("There is no world named " + name);
+        return submit(session, task);
+    }
+
+    /**
+     * It executes a command (see CommandJournal) on the player of a game, after the tasks sent to it before.
+     *
+     * @param name    name of the world of the game
+     * @param command code of the command
+     * @param a       first argument
+     * @param b       second argument
+     * @param c       third argument
+     * @return future that fails with the exception of the command, if any
+     * @throws IllegalArgumentException if there is no such game
+     */
+    public CompletableFuture<Void> execute(String name, byte command, int a, int b, int c) {
+        return submit(name, game -> {
+            game.execute(command, a, b, c);
+            return null;
+        });
+    }
+
+    /**
+     * It sends a task to the executor of a game.
+     */
+    private static <T> CompletableFuture<T> submit(Session session, Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        session.executor.execute(() -> {
+            try {
+                result.complete(task.run(session.game));
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * It stops accepting new games, removes all the games one by one, waits for the tasks sent to them so far,
+     * unloads their OFF_HEAP or paged worlds and, if the host created its executor, shuts it down. If the thread
+     * is interrupted while waiting for the executor, it stops waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (String name : sessions.keySet()) {
+            Session session = sessions.remove(name);
+            if (session != null)
+                pending.add(unload(session));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+            try {
+                ownExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.entities.Animal;
+import model.entities.Creature;
+import model.entities.Monster;
+import model.entities.Player;
+import model.exceptions.StackSizeException;
+import model.storage.BlockKey;
+import model.storage.Chunk;
+import model.storage.ChunkStore;
+import model.storage.StripedLongMap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshots of a world, written to and read from a file mapped in memory.
+ * <p>
+ * The size of a snapshot is computed before writing it, so the file is mapped once with its final size and the
+ * chunks are copied straight into it (see ChunkStore.writeTo()); no intermediate streams or buffers are used.
+ * A snapshot holds, in this order:
+ * <ul>
+ * <li>a header: magic number, format version, seed, size, generation mode, storage mode and name of the world,</li>
+ * <li>the chunks of the world (see ChunkStore.writeTo()), with their blocks and heights,</li>
+ * <li>the items: their number and then, for each one, the BlockKey of its location, its material and its amount,</li>
+ * <li>the creatures: their number and then, for each one, the BlockKey of its location, its kind and its health,</li>
+ * <li>the player: name, location, orientation, health, food level, item in hand and inventory,</li>
+ * <li>the other players of the world: their number and then each one, as the first player.</li>
+ * </ul>
+ * Strings are written as their number of UTF-8 bytes followed by the bytes.
+ * <p>
+ * A snapshot is written to a temporary file beside the target, which then replaces the target in a single step,
+ * so the target always holds either the previous snapshot or the new one.
+ */
+final class WorldSnapshot {
+    /**
+     * first four bytes of a snapshot ("BWSD").
+     */
+    private static final int MAGIC = 0x42575344;
+    /**
+     * version of the format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * kinds of creature.
+     */
+    private static final byte MONSTER = 0, ANIMAL = 1;
+    /**
+     * largest world size accepted when reading: the coordinates must fit in a BlockKey, and the regions of
+     * the chunks in the array of a ChunkStore.
+     */
+    private static final int MAX_SIZE = 1 << 24;
+
+    private WorldSnapshot() {
+    }
+
+    /**
+     * It writes a snapshot of a world to a file, replacing its contents.
+     *
+     * @param world world to save
+     * @param file  file to write
+     * @throws IOException if the file cannot be written, or the world has creatures that cannot be saved
+     */
+    static void save(World world, Path file) throws IOException {
+        byte[] name = world.getName().getBytes(StandardCharsets.UTF_8);
+        Player player = world.getPlayer();
+        List<Player> others = new ArrayList<>(world.getPlayers());
+        others.remove(player);
+        ChunkStore blocks = world.getBlockStore();
+        StripedLongMap<ItemStack> items = world.getItemMap();
+        StripedLongMap<Creature> creatures = world.getCreatureMap();
+
+        boolean[] unknown = {false};
+        creatures.forEach((key, creature) -> unknown[0] |= !(creature instanceof Monster || creature instanceof Animal));
+        if (unknown[0])
+            throw new IOException("World " + world.getName() + " has creatures that cannot be saved");
+
+        long size = 4 + 4 + 8 + 4 + 1 + 1 + 4 + name.length
+                + blocks.serializedSize()
+                + 4 + items.size() * (8 + 1 + 4L)
+                + 4 + creatures.size() * (8 + 1 + 8L)
+                + playerSize(player) + 4;
+        for (Player other : others)
+            size += playerSize(other);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("World " + world.getName() + " is too big to be saved (" + size + " bytes)");
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean saved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putLong(world.getSeed());
+                buffer.putInt(world.getSize());
+                buffer.put((byte) world.getGenerationMode().ordinal());
+                buffer.put((byte) world.getStorageMode().ordinal());
+                buffer.putInt(name.length).put(name);
+
+                blocks.writeTo(buffer);
+
+                buffer.putInt(items.size());
+                items.forEach((key, stack) -> {
+                    buffer.putLong(key);
+                    buffer.put((byte) stack.getType().ordinal());
+                    buffer.putInt(stack.getAmount());
+                });
+
+                buffer.putInt(creatures.size());
+                creatures.forEach((key, creature) -> {
+                    buffer.putLong(key);
+                    buffer.put((creature instanceof Monster) ? MONSTER : ANIMAL);
+                    buffer.putDouble(creature.getHealth());
+                });
+
+                putPlayer(buffer, player);
+                buffer.putInt(others.size());
+                for (Player other : others)
+                    putPlayer(buffer, other);
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saved = true;
+        } finally {
+            if (!saved)
+                Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * number of bytes written by putPlayer().
+     */
+    private static long playerSize(Player player) {
+        return 4 + player.getName().getBytes(StandardCharsets.UTF_8).length + 6 * 8 + 8 + 8 + 1 + (1 + 4) + 4
+                + player.getInventorySize() * (1 + 4L);
+    }
+
+    /**
+     * It writes a player: name, location, orientation, health, food level, item in hand and inventory.
+     */
+    private static void putPlayer(ByteBuffer buffer, Player player) {
+        byte[] playerName = player.getName().getBytes(StandardCharsets.UTF_8);
+        Inventory inventory = player.getInventory();
+        buffer.putInt(playerName.length).put(playerName);
+        putLocation(buffer, player.getLocation());
+        putLocation(buffer, player.getOrientation());
+        buffer.putDouble(player.getHealth());
+        buffer.putDouble(player.getFoodLevel());
+        ItemStack inHand = inventory.getItemInHand();
+        if (inHand == null) {
+            buffer.put((byte) 0);
+            buffer.put((byte) 0).putInt(0);
+        } else {
+            buffer.put((byte) 1);
+            buffer.put((byte) inHand.getType().ordinal()).putInt(inHand.getAmount());
+        }
+        buffer.putInt(inventory.getSize());
+        for (int i = 0; i < inventory.getSize(); i++) {
+            ItemStack stack = inventory.getItem(i);
+            buffer.put((byte) stack.getType().ordinal()).putInt(stack.getAmount());
+        }
+    }
+
+    /**
+     * It reads a snapshot written by save().
+     *
+     * @param file file to read
+     * @return the world of the snapshot
+     * @throws IOException if the file cannot be read or it is not a valid snapshot
+     */
+    static World load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is not a world snapshot");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+                throw new IOException(file + " is not a world snapshot");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            return read(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                | StackSizeException ex) {
+            throw new IOException("Corrupt world snapshot " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * It reads the contents of a snapshot that follow its magic number and version.
+     * The size of the world is checked before creating it: it must not be above MAX_SIZE and, as every chunk of
+     * a world that is not LAZY is generated and saved, the file must be long enough to hold all its chunks.
+     *
+     * @param buffer buffer to read from
+     * @return the world
+     * @throws StackSizeException if an amount of items is not valid
+     */
+    private static World read(ByteBuffer buffer) throws StackSizeException {
+        long seed = buffer.getLong();
+        int size = buffer.getInt();
+        int mode = buffer.get() & 0xFF;
+        GenerationMode[] modes = GenerationMode.values();
+        if (mode >= modes.length)
+            throw new IllegalArgumentException("Wrong generation mode " + mode);
+        int storage = buffer.get() & 0xFF;
+        StorageMode[] storages = StorageMode.values();
+        if (storage >= storages.length)
+            throw new IllegalArgumentException("Wrong storage mode " + storage);
+        String name = getString(buffer);
+        long chunksPerSide = (size + (long) Chunk.SIZE - 1) / Chunk.SIZE;
+        if (size <= 0 || size > MAX_SIZE
+                || (modes[mode] != GenerationMode.LAZY && chunksPerSide * chunksPerSide * 8 > buffer.remaining()))
+            throw new IllegalArgumentException("Wrong world size " + size);
+        World world = new World(seed, size, name, modes[mode], storages[storage], false);
+
+        world.getBlockStore().readFrom(buffer);
+
+        StripedLongMap<ItemStack> items = world.getItemMap();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long key = buffer.getLong();
+            items.put(key, new ItemStack(material(buffer.get() & 0xFF), buffer.getInt()));
+        }
+
+        StripedLongMap<Creature> creatures = world.getCreatureMap();
+        count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long key = buffer.getLong();
+            byte kind = buffer.get();
+            double health = buffer.getDouble();
+            Location loc = new Location(world, BlockKey.x(key), BlockKey.y(key),
+                    BlockKey.z(key));
+            if (kind == MONSTER)
+                creatures.put(key, new Monster(loc, health));
+            else if (kind == ANIMAL)
+                creatures.put(key, new Animal(loc, health));
+            else
+                throw new IllegalArgumentException("Wrong creature kind " + kind);
+        }
+
+        world.setPlayer(getPlayer(buffer, world));
+        count = buffer.getInt();
+        for (int i = 0; i < count; i++)
+            world.restorePlayer(getPlayer(buffer, world));
+        return world;
+    }
+
+    /**
+     * It reads a player written by putPlayer().
+     */
+    private static Player getPlayer(ByteBuffer buffer, World world) throws StackSizeException {
+        String playerName = getString(buffer);
+        Location location = getLocation(buffer, world);
+        Location orientation = getLocation(buffer, world);
+        double health = buffer.getDouble();
+        double foodLevel = buffer.getDouble();
+        Inventory inventory = new Inventory();
+        boolean hasInHand = buffer.get() != 0;
+        Material inHand = material(buffer.get() & 0xFF);
+        int inHandAmount = buffer.getInt();
+        if (hasInHand)
+            inventory.setItemInHand(new ItemStack(inHand, inHandAmount));
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++)
+            inventory.addItem(new ItemStack(material(buffer.get() & 0xFF), buffer.getInt()));
+        return new Player(playerName, location, orientation, health, foodLevel, inventory);
+    }
+
+    /**
+     * It writes the coordinates of a location.
+     */
+    private static void putLocation(ByteBuffer buffer, Location loc) {
+        buffer.putDouble(loc.getX()).putDouble(loc.getY()).putDouble(loc.getZ());
+    }
+
+    /**
+     * It reads the coordinates of a location of the given world.
+     */
+    private static Location getLocation(ByteBuffer buffer, World world) {
+        return new Location(world, buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+    }
+
+    /**
+     * It reads a string: its number of UTF-8 bytes and the bytes.
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalArgumentException("Wrong string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * material with the given ordinal.
+     *
+     * @throws IllegalArgumentException if there is no such material
+     */
+    private static Material material(int ordinal) {
+        Material[] materials = Material.values();
+        if (ordinal >= materials.length)
+            throw new IllegalArgumentException("Wrong material " + ordinal);
+        return materials[ordinal];
+    }
+}
@@ -0,0 +1,565 @@
+/**
+ * @author agata.koziol
+ */
+package model;
+
+import model.entities.Animal;
+import model.entities.Creature;
+import model.entities.Monster;
+import model.entities.Player;
+import model.storage.BlockKey;
+import model.storage.ChunkStore;
+import model.storage.FloodFill;
+import model.storage.LiquidFlow;
+import model.storage.LongMap;
+import model.storage.RegionLocks;
+import model.storage.SpatialLongMap;
+import model.storage.StripedLongMap;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulation of a world at a fixed rate of ticks per second: in every tick, creatures act and liquids flow.
+ * <p>
+ * Only the active chunks are simulated: the ones within ACTIVE_RADIUS chunks of a player. The creatures of a
+ * chunk act in one batch, with the locks of the chunk and of the blocks around it held (see World.lockAround()),
+ * so the ticker can run on its own thread while players act on other threads: the simulation and the players
+ * change the same parts of the world one at a time, and the rest of the world is not stopped. In every tick:
+ * <ul>
+ * <li>a monster attacks the players next to it, or takes a step towards the closest player within
+ * CHASE_DISTANCE blocks; animals, and monsters with nobody to chase, sometimes wander one step,</li>
+ * <li>up to LIQUID_UPDATES blocks emptied next to a liquid are filled with it (see LiquidFlow); blocks in
+ * inactive chunks are dropped, so the liquids far from the players stay where they are.</li>
+ * </ul>
+ * The ticker is attached to the flow of the liquids of the world from its creation until it is closed, and the
+ * blocks are only queued while a ticker is attached.
+ * Creatures step to a free, empty block next to them, on solid ground and at most one block higher or lower.
+ * The random choices are drawn from a generator seeded with the seed of the world.
+ * <p>
+ * The duration of every tick is measured: a tick that lasts longer than the period is an overrun, and the
+ * simulation falls behind when ticks start later than their fixed schedule (see report()).
+ */
+public class WorldTicker implements AutoCloseable {
+    /**
+     * distance, in chunks, from a player to the chunks that are simulated.
+     */
+    public static final int ACTIVE_RADIUS = 2;
+    /**
+     * largest distance, in blocks along the x and z axes, at which a monster chases a player.
+     */
+    public static final int CHASE_DISTANCE = 16;
+    /**
+     * maximum number of liquid blocks updated in a tick.
+     */
+    public static final int LIQUID_UPDATES = 4096;
+    /**
+     * damage caused by a monster to a player next to it in a tick.
+     */
+    private static final double MONSTER_DAMAGE = 0.5;
+    /**
+     * probability that a creature with nothing to do wanders in a tick.
+     */
+    private static final double WANDER_PROBABILITY = 0.25;
+    /**
+     * changes of height tried by a step, in order.
+     */
+    private static final int[] CLIMB = {0, 1, -1};
+
+    /**
+     * simulated world.
+     */
+    private final World world;
+    /**
+     * duration of a tick, in nanoseconds.
+     */
+    private final long period;
+    /**
+     * source of the random choices of the creatures.
+     */
+    private final Random rng;
+    /**
+     * value of the negative limit of the world in the x and z axes.
+     */
+    private final int negativeWorldLimit;
+    /**
+     * active chunks of the current tick, by chunkKey().
+     */
+    private final LongMap<Boolean> active;
+    /**
+     * the same chunks, in increasing order of key (by x and then by z), so a tick only visits the active chunks.
+     */
+    private long[] activeKeys;
+    /**
+     * number of keys in activeKeys.
+     */
+    private int activeCount;
+    /**
+     * locations reached by a creature in the current tick, so that it does not act twice.
+     */
+    private final LongMap<Boolean> acted;
+    /**
+     * keys of the creatures of the chunk being simulated.
+     */
+    private long[] batch;
+    /**
+     * number of keys in batch.
+     */
+    private int batchSize;
+    /**
+     * players of the world in the current tick.
+     */
+    private Player[] players;
+    /**
+     * listener of the blocks filled by liquids, which removes their items.
+     */
+    private final FloodFill.Listener flooded;
+    /**
+     * whether the ticker is attached to the flow of the liquids of the world.
+     */
+    private boolean attached;
+
+    /**
+     * thread that runs the ticks, or null if the ticker has not been started.
+     */
+    private ScheduledExecutorService scheduler;
+    /**
+     * time at which the first tick was scheduled.
+     */
+    private long startTime;
+    /**
+     * number of ticks run by the scheduler.
+     */
+    private long scheduledTicks;
+
+    /**
+     * number of ticks run. The statistics are written by the thread of the ticks and read by any thread.
+     */
+    private volatile long tickCount;
+    /**
+     * durations of the last tick, of the longest one and of all of them, in nanoseconds.
+     */
+    private volatile long lastTickTime, maxTickTime, totalTickTime;
+    /**
+     * number of ticks that lasted longer than the period.
+     */
+    private volatile long overruns;
+    /**
+     * delay of the start of the last scheduled tick, in nanoseconds.
+     */
+    private volatile long lag;
+    /**
+     * chunks, creatures and liquid blocks updated in the last tick.
+     */
+    private volatile int activeChunks, creatureUpdates, liquidUpdates;
+
+    /**
+     * It creates a ticker of a world. Ticks are run by start() or one by one by tick().
+     *
+     * @param world          world to simulate
+     * @param ticksPerSecond number of ticks per second
+     * @throws IllegalArgumentException if ticksPerSecond is not between 1 and 1000
+     */
+    public WorldTicker(World world, int ticksPerSecond) {
+        if (ticksPerSecond < 1 || ticksPerSecond > 1000)
+            throw new IllegalArgumentException("Wrong number of ticks per second " + ticksPerSecond);
+        this.world = world;
+        this.period = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        rng = new Random(world.getSeed());
+        int positiveWorldLimit = world.getSize() / 2;
+        negativeWorldLimit = (world.getSize() % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+        active = new LongMap<>();
+        activeKeys = new long[64];
+        acted = new LongMap<>();
+        batch = new long[64];
+        StripedLongMap<ItemStack> items = world.getItemMap();
+        flooded = (x, y, z) -> items.remove(BlockKey.pack(x, y, z));
+        world.getLiquidFlow().attach();
+        attached = true;
+    }
+
+    /**
+     * It starts running ticks at the fixed rate, on a thread of the ticker.
+     *
+     * @throws IllegalStateException if the ticker has already been started
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            throw new IllegalStateException("The ticker of " + world.getName() + " has already been started");
+        if (!attached) {
+            world.getLiquidFlow().attach();
+            attached = true;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "world-ticker-" + world.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        startTime = System.nanoTime();
+        scheduledTicks = 0;
+        scheduler.scheduleAtFixedRate(this::scheduledTick, 0, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * It stops running ticks, waits for the current one, if any, and detaches the ticker from the flow of the
+     * liquids. If the thread is interrupted while waiting, it stops waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+            if (attached) {
+                world.getLiquidFlow().detach();
+                attached = false;
+            }
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * It runs a tick of the scheduler, measuring how late it starts. A failing tick does not stop the next ones.
+     */
+    private void scheduledTick() {
+        lag = Math.max(0, System.nanoTime() - (startTime + scheduledTicks * period));
+        scheduledTicks++;
+        try {
+            tick();
+        } catch (RuntimeException ex) {
+            System.err.println("Tick " + tickCount + " of " + world.getName() + " failed: " + ex);
+        }
+    }
+
+    /**
+     * It runs one tick of the simulation on the calling thread.
+     */
+    public synchronized void tick() {
+        long start = System.nanoTime();
+        collectPlayers();
+        findActiveChunks();
+        acted.clear();
+        int creaturesDone = 0;
+        for (int i = 0; i < activeCount; i++)
+            creaturesDone += simulateChunk((int) (activeKeys[i] >>> 32), (int) activeKeys[i]);
+        int liquidsDone = flowLiquids();
+
+        long time = System.nanoTime() - start;
+        creatureUpdates = creaturesDone;
+        liquidUpdates = liquidsDone;
+        activeChunks = active.size();
+        lastTickTime = time;
+        totalTickTime += time;
+        if (time > maxTickTime)
+            maxTickTime = time;
+        if (time > period)
+            overruns++;
+        tickCount++;
+    }
+
+    /**
+     * It keeps the living players of the world for the current tick.
+     */
+    private void collectPlayers() {
+        players = world.getPlayers().stream().filter(p -> !p.isDead()).toArray(Player[]::new);
+    }
+
+    /**
+     * It marks as active the chunks within ACTIVE_RADIUS chunks of a player, and lists them sorted by key.
+     */
+    private void findActiveChunks() {
+        active.clear();
+        activeCount = 0;
+        int chunksPerSide = world.getBlockStore().getChunksPerSide();
+        for (Player player : players) {
+            Location loc = player.getLocation();
+            int cx = chunkIndex(loc.getX()), cz = chunkIndex(loc.getZ());
+            for (int i = Math.max(0, cx - ACTIVE_RADIUS); i <= Math.min(chunksPerSide - 1, cx + ACTIVE_RADIUS); i++)
+                for (int j = Math.max(0, cz - ACTIVE_RADIUS); j <= Math.min(chunksPerSide - 1, cz + ACTIVE_RADIUS); j++) {
+                    long key = chunkKey(i, j);
+                    if (active.put(key, Boolean.TRUE) == null) {
+                        if (activeCount == activeKeys.length)
+                            activeKeys = Arrays.copyOf(activeKeys, activeCount * 2);
+                        activeKeys[activeCount++] = key;
+                    }
+                }
+        }
+        // the chunks are simulated in the same order whatever the order of the players
+        Arrays.sort(activeKeys, 0, activeCount);
+    }
+
+    /**
+     * It makes the creatures of a chunk act, with the locks of the chunk and the blocks around it held.
+     *
+     * @return number of creatures that have acted
+     */
+    private int simulateChunk(int cx, int cz) {
+        int minX = negativeWorldLimit + (cx << 4), minZ = negativeWorldLimit + (cz << 4);
+        int maxX = minX + 15, maxZ = minZ + 15;
+        RegionLocks locks = world.getLocks();
+        SpatialLongMap<Creature> creatures = world.getCreatureMap();
+        long held = locks.lockArea(minX - 1, minZ - 1, maxX + 1, maxZ + 1);
+        try {
+            batchSize = 0;
+            creatures.forEachInBox(minX, 0, minZ, maxX, (int) Location.UPPER_Y_VALUE, maxZ, (key, creature) -> {
+                if (!acted.containsKey(key)) {
+                    if (batchSize == batch.length)
+                        batch = Arrays.copyOf(batch, batchSize * 2);
+                    batch[batchSize++] = key;
+                }
+            });
+            int done = 0;
+            for (int i = 0; i < batchSize; i++) {
+                Creature creature = creatures.get(batch[i]);
+                if (creature != null) {
+                    act(creature, batch[i]);
+                    done++;
+                }
+            }
+            return done;
+        } finally {
+            locks.unlock(held);
+        }
+    }
+
+    /**
+     * It makes a creature act.
+     */
+    private void act(Creature creature, long key) {
+        if (creature.getClass() == Monster.class) {
+            Location loc = creature.getLocation();
+            Player target = null;
+            double closest = Double.MAX_VALUE;
+            for (Player player : players) {
+                Location at = player.getLocation();
+                if (loc.isAdjacent(at)) {
+                    player.damage(MONSTER_DAMAGE);
+                    return;
+                }
+                double dx = Math.abs(at.getX() - loc.getX()), dz = Math.abs(at.getZ() - loc.getZ());
+                if (dx <= CHASE_DISTANCE && dz <= CHASE_DISTANCE && dx + dz < closest) {
+                    closest = dx + dz;
+                    target = player;
+                }
+            }
+            if (target != null) {
+                Location at = target.getLocation();
+                int dx = (int) Math.signum(at.getX() - loc.getX()), dz = (int) Math.signum(at.getZ() - loc.getZ());
+                if (step(creature, key, dx, dz) || (dx != 0 && dz != 0 && (step(creature, key, dx, 0)
+                        || step(creature, key, 0, dz))))
+                    return;
+            }
+        }
+        if (creature.getClass() == Monster.class || creature.getClass() == Animal.class) {
+            if (rng.nextDouble() < WANDER_PROBABILITY) {
+                int dx = rng.nextInt(3) - 1, dz = rng.nextInt(3) - 1;
+                if (dx != 0 || dz != 0)
+                    step(creature, key, dx, dz);
+            }
+        }
+    }
+
+    /**
+     * It moves a creature to the column (x+dx, z+dz), climbing or descending one block if needed.
+     *
+     * @return true if the creature has moved
+     */
+    private boolean step(Creature creature, long key, int dx, int dz) {
+        if (dx == 0 && dz == 0)
+            return false;
+        int x = BlockKey.x(key) + dx, z = BlockKey.z(key) + dz;
+        for (int dy : CLIMB) {
+            int y = BlockKey.y(key) + dy;
+            if (canStand(x, y, z)) {
+                move(creature, key, x, y, z);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * It checks whether a creature can stand at (x,y,z): the block is free, without blocks or items,
+     * and the block below is solid.
+     */
+    private boolean canStand(int x, int y, int z) {
+        if (y < 1 || !Location.check(world, x, y, z))
+            return false;
+        ChunkStore blocks = world.getBlockStore();
+        Block below = blocks.get(x, y - 1, z);
+        return below != null && !below.getType().isLiquid() && !blocks.contains(x, y, z)
+                && world.isFree(x, y, z) && world.getItemsAt(x, y, z) == null;
+    }
+
+    /**
+     * It moves a creature from the location with the given key to (x,y,z). Creatures cannot change their
+     * location, so the creature is replaced by a new one with the same health.
+     */
+    private void move(Creature creature, long key, int x, int y, int z) {
+        Location to = new Location(world, x, y, z);
+        Creature moved = (creature.getClass() == Monster.class) ? new Monster(to, creature.getHealth())
+                : new Animal(to, creature.getHealth());
+        long target = BlockKey.pack(x, y, z);
+        StripedLongMap<Creature> creatures = world.getCreatureMap();
+        creatures.remove(key);
+        creatures.put(target, moved);
+        acted.put(target, Boolean.TRUE);
+    }
+
+    /**
+     * It updates the liquid blocks waiting in the flow of the world, up to LIQUID_UPDATES.
+     * Blocks in inactive chunks are dropped.
+     *
+     * @return number of blocks filled
+     */
+    private int flowLiquids() {
+        LiquidFlow flow = world.getLiquidFlow();
+        RegionLocks locks = world.getLocks();
+        int updates = Math.min(flow.pending(), LIQUID_UPDATES);
+        int filled = 0;
+        for (int i = 0; i < updates; i++) {
+            long key = flow.poll();
+            if (key == -1)
+                break;
+            int x = BlockKey.x(key), z = BlockKey.z(key);
+            if (!active.containsKey(chunkKey(chunkIndex(x), chunkIndex(z))))
+                continue;
+            long held = locks.lockArea(x - 1, z - 1, x + 1, z + 1);
+            try {
+                if (flow.update(key, flooded))
+                    filled++;
+            } finally {
+                locks.unlock(held);
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * index of the chunk of a coordinate along the x or z axis.
+     */
+    private int chunkIndex(double coordinate) {
+        return ((int) Math.floor(coordinate) - negativeWorldLimit) >> 4;
+    }
+
+    /**
+     * key of a chunk in the maps of chunks.
+     */
+    private static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /**
+     * number of ticks run.
+     *
+     * @return ticks run since the ticker was created
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * duration of the last tick.
+     *
+     * @return nanoseconds
+     */
+    public long getLastTickTime() {
+        return lastTickTime;
+    }
+
+    /**
+     * average duration of the ticks.
+     *
+     * @return nanoseconds, or 0 if no tick has run
+     */
+    public long getAverageTickTime() {
+        long ticks = tickCount;
+        return (ticks == 0) ? 0 : totalTickTime / ticks;
+    }
+
+    /**
+     * duration of the longest tick.
+     *
+     * @return nanoseconds
+     */
+    public long getMaxTickTime() {
+        return maxTickTime;
+    }
+
+    /**
+     * number of ticks that lasted longer than the period.
+     *
+     * @return overruns
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * delay of the start of the last tick run by start() with respect to its fixed schedule.
+     *
+     * @return nanoseconds
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * It checks whether the simulation falls behind: the last tick started a whole period late or more.
+     *
+     * @return true if the ticks do not keep up with their rate
+     */
+    public boolean isFallingBehind() {
+        return lag >= period;
+    }
+
+    /**
+     * number of chunks simulated in the last tick.
+     *
+     * @return active chunks
+     */
+    public int getActiveChunks() {
+        return activeChunks;
+    }
+
+    /**
+     * number of creatures that acted in the last tick.
+     *
+     * @return creatures
+     */
+    public int getCreatureUpdates() {
+        return creatureUpdates;
+    }
+
+    /**
+     * number of blocks filled by liquids in the last tick.
+     *
+     * @return blocks
+     */
+    public int getLiquidUpdates() {
+        return liquidUpdates;
+    }
+
+    /**
+     * It describes the state of the simulation: ticks, their times in milliseconds, and how far behind it is.
+     *
+     * @return a line of text
+     */
+    public String report() {
+        return String.format("%s: %d ticks (%d ms/tick), last %.3f ms, avg %.3f ms, max %.3f ms, %d overruns, "
+                        + "lag %.3f ms%s, %d chunks, %d creatures, %d liquid blocks",
+                world.getName(), tickCount, TimeUnit.NANOSECONDS.toMillis(period), lastTickTime / 1e6,
+                getAverageTickTime() / 1e6, maxTickTime / 1e6, overruns, lag / 1e6,
+                isFallingBehind() ? " (falling behind)" : "", activeChunks, creatureUpdates, liquidUpdates);
+    }
+}
@@ -34,11 +34,9 @@ public class Player extends LivingEntity {
     private Inventory inventory;
 
     /**
-     * Simple constructor that assign values of name given as the parameter and health as 20.
-     *
-     * @param name will be assigned as the value of player's name.
+     * Direction the player is facing, relative to his or her location, so it does not change when he or she moves.
      */
-    private Location orientation;
+    private BlockPos facing;
 
     /**
      * Simple constructor that assignes all the values and defines the user's orientation and inventory
@@ -46,13 +44,21 @@ public class Player extends LivingEntity {
      * @param world world to which the player will be assigned
      */
     public Player(String name, World world) {
-        super(new Location(world, 0,0,0), MAX_HEALTH);
+        this(name, spawn(world));
+    }
+
+    /**
+     * It creates a new player in the given location, with full health and food, looking along the z axis
+     * and with a wooden sword in hand. The player is not added to the world (see World.addPlayer()).
+     *
+     * @param name     name of the player
+     * @param location location of the player
+     */
+    public Player(String name, Location location) {
+        super(location, MAX_HEALTH);
         try {
             this.name = name;
             foodLevel = MAX_FOODLEVEL;
-            location = world.getHighestLocationAt(location);
-            location = location.above();
-            orientation = new Location(getLocation());
             orientate(0,0,1);
             inventory = new Inventory();
             inventory.setItemInHand(new ItemStack(Material.WOOD_SWORD, 1));
@@ -67,6 +73,35 @@ public class Player extends LivingEntity {
 
     }
 
+    /**
+     * It returns the location where the first player of a world appears: above the highest block at (0,0).
+     */
+    private static Location spawn(World world) {
+        try {
+            return world.getHighestLocationAt(new Location(world, 0, 0, 0)).above();
+        } catch (BadLocationException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+
+    /**
+     * It creates a player with a given state, as it was saved in a snapshot of its world (see World.save()).
+     *
+     * @param name        name of the player
+     * @param location    location of the player, in its world
+     * @param orientation location the player is looking at
+     * @param health      health of the player
+     * @param foodLevel   food level of the player
+     * @param inventory   inventory of the player; it is copied
+     */
+    public Player(String name, Location location, Location orientation, double health, double foodLevel, Inventory inventory) {
+        super(location, health);
+        this.name = name;
+        this.facing = BlockPos.of(orientation).subtract(BlockPos.of(location));
+        this.foodLevel = foodLevel;
+        this.inventory = new Inventory(inventory);
+    }
 
     /**
      * simple getter.
@@ -107,6 +142,15 @@ public class Player extends LivingEntity {
         return inventory.getSize();
     }
 
+    /**
+     * It returns a copy of the inventory of the player.
+     *
+     * @return the items of the inventory and the item in hand
+     */
+    public Inventory getInventory() {
+        return new Inventory(inventory);
+    }
+
     /**
      * If (x,y,z) is the player’s current location, it ‘moves’ the player to location (x+dx,y+dy,z+dz).
      * The target location must be a location adjacent to the current one
@@ -125,20 +169,24 @@ public class Player extends LivingEntity {
      * @throws BadLocationException  if the target location is not adjacent to the current one, is occupied or is not valid.
      */
     public Location move(int dx, int dy, int dz) throws EntityIsDeadException, BadLocationException {
-        Location newLocation = new Location(location).add(new Location(location.getWorld(), dx, dy, dz));
+        World world = location.getWorld();
+        double x = location.getX() + dx;
+        double y = location.getY() + dy;
+        double z = location.getZ() + dz;
 
         if (isDead()) {
             throw new EntityIsDeadException();
-        } else if (!location.getNeighborhood().contains(newLocation)) {
+        } else if (!location.isAdjacent(x, y, z)) {
             throw new BadLocationException("Location is not adjacent to the current one.");
-        } else if (!newLocation.isFree()) {
+        } else if (!world.isFree((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z))) {
             throw new BadLocationException("Location is occupied.");
-        } else if (!Location.check(newLocation)) {
+        } else if (!Location.check(world, x, y, z)) {
             throw new BadLocationException("Location is not valid.");
         }
         decreaseFoodLevel(0.05);
-        location = new Location(newLocation);
-        orientation.add(new Location(orientation.getWorld(), dx, dy, dz));
+        Location from = location;
+        location = new Location(world, x, y, z);
+        world.playerMoved(this, from);
         return new Location(location);
     }
 
@@ -209,12 +257,13 @@ public class Player extends LivingEntity {
     }
 
     /**
-     * It adds the items to the player’s inventory; they are stored in a new inventory position.
+     * It adds the items to the player’s inventory; they fill first the stacks of the same material that are not
+     * full, and the rest are stored in a new inventory position (see Inventory.merge()).
      *
      * @param item item to be added to the inventory.
      */
     public void addItemsToInventory(ItemStack item) {
-        inventory.addItem(item);
+        inventory.merge(item);
     }
 
     /**
@@ -255,7 +304,27 @@ public class Player extends LivingEntity {
      * @return player’s orientation as an absolute location.
      */
     public Location getOrientation() {
-        return new Location(orientation);
+        return new Location(location.getWorld(), location.getX() + facing.getX(), location.getY() + facing.getY(),
+                location.getZ() + facing.getZ());
+    }
+
+    /**
+     * It returns the block where the player is, without copying the player's location.
+     *
+     * @return position of the player's block
+     */
+    public BlockPos getBlockPosition() {
+        return BlockPos.of(location);
+    }
+
+    /**
+     * It returns the direction the player is facing: the block he or she looks at is the player's block plus it.
+     * It follows the player when he or she moves.
+     *
+     * @return displacement from the player's block to the one he or she looks at
+     */
+    public BlockPos getFacing() {
+        return facing;
     }
 
     /**
@@ -278,14 +347,13 @@ public class Player extends LivingEntity {
      * or the orientation is not towards an adjacent location.
      */
     public Location orientate(int dx, int dy, int dz) throws EntityIsDeadException, BadLocationException {
-        Location newOrientLoc = new Location(location).add(new Location(location.getWorld(), dx, dy, dz));
         if (isDead()) throw new EntityIsDeadException();
         if (dx == 0 && dy == 0 && dz == 0)
             throw new BadLocationException("a player cannot be oriented towards himself");
         if (dx>1 || dx<-1 || dy>1 || dy<-1 || dz>1 || dz<-1 )
             throw new BadLocationException("the orientation is not torwards an adjacent location.");
-        orientation = newOrientLoc;
-        return orientation;
+        facing = new BlockPos(dx, dy, dz);
+        return getOrientation();
     }
 
     /**
@@ -293,11 +361,7 @@ public class Player extends LivingEntity {
      * @return relative location.
      */
     private Location getRelativeLocation(){
-        double x= orientation.getX() - location.getX();
-        double y= orientation.getY() - location.getY();
-        double z= orientation.getZ() - location.getZ();
-
-        return new Location(location.getWorld(), x, y, z);
+        return facing.toLocation(location.getWorld());
     }
     /**
      * Creates the string with user infromation.
@@ -327,7 +391,7 @@ public class Player extends LivingEntity {
         result = prime * result + (int) (temp ^ (temp >>> 32));
         result = prime * result + ((inventory == null) ? 0 : inventory.hashCode());
         result = prime * result + ((name == null) ? 0 : name.hashCode());
-        result = prime * result + ((orientation == null) ? 0 : orientation.hashCode());
+        result = prime * result + ((facing == null) ? 0 : facing.hashCode());
         return result;
     }
 
@@ -357,10 +421,10 @@ public class Player extends LivingEntity {
                 return false;
         } else if (!name.equals(other.name))
             return false;
-        if (orientation == null) {
-            if (other.orientation != null)
+        if (facing == null) {
+            if (other.facing != null)
                 return false;
-        } else if (!orientation.equals(other.orientation))
+        } else if (!facing.equals(other.facing))
             return false;
         return true;
     }
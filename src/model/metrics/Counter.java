@@ -0,0 +1,55 @@
+/**
+ * @author agata.koziol
+ */
+package model.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events, such as exceptions thrown. Many threads can increment it at the same time without
+ * waiting for each other, so it can be left in hot paths.
+ */
+public final class Counter {
+    /**
+     * number of events.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Counters are created by Metrics.counter().
+     */
+    Counter() {
+    }
+
+    /**
+     * It counts one event.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * It counts some events.
+     *
+     * @param events number of events
+     */
+    public void add(long events) {
+        count.add(events);
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return number of events counted
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * It sets the count to zero.
+     */
+    void reset() {
+        count.reset();
+    }
+}
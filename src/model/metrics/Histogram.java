@@ -0,0 +1,158 @@
+/**
+ * @author agata.koziol
+ */
+package model.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of a quantity, such as the time taken by a command (in nanoseconds) or the number of blocks
+ * filled by a flood fill. Values are counted in buckets of powers of two: bucket i holds the values between
+ * 2^(i-1) and 2^i - 1, and bucket 0 holds 0. Percentiles are therefore approximate (the upper bound of their
+ * bucket, never above the maximum), but recording a value takes a few atomic additions and no allocation,
+ * so histograms can be left in hot paths.
+ */
+public final class Histogram {
+    /**
+     * number of buckets: zero and one per bit of a long.
+     */
+    private static final int BUCKETS = 65;
+
+    /**
+     * number of values of each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * number and sum of the values.
+     */
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    /**
+     * largest value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Histograms are created by Metrics.histogram().
+     */
+    Histogram() {
+    }
+
+    /**
+     * It records a value; negative values are recorded as 0.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        long largest = max.get();
+        while (value > largest && !max.compareAndSet(largest, value))
+            largest = max.get();
+    }
+
+    /**
+     * It records the time elapsed since start, so consecutive phases can be timed with a single clock reading
+     * between them: {@code start = phase1.lap(start); ... phase2.lap(start);}
+     *
+     * @param start value of System.nanoTime() when the timed work started
+     * @return the current value of System.nanoTime()
+     */
+    public long lap(long start) {
+        long now = System.nanoTime();
+        record(now - start);
+        return now;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return sum of the values recorded
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return largest value recorded, 0 if there is none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * average of the values.
+     *
+     * @return the mean, 0 if there are no values
+     */
+    public double getMean() {
+        long n = getCount();
+        return (n == 0) ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * It estimates a percentile: the upper bound of the bucket that holds it, or the maximum if it is smaller.
+     *
+     * @param fraction fraction of the values below the percentile, between 0 and 1 (0.5 for the median)
+     * @return the estimate, 0 if there are no values
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1
+     */
+    public long getPercentile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1))
+            throw new IllegalArgumentException("Wrong fraction " + fraction);
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            n += counts[i] = buckets.get(i);
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long upper = (i == 0) ? 0 : (i == 64) ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * It forgets every value recorded.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Creates a string with the number of values, their mean, median, 99th percentile and maximum.
+     *
+     * @return a summary of the distribution
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%d p99=%d max=%d", getCount(), getMean(),
+                getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * @author agata.koziol
+ */
+package model.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of named metrics: counters (see {@link Counter}), histograms (see {@link Histogram}) and gauges, which
+ * are read when the metrics are shown. Metrics are created the first time their name is asked for and then kept,
+ * so the classes that record them look them up once and keep them in static fields.
+ * <p>
+ * The metrics can be shown as plain text (see dump()) or through JMX: the registry is a DynamicMBean whose
+ * attributes are the counters and gauges and, for every histogram, its count, mean, median, 99th percentile and
+ * maximum (as "name.count", "name.mean"...). The default registry (see getDefault()) is registered in the platform
+ * MBean server as {@value #DEFAULT_NAME}.
+ */
+public class Metrics implements DynamicMBean {
+    /**
+     * name of the default registry in the platform MBean server.
+     */
+    public static final String DEFAULT_NAME = "blockworld:type=Metrics";
+
+    /**
+     * statistics exposed through JMX for every histogram, as suffixes of its name.
+     */
+    private static final String[] HISTOGRAM_STATISTICS = {"count", "mean", "p50", "p99", "max"};
+    /**
+     * registry used by the classes of the game.
+     */
+    private static final Metrics DEFAULT = createDefault();
+
+    /**
+     * metrics by name.
+     */
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * It creates the default registry and registers it in the platform MBean server. Without JMX (for instance,
+     * if a security manager forbids it) the metrics are still recorded and can be dumped.
+     */
+    private static Metrics createDefault() {
+        Metrics metrics = new Metrics();
+        try {
+            metrics.register(ManagementFactory.getPlatformMBeanServer(), new ObjectName(DEFAULT_NAME));
+        } catch (JMException | SecurityException ex) {
+            System.err.println(ex.getMessage());
+        }
+        return metrics;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return the registry where the classes of the game record their metrics
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * It registers the registry in an MBean server.
+     *
+     * @param server server
+     * @param name   name of the MBean
+     * @throws JMException if it cannot be registered
+     */
+    public void register(MBeanServer server, ObjectName name) throws JMException {
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * It returns the counter with the given name, creating it if needed.
+     *
+     * @param name name of the counter
+     * @return the counter
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * It returns the histogram with the given name, creating it if needed.
+     *
+     * @param name name of the histogram
+     * @return the histogram
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * It sets the gauge with the given name, replacing the previous one with that name, if any.
+     *
+     * @param name  name of the gauge
+     * @param gauge function that reads the value of the gauge
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * It removes a gauge, so that the objects it reads can be collected, unless it has been replaced by another
+     * gauge with the same name.
+     *
+     * @param name  name of the gauge
+     * @param gauge gauge given to gauge()
+     * @return true if the gauge was removed
+     */
+    public boolean removeGauge(String name, LongSupplier gauge) {
+        return gauges.remove(name, gauge);
+    }
+
+    /**
+     * It reads a gauge.
+     *
+     * @param name name of the gauge
+     * @return its value
+     * @throws IllegalArgumentException if there is no such gauge
+     */
+    public long readGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        if (gauge == null)
+            throw new IllegalArgumentException("There is no gauge named " + name);
+        return gauge.getAsLong();
+    }
+
+    /**
+     * It sets the counters and histograms to zero. Gauges are left as they are.
+     */
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Creates a string with every metric, one per line and sorted by name: "name value" for counters and
+     * gauges, and "name count=... mean=... p50=... p99=... max=..." for histograms.
+     *
+     * @return the metrics as plain text
+     */
+    public String dump() {
+        Map<String, String> lines = new TreeMap<>();
+        counters.forEach((name, counter) -> lines.put(name, String.valueOf(counter.getCount())));
+        gauges.forEach((name, gauge) -> lines.put(name, String.valueOf(gauge.getAsLong())));
+        histograms.forEach((name, histogram) -> lines.put(name, histogram.toString()));
+        StringBuilder text = new StringBuilder();
+        lines.forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+        return text.toString();
+    }
+
+    /**
+     * It returns the value of a JMX attribute.
+     *
+     * @param attribute name of a counter or gauge, or of a histogram followed by one of its statistics
+     * @return the value
+     * @throws AttributeNotFoundException if there is no such metric
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Counter counter = counters.get(attribute);
+        if (counter != null)
+            return counter.getCount();
+        LongSupplier gauge = gauges.get(attribute);
+        if (gauge != null)
+            return gauge.getAsLong();
+        int dot = attribute.lastIndexOf('.');
+        Histogram histogram = (dot < 0) ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.getCount();
+                case "mean":
+                    return histogram.getMean();
+                case "p50":
+                    return histogram.getPercentile(0.5);
+                case "p99":
+                    return histogram.getPercentile(0.99);
+                case "max":
+                    return histogram.getMax();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    /**
+     * Metrics cannot be changed through JMX.
+     *
+     * @param attribute attribute
+     * @throws AttributeNotFoundException always
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    /**
+     * It returns the values of some JMX attributes, leaving out those that do not exist.
+     *
+     * @param attributes names of the attributes
+     * @return the attributes found
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            } catch (AttributeNotFoundException ex) {
+                // left out, as the interface requires
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Metrics cannot be changed through JMX.
+     *
+     * @param attributes attributes
+     * @return an empty list
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * It invokes a JMX operation: "dump" returns the text of dump() and "reset" calls reset().
+     *
+     * @param actionName name of the operation
+     * @param params     parameters (none)
+     * @param signature  types of the parameters (none)
+     * @return the result of the operation
+     * @throws ReflectionException if there is no such operation
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("dump".equals(actionName))
+            return dump();
+        if ("reset".equals(actionName)) {
+            reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    /**
+     * It describes the attributes of the metrics that exist now, and the operations dump and reset.
+     *
+     * @return the description of the MBean
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : new TreeMap<>(counters).keySet())
+            attributes.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+        for (String name : new TreeMap<>(gauges).keySet())
+            attributes.add(new MBeanAttributeInfo(name, "long", "gauge", true, false, false));
+        for (String name : new TreeMap<>(histograms).keySet())
+            for (String statistic : HISTOGRAM_STATISTICS)
+                attributes.add(new MBeanAttributeInfo(name + "." + statistic,
+                        statistic.equals("mean") ? "double" : "long", "histogram " + statistic, true, false, false));
+        MBeanOperationInfo[] operations = {
+                new MBeanOperationInfo("dump", "metrics as plain text", null, "java.lang.String",
+                        MBeanOperationInfo.INFO),
+                new MBeanOperationInfo("reset", "sets counters and histograms to zero", null, "void",
+                        MBeanOperationInfo.ACTION)
+        };
+        return new MBeanInfo(getClass().getName(), "Metrics of BlockWorld",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+
+import java.util.Arrays;
+
+/**
+ * List of block changes to be applied to a store at once (see ChunkStore.apply() and World.apply()).
+ * <p>
+ * Each edit is the {@link BlockKey} of a location and the block to store there, or null to remove the block.
+ * The edits are kept in two growing arrays, in the order they were added; when several edits touch the same
+ * location, the last one wins. The batch also keeps the box of the columns it touches, so the locks of that
+ * area can be taken once for the whole batch.
+ */
+public final class BlockEdits {
+    /**
+     * maximum number of edits of a batch.
+     */
+    public static final int MAX_EDITS = 1 << 27;
+
+    /**
+     * locations of the edits.
+     */
+    private long[] keys;
+    /**
+     * blocks of the edits; null removes the block.
+     */
+    private Block[] blocks;
+    /**
+     * number of edits.
+     */
+    private int size;
+    /**
+     * limits of the columns touched by the edits (both included).
+     */
+    private int minX, minZ, maxX, maxZ;
+
+    /**
+     * It creates an empty batch.
+     */
+    public BlockEdits() {
+        keys = new long[16];
+        blocks = new Block[16];
+        clear();
+    }
+
+    /**
+     * It adds an edit that stores a block at (x,y,z).
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     * @param block block to store, or null to remove the block
+     * @return this batch
+     * @throws IllegalStateException if the batch already has MAX_EDITS edits
+     */
+    public BlockEdits set(int x, int y, int z, Block block) {
+        if (size == MAX_EDITS)
+            throw new IllegalStateException("A batch cannot hold more than " + MAX_EDITS + " edits");
+        if (size == keys.length) {
+            int capacity = Math.min(MAX_EDITS, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            blocks = Arrays.copyOf(blocks, capacity);
+        }
+        keys[size] = BlockKey.pack(x, y, z);
+        blocks[size] = block;
+        size++;
+        minX = Math.min(minX, x);
+        maxX = Math.max(maxX, x);
+        minZ = Math.min(minZ, z);
+        maxZ = Math.max(maxZ, z);
+        return this;
+    }
+
+    /**
+     * It adds an edit that removes the block at (x,y,z).
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return this batch
+     * @throws IllegalStateException if the batch already has MAX_EDITS edits
+     */
+    public BlockEdits remove(int x, int y, int z) {
+        return set(x, y, z, null);
+    }
+
+    /**
+     * It removes all the edits.
+     */
+    public void clear() {
+        Arrays.fill(blocks, 0, size, null);
+        size = 0;
+        minX = minZ = Integer.MAX_VALUE;
+        maxX = maxZ = Integer.MIN_VALUE;
+    }
+
+    /**
+     * number of edits.
+     *
+     * @return size of the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * It checks whether the batch has no edits.
+     *
+     * @return true if there are no edits
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * location of an edit.
+     *
+     * @param i index of the edit, in the order they were added
+     * @return its BlockKey
+     */
+    public long key(int i) {
+        return keys[i];
+    }
+
+    /**
+     * block of an edit.
+     *
+     * @param i index of the edit, in the order they were added
+     * @return the block to store, or null if the edit removes the block
+     */
+    public Block block(int i) {
+        return blocks[i];
+    }
+
+    /**
+     * smallest x coordinate of the edits (Integer.MAX_VALUE if there are none).
+     *
+     * @return minimum x
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * smallest z coordinate of the edits (Integer.MAX_VALUE if there are none).
+     *
+     * @return minimum z
+     */
+    public int getMinZ() {
+        return minZ;
+    }
+
+    /**
+     * largest x coordinate of the edits (Integer.MIN_VALUE if there are none).
+     *
+     * @return maximum x
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * largest z coordinate of the edits (Integer.MIN_VALUE if there are none).
+     *
+     * @return maximum z
+     */
+    public int getMaxZ() {
+        return maxZ;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+/**
+ * Encodes the integer coordinates of a block in a single long, so that block positions can be used as keys
+ * without creating Location objects.
+ * <p>
+ * Layout, from the most to the least significant bit: 26 bits for x, 26 bits for z and 12 bits for y,
+ * all of them in two's complement. Worlds are far smaller than the 2^25 limit of x and z, and y ranges from 0 to 255.
+ */
+public final class BlockKey {
+    /**
+     * bits used by the y coordinate.
+     */
+    private static final int Y_BITS = 12;
+    /**
+     * bits used by the x and z coordinates.
+     */
+    private static final int XZ_BITS = 26;
+    /**
+     * mask for the y coordinate.
+     */
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+    /**
+     * mask for the x and z coordinates.
+     */
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+
+    /**
+     * Utility class, it cannot be instantiated.
+     */
+    private BlockKey() {
+    }
+
+    /**
+     * It packs the coordinates of a block.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return key of the block
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) x << (XZ_BITS + Y_BITS)) | ((z & XZ_MASK) << Y_BITS) | (y & Y_MASK);
+    }
+
+    /**
+     * It extracts the x coordinate from a key.
+     *
+     * @param key block key
+     * @return x coordinate
+     */
+    public static int x(long key) {
+        return (int) (key >> (XZ_BITS + Y_BITS));
+    }
+
+    /**
+     * It extracts the y coordinate from a key.
+     *
+     * @param key block key
+     * @return y coordinate
+     */
+    public static int y(long key) {
+        return (int) (key << (64 - Y_BITS) >> (64 - Y_BITS));
+    }
+
+    /**
+     * It extracts the z coordinate from a key.
+     *
+     * @param key block key
+     * @return z coordinate
+     */
+    public static int z(long key) {
+        return (int) (key << (64 - XZ_BITS - Y_BITS) >> (64 - XZ_BITS));
+    }
+
+    /**
+     * It returns the key of the block displaced (dx,dy,dz) from the given one.
+     *
+     * @param key block key
+     * @param dx  displacement in the x axis
+     * @param dy  displacement in the y axis
+     * @param dz  displacement in the z axis
+     * @return key of the displaced block
+     */
+    public static long offset(long key, int dx, int dy, int dz) {
+        return pack(x(key) + dx, y(key) + dy, z(key) + dz);
+    }
+}
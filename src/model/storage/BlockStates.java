@@ -0,0 +1,84 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+import model.Material;
+import model.SolidBlock;
+import model.exceptions.StackSizeException;
+import model.exceptions.WrongMaterialException;
+
+/**
+ * Shared solid blocks, one per material and drop configuration: without drops, or dropping one item of their own
+ * material, which are the only two states the generation of a world creates.
+ * <p>
+ * The blocks are created once and shared by every world, so they must never be modified. Chunk sections store
+ * them in their palettes as they are, instead of taking a private copy, and find them by identity; the store
+ * only hands them out to the world, which returns copies of them (see World.getBlockAt()), so a block that has
+ * to change its state is always a copy.
+ */
+public final class BlockStates {
+    /**
+     * shared blocks by ordinal of their material: [0] without drops, [1] dropping one item of their material;
+     * null for materials that are not solid blocks.
+     */
+    private static final SolidBlock[][] SOLID = new SolidBlock[Material.values().length][];
+
+    static {
+        for (Material material : Material.values())
+            if (material.isBlock() && !material.isLiquid())
+                try {
+                    SolidBlock dropping = new SolidBlock(material);
+                    dropping.setDrops(material, 1);
+                    SOLID[material.ordinal()] = new SolidBlock[]{new SolidBlock(material), dropping};
+                } catch (WrongMaterialException | StackSizeException e) {
+                    // the material has no shared blocks
+                }
+    }
+
+    private BlockStates() {
+    }
+
+    /**
+     * It returns the shared solid block of a material.
+     *
+     * @param type  material of the block
+     * @param drops whether the block drops one item of its material
+     * @return the shared block, which must not be modified
+     * @throws WrongMaterialException if the material is not a solid block material
+     */
+    public static SolidBlock solid(Material type, boolean drops) throws WrongMaterialException {
+        SolidBlock[] states = SOLID[type.ordinal()];
+        if (states == null)
+            throw new WrongMaterialException(type);
+        return states[drops ? 1 : 0];
+    }
+
+    /**
+     * It checks whether a block is one of the shared blocks.
+     *
+     * @param block a block
+     * @return true if it is shared, so it is never modified
+     */
+    static boolean isShared(Block block) {
+        SolidBlock[] states = SOLID[block.getType().ordinal()];
+        return states != null && (states[0] == block || states[1] == block);
+    }
+
+    /**
+     * It returns the shared block with the same state as a solid block, if there is one.
+     *
+     * @param block a solid block
+     * @return the shared block or the given block if its state is not shared
+     */
+    static Block shared(SolidBlock block) {
+        SolidBlock[] states = SOLID[block.getType().ordinal()];
+        if (states == null)
+            return block;
+        for (SolidBlock state : states)
+            if (ChunkSection.sameState(state, block))
+                return state;
+        return block;
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A column of 16x16 blocks in the (x,z) plane and 256 blocks high, divided in sixteen sections
+ * of 16x16x16 blocks. Sections that contain only air are not allocated.
+ * The chunk also keeps the height of the terrain surface of each of its columns; heights are integers, stored
+ * as shorts. The highest block of a column below a given height is found with the occupancy masks of the
+ * sections (see topBelow()), without looking at the blocks.
+ */
+public class Chunk {
+    /**
+     * number of blocks along the x and z axes of a chunk.
+     */
+    public static final int SIZE = ChunkSection.SIZE;
+    /**
+     * number of blocks along the y axis of a chunk.
+     */
+    public static final int HEIGHT = 256;
+    /**
+     * number of sections in a chunk.
+     */
+    static final int SECTIONS = HEIGHT / ChunkSection.SIZE;
+
+    /**
+     * sections of the chunk, from bottom to top; null if the section is all air.
+     */
+    private final ChunkSection[] sections;
+    /**
+     * number of blocks stored in the chunk.
+     */
+    private int blockCount;
+    /**
+     * height of the terrain surface of each column, indexed by [z * SIZE + x].
+     */
+    private final short[] heights;
+    /**
+     * number of changes made to the blocks of the chunk, so readers can tell whether it changed since they last
+     * looked at it.
+     */
+    private int modifications;
+    /**
+     * memory of the voxels of the sections, or null if they are kept in the heap.
+     */
+    private final VoxelMemory memory;
+    /**
+     * whether the chunk has changed since it was created, read or saved by a ChunkPager.
+     */
+    private boolean dirty;
+    /**
+     * reference bit of the clock of a ChunkPager: whether the chunk has been accessed since the hand of the clock
+     * last went past it.
+     */
+    boolean referenced;
+
+    /**
+     * It creates an empty chunk.
+     */
+    public Chunk() {
+        this(null);
+    }
+
+    /**
+     * It creates an empty chunk whose sections keep their voxels in the given memory.
+     *
+     * @param memory off-heap memory, or null to keep the voxels in the heap
+     */
+    Chunk(VoxelMemory memory) {
+        this.memory = memory;
+        sections = new ChunkSection[SECTIONS];
+        heights = new short[SIZE * SIZE];
+    }
+
+    /**
+     * It returns the block at the given local coordinates.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y height (0-255)
+     * @param z local z coordinate (0-15)
+     * @return the block or null if there is none
+     */
+    public Block get(int x, int y, int z) {
+        ChunkSection section = sections[y >> 4];
+        return (section == null) ? null : section.get(ChunkSection.index(x, y & 15, z));
+    }
+
+    /**
+     * It checks whether there is a block at the given local coordinates.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y height (0-255)
+     * @param z local z coordinate (0-15)
+     * @return true if there is a block
+     */
+    public boolean contains(int x, int y, int z) {
+        ChunkSection section = sections[y >> 4];
+        return section != null && section.contains(ChunkSection.index(x, y & 15, z));
+    }
+
+    /**
+     * It stores a block at the given local coordinates; a null block removes the one stored there.
+     *
+     * @param x     local x coordinate (0-15)
+     * @param y     height (0-255)
+     * @param z     local z coordinate (0-15)
+     * @param block block to store or null
+     * @return the previous block or null if there was none
+     */
+    public Block set(int x, int y, int z, Block block) {
+        int s = y >> 4;
+        ChunkSection section = sections[s];
+        if (section == null) {
+            if (block == null)
+                return null;
+            section = sections[s] = new ChunkSection(memory);
+        }
+        Block old = section.set(ChunkSection.index(x, y & 15, z), block);
+        modifications++;
+        dirty = true;
+        if (section.getBlockCount() == 0) {
+            section.release();
+            sections[s] = null;
+        }
+        if (old == null && block != null) blockCount++;
+        else if (old != null && block == null) blockCount--;
+        return old;
+    }
+
+    /**
+     * It changes the blocks of a row along the z axis: it stores a block where there is already one or, if the
+     * block is null, removes them.
+     *
+     * @param x     local x coordinate (0-15)
+     * @param y     height (0-255)
+     * @param minZ  first local z coordinate of the row (0-15)
+     * @param maxZ  last local z coordinate of the row (0-15)
+     * @param block block to store or null
+     * @return number of blocks changed
+     */
+    public int replaceRow(int x, int y, int minZ, int maxZ, Block block) {
+        int s = y >> 4;
+        ChunkSection section = sections[s];
+        if (section == null)
+            return 0;
+        int replaced = section.replaceRow(x, y & 15, minZ, maxZ, block);
+        if (replaced > 0) {
+            modifications++;
+            dirty = true;
+        }
+        if (block == null) {
+            blockCount -= replaced;
+            if (section.getBlockCount() == 0) {
+                section.release();
+                sections[s] = null;
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * number of changes made to the blocks of the chunk since it was created. It only grows, so a reader that
+     * keeps it knows whether the blocks may have changed.
+     *
+     * @return modification count
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
+    /**
+     * number of blocks stored in the chunk.
+     *
+     * @return block count
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * It returns the height of the terrain surface of a column.
+     *
+     * @param x local x coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     * @return the y coordinate of the surface
+     */
+    public double getHeight(int x, int z) {
+        return heights[(z << 4) | x];
+    }
+
+    /**
+     * It sets the height of the terrain surface of a column.
+     *
+     * @param x local x coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     * @param y the y coordinate of the surface
+     */
+    public void setHeight(int x, int z, double y) {
+        heights[(z << 4) | x] = (short) Math.floor(y);
+        dirty = true;
+    }
+
+    /**
+     * It tells whether the chunk has changed since it was created, read or marked as saved.
+     *
+     * @return true if its blocks or its heights have changed
+     */
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * It marks the chunk as saved, so it is not dirty until it changes again.
+     */
+    void clean() {
+        dirty = false;
+    }
+
+    /**
+     * It finds the highest block of a column below a given height.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y height; only the blocks below it are considered
+     * @param z local z coordinate (0-15)
+     * @return the height of the block, or -1 if there is none
+     */
+    public int topBelow(int x, int y, int z) {
+        y = Math.min(y, HEIGHT);
+        for (int s = (y - 1) >> 4; s >= 0; s--) {
+            ChunkSection section = sections[s];
+            if (section == null)
+                continue;
+            int mask = section.column(x, z);
+            int limit = y - (s << 4);
+            if (limit < ChunkSection.SIZE)
+                mask &= (1 << limit) - 1;
+            if (mask != 0)
+                return (s << 4) + 31 - Integer.numberOfLeadingZeros(mask);
+        }
+        return -1;
+    }
+
+    /**
+     * It gives the off-heap voxels of its sections back to their memory. The chunk must not be used afterwards.
+     */
+    void release() {
+        for (ChunkSection section : sections)
+            if (section != null)
+                section.release();
+    }
+
+    /**
+     * number of bytes written by writeTo().
+     *
+     * @return size of the chunk in a snapshot
+     */
+    int serializedSize() {
+        int size = SIZE * SIZE * 2 + 2;
+        for (ChunkSection section : sections)
+            if (section != null)
+                size += section.serializedSize();
+        return size;
+    }
+
+    /**
+     * It writes the chunk: the heights of its columns, a mask with one bit per allocated section and those sections.
+     *
+     * @param buffer buffer to write to
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.asShortBuffer().put(heights);
+        buffer.position(buffer.position() + heights.length * 2);
+        int mask = 0;
+        for (int s = 0; s < SECTIONS; s++)
+            if (sections[s] != null)
+                mask |= 1 << s;
+        buffer.putShort((short) mask);
+        for (ChunkSection section : sections)
+            if (section != null)
+                section.writeTo(buffer);
+    }
+
+    /**
+     * It reads a chunk written by writeTo().
+     *
+     * @param buffer buffer to read from
+     * @param memory memory for the voxels of the sections, or null to keep them in the heap
+     * @return the chunk
+     * @throws IllegalArgumentException if the data is not a valid chunk
+     */
+    static Chunk readFrom(ByteBuffer buffer, VoxelMemory memory) {
+        Chunk chunk = new Chunk(memory);
+        buffer.asShortBuffer().get(chunk.heights);
+        buffer.position(buffer.position() + chunk.heights.length * 2);
+        int mask = buffer.getShort() & 0xFFFF;
+        for (int s = 0; s < SECTIONS; s++) {
+            if ((mask & (1 << s)) != 0) {
+                ChunkSection section;
+                try {
+                    section = ChunkSection.readFrom(buffer, memory);
+                } catch (RuntimeException ex) {
+                    chunk.release();
+                    throw ex;
+                }
+                if (section.getBlockCount() > 0) {
+                    chunk.sections[s] = section;
+                    chunk.blockCount += section.getBlockCount();
+                } else {
+                    section.release();
+                }
+            }
+        }
+        return chunk;
+    }
+}
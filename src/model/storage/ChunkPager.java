@@ -0,0 +1,485 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Working set of the chunks of a {@link ChunkStore}: it keeps at most a given number of chunks (its budget)
+ * in memory, and the rest in a region file.
+ * <p>
+ * The chunks in memory are kept in a clock: every access to a chunk sets its reference bit and, when a chunk has to
+ * be evicted, the hand of the clock clears the bits it finds set until it reaches a chunk that has not been accessed
+ * since the last turn, which is written to the region file (unless the copy in the file is still valid) and removed
+ * from the store. The next access to it reads it back (a page-in).
+ * <p>
+ * Chunks are written to the region file as ChunkStore.writeTo() writes them, in whole sectors; a chunk that grows
+ * beyond its sectors is moved to the end of the file. The file is scratch space: it is emptied when paging starts
+ * and deleted when the pager is closed.
+ * <p>
+ * A chunk taken from the store must not be kept while other chunks are accessed, because it may be evicted.
+ * The pager is not thread safe, so a store with a pager must only be used by one thread at a time.
+ */
+public class ChunkPager implements Closeable {
+    /**
+     * smallest budget: the chunks a single operation works with at the same time.
+     */
+    public static final int MIN_BUDGET = 4;
+    /**
+     * size of the sectors of the region file.
+     */
+    private static final int SECTOR = 4096;
+
+    /**
+     * Place of a chunk in the region file.
+     */
+    private static final class Record {
+        /**
+         * position and size of the chunk in the file.
+         */
+        long offset;
+        /**
+         * number of bytes written, and number of bytes reserved for the chunk.
+         */
+        int length, capacity;
+        /**
+         * number of blocks of the chunk when it was evicted.
+         */
+        int blockCount;
+        /**
+         * whether the chunk is only in the file (it is not in the store).
+         */
+        boolean paged;
+    }
+
+    /**
+     * store whose chunks are paged.
+     */
+    private final ChunkStore store;
+    /**
+     * region file.
+     */
+    private final FileChannel file;
+    /**
+     * chunks written to the region file, by chunk key (see ChunkStore.chunkKey()).
+     */
+    private final LongMap<Record> records = new LongMap<>();
+    /**
+     * end of the used part of the region file.
+     */
+    private long fileEnd;
+    /**
+     * chunks in memory, in the positions of the clock, and their keys.
+     */
+    private Chunk[] clock;
+    private long[] keys;
+    /**
+     * number of chunks in memory and position of the hand of the clock.
+     */
+    private int resident, hand;
+    /**
+     * maximum number of chunks in memory.
+     */
+    private int budget;
+    /**
+     * number of chunks and blocks that are only in the file.
+     */
+    private int pagedChunks;
+    private long pagedBlocks;
+    /**
+     * statistics: accesses to chunks in memory, page-ins, evictions and chunks written.
+     */
+    private long hits, pageIns, evictions, writes;
+    /**
+     * statistics: total and maximum time spent reading chunks back, in nanoseconds.
+     */
+    private long pageInNanos, maxPageInNanos;
+
+    /**
+     * It creates the pager of a store, with an empty region file.
+     *
+     * @param store  store
+     * @param path   region file, which is created or emptied
+     * @param budget maximum number of chunks in memory
+     * @throws IOException              if the file cannot be opened
+     * @throws IllegalArgumentException if the budget is smaller than MIN_BUDGET
+     */
+    ChunkPager(ChunkStore store, Path path, int budget) throws IOException {
+        checkBudget(budget);
+        this.store = store;
+        this.budget = budget;
+        clock = new Chunk[budget];
+        keys = new long[budget];
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * It checks a budget.
+     */
+    private static void checkBudget(int budget) {
+        if (budget < MIN_BUDGET)
+            throw new IllegalArgumentException("The budget must be at least " + MIN_BUDGET + " chunks");
+    }
+
+    /**
+     * It records an access to a chunk in memory.
+     *
+     * @param chunk chunk
+     */
+    void hit(Chunk chunk) {
+        chunk.referenced = true;
+        hits++;
+    }
+
+    /**
+     * It checks whether a chunk is only in the region file.
+     *
+     * @param key chunk key
+     * @return true if the chunk has been evicted
+     */
+    boolean isPaged(long key) {
+        Record record = records.get(key);
+        return record != null && record.paged;
+    }
+
+    /**
+     * It reads back an evicted chunk. It must then be stored and admitted.
+     *
+     * @param key    chunk key
+     * @param memory memory for the voxels of the chunk, or null to keep them in the heap
+     * @return the chunk
+     */
+    Chunk pageIn(long key, VoxelMemory memory) {
+        long start = System.nanoTime();
+        Record record = records.get(key);
+        ByteBuffer buffer = ByteBuffer.allocate(record.length);
+        read(record, buffer);
+        buffer.flip();
+        Chunk chunk = Chunk.readFrom(buffer, memory);
+        record.paged = false;
+        pagedChunks--;
+        pagedBlocks -= record.blockCount;
+        pageIns++;
+        long elapsed = System.nanoTime() - start;
+        pageInNanos += elapsed;
+        maxPageInNanos = Math.max(maxPageInNanos, elapsed);
+        return chunk;
+    }
+
+    /**
+     * It adds a chunk that has just been stored to the clock, evicting another one first if the budget is full.
+     *
+     * @param key   chunk key
+     * @param chunk chunk
+     */
+    void admit(long key, Chunk chunk) {
+        int slot;
+        if (resident < budget) {
+            slot = resident++;
+        } else {
+            slot = victim();
+            evict(slot);
+        }
+        clock[slot] = chunk;
+        keys[slot] = key;
+        chunk.referenced = true;
+    }
+
+    /**
+     * It moves the hand of the clock to the next chunk that has not been accessed since the last turn.
+     *
+     * @return position of the chunk in the clock
+     */
+    private int victim() {
+        while (true) {
+            if (hand >= resident)
+                hand = 0;
+            Chunk chunk = clock[hand];
+            if (!chunk.referenced)
+                return hand++;
+            chunk.referenced = false;
+            hand++;
+        }
+    }
+
+    /**
+     * It evicts the chunk at a position of the clock, writing it if the file does not have it yet.
+     * The position is left for the caller to fill.
+     *
+     * @param slot position in the clock
+     */
+    private void evict(int slot) {
+        Chunk chunk = clock[slot];
+        long key = keys[slot];
+        Record record = records.get(key);
+        if (record == null || chunk.isDirty())
+            record = write(key, chunk);
+        record.paged = true;
+        record.blockCount = chunk.getBlockCount();
+        pagedChunks++;
+        pagedBlocks += record.blockCount;
+        store.evicted(key);
+        chunk.release();
+        clock[slot] = null;
+        evictions++;
+    }
+
+    /**
+     * It writes a chunk to the region file.
+     */
+    private Record write(long key, Chunk chunk) {
+        int length = chunk.serializedSize();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        chunk.writeTo(buffer);
+        buffer.flip();
+        Record record = records.get(key);
+        if (record == null) {
+            record = new Record();
+            records.put(key, record);
+        }
+        if (length > record.capacity) {
+            record.offset = fileEnd;
+            record.capacity = (length + SECTOR - 1) / SECTOR * SECTOR;
+            fileEnd += record.capacity;
+        }
+        record.length = length;
+        try {
+            while (buffer.hasRemaining())
+                file.write(buffer, record.offset + buffer.position());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        chunk.clean();
+        writes++;
+        return record;
+    }
+
+    /**
+     * It reads the bytes of a chunk from the region file.
+     */
+    private void read(Record record, ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            while (buffer.position() - start < record.length)
+                if (file.read(buffer, record.offset + buffer.position() - start) < 0)
+                    throw new IOException("The region file is shorter than expected");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * number of bytes of an evicted chunk in a snapshot (see ChunkStore.serializedSize()).
+     *
+     * @param key chunk key of an evicted chunk
+     * @return size of the chunk
+     */
+    int serializedSize(long key) {
+        return records.get(key).length;
+    }
+
+    /**
+     * It copies an evicted chunk to a snapshot (see ChunkStore.writeTo()).
+     *
+     * @param key    chunk key of an evicted chunk
+     * @param buffer buffer to write to
+     */
+    void writeTo(long key, ByteBuffer buffer) {
+        Record record = records.get(key);
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(bytes.position() + record.length);
+        read(record, bytes);
+        buffer.position(bytes.position());
+    }
+
+    /**
+     * It forgets every chunk, in memory and in the file, as when the store is cleared.
+     * The chunks in memory are released by the store.
+     */
+    void clear() {
+        Arrays.fill(clock, null);
+        resident = hand = 0;
+        records.clear();
+        pagedChunks = 0;
+        pagedBlocks = 0;
+        fileEnd = 0;
+        try {
+            file.truncate(0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * number of blocks of the chunks that are only in the file.
+     *
+     * @return block count
+     */
+    long getPagedBlocks() {
+        return pagedBlocks;
+    }
+
+    /**
+     * It changes the maximum number of chunks in memory, evicting chunks if there are more.
+     *
+     * @param budget new budget
+     * @throws IllegalArgumentException if the budget is smaller than MIN_BUDGET
+     */
+    public void setBudget(int budget) {
+        checkBudget(budget);
+        while (resident > budget) {
+            int slot = victim();
+            evict(slot);
+            resident--;
+            clock[slot] = clock[resident];
+            keys[slot] = keys[resident];
+            clock[resident] = null;
+        }
+        clock = Arrays.copyOf(clock, budget);
+        keys = Arrays.copyOf(keys, budget);
+        this.budget = budget;
+        hand = 0;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return maximum number of chunks in memory
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * number of chunks in memory.
+     *
+     * @return resident chunks
+     */
+    public int getResidentChunks() {
+        return resident;
+    }
+
+    /**
+     * number of chunks that are only in the region file.
+     *
+     * @return evicted chunks
+     */
+    public int getPagedChunks() {
+        return pagedChunks;
+    }
+
+    /**
+     * number of bytes of the region file in use.
+     *
+     * @return size of the file
+     */
+    public long getFileSize() {
+        return fileEnd;
+    }
+
+    /**
+     * number of accesses to chunks that were in memory.
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * number of chunks read back from the region file.
+     *
+     * @return page-ins
+     */
+    public long getPageIns() {
+        return pageIns;
+    }
+
+    /**
+     * number of chunks evicted.
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * number of chunks written to the region file. Chunks evicted without changes since they were read back
+     * are not written again.
+     *
+     * @return writes
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * fraction of the accesses to existing chunks that found them in memory.
+     *
+     * @return hit rate between 0 and 1, or 1 if there have been no accesses
+     */
+    public double getHitRate() {
+        long accesses = hits + pageIns;
+        return (accesses == 0) ? 1 : (double) hits / accesses;
+    }
+
+    /**
+     * average time spent reading a chunk back.
+     *
+     * @return nanoseconds per page-in, 0 if there have been none
+     */
+    public double getAveragePageInNanos() {
+        return (pageIns == 0) ? 0 : (double) pageInNanos / pageIns;
+    }
+
+    /**
+     * longest time spent reading a chunk back.
+     *
+     * @return nanoseconds
+     */
+    public long getMaxPageInNanos() {
+        return maxPageInNanos;
+    }
+
+    /**
+     * It sets the statistics (hits, page-ins, evictions, writes and times) to zero.
+     */
+    public void resetStatistics() {
+        hits = pageIns = evictions = writes = 0;
+        pageInNanos = maxPageInNanos = 0;
+    }
+
+    /**
+     * It closes and deletes the region file. The store must not be used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Creates a string with the budget, the chunks in memory and in the file, and the statistics.
+     *
+     * @return a summary of the pager
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "ChunkPager(budget=%d, resident=%d, paged=%d, file=%d bytes, hits=%d, "
+                        + "pageIns=%d, evictions=%d, writes=%d, hitRate=%.3f, pageIn=%.0f ns avg %d ns max)", budget,
+                resident, pagedChunks, fileEnd, hits, pageIns, evictions, writes, getHitRate(),
+                getAveragePageInNanos(), maxPageInNanos);
+    }
+}
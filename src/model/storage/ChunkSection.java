@@ -0,0 +1,515 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+import model.BlockFactory;
+import model.ItemStack;
+import model.Material;
+import model.SolidBlock;
+import model.exceptions.StackSizeException;
+import model.exceptions.WrongMaterialException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A 16x16x16 cube of voxels stored as indexes into a small palette of block states.
+ * While the palette has at most 16 entries every voxel takes four bits (a nibble);
+ * once it grows beyond that the section is widened to one short per voxel.
+ * Palette entry 0 is always air (null).
+ * The voxels are kept in arrays or, if the section belongs to a store with off-heap storage, in a slot of its
+ * VoxelMemory, which must be given back with release() when the section is discarded.
+ * The section also keeps which voxels of each column are not air, as a 16-bit mask per column, so the highest
+ * block of a column is found without looking at the voxels.
+ */
+class ChunkSection {
+    /**
+     * number of voxels along each axis of a section.
+     */
+    static final int SIZE = 16;
+    /**
+     * number of voxels in a section.
+     */
+    static final int VOLUME = SIZE * SIZE * SIZE;
+    /**
+     * maximum number of palette entries that fit in a nibble.
+     */
+    private static final int NIBBLE_PALETTE = 16;
+
+    /**
+     * block states referenced by this section, entry 0 is air.
+     */
+    private Block[] palette;
+    /**
+     * number of used palette entries.
+     */
+    private int paletteSize;
+    /**
+     * four bits per voxel, used while the palette fits in a nibble.
+     */
+    private byte[] nibbles;
+    /**
+     * sixteen bits per voxel, used once the palette outgrows a nibble.
+     */
+    private short[] shorts;
+    /**
+     * voxels of an off-heap section, as nibbles or shorts (see wideVoxels); null if the section is in the heap.
+     */
+    private ByteBuffer voxels;
+    /**
+     * whether the off-heap voxels are shorts.
+     */
+    private boolean wideVoxels;
+    /**
+     * memory of the off-heap voxels, or null if the section is in the heap.
+     */
+    private final VoxelMemory memory;
+    /**
+     * number of voxels that are not air.
+     */
+    private int blockCount;
+    /**
+     * occupancy of the columns: bit y of columns[(z << 4) | x] is set when the voxel (x,y,z) is not air.
+     */
+    private final short[] columns;
+
+    /**
+     * It creates an empty section (all air) in the heap.
+     */
+    ChunkSection() {
+        this(null);
+    }
+
+    /**
+     * It creates an empty section (all air) whose voxels are allocated in the given memory.
+     *
+     * @param memory off-heap memory, or null to keep the voxels in the heap
+     */
+    ChunkSection(VoxelMemory memory) {
+        this.memory = memory;
+        palette = new Block[4];
+        paletteSize = 1;
+        if (memory == null)
+            nibbles = new byte[VOLUME / 2];
+        else
+            voxels = memory.allocate(VoxelMemory.NIBBLE_SLOT);
+        shorts = null;
+        blockCount = 0;
+        columns = new short[SIZE * SIZE];
+    }
+
+    /**
+     * index of a voxel inside the section.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y local y coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     * @return index between 0 and VOLUME-1
+     */
+    static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    /**
+     * It returns the palette entry stored at the given index.
+     *
+     * @param index voxel index
+     * @return palette entry, 0 meaning air
+     */
+    private int paletteIndex(int index) {
+        if (shorts != null)
+            return shorts[index] & 0xFFFF;
+        if (nibbles == null)
+            return voxelIndex(index);
+        int b = nibbles[index >> 1];
+        return ((index & 1) == 0) ? (b & 0x0F) : ((b >> 4) & 0x0F);
+    }
+
+    /**
+     * It returns the palette entry stored at the given index of the off-heap voxels.
+     *
+     * @param index voxel index
+     * @return palette entry, 0 meaning air
+     */
+    private int voxelIndex(int index) {
+        if (wideVoxels)
+            return voxels.getShort(index << 1) & 0xFFFF;
+        int b = voxels.get(index >> 1);
+        return ((index & 1) == 0) ? (b & 0x0F) : ((b >> 4) & 0x0F);
+    }
+
+    /**
+     * It stores a palette entry at the given index.
+     *
+     * @param index voxel index
+     * @param entry palette entry
+     */
+    private void setPaletteIndex(int index, int entry) {
+        if (shorts != null) {
+            shorts[index] = (short) entry;
+        } else if (nibbles == null) {
+            int i = index >> 1;
+            if (wideVoxels)
+                voxels.putShort(index << 1, (short) entry);
+            else if ((index & 1) == 0)
+                voxels.put(i, (byte) ((voxels.get(i) & 0xF0) | entry));
+            else
+                voxels.put(i, (byte) ((voxels.get(i) & 0x0F) | (entry << 4)));
+        } else {
+            int i = index >> 1;
+            if ((index & 1) == 0)
+                nibbles[i] = (byte) ((nibbles[i] & 0xF0) | entry);
+            else
+                nibbles[i] = (byte) ((nibbles[i] & 0x0F) | (entry << 4));
+        }
+    }
+
+    /**
+     * It returns the block state stored at the given index, shared by every voxel of this section with the same state.
+     *
+     * @param index voxel index
+     * @return the block or null if the voxel is air
+     */
+    Block get(int index) {
+        return palette[paletteIndex(index)];
+    }
+
+    /**
+     * It checks whether there is a block at the given index.
+     *
+     * @param index voxel index
+     * @return true if the voxel is not air.
+     */
+    boolean contains(int index) {
+        return paletteIndex(index) != 0;
+    }
+
+    /**
+     * It stores a block at the given index, a null block meaning air.
+     *
+     * @param index voxel index
+     * @param block block to store
+     * @return the block that was stored there before, or null
+     */
+    Block set(int index, Block block) {
+        int old = paletteIndex(index);
+        int entry = (block == null) ? 0 : paletteEntryFor(block);
+        if (old != entry) {
+            setPaletteIndex(index, entry);
+            if (old == 0) {
+                blockCount++;
+                columns[index & 0xFF] |= 1 << (index >> 8);
+            } else if (entry == 0) {
+                blockCount--;
+                columns[index & 0xFF] &= ~(1 << (index >> 8));
+            }
+        }
+        return palette[old];
+    }
+
+    /**
+     * It changes the voxels of a row along the z axis that are not air: it stores a block in them or, if the
+     * block is null, turns them into air. The palette entry of the block is looked up once, when the first voxel
+     * that is not air is found, so the palette only grows if a voxel is changed.
+     *
+     * @param x     local x coordinate (0-15)
+     * @param y     local y coordinate (0-15)
+     * @param minZ  first local z coordinate of the row
+     * @param maxZ  last local z coordinate of the row
+     * @param block block to store or null
+     * @return number of voxels changed
+     */
+    int replaceRow(int x, int y, int minZ, int maxZ, Block block) {
+        int replaced = 0;
+        int entry = -1;
+        for (int z = minZ; z <= maxZ; z++) {
+            int index = index(x, y, z);
+            int old = paletteIndex(index);
+            if (old == 0)
+                continue;
+            if (entry < 0)
+                entry = (block == null) ? 0 : paletteEntryFor(block);
+            if (old != entry) {
+                setPaletteIndex(index, entry);
+                if (entry == 0) {
+                    blockCount--;
+                    columns[index & 0xFF] &= ~(1 << y);
+                }
+            }
+            replaced++;
+        }
+        return replaced;
+    }
+
+    /**
+     * It returns which voxels of a column are not air.
+     *
+     * @param x local x coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     * @return a mask where bit y is set if the voxel at local height y is not air
+     */
+    int column(int x, int z) {
+        return columns[(z << 4) | x] & 0xFFFF;
+    }
+
+    /**
+     * number of voxels of this section that are not air.
+     *
+     * @return block count
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * It finds the palette entry for the state of the given block, adding a private copy of it
+     * to the palette if this state has not been seen before in this section. Shared blocks (see BlockStates)
+     * are never modified, so they are added as they are and found again by identity.
+     *
+     * @param block block whose state we are looking for
+     * @return palette entry
+     */
+    private int paletteEntryFor(Block block) {
+        for (int i = 1; i < paletteSize; i++)
+            if (palette[i] == block)
+                return i;
+        boolean shared = BlockStates.isShared(block);
+        for (int i = 1; i < paletteSize; i++)
+            if (sameState(palette[i], block)) {
+                if (shared)
+                    palette[i] = block;
+                return i;
+            }
+        if (paletteSize == palette.length)
+            palette = Arrays.copyOf(palette, palette.length * 2);
+        if (paletteSize == NIBBLE_PALETTE && shorts == null && !wideVoxels)
+            widen();
+        palette[paletteSize] = shared ? block : block.clone();
+        return paletteSize++;
+    }
+
+    /**
+     * It converts the section from four to sixteen bits per voxel.
+     */
+    private void widen() {
+        if (memory != null) {
+            ByteBuffer wide = memory.allocate(VoxelMemory.SHORT_SLOT);
+            for (int i = 0; i < VOLUME; i++)
+                wide.putShort(i << 1, (short) paletteIndex(i));
+            memory.free(voxels);
+            voxels = wide;
+            wideVoxels = true;
+            return;
+        }
+        short[] wide = new short[VOLUME];
+        for (int i = 0; i < VOLUME; i++)
+            wide[i] = (short) paletteIndex(i);
+        shorts = wide;
+        nibbles = null;
+    }
+
+    /**
+     * It gives the off-heap voxels back to their memory. The section must not be used afterwards.
+     */
+    void release() {
+        if (voxels != null) {
+            memory.free(voxels);
+            voxels = null;
+        }
+    }
+
+    /**
+     * Two blocks have the same state when they are of the same class, are made of the same material
+     * and, for solid blocks, drop the same items.
+     *
+     * @param a a block
+     * @param b another block
+     * @return true if both blocks can share a palette entry
+     */
+    static boolean sameState(Block a, Block b) {
+        if (a.getClass() != b.getClass() || a.getType() != b.getType())
+            return false;
+        if (a instanceof SolidBlock) {
+            ItemStack dropsA = ((SolidBlock) a).getDrops();
+            ItemStack dropsB = ((SolidBlock) b).getDrops();
+            return (dropsA == null) ? dropsB == null : dropsA.equals(dropsB);
+        }
+        return true;
+    }
+
+    /**
+     * number of bytes written by writeTo().
+     *
+     * @return size of the section in a snapshot
+     */
+    int serializedSize() {
+        int size = 2 + 1 + ((shorts != null || wideVoxels) ? VOLUME * 2 : VOLUME / 2);
+        for (int i = 1; i < paletteSize; i++)
+            size += blockSize(palette[i]);
+        return size;
+    }
+
+    /**
+     * It writes the section: its palette (without the air entry) and then the palette index of every voxel,
+     * as nibbles or shorts.
+     *
+     * @param buffer buffer to write to
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putShort((short) paletteSize);
+        for (int i = 1; i < paletteSize; i++)
+            writeBlock(buffer, palette[i]);
+        if (shorts != null) {
+            buffer.put((byte) 1);
+            buffer.asShortBuffer().put(shorts);
+            buffer.position(buffer.position() + VOLUME * 2);
+        } else if (wideVoxels) {
+            buffer.put((byte) 1);
+            for (int i = 0; i < VOLUME; i++)
+                buffer.putShort(voxels.getShort(i << 1));
+        } else {
+            buffer.put((byte) 0);
+            if (nibbles != null)
+                buffer.put(nibbles);
+            else
+                buffer.put((ByteBuffer) voxels.duplicate().clear());
+        }
+    }
+
+    /**
+     * It reads a section written by writeTo(). If the data is not valid, the voxels allocated for the section are
+     * given back before throwing.
+     *
+     * @param buffer buffer to read from
+     * @param memory memory for the voxels of the section, or null to keep them in the heap
+     * @return the section
+     * @throws IllegalArgumentException if the data is not a valid section
+     */
+    static ChunkSection readFrom(ByteBuffer buffer, VoxelMemory memory) {
+        ChunkSection section = new ChunkSection(memory);
+        try {
+            int size = buffer.getShort() & 0xFFFF;
+            if (size < 1)
+                throw new IllegalArgumentException("Wrong palette size " + size);
+            section.palette = new Block[Math.max(4, size)];
+            section.paletteSize = size;
+            for (int i = 1; i < size; i++)
+                section.palette[i] = readBlock(buffer);
+            if (buffer.get() != 0) {
+                if (memory != null) {
+                    section.widen();
+                    for (int i = 0; i < VOLUME; i++)
+                        section.voxels.putShort(i << 1, buffer.getShort());
+                } else {
+                    section.nibbles = null;
+                    section.shorts = new short[VOLUME];
+                    buffer.asShortBuffer().get(section.shorts);
+                    buffer.position(buffer.position() + VOLUME * 2);
+                }
+            } else {
+                if (size > NIBBLE_PALETTE)
+                    throw new IllegalArgumentException("Wrong palette size " + size);
+                if (memory != null) {
+                    ByteBuffer data = buffer.duplicate();
+                    data.limit(data.position() + VOLUME / 2);
+                    section.voxels.duplicate().put(data);
+                    buffer.position(data.limit());
+                } else {
+                    buffer.get(section.nibbles);
+                }
+            }
+            for (int i = 0; i < VOLUME; i++) {
+                int entry = section.paletteIndex(i);
+                if (entry >= size)
+                    throw new IllegalArgumentException("Wrong palette entry " + entry);
+                if (entry != 0) {
+                    section.blockCount++;
+                    section.columns[i & 0xFF] |= 1 << (i >> 8);
+                }
+            }
+        } catch (RuntimeException ex) {
+            section.release();
+            throw ex;
+        }
+        return section;
+    }
+
+    /**
+     * number of bytes written by writeBlock().
+     *
+     * @param block block
+     * @return size of the block in a snapshot
+     */
+    static int blockSize(Block block) {
+        if (block instanceof SolidBlock)
+            return (((SolidBlock) block).getDrops() == null) ? 3 : 8;
+        return 2;
+    }
+
+    /**
+     * It writes a block: its kind (0 solid, 1 liquid), its material and, for solid blocks,
+     * whether it drops items and which ones.
+     *
+     * @param buffer buffer to write to
+     * @param block  block
+     */
+    static void writeBlock(ByteBuffer buffer, Block block) {
+        if (block instanceof SolidBlock) {
+            buffer.put((byte) 0);
+            buffer.put((byte) block.getType().ordinal());
+            ItemStack drops = ((SolidBlock) block).getDrops();
+            if (drops == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                buffer.put((byte) drops.getType().ordinal());
+                buffer.putInt(drops.getAmount());
+            }
+        } else {
+            buffer.put((byte) 1);
+            buffer.put((byte) block.getType().ordinal());
+        }
+    }
+
+    /**
+     * It reads a block written by writeBlock().
+     *
+     * @param buffer buffer to read from
+     * @return the block, or the shared block of its state if there is one (see BlockStates)
+     * @throws IllegalArgumentException if the data is not a valid block
+     */
+    static Block readBlock(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        Material material = material(buffer.get() & 0xFF);
+        try {
+            if (kind == 1 && material.isLiquid())
+                return BlockFactory.createBlock(material);
+            if (kind != 0)
+                throw new IllegalArgumentException("Wrong block kind " + kind);
+            SolidBlock block = new SolidBlock(material);
+            if (buffer.get() != 0) {
+                Material drops = material(buffer.get() & 0xFF);
+                block.setDrops(drops, buffer.getInt());
+            }
+            return BlockStates.shared(block);
+        } catch (WrongMaterialException | StackSizeException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * It returns the material with the given ordinal.
+     *
+     * @param ordinal ordinal of the material
+     * @return the material
+     * @throws IllegalArgumentException if there is no such material
+     */
+    static Material material(int ordinal) {
+        Material[] materials = Material.values();
+        if (ordinal < 0 || ordinal >= materials.length)
+            throw new IllegalArgumentException("Wrong material " + ordinal);
+        return materials[ordinal];
+    }
+}
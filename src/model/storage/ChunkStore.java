@@ -0,0 +1,764 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+import model.StorageMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Block storage of a world, organized as a grid of chunks that covers the (x,z) plane of the world.
+ * Each chunk keeps its blocks as palette indexes (see {@link ChunkSection}) instead of one Block object
+ * and one map entry per location, so memory use grows with the variety of blocks rather than with their number.
+ * <p>
+ * Coordinates are the integer block coordinates of the world; the chunk grid starts at the
+ * north-west corner of the world, so (negativeWorldLimit, *, negativeWorldLimit) is the first block of chunk (0,0).
+ * Chunks are grouped in regions of 32x32 chunks that are only allocated when one of their chunks is, so a store
+ * for a huge world that is barely used stays small.
+ * <p>
+ * A store can have a {@link Populator}; then every chunk is populated the first time it is accessed, and the world
+ * is generated lazily. Such a store must only be used by one thread at a time.
+ * Otherwise, different chunks can be written concurrently by different threads; a single chunk cannot.
+ * <p>
+ * With {@link StorageMode#OFF_HEAP} storage the voxels of the sections are kept outside the Java heap, in a
+ * VoxelMemory of the store, and the heap only holds the chunks, their palettes and their column masks.
+ * That memory is given back by release(), after which the store must not be used.
+ * <p>
+ * A store can also keep only a bounded working set of chunks in memory and the rest in a region file (see
+ * enablePaging() and {@link ChunkPager}). Evicted chunks are read back when they are accessed again, so paging is
+ * transparent, but such a store must only be used by one thread at a time.
+ */
+public class ChunkStore {
+    /**
+     * It fills the chunks of a store the first time they are accessed.
+     */
+    public interface Populator {
+        /**
+         * It generates the blocks of a chunk, storing them with ChunkStore.put().
+         * When it is called the chunk already exists, so it can be accessed without being populated again.
+         *
+         * @param chunkX chunk x coordinate, from 0 (north-west corner of the world)
+         * @param chunkZ chunk z coordinate, from 0 (north-west corner of the world)
+         */
+        void populate(int chunkX, int chunkZ);
+    }
+
+    /**
+     * It is told about every block changed by fill() or apply().
+     */
+    public interface EditListener {
+        /**
+         * It is called after the block at (x,y,z) has been changed.
+         *
+         * @param x        x coordinate
+         * @param y        y coordinate
+         * @param z        z coordinate
+         * @param previous block that was there, or null
+         * @param block    block stored, or null if it has been removed
+         */
+        void edited(int x, int y, int z, Block previous, Block block);
+    }
+
+    /**
+     * number of chunks along the x and z axes of a region (a power of two).
+     */
+    private static final int REGION_SIZE = 32;
+
+    /**
+     * value of the negative limit of the world in the x and z axes.
+     */
+    private final int negativeWorldLimit;
+    /**
+     * size of the world in the (x,z) plane.
+     */
+    private final int worldSize;
+    /**
+     * number of chunks along the x and z axes.
+     */
+    private final int chunksPerSide;
+    /**
+     * number of regions along the x and z axes.
+     */
+    private final int regionsPerSide;
+    /**
+     * regions of the world, indexed by [regionX * regionsPerSide + regionZ]; null if none of their chunks exists.
+     * The chunks of a region are indexed by [(chunkX % REGION_SIZE) * REGION_SIZE + chunkZ % REGION_SIZE].
+     */
+    private final Chunk[][] regions;
+    /**
+     * generator of the chunks that have not been accessed yet, or null.
+     */
+    private Populator populator;
+    /**
+     * memory of the voxels of an off-heap store, or null if they are kept in the heap.
+     */
+    private final VoxelMemory memory;
+    /**
+     * pager of the chunks, or null if every chunk is kept in memory.
+     */
+    private ChunkPager pager;
+
+    /**
+     * It creates an empty store for a world of size worldSize*worldSize in the plane (x,z), kept in the heap.
+     *
+     * @param worldSize size of the world
+     */
+    public ChunkStore(int worldSize) {
+        this(worldSize, StorageMode.HEAP);
+    }
+
+    /**
+     * It creates an empty store for a world of size worldSize*worldSize in the plane (x,z).
+     *
+     * @param worldSize size of the world
+     * @param storage   where the voxels of the chunks are kept
+     */
+    public ChunkStore(int worldSize, StorageMode storage) {
+        this.worldSize = worldSize;
+        memory = (storage == StorageMode.OFF_HEAP) ? new VoxelMemory() : null;
+        int positiveWorldLimit = worldSize / 2;
+        negativeWorldLimit = (worldSize % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+        chunksPerSide = (worldSize + Chunk.SIZE - 1) / Chunk.SIZE;
+        regionsPerSide = (chunksPerSide + REGION_SIZE - 1) / REGION_SIZE;
+        regions = new Chunk[regionsPerSide * regionsPerSide][];
+    }
+
+    /**
+     * It sets the populator of the chunks that have not been accessed yet.
+     *
+     * @param populator populator, or null to leave new chunks empty
+     */
+    public void setPopulator(Populator populator) {
+        this.populator = populator;
+    }
+
+    /**
+     * It checks that the coordinates are inside the world.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return true if the block (x,y,z) can be stored.
+     */
+    public boolean inBounds(int x, int y, int z) {
+        int ix = x - negativeWorldLimit;
+        int iz = z - negativeWorldLimit;
+        return ix >= 0 && ix < worldSize && iz >= 0 && iz < worldSize && y >= 0 && y < Chunk.HEIGHT;
+    }
+
+    /**
+     * It returns the region with the given index, creating it if needed.
+     * Two threads can create chunks of the same region at the same time, so the creation is synchronized.
+     *
+     * @param r      index of the region
+     * @param create whether to create the region if it does not exist
+     * @return the chunks of the region, or null if it does not exist and create is false
+     */
+    private Chunk[] region(int r, boolean create) {
+        Chunk[] region = regions[r];
+        if (region == null && create) {
+            synchronized (regions) {
+                region = regions[r];
+                if (region == null)
+                    region = regions[r] = new Chunk[REGION_SIZE * REGION_SIZE];
+            }
+        }
+        return region;
+    }
+
+    /**
+     * It returns the chunk that holds the column (x,z), creating it if needed.
+     * If the store has a populator, a chunk that does not exist is always created and populated.
+     *
+     * @param x      x coordinate
+     * @param z      z coordinate
+     * @param create whether to create the chunk if it does not exist
+     * @return the chunk or null if it does not exist and create is false
+     */
+    private Chunk chunkAt(int x, int z, boolean create) {
+        int chunkX = (x - negativeWorldLimit) >> 4;
+        int chunkZ = (z - negativeWorldLimit) >> 4;
+        create |= populator != null;
+        Chunk[] region = region((chunkX / REGION_SIZE) * regionsPerSide + chunkZ / REGION_SIZE, create);
+        if (region == null)
+            return null;
+        int i = (chunkX % REGION_SIZE) * REGION_SIZE + chunkZ % REGION_SIZE;
+        Chunk chunk = region[i];
+        if (pager != null)
+            return pagedChunkAt(region, i, chunkX, chunkZ, chunk, create);
+        if (chunk == null && create) {
+            chunk = region[i] = new Chunk(memory);
+            if (populator != null)
+                populator.populate(chunkX, chunkZ);
+        }
+        return chunk;
+    }
+
+    /**
+     * chunkAt() for a store with a pager: an evicted chunk is read back, and every chunk found or created is
+     * recorded by the pager, which may evict others.
+     *
+     * @param region chunks of the region of the chunk
+     * @param i      index of the chunk in its region
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @param chunk  chunk found in the region, or null
+     * @param create whether to create the chunk if it does not exist
+     * @return the chunk or null if it does not exist and create is false
+     */
+    private Chunk pagedChunkAt(Chunk[] region, int i, int chunkX, int chunkZ, Chunk chunk, boolean create) {
+        if (chunk != null) {
+            pager.hit(chunk);
+            return chunk;
+        }
+        long key = chunkKey(chunkX, chunkZ);
+        if (pager.isPaged(key)) {
+            chunk = region[i] = pager.pageIn(key, memory);
+            pager.admit(key, chunk);
+        } else if (create) {
+            chunk = region[i] = new Chunk(memory);
+            pager.admit(key, chunk);
+            if (populator != null) {
+                populator.populate(chunkX, chunkZ);
+                // populating many chunks may have evicted it
+                if (region[i] == null)
+                    return pagedChunkAt(region, i, chunkX, chunkZ, null, false);
+                chunk = region[i];
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * key of a chunk for the pager.
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @return both coordinates in a long
+     */
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | chunkZ;
+    }
+
+    /**
+     * It removes a chunk that the pager has evicted.
+     *
+     * @param key chunk key
+     */
+    void evicted(long key) {
+        int chunkX = (int) (key >>> 32), chunkZ = (int) key;
+        regions[(chunkX / REGION_SIZE) * regionsPerSide + chunkZ / REGION_SIZE][(chunkX % REGION_SIZE) * REGION_SIZE
+                + chunkZ % REGION_SIZE] = null;
+    }
+
+    /**
+     * It starts keeping at most budget chunks in memory, and the rest in a region file. The chunks already in the
+     * store beyond the budget are evicted. From then on the store must only be used by one thread at a time.
+     *
+     * @param file   region file, which is created or emptied, and deleted when the store is released
+     * @param budget maximum number of chunks in memory, at least ChunkPager.MIN_BUDGET
+     * @return the pager, which tells how paging performs and whose budget can be changed
+     * @throws IOException              if the file cannot be opened
+     * @throws IllegalArgumentException if the budget is too small
+     * @throws IllegalStateException    if paging has already been enabled
+     */
+    public ChunkPager enablePaging(Path file, int budget) throws IOException {
+        if (pager != null)
+            throw new IllegalStateException("Paging is already enabled");
+        ChunkPager created = new ChunkPager(this, file, budget);
+        pager = created;
+        for (int r = 0; r < regions.length; r++) {
+            Chunk[] region = regions[r];
+            if (region != null)
+                for (int i = 0; i < region.length; i++)
+                    if (region[i] != null)
+                        pager.admit(chunkKey((r / regionsPerSide) * REGION_SIZE + i / REGION_SIZE,
+                                (r % regionsPerSide) * REGION_SIZE + i % REGION_SIZE), region[i]);
+        }
+        return created;
+    }
+
+    /**
+     * simple getter.
+     *
+     * @return the pager of the chunks, or null if paging has not been enabled
+     */
+    public ChunkPager getPager() {
+        return pager;
+    }
+
+    /**
+     * It makes sure that the chunk holding the column (x,z) has been populated (see setPopulator()).
+     * It does nothing if the store has no populator or the column is outside the world.
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     */
+    public void touch(int x, int z) {
+        if (populator != null && inBounds(x, 0, z))
+            chunkAt(x, z, false);
+    }
+
+    /**
+     * It returns the chunk that holds the column (x,z), populating it first if needed (see touch()).
+     * Its blocks are indexed by local coordinates: x and z minus those of the first column of the chunk
+     * (see getChunkOrigin()).
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return the chunk, or null if it does not exist or the column is outside the world
+     */
+    public Chunk getChunk(int x, int z) {
+        return inBounds(x, 0, z) ? chunkAt(x, z, false) : null;
+    }
+
+    /**
+     * It returns the coordinate of the first column of the chunks that hold a coordinate along the x or z axis.
+     *
+     * @param coordinate x or z coordinate
+     * @return x or z coordinate of local coordinate 0 of the chunk
+     */
+    public int getChunkOrigin(int coordinate) {
+        return ((coordinate - negativeWorldLimit) & ~15) + negativeWorldLimit;
+    }
+
+    /**
+     * It returns the block at the given coordinates.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return the block, shared by all the blocks with the same state in its section, or null if there is none.
+     */
+    public Block get(int x, int y, int z) {
+        if (!inBounds(x, y, z))
+            return null;
+        Chunk chunk = chunkAt(x, z, false);
+        return (chunk == null) ? null : chunk.get((x - negativeWorldLimit) & 15, y, (z - negativeWorldLimit) & 15);
+    }
+
+    /**
+     * It checks whether there is a block at the given coordinates.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return true if there is a block.
+     */
+    public boolean contains(int x, int y, int z) {
+        if (!inBounds(x, y, z))
+            return false;
+        Chunk chunk = chunkAt(x, z, false);
+        return chunk != null && chunk.contains((x - negativeWorldLimit) & 15, y, (z - negativeWorldLimit) & 15);
+    }
+
+    /**
+     * It stores a block at the given coordinates, replacing the one that was there.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     * @param block block to store
+     * @return the previous block or null if there was none.
+     * @throws IllegalArgumentException if the coordinates are outside the world or the block is null.
+     */
+    public Block put(int x, int y, int z, Block block) {
+        if (block == null)
+            throw new IllegalArgumentException("Cannot store a null block, use remove()");
+        if (!inBounds(x, y, z))
+            throw new IllegalArgumentException("Block (" + x + "," + y + "," + z + ") is outside the world");
+        return chunkAt(x, z, true).set((x - negativeWorldLimit) & 15, y, (z - negativeWorldLimit) & 15, block);
+    }
+
+    /**
+     * It stores a block at the given coordinates only if there is already a block there.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param z     z coordinate
+     * @param block block to store
+     * @return true if the block has been replaced.
+     */
+    public boolean replace(int x, int y, int z, Block block) {
+        if (!contains(x, y, z))
+            return false;
+        put(x, y, z, block);
+        return true;
+    }
+
+    /**
+     * It removes the block at the given coordinates, if any.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return the removed block or null if there was none.
+     */
+    public Block remove(int x, int y, int z) {
+        if (!inBounds(x, y, z))
+            return null;
+        Chunk chunk = chunkAt(x, z, false);
+        if (chunk == null)
+            return null;
+        return chunk.set((x - negativeWorldLimit) & 15, y, (z - negativeWorldLimit) & 15, null);
+    }
+
+    /**
+     * It stores a block in every location of a box, chunk by chunk: each chunk is looked up once and its
+     * blocks are visited in the order they are stored.
+     *
+     * @param minX     smallest x coordinate
+     * @param minY     smallest y coordinate
+     * @param minZ     smallest z coordinate
+     * @param maxX     largest x coordinate
+     * @param maxY     largest y coordinate
+     * @param maxZ     largest z coordinate
+     * @param block    block to store, or null to remove the blocks
+     * @param only     the locations whose current block (null if there is none) it rejects are left as they
+     *                 are; null to change every location
+     * @param listener listener of the blocks changed, or null
+     * @return number of blocks changed
+     * @throws IllegalArgumentException if the box is not inside the world.
+     */
+    public int fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Block block,
+                    Predicate<? super Block> only, EditListener listener) {
+        if (minX > maxX || minY > maxY || minZ > maxZ || !inBounds(minX, minY, minZ) || !inBounds(maxX, maxY, maxZ))
+            throw new IllegalArgumentException("Box (" + minX + "," + minY + "," + minZ + ")-(" + maxX + ","
+                    + maxY + "," + maxZ + ") is not inside the world");
+        int changed = 0;
+        int fromX = (minX - negativeWorldLimit) >> 4, toX = (maxX - negativeWorldLimit) >> 4;
+        int fromZ = (minZ - negativeWorldLimit) >> 4, toZ = (maxZ - negativeWorldLimit) >> 4;
+        for (int cx = fromX; cx <= toX; cx++)
+            for (int cz = fromZ; cz <= toZ; cz++) {
+                int x0 = negativeWorldLimit + (cx << 4), z0 = negativeWorldLimit + (cz << 4);
+                Chunk chunk = chunkAt(x0, z0, block != null);
+                if (chunk == null)
+                    continue;
+                int lx0 = Math.max(minX, x0) - x0, lx1 = Math.min(maxX, x0 + 15) - x0;
+                int lz0 = Math.max(minZ, z0) - z0, lz1 = Math.min(maxZ, z0 + 15) - z0;
+                for (int y = minY; y <= maxY; y++)
+                    for (int lz = lz0; lz <= lz1; lz++)
+                        for (int lx = lx0; lx <= lx1; lx++) {
+                            Block previous = chunk.get(lx, y, lz);
+                            if ((previous == null && block == null) || (only != null && !only.test(previous)))
+                                continue;
+                            chunk.set(lx, y, lz, block);
+                            changed++;
+                            if (listener != null) {
+                                listener.edited(x0 + lx, y, z0 + lz, previous, block);
+                                // the listener may have accessed chunks enough to evict this one
+                                if (pager != null)
+                                    chunk = chunkAt(x0, z0, false);
+                            }
+                        }
+            }
+        return changed;
+    }
+
+    /**
+     * It applies a batch of edits. The edits are sorted by chunk, so each chunk is looked up once; the edits
+     * of a location are still applied in the order they were added.
+     *
+     * @param edits    edits to apply
+     * @param listener listener of the blocks changed, or null
+     * @return number of blocks changed
+     * @throws IllegalArgumentException if an edit is outside the world; then no edit is applied.
+     */
+    public int apply(BlockEdits edits, EditListener listener) {
+        int size = edits.size();
+        // chunk of each edit in the upper bits, its index in the lower ones
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            long key = edits.key(i);
+            int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+            if (!inBounds(x, y, z))
+                throw new IllegalArgumentException("Block (" + x + "," + y + "," + z + ") is outside the world");
+            long chunk = (long) ((x - negativeWorldLimit) >> 4) * chunksPerSide + ((z - negativeWorldLimit) >> 4);
+            order[i] = (chunk << 27) | i;
+        }
+        Arrays.sort(order);
+        int changed = 0;
+        long current = -1;
+        Chunk chunk = null;
+        for (long entry : order) {
+            int i = (int) (entry & (BlockEdits.MAX_EDITS - 1));
+            long key = edits.key(i);
+            Block block = edits.block(i);
+            int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+            if (entry >>> 27 != current || (chunk == null && block != null)) {
+                current = entry >>> 27;
+                chunk = chunkAt(x, z, block != null);
+            }
+            if (chunk == null)
+                continue;
+            int lx = (x - negativeWorldLimit) & 15, lz = (z - negativeWorldLimit) & 15;
+            Block previous = chunk.set(lx, y, lz, block);
+            if (previous == null && block == null)
+                continue;
+            changed++;
+            if (listener != null) {
+                listener.edited(x, y, z, previous, block);
+                if (pager != null)
+                    chunk = chunkAt(x, z, false);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * It changes the blocks of the row (x,y,minZ)..(x,y,maxZ), chunk by chunk: it stores a block in the
+     * locations that already have one, as replace() does, or removes their blocks if the block is null, as
+     * remove() does. The locations of the row outside the world are left out.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @param minZ  smallest z coordinate
+     * @param maxZ  largest z coordinate
+     * @param block block to store, or null to remove the blocks
+     * @return number of blocks changed
+     */
+    public int replaceRow(int x, int y, int minZ, int maxZ, Block block) {
+        if (!inBounds(x, y, negativeWorldLimit))
+            return 0;
+        // z coordinates relative to the first block of the chunk grid
+        int from = Math.max(minZ - negativeWorldLimit, 0);
+        int to = Math.min(maxZ - negativeWorldLimit, worldSize - 1);
+        int lx = (x - negativeWorldLimit) & 15;
+        int replaced = 0;
+        for (int iz = from; iz <= to; iz = (iz | 15) + 1) {
+            Chunk chunk = chunkAt(x, iz + negativeWorldLimit, false);
+            if (chunk != null)
+                replaced += chunk.replaceRow(lx, y, iz & 15, Math.min(to, iz | 15) & 15, block);
+        }
+        return replaced;
+    }
+
+    /**
+     * It returns the height of the terrain surface at the column (x,z).
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return the y coordinate of the surface, 0 if it has not been set.
+     * @throws IllegalArgumentException if the column is outside the world.
+     */
+    public double getHeight(int x, int z) {
+        if (!inBounds(x, 0, z))
+            throw new IllegalArgumentException("Column (" + x + "," + z + ") is outside the world");
+        Chunk chunk = chunkAt(x, z, false);
+        return (chunk == null) ? 0 : chunk.getHeight((x - negativeWorldLimit) & 15, (z - negativeWorldLimit) & 15);
+    }
+
+    /**
+     * It sets the height of the terrain surface at the column (x,z).
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @param y the y coordinate of the surface
+     * @throws IllegalArgumentException if the column is outside the world.
+     */
+    public void setHeight(int x, int z, double y) {
+        if (!inBounds(x, 0, z))
+            throw new IllegalArgumentException("Column (" + x + "," + z + ") is outside the world");
+        chunkAt(x, z, true).setHeight((x - negativeWorldLimit) & 15, (z - negativeWorldLimit) & 15, y);
+    }
+
+    /**
+     * It finds the highest block of the column (x,z) below a given height, using the occupancy of the column
+     * instead of looking at its blocks one by one.
+     *
+     * @param x x coordinate
+     * @param y height; only the blocks below it are considered
+     * @param z z coordinate
+     * @return the height of the block, or -1 if there is none or the column is outside the world.
+     */
+    public int topBelow(int x, int y, int z) {
+        if (!inBounds(x, 0, z))
+            return -1;
+        Chunk chunk = chunkAt(x, z, false);
+        return (chunk == null) ? -1 : chunk.topBelow((x - negativeWorldLimit) & 15, y, (z - negativeWorldLimit) & 15);
+    }
+
+    /**
+     * It removes all the blocks.
+     */
+    public void clear() {
+        if (memory != null)
+            for (Chunk[] region : regions)
+                if (region != null)
+                    for (Chunk chunk : region)
+                        if (chunk != null)
+                            chunk.release();
+        Arrays.fill(regions, null);
+        if (pager != null)
+            pager.clear();
+    }
+
+    /**
+     * It removes all the blocks and gives back the off-heap memory of the store, if any.
+     * Afterwards the store must not be used: storing a block in an off-heap store throws IllegalStateException.
+     */
+    public void release() {
+        clear();
+        if (memory != null)
+            memory.close();
+        if (pager != null) {
+            try {
+                pager.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * where the voxels of the chunks are kept.
+     *
+     * @return storage mode of the store
+     */
+    public StorageMode getStorageMode() {
+        return (memory == null) ? StorageMode.HEAP : StorageMode.OFF_HEAP;
+    }
+
+    /**
+     * number of bytes of memory outside the heap taken by the store, in whole pages.
+     *
+     * @return off-heap bytes, 0 if the store is kept in the heap or it has been released
+     */
+    public long getOffHeapBytes() {
+        return (memory == null) ? 0 : memory.getReservedBytes();
+    }
+
+    /**
+     * number of blocks stored.
+     *
+     * @return number of blocks
+     */
+    public int size() {
+        int size = 0;
+        for (Chunk[] region : regions)
+            if (region != null)
+                for (Chunk chunk : region)
+                    if (chunk != null)
+                        size += chunk.getBlockCount();
+        return (pager == null) ? size : size + (int) pager.getPagedBlocks();
+    }
+
+    /**
+     * number of chunks along the x and z axes of the world.
+     *
+     * @return chunks per side
+     */
+    public int getChunksPerSide() {
+        return chunksPerSide;
+    }
+
+    /**
+     * It checks whether a chunk has been evicted by the pager.
+     *
+     * @param r index of the region of the chunk
+     * @param i index of the chunk in its region
+     * @return true if the chunk is only in the region file
+     */
+    private boolean isPaged(int r, int i) {
+        return pager != null && pager.isPaged(chunkKey((r / regionsPerSide) * REGION_SIZE + i / REGION_SIZE,
+                (r % regionsPerSide) * REGION_SIZE + i % REGION_SIZE));
+    }
+
+    /**
+     * number of bytes written by writeTo().
+     *
+     * @return size of the store in a snapshot
+     */
+    public long serializedSize() {
+        long size = 4;
+        for (int r = 0; r < regions.length; r++) {
+            Chunk[] region = regions[r];
+            if (region == null)
+                continue;
+            for (int i = 0; i < region.length; i++) {
+                if (region[i] != null)
+                    size += 8 + region[i].serializedSize();
+                else if (isPaged(r, i))
+                    size += 8 + pager.serializedSize(chunkKey((r / regionsPerSide) * REGION_SIZE + i / REGION_SIZE,
+                            (r % regionsPerSide) * REGION_SIZE + i % REGION_SIZE));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * It writes the chunks of the store: their number and then, for each one, its coordinates and its contents.
+     * Chunks that have never been accessed are not written; evicted chunks are copied from the region file,
+     * without reading them back.
+     *
+     * @param buffer buffer to write to
+     */
+    public void writeTo(ByteBuffer buffer) {
+        int count = (pager == null) ? 0 : pager.getPagedChunks();
+        for (Chunk[] region : regions)
+            if (region != null)
+                for (Chunk chunk : region)
+                    if (chunk != null)
+                        count++;
+        buffer.putInt(count);
+        for (int r = 0; r < regions.length; r++) {
+            Chunk[] region = regions[r];
+            if (region == null)
+                continue;
+            for (int i = 0; i < region.length; i++) {
+                if (region[i] != null || isPaged(r, i)) {
+                    int chunkX = (r / regionsPerSide) * REGION_SIZE + i / REGION_SIZE;
+                    int chunkZ = (r % regionsPerSide) * REGION_SIZE + i % REGION_SIZE;
+                    buffer.putInt(chunkX);
+                    buffer.putInt(chunkZ);
+                    if (region[i] != null)
+                        region[i].writeTo(buffer);
+                    else
+                        pager.writeTo(chunkKey(chunkX, chunkZ), buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * It replaces the contents of the store with the chunks written by writeTo().
+     * The populator, if any, is not called for the chunks read. The chunks are read and checked before the
+     * store is changed, so invalid data leaves the store as it was.
+     *
+     * @param buffer buffer to read from
+     * @throws IllegalArgumentException if the data is not valid for a store of this size
+     */
+    public void readFrom(ByteBuffer buffer) {
+        LongMap<Chunk> read = new LongMap<>();
+        try {
+            int count = buffer.getInt();
+            for (int c = 0; c < count; c++) {
+                int chunkX = buffer.getInt();
+                int chunkZ = buffer.getInt();
+                if (chunkX < 0 || chunkX >= chunksPerSide || chunkZ < 0 || chunkZ >= chunksPerSide)
+                    throw new IllegalArgumentException("Chunk (" + chunkX + "," + chunkZ + ") is outside the world");
+                Chunk previous = read.put(chunkKey(chunkX, chunkZ), Chunk.readFrom(buffer, memory));
+                if (previous != null)
+                    previous.release();
+            }
+        } catch (RuntimeException ex) {
+            read.forEach((key, chunk) -> chunk.release());
+            throw ex;
+        }
+        clear();
+        read.forEach((key, chunk) -> {
+            int chunkX = (int) (key >>> 32), chunkZ = (int) key;
+            Chunk[] region = region((chunkX / REGION_SIZE) * regionsPerSide + chunkZ / REGION_SIZE, true);
+            region[(chunkX % REGION_SIZE) * REGION_SIZE + chunkZ % REGION_SIZE] = chunk;
+            if (pager != null)
+                pager.admit(key, chunk);
+        });
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+import model.metrics.Histogram;
+import model.metrics.Metrics;
+
+/**
+ * Fills with a liquid the empty blocks of a ChunkStore that can be reached from a starting block moving to any
+ * of its 26 neighbours at the same height or below, as liquids flow.
+ * <p>
+ * The fill is a breadth-first search on primitive block coordinates: the blocks waiting to be filled are kept
+ * as {@link BlockKey}s in a queue, and the blocks already queued are marked in a bitmap per chunk, so the stack
+ * depth is constant and no object is created per block. The fill can be confined to a range of x and z
+ * coordinates and bounded to a maximum number of blocks; the blocks closest to the start are filled first.
+ */
+public class FloodFill {
+    /**
+     * It is told about every block filled.
+     */
+    public interface Listener {
+        /**
+         * It is called after the liquid has been stored at (x,y,z).
+         *
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param z z coordinate
+         */
+        void filled(int x, int y, int z);
+    }
+
+    /**
+     * number of blocks filled by each fill, in the default metrics.
+     */
+    private static final Histogram VOLUMES = Metrics.getDefault().histogram("floodfill.volume");
+
+    /**
+     * store to fill.
+     */
+    private final ChunkStore store;
+    /**
+     * limits of the fill in the x and z axes (both included).
+     */
+    private final int minX, maxX, minZ, maxZ;
+    /**
+     * maximum number of blocks to fill.
+     */
+    private final int maxVolume;
+    /**
+     * blocks already queued, one bitmap of 16x256x16 bits per chunk, by chunk coordinates.
+     */
+    private final LongMap<long[]> visited;
+    /**
+     * blocks waiting to be filled.
+     */
+    private final LongQueue queue;
+
+    /**
+     * It creates a fill that can reach any block of the store.
+     *
+     * @param store store to fill
+     */
+    public FloodFill(ChunkStore store) {
+        this(store, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * It creates a fill confined to the given x and z coordinates and bounded to a number of blocks.
+     *
+     * @param store     store to fill
+     * @param minX      smallest x coordinate the liquid can reach
+     * @param maxX      largest x coordinate the liquid can reach
+     * @param minZ      smallest z coordinate the liquid can reach
+     * @param maxZ      largest z coordinate the liquid can reach
+     * @param maxVolume maximum number of blocks to fill
+     */
+    public FloodFill(ChunkStore store, int minX, int maxX, int minZ, int maxZ, int maxVolume) {
+        this.store = store;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minZ = minZ;
+        this.maxZ = maxZ;
+        this.maxVolume = maxVolume;
+        visited = new LongMap<>();
+        queue = new LongQueue();
+    }
+
+    /**
+     * It fills with the liquid the empty blocks reachable from (x,y,z), starting with (x,y,z) itself.
+     * Nothing is filled if that block is not empty or lies outside the world or the limits of the fill.
+     *
+     * @param x        x coordinate of the starting block
+     * @param y        y coordinate of the starting block
+     * @param z        z coordinate of the starting block
+     * @param liquid   block to store; the store keeps its own copies, so the same block is used for every location
+     * @param listener listener of the blocks filled, or null
+     * @return number of blocks filled
+     */
+    public int fill(int x, int y, int z, Block liquid, Listener listener) {
+        int filled = 0;
+        visited.clear();
+        queue.clear();
+        if (!accepts(x, y, z)) {
+            VOLUMES.record(0);
+            return 0;
+        }
+        mark(x, y, z);
+        queue.add(BlockKey.pack(x, y, z));
+        while (!queue.isEmpty() && filled < maxVolume) {
+            long key = queue.poll();
+            int cx = BlockKey.x(key), cy = BlockKey.y(key), cz = BlockKey.z(key);
+            store.put(cx, cy, cz, liquid);
+            filled++;
+            if (listener != null)
+                listener.filled(cx, cy, cz);
+            // liquids do not flow upwards
+            for (int dy = -1; dy <= 0; dy++)
+                for (int dx = -1; dx <= 1; dx++)
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int nx = cx + dx, ny = cy + dy, nz = cz + dz;
+                        if ((dx != 0 || dy != 0 || dz != 0) && accepts(nx, ny, nz)) {
+                            mark(nx, ny, nz);
+                            queue.add(BlockKey.pack(nx, ny, nz));
+                        }
+                    }
+        }
+        VOLUMES.record(filled);
+        return filled;
+    }
+
+    /**
+     * It checks if a block can be queued: it is inside the limits, it has not been queued yet and it is empty.
+     */
+    private boolean accepts(int x, int y, int z) {
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ && store.inBounds(x, y, z)
+                && !isMarked(x, y, z) && !store.contains(x, y, z);
+    }
+
+    /**
+     * It returns the bitmap of the chunk (of the world coordinates) that holds the column (x,z).
+     *
+     * @param create whether to create the bitmap if it does not exist
+     * @return the bitmap, or null if it does not exist and create is false
+     */
+    private long[] bitmap(int x, int z, boolean create) {
+        long chunkKey = BlockKey.pack(x >> 4, 0, z >> 4);
+        long[] bitmap = visited.get(chunkKey);
+        if (bitmap == null && create) {
+            bitmap = new long[Chunk.SIZE * Chunk.SIZE * Chunk.HEIGHT / 64];
+            visited.put(chunkKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * bit of a block in the bitmap of its chunk.
+     */
+    private static int bit(int x, int y, int z) {
+        return (y << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    /**
+     * It checks if a block has already been queued.
+     */
+    private boolean isMarked(int x, int y, int z) {
+        long[] bitmap = bitmap(x, z, false);
+        int bit = bit(x, y, z);
+        return bitmap != null && (bitmap[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * It marks a block as queued.
+     */
+    private void mark(int x, int y, int z) {
+        int bit = bit(x, y, z);
+        bitmap(x, z, true)[bit >>> 6] |= 1L << bit;
+    }
+}
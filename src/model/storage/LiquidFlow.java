@@ -0,0 +1,196 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import model.Block;
+
+/**
+ * Liquids of a ChunkStore that flow into the blocks that become empty next to them, one block per update.
+ * <p>
+ * Liquids follow the rule of {@link FloodFill}: a liquid reaches the empty blocks around it at the same height
+ * or below. A world whose liquids were placed by a flood fill is therefore at rest, and it only changes when a
+ * block next to a liquid is removed. The blocks that may change are kept as {@link BlockKey}s in a queue, each of
+ * them once; an update fills one of them from a neighbouring liquid and queues the empty blocks the liquid can
+ * reach from it, so a liquid spreads one block further every time its queued blocks are updated.
+ * <p>
+ * Only a simulation updates the blocks, so they are only queued while one is attached (see attach()); without
+ * it, liquids stay where they are.
+ * <p>
+ * The queue is synchronized, so blocks can be scheduled by any thread; update() changes the store and must be
+ * called with the locks of the columns around the block held.
+ */
+public class LiquidFlow {
+    /**
+     * store of the liquids.
+     */
+    private final ChunkStore store;
+    /**
+     * blocks waiting to be updated.
+     */
+    private final LongQueue pending;
+    /**
+     * keys of the blocks in pending, so that a block is not queued twice.
+     */
+    private final LongMap<Boolean> queued;
+    /**
+     * number of simulations attached; blocks are only queued while there is one.
+     */
+    private volatile int attached;
+
+    /**
+     * It creates the flow of the liquids of a store, with nothing to update.
+     *
+     * @param store store of the blocks
+     */
+    public LiquidFlow(ChunkStore store) {
+        this.store = store;
+        pending = new LongQueue();
+        queued = new LongMap<>();
+    }
+
+    /**
+     * It attaches a simulation that updates the blocks, so that they start being queued.
+     */
+    public synchronized void attach() {
+        attached++;
+    }
+
+    /**
+     * It detaches a simulation. When none is left, the queue is emptied and blocks are no longer queued.
+     */
+    public synchronized void detach() {
+        if (attached > 0 && --attached == 0)
+            clear();
+    }
+
+    /**
+     * It checks whether a simulation is attached, that is, whether blocks are being queued.
+     *
+     * @return true if blocks are queued
+     */
+    public boolean isAttached() {
+        return attached > 0;
+    }
+
+    /**
+     * It queues a block that may be reached by a liquid, for instance because it has been emptied.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     */
+    public void schedule(int x, int y, int z) {
+        if (attached > 0 && store.inBounds(x, y, z))
+            schedule(BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * It queues an empty block only if a liquid next to it can flow into it, for instance because it has just been
+     * emptied.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     */
+    public void scheduleIfReached(int x, int y, int z) {
+        if (attached > 0 && store.inBounds(x, y, z) && !store.contains(x, y, z) && liquidAround(x, y, z) != null)
+            schedule(BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * It queues a block, given by its BlockKey, unless it is already queued or no simulation is attached.
+     */
+    private synchronized void schedule(long key) {
+        if (attached > 0 && queued.put(key, Boolean.TRUE) == null)
+            pending.add(key);
+    }
+
+    /**
+     * It queues the empty blocks that a liquid at (x,y,z) can reach, for instance because it has just been placed.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     */
+    public void scheduleNeighbours(int x, int y, int z) {
+        if (attached == 0)
+            return;
+        // liquids do not flow upwards
+        for (int dy = -1; dy <= 0; dy++)
+            for (int dx = -1; dx <= 1; dx++)
+                for (int dz = -1; dz <= 1; dz++) {
+                    int nx = x + dx, ny = y + dy, nz = z + dz;
+                    if ((dx != 0 || dy != 0 || dz != 0) && store.inBounds(nx, ny, nz) && !store.contains(nx, ny, nz))
+                        schedule(BlockKey.pack(nx, ny, nz));
+                }
+    }
+
+    /**
+     * It takes the next block to update out of the queue.
+     *
+     * @return the BlockKey of the block, or -1 if there is none (the key of y = -1, which is never queued)
+     */
+    public synchronized long poll() {
+        if (pending.isEmpty())
+            return -1;
+        long key = pending.poll();
+        queued.remove(key);
+        return key;
+    }
+
+    /**
+     * number of blocks waiting to be updated.
+     *
+     * @return size of the queue
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * It removes every block from the queue.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        queued.clear();
+    }
+
+    /**
+     * It updates a block: if it is empty and there is a liquid next to it at the same height or above, it is
+     * filled with that liquid and the empty blocks the liquid can reach from it are queued.
+     *
+     * @param key      the BlockKey of the block
+     * @param listener listener of the block filled, or null
+     * @return true if the block has been filled
+     */
+    public boolean update(long key, FloodFill.Listener listener) {
+        int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+        if (!store.inBounds(x, y, z) || store.contains(x, y, z))
+            return false;
+        Block liquid = liquidAround(x, y, z);
+        if (liquid == null)
+            return false;
+        store.put(x, y, z, liquid);
+        if (listener != null)
+            listener.filled(x, y, z);
+        scheduleNeighbours(x, y, z);
+        return true;
+    }
+
+    /**
+     * It looks for a liquid next to (x,y,z), at the same height or above, that can flow into it.
+     *
+     * @return the liquid, or null if there is none
+     */
+    private Block liquidAround(int x, int y, int z) {
+        for (int dy = 1; dy >= 0; dy--)
+            for (int dx = -1; dx <= 1; dx++)
+                for (int dz = -1; dz <= 1; dz++) {
+                    Block neighbour = store.get(x + dx, y + dy, z + dz);
+                    if ((dx != 0 || dy != 0 || dz != 0) && neighbour != null && neighbour.getType().isLiquid())
+                        return neighbour;
+                }
+        return null;
+    }
+}
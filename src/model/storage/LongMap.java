@@ -0,0 +1,269 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys (usually {@link BlockKey}s) to objects, using open addressing with linear probing.
+ * Keys are neither boxed nor wrapped, and there is no entry object per mapping.
+ * <p>
+ * The slot value 0 marks a free slot, so the key 0 is kept apart from the table.
+ *
+ * @param <V> type of the values
+ */
+public class LongMap<V> {
+    /**
+     * It visits the entries of a map.
+     *
+     * @param <V> type of the values
+     */
+    public interface Visitor<V> {
+        /**
+         * It is called once for every entry.
+         *
+         * @param key   key of the entry
+         * @param value value of the entry
+         */
+        void visit(long key, V value);
+    }
+
+    /**
+     * maximum fraction of used slots before the table grows.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * keys of the table, 0 meaning a free slot.
+     */
+    private long[] keys;
+    /**
+     * values of the table.
+     */
+    private Object[] values;
+    /**
+     * keys.length - 1, the table length is always a power of two.
+     */
+    private int mask;
+    /**
+     * number of entries stored in the table (the key 0 excluded).
+     */
+    private int tableSize;
+    /**
+     * whether the key 0 is present.
+     */
+    private boolean hasZeroKey;
+    /**
+     * value of the key 0.
+     */
+    private V zeroValue;
+
+    /**
+     * It creates an empty map.
+     */
+    public LongMap() {
+        this(16);
+    }
+
+    /**
+     * It creates an empty map able to hold the given number of entries without growing.
+     *
+     * @param expected expected number of entries
+     */
+    public LongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * It spreads the bits of the key to choose its first slot.
+     *
+     * @param key key
+     * @return slot index
+     */
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * It finds the slot of a key.
+     *
+     * @param key key different from 0
+     * @return slot holding the key, or -1 if the key is not in the table
+     */
+    private int find(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * It returns the value of the given key.
+     *
+     * @param key key
+     * @return the value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0)
+            return zeroValue;
+        int i = find(key);
+        return (i < 0) ? null : (V) values[i];
+    }
+
+    /**
+     * It checks if the key is in the map.
+     *
+     * @param key key
+     * @return true if there is a value for the key
+     */
+    public boolean containsKey(long key) {
+        return (key == 0) ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * It associates a value with a key.
+     *
+     * @param key   key
+     * @param value value
+     * @return the previous value of the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            zeroValue = value;
+            hasZeroKey = true;
+            return old;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++tableSize > keys.length * LOAD_FACTOR)
+            rehash(keys.length << 1);
+        return null;
+    }
+
+    /**
+     * It removes a key from the map.
+     *
+     * @param key key
+     * @return the value the key had, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            V old = zeroValue;
+            zeroValue = null;
+            hasZeroKey = false;
+            return old;
+        }
+        int i = find(key);
+        if (i < 0)
+            return null;
+        V old = (V) values[i];
+        tableSize--;
+        // backward shift deletion: move up the entries of the probe chain that would become unreachable
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == 0)
+                break;
+            int home = slot(k);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        return old;
+    }
+
+    /**
+     * number of entries.
+     *
+     * @return size of the map
+     */
+    public int size() {
+        return tableSize + (hasZeroKey ? 1 : 0);
+    }
+
+    /**
+     * It checks if the map is empty.
+     *
+     * @return true if there are no entries.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * It removes all the entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        tableSize = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    /**
+     * It calls the visitor once for every entry. The map must not be modified during the visit.
+     *
+     * @param visitor visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (hasZeroKey)
+            visitor.visit(0, zeroValue);
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != 0)
+                visitor.visit(keys[i], (V) values[i]);
+    }
+
+    /**
+     * It moves the entries to a table of the given capacity.
+     *
+     * @param capacity new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != 0) {
+                int j = slot(k);
+                while (keys[j] != 0)
+                    j = (j + 1) & mask;
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
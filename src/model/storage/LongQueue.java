@@ -0,0 +1,88 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+/**
+ * First-in first-out queue of primitive longs (usually {@link BlockKey}s), stored in a growing ring buffer.
+ */
+class LongQueue {
+    /**
+     * elements of the queue; its length is always a power of two.
+     */
+    private long[] elements;
+    /**
+     * index of the first element.
+     */
+    private int head;
+    /**
+     * number of elements.
+     */
+    private int size;
+
+    /**
+     * It creates an empty queue.
+     */
+    LongQueue() {
+        elements = new long[64];
+    }
+
+    /**
+     * It adds an element at the end of the queue.
+     *
+     * @param value element
+     */
+    void add(long value) {
+        if (size == elements.length) {
+            long[] grown = new long[elements.length << 1];
+            int tail = elements.length - head;
+            System.arraycopy(elements, head, grown, 0, tail);
+            System.arraycopy(elements, 0, grown, tail, head);
+            elements = grown;
+            head = 0;
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * It removes the first element of the queue.
+     *
+     * @return the first element
+     * @throws IllegalStateException if the queue is empty
+     */
+    long poll() {
+        if (size == 0)
+            throw new IllegalStateException("Empty queue");
+        long value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * number of elements in the queue.
+     *
+     * @return size of the queue
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * It checks if the queue is empty.
+     *
+     * @return true if there are no elements
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * It removes all the elements.
+     */
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks of the chunks of a world, so that threads working on different parts of the world do not wait for each other.
+ * <p>
+ * The chunks of a {@link ChunkStore} are tiled with a grid of 8x8 chunks, and chunks at the same position of their
+ * tile share one of the 64 locks (their stripe). Chunks close to each other therefore have different locks, and an
+ * area of up to 8x8 chunks takes each lock at most once. A set of locks is represented by a bit mask, and locks are
+ * always taken in increasing order of their bits, so taking the locks of an area cannot deadlock with another thread
+ * doing the same. Locks are reentrant: a thread holding the locks of an area can take the lock of any column
+ * inside it again.
+ * <p>
+ * When the world is not striped (for instance, because its chunks are generated lazily and generating a chunk
+ * reads its neighbours), every chunk has the same lock.
+ */
+public class RegionLocks {
+    /**
+     * number of chunks along each side of a tile.
+     */
+    private static final int TILE = 8;
+    /**
+     * number of locks.
+     */
+    public static final int STRIPES = TILE * TILE;
+
+    /**
+     * value of the negative limit of the world in the x and z axes.
+     */
+    private final int negativeWorldLimit;
+    /**
+     * whether chunks have different locks.
+     */
+    private final boolean striped;
+    /**
+     * the locks, indexed by stripe.
+     */
+    private final ReentrantLock[] locks;
+
+    /**
+     * It creates the locks of the chunks of a world.
+     *
+     * @param worldSize size of the world
+     * @param striped   whether chunks have different locks, or they all share one
+     */
+    public RegionLocks(int worldSize, boolean striped) {
+        int positiveWorldLimit = worldSize / 2;
+        negativeWorldLimit = (worldSize % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+        this.striped = striped;
+        locks = new ReentrantLock[striped ? STRIPES : 1];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * It returns the stripe of the chunk that holds the column (x,z).
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return index of the lock of the column, from 0 to STRIPES-1
+     */
+    public int stripe(int x, int z) {
+        if (!striped)
+            return 0;
+        return (((x - negativeWorldLimit) >> 4) & (TILE - 1)) * TILE + (((z - negativeWorldLimit) >> 4) & (TILE - 1));
+    }
+
+    /**
+     * It takes the lock of the column (x,z), waiting for it if needed.
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return the locks taken, to be given to unlock()
+     */
+    public long lock(int x, int z) {
+        int stripe = stripe(x, z);
+        locks[stripe].lock();
+        return 1L << stripe;
+    }
+
+    /**
+     * It takes the locks of all the columns (x,z) with minX &lt;= x &lt;= maxX and minZ &lt;= z &lt;= maxZ.
+     *
+     * @param minX smallest x coordinate
+     * @param minZ smallest z coordinate
+     * @param maxX largest x coordinate
+     * @param maxZ largest z coordinate
+     * @return the locks taken, to be given to unlock()
+     */
+    public long lockArea(int minX, int minZ, int maxX, int maxZ) {
+        long held = 0;
+        if (!striped) {
+            held = 1;
+        } else {
+            int fromX = (minX - negativeWorldLimit) >> 4, toX = (maxX - negativeWorldLimit) >> 4;
+            int fromZ = (minZ - negativeWorldLimit) >> 4, toZ = (maxZ - negativeWorldLimit) >> 4;
+            toX = Math.min(toX, fromX + TILE - 1);
+            toZ = Math.min(toZ, fromZ + TILE - 1);
+            for (int cx = fromX; cx <= toX; cx++)
+                for (int cz = fromZ; cz <= toZ; cz++)
+                    held |= 1L << ((cx & (TILE - 1)) * TILE + (cz & (TILE - 1)));
+        }
+        for (long rest = held; rest != 0; rest &= rest - 1)
+            locks[Long.numberOfTrailingZeros(rest)].lock();
+        return held;
+    }
+
+    /**
+     * It takes every lock, for operations on the whole world.
+     *
+     * @return the locks taken, to be given to unlock()
+     */
+    public long lockAll() {
+        long held = (locks.length == 64) ? -1L : (1L << locks.length) - 1;
+        for (ReentrantLock lock : locks)
+            lock.lock();
+        return held;
+    }
+
+    /**
+     * It releases the locks taken by lock(), lockArea() or lockAll().
+     *
+     * @param held the locks, as returned by the method that took them
+     */
+    public void unlock(long held) {
+        for (long rest = held; rest != 0; rest &= rest - 1)
+            locks[Long.numberOfTrailingZeros(rest)].unlock();
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import java.util.Arrays;
+
+/**
+ * Striped map from {@link BlockKey}s to objects that also keeps its entries in one bucket per chunk, to find
+ * the entries inside a box without looking at the rest.
+ * <p>
+ * The buckets are updated by put() and remove(), so the index follows the entries as they are added, removed
+ * or moved to another key. A box query visits the buckets of the chunks that overlap the box and, in them,
+ * only the entries inside the box: its cost grows with the number of entries in those chunks, not with the
+ * size of the map. A bucket is an array of keys and values; entries are removed by moving the last one into
+ * their place, as buckets hold few entries.
+ * <p>
+ * As in {@link StripedLongMap}, the bucket of a chunk must only be used with the lock of the chunk held, so a
+ * box query needs the locks of every chunk it overlaps (see RegionLocks.lockArea()).
+ *
+ * @param <V> type of the values
+ */
+public class SpatialLongMap<V> extends StripedLongMap<V> {
+    /**
+     * Entries of a chunk.
+     */
+    private static final class Bucket {
+        long[] keys = new long[4];
+        Object[] values = new Object[4];
+        int size;
+
+        int indexOf(long key) {
+            for (int i = 0; i < size; i++)
+                if (keys[i] == key)
+                    return i;
+            return -1;
+        }
+
+        void add(long key, Object value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        void remove(int index) {
+            size--;
+            keys[index] = keys[size];
+            values[index] = values[size];
+            values[size] = null;
+        }
+    }
+
+    /**
+     * value of the negative limit of the world in the x and z axes.
+     */
+    private final int negativeWorldLimit;
+    /**
+     * size of the world.
+     */
+    private final int worldSize;
+    /**
+     * number of chunks along each side of the world.
+     */
+    private final int chunksPerSide;
+    /**
+     * locks whose stripes split the map.
+     */
+    private final RegionLocks locks;
+    /**
+     * buckets of the chunks of every stripe, by index of their chunk (x * chunksPerSide + z); a bucket is
+     * created when first needed, so huge worlds with few entries take little memory.
+     */
+    private final LongMap<Bucket>[] buckets;
+
+    /**
+     * It creates an empty map for a world of the given size, split by the stripes of the given locks.
+     *
+     * @param locks     locks of the world
+     * @param worldSize size of the world
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SpatialLongMap(RegionLocks locks, int worldSize) {
+        super(locks);
+        this.locks = locks;
+        this.worldSize = worldSize;
+        int positiveWorldLimit = worldSize / 2;
+        negativeWorldLimit = (worldSize % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+        chunksPerSide = (worldSize + Chunk.SIZE - 1) / Chunk.SIZE;
+        buckets = new LongMap[RegionLocks.STRIPES];
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongMap<>();
+    }
+
+    /**
+     * It stores a value, replacing the previous one.
+     *
+     * @param key   key
+     * @param value value
+     * @return the previous value or null if there was none.
+     * @throws IllegalArgumentException if the key is outside the world
+     */
+    @Override
+    public V put(long key, V value) {
+        LongMap<Bucket> stripe = stripe(key);
+        long index = bucketIndex(key);
+        V previous = super.put(key, value);
+        Bucket bucket = stripe.get(index);
+        if (bucket == null)
+            stripe.put(index, bucket = new Bucket());
+        int i = (previous == null) ? -1 : bucket.indexOf(key);
+        if (i < 0)
+            bucket.add(key, value);
+        else
+            bucket.values[i] = value;
+        return previous;
+    }
+
+    /**
+     * It removes the value of a key.
+     *
+     * @param key key
+     * @return the removed value or null if there was none.
+     */
+    @Override
+    public V remove(long key) {
+        V removed = super.remove(key);
+        if (removed != null) {
+            LongMap<Bucket> stripe = stripe(key);
+            long index = bucketIndex(key);
+            Bucket bucket = stripe.get(index);
+            bucket.remove(bucket.indexOf(key));
+            if (bucket.size == 0)
+                stripe.remove(index);
+        }
+        return removed;
+    }
+
+    /**
+     * It removes all the entries.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        for (LongMap<Bucket> stripe : buckets)
+            stripe.clear();
+    }
+
+    /**
+     * It calls the visitor once for every entry inside a box, chunk by chunk.
+     * The map must not be modified during the visit.
+     *
+     * @param minX    smallest x coordinate
+     * @param minY    smallest y coordinate
+     * @param minZ    smallest z coordinate
+     * @param maxX    largest x coordinate
+     * @param maxY    largest y coordinate
+     * @param maxZ    largest z coordinate
+     * @param visitor visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                             LongMap.Visitor<? super V> visitor) {
+        int fromX = Math.max(0, chunk(minX)), toX = Math.min(chunksPerSide - 1, chunk(maxX));
+        int fromZ = Math.max(0, chunk(minZ)), toZ = Math.min(chunksPerSide - 1, chunk(maxZ));
+        for (int cx = fromX; cx <= toX; cx++)
+            for (int cz = fromZ; cz <= toZ; cz++) {
+                int x0 = negativeWorldLimit + cx * Chunk.SIZE, z0 = negativeWorldLimit + cz * Chunk.SIZE;
+                Bucket bucket = buckets[locks.stripe(x0, z0)].get((long) cx * chunksPerSide + cz);
+                if (bucket == null)
+                    continue;
+                for (int i = 0; i < bucket.size; i++) {
+                    long key = bucket.keys[i];
+                    int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+                        visitor.visit(key, (V) bucket.values[i]);
+                }
+            }
+    }
+
+    /**
+     * index of the chunk of a coordinate along the x or z axis.
+     */
+    private int chunk(int coordinate) {
+        return (coordinate - negativeWorldLimit) >> 4;
+    }
+
+    /**
+     * buckets of the stripe of a key.
+     */
+    private LongMap<Bucket> stripe(long key) {
+        return buckets[locks.stripe(BlockKey.x(key), BlockKey.z(key))];
+    }
+
+    /**
+     * index of the bucket of a key.
+     *
+     * @throws IllegalArgumentException if the key is outside the world
+     */
+    private long bucketIndex(long key) {
+        int ix = BlockKey.x(key) - negativeWorldLimit, iz = BlockKey.z(key) - negativeWorldLimit;
+        if (ix < 0 || ix >= worldSize || iz < 0 || iz >= worldSize)
+            throw new IllegalArgumentException("Block (" + BlockKey.x(key) + "," + BlockKey.y(key) + ","
+                    + BlockKey.z(key) + ") is outside the world");
+        return (long) (ix >> 4) * chunksPerSide + (iz >> 4);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+/**
+ * Map from {@link BlockKey}s to objects, split in one {@link LongMap} per stripe of {@link RegionLocks}.
+ * <p>
+ * The entries of a block live in the map of the stripe of its chunk, so a thread that holds the lock of a chunk
+ * can use the entries of that chunk while other threads use the entries of chunks with other locks.
+ * The map itself is not synchronized: get(), put(), remove() and containsKey() must be called with the lock of
+ * the key's chunk held (or from a single thread), and size(), clear() and forEach() with every lock held.
+ * Each stripe counts the changes made to its entries, so a reader can tell whether the entries of a chunk may
+ * have changed since it last looked at them (see version()).
+ *
+ * @param <V> type of the values
+ */
+public class StripedLongMap<V> {
+    /**
+     * locks whose stripes split the map.
+     */
+    private final RegionLocks locks;
+    /**
+     * entries of each stripe.
+     */
+    private final LongMap<V>[] stripes;
+    /**
+     * number of changes made to the entries of each stripe.
+     */
+    private final long[] versions;
+
+    /**
+     * It creates an empty map split by the stripes of the given locks.
+     *
+     * @param locks locks of the world
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedLongMap(RegionLocks locks) {
+        this.locks = locks;
+        stripes = new LongMap[RegionLocks.STRIPES];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new LongMap<>();
+        versions = new long[RegionLocks.STRIPES];
+    }
+
+    /**
+     * It returns the map of the stripe of a key.
+     */
+    private LongMap<V> stripe(long key) {
+        return stripes[locks.stripe(BlockKey.x(key), BlockKey.z(key))];
+    }
+
+    /**
+     * It returns the value of a key.
+     *
+     * @param key key
+     * @return the value or null if there is none.
+     */
+    public V get(long key) {
+        return stripe(key).get(key);
+    }
+
+    /**
+     * It checks if there is a value for a key.
+     *
+     * @param key key
+     * @return true if the key is in the map.
+     */
+    public boolean containsKey(long key) {
+        return stripe(key).containsKey(key);
+    }
+
+    /**
+     * It stores a value, replacing the previous one.
+     *
+     * @param key   key
+     * @param value value
+     * @return the previous value or null if there was none.
+     */
+    public V put(long key, V value) {
+        versions[locks.stripe(BlockKey.x(key), BlockKey.z(key))]++;
+        return stripe(key).put(key, value);
+    }
+
+    /**
+     * It removes the value of a key.
+     *
+     * @param key key
+     * @return the removed value or null if there was none.
+     */
+    public V remove(long key) {
+        V removed = stripe(key).remove(key);
+        if (removed != null)
+            versions[locks.stripe(BlockKey.x(key), BlockKey.z(key))]++;
+        return removed;
+    }
+
+    /**
+     * number of changes made to the entries of the stripe of a column; it only grows. Like get(), it must be
+     * called with the lock of the column's chunk held.
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return version of the entries of the column's stripe
+     */
+    public long version(int x, int z) {
+        return versions[locks.stripe(x, z)];
+    }
+
+    /**
+     * number of entries.
+     *
+     * @return size of the map
+     */
+    public int size() {
+        int size = 0;
+        for (LongMap<V> map : stripes)
+            size += map.size();
+        return size;
+    }
+
+    /**
+     * It checks if the map is empty.
+     *
+     * @return true if there are no entries.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * It removes all the entries.
+     */
+    public void clear() {
+        for (LongMap<V> map : stripes)
+            map.clear();
+        for (int i = 0; i < versions.length; i++)
+            versions[i]++;
+    }
+
+    /**
+     * It calls the visitor once for every entry, stripe by stripe. The map must not be modified during the visit.
+     *
+     * @param visitor visitor
+     */
+    public void forEach(LongMap.Visitor<? super V> visitor) {
+        for (LongMap<V> map : stripes)
+            map.forEach(visitor);
+    }
+
+    /**
+     * It calls the visitor once for every entry of some stripes, with their locks held.
+     * The map must not be modified during the visit.
+     *
+     * @param held    the stripes, as returned by RegionLocks.lock(), lockArea() or lockAll()
+     * @param visitor visitor
+     */
+    public void forEach(long held, LongMap.Visitor<? super V> visitor) {
+        for (long rest = held; rest != 0; rest &= rest - 1) {
+            int stripe = Long.numberOfTrailingZeros(rest);
+            if (stripe < stripes.length)
+                stripes[stripe].forEach(visitor);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * @author agata.koziol
+ */
+package model.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory outside the Java heap for the voxels of the sections of a store (see ChunkSection).
+ * It is taken from the operating system in pages of PAGE_SIZE bytes, which are cut in slots of the two sizes
+ * a section needs: VOLUME/2 bytes while its voxels are nibbles and VOLUME*2 bytes once they are shorts.
+ * Slots that are freed are kept, zeroed, to be allocated again, so the pages are only given back by close().
+ * <p>
+ * A few large direct buffers are all the garbage collector sees of the voxels of a world, however big it is.
+ * Java 8 has no public way to free a direct buffer, so after close() the pages are returned to the system when
+ * their buffers are collected. Allocations are synchronized, because different chunks can be written concurrently.
+ */
+class VoxelMemory {
+    /**
+     * size of the pages taken from the system.
+     */
+    static final int PAGE_SIZE = 1 << 20;
+    /**
+     * size of the slot of a section with nibbles.
+     */
+    static final int NIBBLE_SLOT = ChunkSection.VOLUME / 2;
+    /**
+     * size of the slot of a section with shorts.
+     */
+    static final int SHORT_SLOT = ChunkSection.VOLUME * 2;
+
+    /**
+     * free slots of each size.
+     */
+    private final ArrayDeque<ByteBuffer> freeNibbles = new ArrayDeque<>(), freeShorts = new ArrayDeque<>();
+    /**
+     * pages taken from the system.
+     */
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    /**
+     * number of bytes in slots that have been allocated and not freed.
+     */
+    private long used;
+    /**
+     * whether the memory has been given back.
+     */
+    private boolean closed;
+
+    /**
+     * It allocates a slot of zeros, in the native byte order.
+     *
+     * @param size NIBBLE_SLOT or SHORT_SLOT
+     * @return the slot
+     * @throws IllegalStateException if the memory has been closed
+     */
+    synchronized ByteBuffer allocate(int size) {
+        if (closed)
+            throw new IllegalStateException("The voxel memory has been released");
+        ArrayDeque<ByteBuffer> free = freeList(size);
+        if (free.isEmpty()) {
+            ByteBuffer page = ByteBuffer.allocateDirect(PAGE_SIZE);
+            pages.add(page);
+            for (int offset = 0; offset < PAGE_SIZE; offset += size) {
+                page.limit(offset + size).position(offset);
+                free.add(page.slice().order(ByteOrder.nativeOrder()));
+            }
+        }
+        used += size;
+        return free.poll();
+    }
+
+    /**
+     * It frees a slot returned by allocate(). Slots freed after close() are ignored.
+     *
+     * @param slot slot
+     */
+    synchronized void free(ByteBuffer slot) {
+        if (closed)
+            return;
+        for (int i = 0; i < slot.capacity(); i += 8)
+            slot.putLong(i, 0L);
+        freeList(slot.capacity()).push(slot);
+        used -= slot.capacity();
+    }
+
+    /**
+     * It gives back all the pages. The slots allocated so far must not be used any more.
+     */
+    synchronized void close() {
+        closed = true;
+        freeNibbles.clear();
+        freeShorts.clear();
+        pages.clear();
+        used = 0;
+    }
+
+    /**
+     * free slots of a size.
+     */
+    private ArrayDeque<ByteBuffer> freeList(int size) {
+        if (size == NIBBLE_SLOT)
+            return freeNibbles;
+        if (size == SHORT_SLOT)
+            return freeShorts;
+        throw new IllegalArgumentException("Wrong slot size " + size);
+    }
+
+    /**
+     * number of bytes taken from the system.
+     *
+     * @return bytes of the pages
+     */
+    synchronized long getReservedBytes() {
+        return (long) pages.size() * PAGE_SIZE;
+    }
+
+    /**
+     * number of bytes allocated to sections.
+     *
+     * @return bytes of the slots in use
+     */
+    synchronized long getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * whether close() has been called.
+     *
+     * @return true if the memory has been given back
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+}
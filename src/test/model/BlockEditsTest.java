@@ -0,0 +1,167 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+import model.storage.BlockEdits;
+
+public class BlockEditsTest {
+
+	World world, twin;
+
+	//Dos mundos iguales: uno se cambia por lotes y el otro bloque a bloque
+	@Before
+	public void setUp() throws Exception {
+		world = new World(16, 60, "Lotes", GenerationMode.PARALLEL);
+		twin = new World(16, 60, "Lotes", GenerationMode.PARALLEL);
+	}
+
+	//Compara bloques, items y criaturas de una caja de los dos mundos
+	private void assertSameBox(int minX, int minZ, int maxX, int maxZ) throws Exception {
+		for (int x = minX; x <= maxX; x++)
+			for (int z = minZ; z <= maxZ; z++) {
+				assertHeight(x, z);
+				for (int y = 0; y <= Location.UPPER_Y_VALUE; y++) {
+					Block b1 = twin.getBlockAt(x, y, z), b2 = world.getBlockAt(x, y, z);
+					assertEquals((b1 == null) ? null : b1.getType(), (b2 == null) ? null : b2.getType());
+					assertEquals(twin.getItemsAt(x, y, z), world.getItemsAt(x, y, z));
+					assertEquals(twin.getCreatureAt(x, y, z) == null, world.getCreatureAt(x, y, z) == null);
+				}
+			}
+	}
+
+	//La altura de la columna es la de un bloque y por encima solo hay líquidos
+	private void assertHeight(int x, int z) throws Exception {
+		int h = world.getHighestY(x, z);
+		assertTrue(h == 0 || world.getBlockAt(x, h, z) != null);
+		for (int y = h + 1; y <= Location.UPPER_Y_VALUE; y++) {
+			Block block = world.getBlockAt(x, y, z);
+			assertTrue("Bloque sobre (" + x + "," + h + "," + z + ")", block == null || block.getType().isLiquid());
+		}
+	}
+
+	//Una columna sin líquidos encima del terreno
+	private int[] dryColumn() throws Exception {
+		for (int x = 0; ; x++) {
+			int h = world.getHighestY(x, 7);
+			if (world.getBlockAt(x, h + 1, 7) == null)
+				return new int[] {x, h};
+		}
+	}
+
+	//Rellenar una caja equivale a añadir sus bloques uno a uno
+	@Test
+	public void testFill() throws Exception {
+		int h = world.getHighestY(10, 10);
+		Block stone = new SolidBlock(Material.STONE);
+		int changed = world.fill(new Location(world, 5, h + 3, 15), new Location(world, 14, h - 6, 5), stone);
+		for (int x = 5; x <= 14; x++)
+			for (int y = h - 6; y <= h + 3; y++)
+				for (int z = 5; z <= 15; z++)
+					twin.addBlock(new Location(twin, x, y, z), new SolidBlock(Material.STONE));
+		assertTrue(changed > 0);
+		assertSameBox(3, 3, 16, 17);
+		for (int x = 5; x <= 14; x++)
+			for (int z = 5; z <= 15; z++)
+				assertTrue(world.getHighestY(x, z) >= h + 3);
+	}
+
+	//Vaciar una caja baja las columnas hasta el bloque más alto que queda
+	@Test
+	public void testClear() throws Exception {
+		int h = world.getHighestY(-10, -10);
+		world.fill(new Location(world, -15, h - 8, -15), new Location(world, -5, Location.UPPER_Y_VALUE, -5), null);
+		for (int x = -15; x <= -5; x++)
+			for (int z = -15; z <= -5; z++) {
+				assertNull(world.getBlockAt(x, h - 8, z));
+				assertTrue(world.getHighestY(x, z) < h - 8);
+				assertNotNull(world.getBlockAt(x, world.getHighestY(x, z), z));
+			}
+	}
+
+	//Reemplazar un material solo cambia los bloques de ese material
+	@Test
+	public void testReplace() throws Exception {
+		Location from = new Location(world, -20, 0, -20), to = new Location(world, 20, 60, 20);
+		int replaced = world.replace(from, to, Material.STONE, new SolidBlock(Material.OBSIDIAN));
+		int stone = 0;
+		for (int x = -20; x <= 20; x++)
+			for (int y = 0; y <= 60; y++)
+				for (int z = -20; z <= 20; z++) {
+					Block block = twin.getBlockAt(x, y, z);
+					if (block != null && block.getType() == Material.STONE) {
+						stone++;
+						assertEquals(Material.OBSIDIAN, world.getBlockAt(x, y, z).getType());
+					} else if (block != null) {
+						assertEquals(block.getType(), world.getBlockAt(x, y, z).getType());
+					}
+				}
+		assertEquals(stone, replaced);
+		assertTrue(stone > 0);
+	}
+
+	//Un lote de cambios equivale a aplicarlos uno a uno, en orden
+	@Test
+	public void testApply() throws Exception {
+		Random rng = new Random(16);
+		BlockEdits edits = new BlockEdits();
+		for (int i = 0; i < 3000; i++) {
+			int x = rng.nextInt(40) - 20, z = rng.nextInt(40) - 20;
+			int y = twin.getHighestY(x, z) + rng.nextInt(10) - 5;
+			if (y <= 0 || (x == 0 && z == 0))
+				continue;
+			Location loc = new Location(twin, x, y, z);
+			if (rng.nextBoolean()) {
+				edits.set(x, y, z, new SolidBlock(Material.DIRT));
+				twin.addBlock(loc, new SolidBlock(Material.DIRT));
+			} else {
+				edits.remove(x, y, z);
+				Block block = twin.getBlockAt(loc);
+				if (block != null)
+					twin.fill(loc, loc, null);
+			}
+		}
+		world.apply(edits);
+		assertSameBox(-20, -20, 19, 19);
+	}
+
+	//Si un cambio no es válido, no se aplica ninguno
+	@Test
+	public void testApplyIsAtomic() throws Exception {
+		Player player = world.getPlayer();
+		Location at = player.getLocation();
+		int[] column = dryColumn();
+		int x = column[0], h = column[1];
+		BlockEdits edits = new BlockEdits()
+				.set(x, h + 1, 7, new SolidBlock(Material.STONE))
+				.set((int) at.getX(), (int) at.getY(), (int) at.getZ(), new SolidBlock(Material.STONE));
+		try {
+			world.apply(edits);
+			fail("Error: se ha puesto un bloque en la posición del jugador");
+		} catch (BadLocationException e) {}
+		assertNull(world.getBlockAt(x, h + 1, 7));
+		assertEquals(h, world.getHighestY(x, 7));
+
+		try {
+			world.apply(new BlockEdits().set(x, h + 1, 7, new SolidBlock(Material.STONE)).remove(31, 10, 0));
+			fail("Error: se ha cambiado un bloque fuera del mundo");
+		} catch (BadLocationException e) {}
+		assertNull(world.getBlockAt(x, h + 1, 7));
+
+		// los líquidos sí se pueden poner donde está el jugador
+		world.fill(at, at, new LiquidBlock(Material.WATER));
+		assertEquals(Material.WATER, world.getBlockAt(at).getType());
+	}
+
+	@Test(expected = BadLocationException.class)
+	public void testFillOutside() throws Exception {
+		world.fill(new Location(world, 0, 10, 0), new Location(world, 0, 10, 31), null);
+	}
+}
@@ -0,0 +1,78 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import model.*;
+import model.entities.Player;
+import model.storage.BlockKey;
+
+public class BlockPosTest {
+
+	//Las operaciones devuelven posiciones nuevas sin cambiar la original
+	@Test
+	public void testArithmetic() {
+		BlockPos pos = new BlockPos(3, 70, -5);
+		assertEquals(new BlockPos(4, 69, -5), pos.offset(1, -1, 0));
+		assertEquals(new BlockPos(3, 70, -5), pos);
+		assertSame(pos, pos.offset(0, 0, 0));
+		assertEquals(new BlockPos(1, 2, 3), new BlockPos(4, 72, -2).subtract(pos));
+		assertEquals(pos, new BlockPos(1, 2, 3).add(new BlockPos(2, 68, -8)));
+		assertEquals(new BlockPos(6, 140, -10), pos.multiply(2));
+		assertEquals(new BlockPos(3, 71, -5), pos.above());
+		assertEquals(new BlockPos(3, 69, -5), pos.below());
+		assertTrue(pos.isAdjacent(pos.offset(1, 1, -1)));
+		assertFalse(pos.isAdjacent(pos));
+		assertFalse(pos.isAdjacent(pos.offset(2, 0, 0)));
+		assertEquals(5.0, new BlockPos(0, 0, 0).distance(new BlockPos(3, 4, 0)), 0.0);
+		assertEquals("(3,70,-5)", pos.toString());
+	}
+
+	//Conversiones con Location y con BlockKey
+	@Test
+	public void testConversions() {
+		World world = new World(1, 10, "Posiciones");
+		assertEquals(new BlockPos(-1, 4, 2), BlockPos.of(new Location(world, -0.5, 4.9, 2.0)));
+		assertEquals(new Location(world, 2, 3, -4), new BlockPos(2, 3, -4).toLocation(world));
+		BlockPos pos = new BlockPos(-4, 255, 4);
+		assertEquals(BlockKey.pack(-4, 255, 4), pos.key());
+		assertEquals(pos, BlockPos.of(pos.key()));
+	}
+
+	//Las posiciones vecinas tienen códigos hash distintos, también las Location fraccionarias
+	@Test
+	public void testHashes() {
+		Set<Integer> hashes = new HashSet<>();
+		Set<Integer> locationHashes = new HashSet<>();
+		for (int x = -8; x < 8; x++)
+			for (int y = 0; y < 16; y++)
+				for (int z = -8; z < 8; z++) {
+					hashes.add(new BlockPos(x, y, z).hashCode());
+					locationHashes.add(new Location(x * 0.25, y * 0.25, z * 0.25).hashCode());
+				}
+		assertEquals(16 * 16 * 16, hashes.size());
+		assertTrue(locationHashes.size() > 16 * 16 * 16 * 99 / 100);
+		assertEquals(new BlockPos(1, 2, 3).hashCode(), new BlockPos(1, 2, 3).hashCode());
+		assertEquals(new Location(0.0, -0.0, 1.0), new Location(-0.0, 0.0, 1.0));
+		assertEquals(new Location(0.0, -0.0, 1.0).hashCode(), new Location(-0.0, 0.0, 1.0).hashCode());
+	}
+
+	//La orientación del jugador le sigue al moverse
+	@Test
+	public void testPlayerFacing() throws Exception {
+		World world = new World(2, 20, "Jugador");
+		Player player = world.getPlayer();
+		assertEquals(new BlockPos(0, 0, 1), player.getFacing());
+		player.orientate(1, 0, 0);
+		assertEquals(new BlockPos(1, 0, 0), player.getFacing());
+		assertEquals(player.getBlockPosition().offset(1, 0, 0), BlockPos.of(player.getOrientation()));
+		Location location = player.getLocation();
+		Player copy = new Player("Steve", location, player.getOrientation(), player.getHealth(), player.getFoodLevel(), player.getInventory());
+		assertEquals(player.getFacing(), copy.getFacing());
+		assertEquals(player.getOrientation(), copy.getOrientation());
+	}
+}
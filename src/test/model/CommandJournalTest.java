@@ -0,0 +1,166 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+
+public class CommandJournalTest {
+
+	//10 comandos que se guardan en el journal (show no se guarda, y "move 4 0 0" falla pero se guarda)
+	final static String SCRIPT = "10 50 Journal\n" +
+			"move 1 0 0\n" +
+			"orientate 0 -1 0\n" +
+			"useItem 3\n" +
+			"show\n" +
+			"move 4 0 0\n" +
+			"selectItem 0\n" +
+			"orientate 1 0 0\n" +
+			"useItem 20\n" +
+			"move 0 0 1\n" +
+			"move 0 1 1\n" +
+			"useItem 2\n" +
+			"show\n";
+
+	Path dir, file;
+	BlockWorld bw;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("journal");
+		file = dir.resolve("game.journal");
+		bw = BlockWorld.getInstance();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		bw.setJournal(null, 1);
+		try (java.nio.file.DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path p : files)
+				Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+
+	//Juega el guión con journal y devuelve lo que muestra el último show
+	private String play(int checkpointInterval) {
+		bw.setJournal(file, checkpointInterval);
+		PrintStream out = System.out;
+		ByteArrayOutputStream shown = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(shown));
+		try {
+			bw.play(new Scanner(SCRIPT));
+		} finally {
+			System.setOut(out);
+		}
+		String text = shown.toString().trim();
+		return text.substring(text.lastIndexOf("Name="));
+	}
+
+	//Recuperar desde el último checkpoint deja el mundo igual que al final de la partida
+	@Test
+	public void testRecoverFromCheckpoint() throws Exception {
+		String expected = play(3);
+		assertEquals(9, CommandJournal.lastCheckpoint(file));
+		// sólo se reaplica el comando posterior al checkpoint
+		assertEquals(1, CommandJournal.replay(file, 9, (command, a, b, c) -> { }));
+		World recovered = bw.recover(file);
+		assertEquals(expected, bw.showPlayerInfo(recovered.getPlayer()));
+	}
+
+	//Sin checkpoints se reaplica todo el journal sobre un mundo nuevo
+	@Test
+	public void testRecoverWithoutCheckpoint() throws Exception {
+		String expected = play(100);
+		assertEquals(-1, CommandJournal.lastCheckpoint(file));
+		assertEquals(10, CommandJournal.replay(file, 0, (command, a, b, c) -> { }));
+		World recovered = bw.recover(file);
+		assertEquals("Journal", recovered.getName());
+		assertEquals(expected, bw.showPlayerInfo(recovered.getPlayer()));
+	}
+
+	//Al recuperar no se muestran los items que encuentran los movimientos reaplicados
+	@Test
+	public void testRecoverIsQuiet() throws Exception {
+		play(100);
+		PrintStream out = System.out;
+		ByteArrayOutputStream shown = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(shown));
+		try {
+			bw.recover(file);
+		} finally {
+			System.setOut(out);
+		}
+		for (String line : shown.toString().split("\\R"))
+			assertNotEquals("null", line.trim());
+	}
+
+	//Un registro escrito a medias al final del journal se ignora
+	@Test
+	public void testTornTail() throws Exception {
+		play(100);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 5);
+		}
+		assertEquals(9, CommandJournal.replay(file, 0, (command, a, b, c) -> { }));
+	}
+
+	//Los comandos se leen en orden y con sus argumentos
+	@Test
+	public void testAppendAndReplay() throws Exception {
+		World world = bw.createWorld(1, 5, "Small");
+		try (CommandJournal journal = new CommandJournal(file, world)) {
+			for (int i = 0; i < 10000; i++)
+				journal.append(CommandJournal.MOVE, i, -i, i % 3);
+			assertEquals(10000, journal.size());
+		}
+		long[] sum = {0};
+		assertEquals(5000, CommandJournal.replay(file, 5000, (command, a, b, c) -> {
+			assertEquals(CommandJournal.MOVE, command);
+			assertEquals(-a, b);
+			assertEquals(a % 3, c);
+			sum[0] += a;
+		}));
+		assertEquals((5000L + 9999) * 5000 / 2, sum[0]);
+	}
+
+	//El mundo de un journal se crea con los mismos modos de generación y almacenamiento
+	@Test
+	public void testModes() throws Exception {
+		World world = new World(4, 30, "Modes", GenerationMode.PARALLEL, StorageMode.OFF_HEAP);
+		try (CommandJournal journal = new CommandJournal(file, world)) {
+			journal.append(CommandJournal.SELECT_ITEM, 0, 0, 0);
+		}
+		World created = CommandJournal.createWorld(file);
+		try {
+			assertEquals(GenerationMode.PARALLEL, created.getGenerationMode());
+			assertEquals(StorageMode.OFF_HEAP, created.getStorageMode());
+			assertEquals(world, created);
+			assertEquals(world.getPlayer(), created.getPlayer());
+			assertEquals(1, CommandJournal.replay(file, 0,
+					(command, a, b, c) -> assertEquals(CommandJournal.SELECT_ITEM, command)));
+		} finally {
+			world.unload();
+			created.unload();
+		}
+	}
+
+	//Un fichero que no es un journal
+	@Test(expected = IOException.class)
+	public void testNotAJournal() throws Exception {
+		Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		bw.recover(file);
+	}
+}
@@ -0,0 +1,134 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import model.*;
+import model.exceptions.UnknownGameCommandException;
+
+public class CommandReaderTest {
+
+	private CommandReader reader(String script) {
+		return new CommandReader(Channels.newChannel(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	//Comandos, argumentos y tokens de sobra
+	@Test
+	public void testCommands() throws Exception {
+		CommandReader r = reader("move 1 -1 0\n  orientate\t0 0 +1 extra\r\nuseItem 150\nselectItem 2\nshow");
+		assertEquals(CommandJournal.MOVE, r.nextCommand());
+		assertEquals(1, r.getArgument(0));
+		assertEquals(-1, r.getArgument(1));
+		assertEquals(0, r.getArgument(2));
+		assertEquals(CommandJournal.ORIENTATE, r.nextCommand());
+		assertEquals(1, r.getArgument(2));
+		assertEquals(CommandJournal.USE_ITEM, r.nextCommand());
+		assertEquals(150, r.getArgument(0));
+		assertEquals(CommandJournal.SELECT_ITEM, r.nextCommand());
+		assertEquals(2, r.getArgument(0));
+		assertTrue(r.hasNextLine());
+		assertEquals(CommandReader.SHOW, r.nextCommand());
+		assertFalse(r.hasNextLine());
+	}
+
+	//Tras un error se sigue leyendo en la línea siguiente
+	@Test
+	public void testErrors() throws Exception {
+		CommandReader r = reader("jump 1\nmove 1 x 0\nmove 1 2\n\nuseItem 2147483648\nuseItem -2147483648\n");
+		try {
+			r.nextCommand();
+			fail("Debió saltar UnknownGameCommandException");
+		} catch (UnknownGameCommandException e) {
+			assertTrue(e.getMessage().contains("jump"));
+		}
+		try {
+			r.nextCommand();
+			fail("Debió saltar InputMismatchException");
+		} catch (InputMismatchException e) {
+		}
+		try {
+			r.nextCommand();
+			fail("Debió saltar NoSuchElementException");
+		} catch (NoSuchElementException e) {
+		}
+		try {
+			r.nextCommand();
+			fail("Debió saltar NoSuchElementException");
+		} catch (NoSuchElementException e) {
+		}
+		try {
+			r.nextCommand();
+			fail("Debió saltar InputMismatchException");
+		} catch (InputMismatchException e) {
+		}
+		assertEquals(CommandJournal.USE_ITEM, r.nextCommand());
+		assertEquals(Integer.MIN_VALUE, r.getArgument(0));
+		assertFalse(r.hasNextLine());
+	}
+
+	//La cabecera del guión: semilla, tamaño y nombre
+	@Test
+	public void testHeader() throws Exception {
+		CommandReader r = reader("-9223372036854775808 5 World 5x5\r\nshow\n");
+		assertEquals(Long.MIN_VALUE, r.nextLong());
+		assertEquals(5, r.nextInt());
+		assertEquals("World 5x5", r.nextLine());
+		assertEquals(CommandReader.SHOW, r.nextCommand());
+	}
+
+	//Un guión mayor que el bloque de lectura
+	@Test
+	public void testLongScript() throws Exception {
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			script.append("move ").append(i).append(' ').append(-i).append(" 7\n");
+		CommandReader r = reader(script.toString());
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(CommandJournal.MOVE, r.nextCommand());
+			assertEquals(i, r.getArgument(0));
+			assertEquals(-i, r.getArgument(1));
+			assertEquals(7, r.getArgument(2));
+		}
+		assertFalse(r.hasNextLine());
+	}
+
+	//playFile termina igual que play(Scanner)
+	@Test
+	public void testPlayFileEqualsPlay() throws Exception {
+		String script = "10 50 Reader\nmove 1 0 0\nfly 1\norientate 0 -1 0\nuseItem 3\nmove 4 0 0\n"
+				+ "selectItem 0\norientate 1 0 0\nuseItem 20\nmove 0 0 1\nmove 0 1 1\nshow\n";
+		BlockWorld bw = BlockWorld.getInstance();
+		Path file = Files.createTempFile("script", ".txt");
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		ByteArrayOutputStream fromScanner = new ByteArrayOutputStream();
+		ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+		try {
+			Files.write(file, script.getBytes(StandardCharsets.UTF_8));
+			System.setOut(new PrintStream(fromScanner));
+			System.setErr(new PrintStream(fromScanner));
+			bw.play(new Scanner(script));
+			System.setOut(new PrintStream(fromFile));
+			System.setErr(new PrintStream(fromFile));
+			bw.playFile(file.toString());
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+			Files.delete(file);
+		}
+		assertEquals(fromScanner.toString(), fromFile.toString());
+		assertTrue(fromFile.toString().contains("Name=Steve"));
+	}
+}
@@ -0,0 +1,102 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Creature;
+import model.entities.Monster;
+import model.exceptions.BadLocationException;
+
+public class CreatureQueryTest {
+
+	World world;
+
+	@Before
+	public void setUp() throws Exception {
+		world = new World(11, 100, "Criaturas", GenerationMode.PARALLEL);
+	}
+
+	//Criaturas de una caja, buscadas bloque a bloque
+	private Set<Creature> scan(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		Set<Creature> found = new HashSet<>();
+		for (int x = minX; x <= maxX; x++)
+			for (int y = minY; y <= maxY; y++)
+				for (int z = minZ; z <= maxZ; z++) {
+					Creature creature = world.getCreatureAt(x, y, z);
+					if (creature != null)
+						found.add(creature);
+				}
+		return found;
+	}
+
+	//Las consultas por caja encuentran las mismas criaturas que recorrer los bloques
+	@Test
+	public void testCreaturesIn() throws Exception {
+		Collection<Creature> all = world.getCreaturesIn(new Location(world, -49, 0, -49), new Location(world, 50, 255, 50));
+		assertEquals(scan(-49, 0, -49, 50, 255, 50), new HashSet<>(all));
+		assertFalse(all.isEmpty());
+
+		Collection<Creature> some = world.getCreaturesIn(new Location(world, 20, 90, 30), new Location(world, -10, 40, -5));
+		assertEquals(scan(-10, 40, -5, 20, 90, 30), new HashSet<>(some));
+	}
+
+	//Las criaturas a una distancia dada se actualizan al añadir y matar criaturas
+	@Test
+	public void testCreaturesWithin() throws Exception {
+		Location center = world.getHighestLocationAt(new Location(world, 30, 0, -30)).above();
+		Set<Creature> expected = new HashSet<>();
+		for (Creature creature : scan(20, 0, -40, 40, 255, -20))
+			if (creature.getLocation().distance(center) <= 10)
+				expected.add(creature);
+		assertEquals(expected, new HashSet<>(world.getCreaturesWithin(center, 10)));
+
+		if (world.getCreatureAt(center) == null) {
+			Monster monster = new Monster(center, 10);
+			world.addCreature(monster);
+			assertTrue(world.getCreaturesWithin(center, 0).contains(monster));
+			world.killCreature(center);
+		}
+		assertTrue(world.getCreaturesWithin(center, 0).isEmpty());
+	}
+
+	//Un radio enorme o infinito encuentra todas las criaturas del mundo
+	@Test
+	public void testHugeRadius() throws Exception {
+		Location center = new Location(world, 0, 60, 0);
+		Set<Creature> all = scan(-49, 0, -49, 50, 255, 50);
+		assertFalse(all.isEmpty());
+		assertEquals(all, new HashSet<>(world.getCreaturesWithin(center, 1e9)));
+		assertEquals(all, new HashSet<>(world.getCreaturesWithin(center, 1e10)));
+		assertEquals(all, new HashSet<>(world.getCreaturesWithin(center, Double.POSITIVE_INFINITY)));
+	}
+
+	//Una caja con esquinas muy lejos del mundo encuentra todas las criaturas del mundo
+	@Test
+	public void testHugeBox() throws Exception {
+		Set<Creature> all = scan(-49, 0, -49, 50, 255, 50);
+		assertFalse(all.isEmpty());
+		assertEquals(all, new HashSet<>(world.getCreaturesIn(new Location(world, -1e12, -1e12, -1e12),
+				new Location(world, 1e12, 1e12, 1e12))));
+		assertEquals(all, new HashSet<>(world.getCreaturesIn(new Location(world, 3e9, 300, -3e9),
+				new Location(world, -3e9, -5, 3e9))));
+		// una caja fuera del mundo no encuentra ninguna
+		assertTrue(world.getCreaturesIn(new Location(world, 1e12, 0, 0), new Location(world, 2e12, 255, 10)).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNaNRadius() throws Exception {
+		world.getCreaturesWithin(new Location(world, 0, 60, 0), Double.NaN);
+	}
+
+	@Test(expected = BadLocationException.class)
+	public void testOtherWorld() throws Exception {
+		world.getCreaturesWithin(new Location(new World(1, 10, "Otro"), 0, 0, 0), 5);
+	}
+}
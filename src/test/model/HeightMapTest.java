@@ -0,0 +1,69 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.exceptions.BadLocationException;
+
+public class HeightMapTest {
+
+	World world;
+
+	@Before
+	public void setUp() throws Exception {
+		world = new World(3, 50, "Alturas", GenerationMode.PARALLEL);
+	}
+
+	//getHighestY() coincide con getHighestLocationAt() en todo el mundo
+	@Test
+	public void testHighestY() throws Exception {
+		for (int x = -24; x <= 25; x++)
+			for (int z = -24; z <= 25; z++)
+				assertEquals(world.getHighestLocationAt(new Location(world, x, 0, z)).getY(), world.getHighestY(x, z), 0);
+	}
+
+	//Con coordenadas no enteras se usa la columna del bloque que las contiene, también las negativas
+	@Test
+	public void testHighestFractional() throws Exception {
+		assertEquals(world.getHighestY(-3, 4), world.getHighestLocationAt(new Location(world, -2.5, 0, 4.5)).getY(), 0);
+		assertEquals(world.getHighestY(-8, -8), world.getHighestLocationAt(new Location(world, -7.2, 0, -7.9)).getY(), 0);
+		int h = world.getHighestY(-5, -5);
+		world.addBlock(new Location(world, -4.5, h + 3, -4.5), new SolidBlock(Material.STONE));
+		assertEquals(h + 3, world.getHighestY(-5, -5));
+	}
+
+	//Al romper el bloque más alto, la altura baja hasta el siguiente bloque de la columna
+	@Test
+	public void testDestroyTop() throws Exception {
+		int x = 7, z = -3;
+		int h = world.getHighestY(x, z);
+		world.addBlock(new Location(world, x, h + 5, z), new SolidBlock(Material.STONE));
+		world.addBlock(new Location(world, x, h + 9, z), new SolidBlock(Material.STONE));
+		assertEquals(h + 9, world.getHighestY(x, z));
+		world.destroyBlockAt(new Location(world, x, h + 9, z));
+		assertEquals(h + 5, world.getHighestY(x, z));
+		world.destroyBlockAt(new Location(world, x, h + 5, z));
+		assertEquals(h, world.getHighestY(x, z));
+		// se rompe la columna hasta llegar al fondo
+		while (world.getHighestY(x, z) > 0) {
+			int top = world.getHighestY(x, z);
+			Block block = world.getBlockAt(x, top, z);
+			if (block == null || block.getType().isLiquid())
+				break;
+			world.destroyBlockAt(new Location(world, x, top, z));
+			int expected = 0;
+			for (int y = top - 1; y > 0 && expected == 0; y--)
+				if (world.getBlockAt(x, y, z) != null)
+					expected = y;
+			assertEquals(expected, world.getHighestY(x, z));
+		}
+	}
+
+	@Test(expected = BadLocationException.class)
+	public void testOutside() throws Exception {
+		world.getHighestY(26, 0);
+	}
+}
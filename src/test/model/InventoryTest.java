@@ -0,0 +1,114 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import model.*;
+
+public class InventoryTest {
+
+	final static Material materials[] = { Material.APPLE, Material.BREAD, Material.DIRT, Material.STONE, Material.IRON_SWORD };
+
+	//Comprueba que el inventario tiene las pilas de la lista, en el mismo orden
+	private void check(List<ItemStack> expected, Inventory inventory) {
+		assertEquals(expected.size(), inventory.getSize());
+		for (int i = 0; i < expected.size(); i++)
+			assertSame(expected.get(i), inventory.getItem(i));
+		for (Material material : materials) {
+			int first = -1;
+			for (int i = 0; i < expected.size() && first < 0; i++)
+				if (expected.get(i).getType() == material)
+					first = i;
+			assertEquals(first, inventory.first(material));
+		}
+		assertEquals("(inHand=null," + expected + ")", inventory.toString());
+	}
+
+	//Añadir, borrar y reemplazar posiciones al azar da lo mismo que una lista
+	@Test
+	public void testAgainstList() throws Exception {
+		Random rng = new Random(21);
+		Inventory inventory = new Inventory();
+		List<ItemStack> expected = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			Material material = materials[rng.nextInt(materials.length)];
+			ItemStack items = new ItemStack(material, material.isWeapon() ? 1 : 1 + rng.nextInt(64));
+			int op = rng.nextInt(10);
+			if (op < 5 || expected.isEmpty()) {
+				assertEquals(items.getAmount(), inventory.addItem(items));
+				expected.add(items);
+			} else if (op < 9) {
+				int pos = rng.nextInt(expected.size());
+				inventory.clear(pos);
+				expected.remove(pos);
+			} else {
+				int pos = rng.nextInt(expected.size());
+				inventory.setItem(pos, items);
+				expected.set(pos, items);
+			}
+			if (i % 97 == 0)
+				check(expected, inventory);
+		}
+		check(expected, inventory);
+
+		Inventory copy = new Inventory(inventory);
+		assertEquals(inventory, copy);
+		assertEquals(inventory.hashCode(), copy.hashCode());
+		while (!expected.isEmpty()) {
+			inventory.clear(0);
+			expected.remove(0);
+		}
+		check(expected, inventory);
+		assertEquals(new Inventory(), inventory);
+	}
+
+	//merge() completa las pilas del mismo material antes de ocupar una posición nueva
+	@Test
+	public void testMerge() throws Exception {
+		Inventory inventory = new Inventory();
+		ItemStack apples = new ItemStack(Material.APPLE, 60);
+		assertEquals(60, inventory.merge(apples));
+		assertSame(apples, inventory.getItem(0));
+		assertEquals(3, inventory.merge(new ItemStack(Material.BREAD, 3)));
+		assertEquals(10, inventory.merge(new ItemStack(Material.APPLE, 10)));
+		assertEquals(3, inventory.getSize());
+		assertEquals(new ItemStack(Material.APPLE, 64), inventory.getItem(0));
+		assertEquals(new ItemStack(Material.APPLE, 6), inventory.getItem(2));
+		assertEquals(5, inventory.merge(new ItemStack(Material.APPLE, 5)));
+		assertEquals(new ItemStack(Material.APPLE, 11), inventory.getItem(2));
+		assertEquals(3, inventory.getSize());
+
+		// las armas no se apilan
+		inventory.merge(new ItemStack(Material.IRON_SWORD, 1));
+		inventory.merge(new ItemStack(Material.IRON_SWORD, 1));
+		assertEquals(5, inventory.getSize());
+		assertEquals(3, inventory.first(Material.IRON_SWORD));
+	}
+
+	//Un inventario lleno no admite posiciones nuevas, pero sí completar sus pilas
+	@Test
+	public void testCapacity() throws Exception {
+		Inventory inventory = new Inventory(2);
+		assertEquals(2, inventory.getCapacity());
+		assertEquals(50, inventory.addItem(new ItemStack(Material.DIRT, 50)));
+		assertEquals(1, inventory.addItem(new ItemStack(Material.IRON_SWORD, 1)));
+		assertEquals(0, inventory.addItem(new ItemStack(Material.STONE, 1)));
+		assertEquals(14, inventory.merge(new ItemStack(Material.DIRT, 20)));
+		assertEquals(2, inventory.getSize());
+		assertEquals(new ItemStack(Material.DIRT, 64), inventory.getItem(0));
+		inventory.clear(1);
+		assertEquals(6, inventory.merge(new ItemStack(Material.DIRT, 6)));
+		assertEquals(2, new Inventory(inventory).getCapacity());
+		assertEquals(Inventory.UNLIMITED, new Inventory().getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCapacity() {
+		new Inventory(-1);
+	}
+}
@@ -0,0 +1,58 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import model.Location;
+import model.World;
+
+public class LocationNeighbourTest {
+
+	static World world;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		world = new World(1, 5, "Neighbours");
+	}
+
+	//forEachNeighbour visita las mismas posiciones que devuelve getNeighborhood
+	private void assertSameNeighbours(Location center) {
+		final Set<Location> visited = new HashSet<>();
+		center.forEachNeighbour((x, y, z) -> assertTrue(visited.add(new Location(center.getWorld(), x, y, z))));
+		assertEquals(center.getNeighborhood(), visited);
+	}
+
+	@Test
+	public void testForEachNeighbour() {
+		assertSameNeighbours(new Location(world, 0, 70, 0));
+		assertSameNeighbours(new Location(world, -2, 0, 3));
+		assertSameNeighbours(new Location(world, 3, 255, -2));
+		assertSameNeighbours(new Location(10, 20, 30));
+	}
+
+	//isAdjacent coincide con getNeighborhood().contains() alrededor de esquinas y bordes del mundo
+	@Test
+	public void testIsAdjacent() {
+		double[][] centers = {{0, 70, 0}, {-2, 0, -2}, {3, 255, 3}, {2, 100, -1}};
+		for (double[] c : centers) {
+			Location center = new Location(world, c[0], c[1], c[2]);
+			Set<Location> neighbours = center.getNeighborhood();
+			for (int i = -2; i <= 2; i++)
+				for (int j = -2; j <= 2; j++)
+					for (int k = -2; k <= 2; k++) {
+						Location other = new Location(world, c[0] + i, c[1] + j, c[2] + k);
+						assertEquals(other.toString(), neighbours.contains(other), center.isAdjacent(other));
+					}
+		}
+		Location center = new Location(world, 0, 70, 0);
+		assertFalse(center.isAdjacent(new Location(1, 70, 0)));
+		assertFalse(center.isAdjacent(new Location(new World(1, 5, "Other"), 1, 70, 0)));
+		assertFalse(center.isAdjacent(null));
+		assertTrue(new Location(0, 0, 0).isAdjacent(new Location(-1, -1, -1)));
+	}
+}
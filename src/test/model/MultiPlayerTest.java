@@ -0,0 +1,182 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+public class MultiPlayerTest {
+
+	BlockWorld game;
+	World world;
+
+	@Before
+	public void setUp() throws Exception {
+		game = BlockWorld.getInstance();
+		world = game.createWorld(3, 128, "Multi", GenerationMode.PARALLEL);
+	}
+
+	//Un jugador nuevo aparece sobre el bloque más alto de la columna y ocupa su posición
+	@Test
+	public void testAddPlayer() throws Exception {
+		Player alex = world.addPlayer("Alex", 20, 20);
+		Location ground = world.getHighestLocationAt(new Location(world, 20, 0, 20));
+		assertEquals(ground.above(), alex.getLocation());
+		assertEquals(2, world.getPlayers().size());
+		assertTrue(world.getPlayers().contains(world.getPlayer()));
+		assertTrue(world.getPlayers().contains(alex));
+		assertFalse(world.isFree(alex.getLocation()));
+		String neighbourhood = world.getNeighbourhoodString(new Location(world, 21, alex.getLocation().getY(), 20));
+		assertTrue(neighbourhood.indexOf('P') >= 0);
+
+		try {
+			world.addPlayer("Otro", 20, 20);
+			fail("Error: la posición está ocupada por Alex");
+		} catch (BadLocationException e) {}
+		try {
+			world.addPlayer("Fuera", 1000, 0);
+			fail("Error: la columna está fuera del mundo");
+		} catch (BadLocationException e) {}
+	}
+
+	//Un jugador que se mueve deja libre su posición anterior
+	@Test
+	public void testMoveAndRemovePlayer() throws Exception {
+		Player alex = world.addPlayer("Alex", -30, 10);
+		Location start = alex.getLocation();
+		game.movePlayer(alex, 0, 1, 0);
+		assertTrue(world.isFree(start));
+		assertFalse(world.isFree(start.above()));
+
+		assertFalse(world.removePlayer(world.getPlayer()));
+		assertTrue(world.removePlayer(alex));
+		assertFalse(world.removePlayer(alex));
+		assertTrue(world.isFree(start.above()));
+		assertEquals(1, world.getPlayers().size());
+	}
+
+	//Jugadores en chunks distintos se mueven a la vez sin perder su posición en el mundo
+	@Test
+	public void testConcurrentPlayers() throws Exception {
+		List<Player> players = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			players.add(addPlayerNear("P" + i, -56 + i * 16, 40 - i * 12));
+		List<Thread> threads = new ArrayList<>();
+		AtomicInteger failures = new AtomicInteger();
+		for (Player p : players) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < 50; i++) {
+						game.movePlayer(p, 0, 1, 0);
+						game.movePlayer(p, 0, -1, 0);
+						game.useItem(p, 1);
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, failures.get());
+		assertEquals(9, world.getPlayers().size());
+		for (Player p : players) {
+			assertFalse(world.isFree(p.getLocation()));
+			assertTrue(world.isFree(p.getLocation().above()));
+		}
+	}
+
+	//Añade un jugador en la primera columna libre a partir de (x,z)
+	private Player addPlayerNear(String name, int x, int z) {
+		for (int dx = 0; dx < 8; dx++) {
+			try {
+				return world.addPlayer(name, x + dx, z);
+			} catch (BadLocationException e) {
+				// hay una criatura encima de la columna
+			}
+		}
+		throw new AssertionError("No hay sitio para " + name);
+	}
+
+	//Dos jugadores que intentan moverse a la vez a la misma posición: solo uno lo consigue
+	@Test
+	public void testSameTarget() throws Exception {
+		int top = 0;
+		for (int x = 9; x <= 11; x++)
+			top = Math.max(top, (int) world.getHighestLocationAt(new Location(world, x, 0, 10)).getY());
+		// columnas a ambos lados del destino con la misma altura
+		for (int y = 1; y <= top + 2; y++) {
+			for (int x = 9; x <= 11; x += 2) {
+				Location loc = new Location(world, x, y, 10);
+				if (world.getBlockAt(loc) == null)
+					world.addBlock(loc, new SolidBlock(Material.BEDROCK));
+			}
+		}
+		Player a = world.addPlayer("A", 9, 10);
+		Player b = world.addPlayer("B", 11, 10);
+		assertEquals(a.getLocation().getY(), b.getLocation().getY(), 0);
+		Location target = new Location(world, 10, a.getLocation().getY(), 10);
+		assertTrue(world.isFree(target));
+
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		AtomicInteger moved = new AtomicInteger();
+		for (int round = 0; round < 200; round++) {
+			Thread ta = new Thread(() -> moveAfter(barrier, a, 1, moved));
+			Thread tb = new Thread(() -> moveAfter(barrier, b, -1, moved));
+			ta.start();
+			tb.start();
+			ta.join();
+			tb.join();
+			assertEquals(round + 1, moved.get());
+			assertFalse(world.isFree(target));
+			// el que ha llegado vuelve a su columna
+			if (a.getLocation().equals(target))
+				game.movePlayer(a, -1, 0, 0);
+			else
+				game.movePlayer(b, 1, 0, 0);
+			assertTrue(world.isFree(target));
+		}
+	}
+
+	private void moveAfter(CyclicBarrier barrier, Player p, int dx, AtomicInteger moved) {
+		try {
+			barrier.await();
+			game.movePlayer(p, dx, 0, 0);
+			moved.incrementAndGet();
+		} catch (BadLocationException e) {
+			// la posición ya estaba ocupada por el otro jugador
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	//Los demás jugadores se guardan en el snapshot del mundo
+	@Test
+	public void testSnapshotWithPlayers() throws Exception {
+		Player alex = world.addPlayer("Alex", 5, -5);
+		Path file = Files.createTempFile("world", ".bw");
+		try {
+			world.save(file);
+			World loaded = World.load(file);
+			assertEquals(2, loaded.getPlayers().size());
+			Location where = alex.getLocation();
+			assertFalse(loaded.isFree(new Location(loaded, where.getX(), where.getY(), where.getZ())));
+			assertEquals("Steve", loaded.getPlayer().getName());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
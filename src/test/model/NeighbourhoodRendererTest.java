@@ -0,0 +1,109 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Creature;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+public class NeighbourhoodRendererTest {
+
+	World world;
+
+	@Before
+	public void setUp() throws Exception {
+		world = new World(5, 40, "Vecindario", GenerationMode.PARALLEL);
+	}
+
+	//Vecindario de radio r dibujado bloque a bloque con los métodos del mundo
+	private String scan(Location center, int r) throws Exception {
+		int cx = (int) Math.floor(center.getX()), cy = (int) Math.floor(center.getY()), cz = (int) Math.floor(center.getZ());
+		StringBuilder expected = new StringBuilder();
+		for (int z = cz - r; z <= cz + r; z++) {
+			for (int y = cy + r; y >= cy - r; y--) {
+				for (int x = cx - r; x <= cx + r; x++) {
+					ItemStack item = world.getItemsAt(x, y, z);
+					Creature creature = world.getCreatureAt(x, y, z);
+					Block block = world.getBlockAt(x, y, z);
+					Player player = null;
+					for (Player p : world.getPlayers())
+						if (p.getLocation().equals(new Location(world, x, y, z)))
+							player = p;
+					if (item != null)
+						expected.append(item.getType().isBlock() ? Character.toUpperCase(item.getType().getSymbol()) : item.getType().getSymbol());
+					else if (creature != null)
+						expected.append(creature.getSymbol());
+					else if (player != null)
+						expected.append(player.getSymbol());
+					else if (block != null)
+						expected.append(block.getType().getSymbol());
+					else if (!Location.check(world, x, y, z))
+						expected.append('X');
+					else
+						expected.append('.');
+				}
+				if (y > cy - r)
+					expected.append(' ');
+			}
+			if (z < cz + r)
+				expected.append('\n');
+		}
+		return expected.toString();
+	}
+
+	//Los vecindarios de varios radios coinciden con recorrer los bloques, también en los bordes del mundo
+	@Test
+	public void testRender() throws Exception {
+		for (int r = 0; r <= 3; r++) {
+			NeighbourhoodRenderer renderer = new NeighbourhoodRenderer(world, r);
+			for (int[] c : new int[][]{{0, 0}, {-19, 20}, {13, -3}, {20, 20}}) {
+				Location center = world.getHighestLocationAt(new Location(world, c[0], 0, c[1]));
+				assertEquals(scan(center, r), renderer.render(center));
+				assertEquals((2 * r + 1) * (2 * r + 1) * (2 * r + 1), renderer.getDrawnBlocks());
+			}
+		}
+		Location bottom = new Location(world, 0, 0, 0);
+		assertEquals(scan(bottom, 1), world.getNeighbourhoodString(bottom));
+	}
+
+	//Sin cambios no se vuelve a dibujar nada; tras un cambio solo se dibuja su chunk
+	@Test
+	public void testRenderChanges() throws Exception {
+		NeighbourhoodRenderer renderer = new NeighbourhoodRenderer(world, 4);
+		Location center = world.getHighestLocationAt(new Location(world, 16, 0, 16)).above();
+		String full = renderer.renderChanges(center);
+		assertEquals(9 * 9 * 9, renderer.getDrawnBlocks());
+		assertEquals(full, renderer.renderChanges(center));
+		assertEquals(0, renderer.getDrawnBlocks());
+
+		Location placed = new Location(world, 13, center.getY(), 13);
+		world.addBlock(placed, new SolidBlock(Material.OBSIDIAN));
+		String changed = renderer.renderChanges(center);
+		assertTrue(renderer.getDrawnBlocks() > 0 && renderer.getDrawnBlocks() < 9 * 9 * 9);
+		assertEquals(scan(center, 4), changed);
+		assertNotEquals(full, changed);
+
+		world.addItems(new Location(world, 20, center.getY(), 20), new ItemStack(Material.APPLE, 1));
+		assertEquals(scan(center, 4), renderer.renderChanges(center));
+		world.destroyBlockAt(placed);
+		assertEquals(scan(center, 4), renderer.renderChanges(center));
+
+		// al moverse el centro se dibuja todo de nuevo
+		renderer.renderChanges(center.above());
+		assertEquals(9 * 9 * 9, renderer.getDrawnBlocks());
+	}
+
+	@Test(expected = BadLocationException.class)
+	public void testOtherWorld() throws Exception {
+		new NeighbourhoodRenderer(world, 1).render(new Location(new World(1, 10, "Otro"), 0, 0, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeRadius() {
+		new NeighbourhoodRenderer(world, -1);
+	}
+}
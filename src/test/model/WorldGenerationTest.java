@@ -0,0 +1,105 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import model.*;
+import model.storage.Chunk;
+import model.entities.Creature;
+
+public class WorldGenerationTest {
+
+	//Compara todos los bloques, items y criaturas de dos mundos del mismo tamaño
+	private void assertSameWorld(World expected, World actual) {
+		int size = expected.getSize();
+		int positiveWorldLimit = size / 2;
+		int negativeWorldLimit = (size % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+		for (int x = negativeWorldLimit; x <= positiveWorldLimit; x++)
+			for (int z = negativeWorldLimit; z <= positiveWorldLimit; z++)
+				for (int y = 0; y <= Location.UPPER_Y_VALUE; y++) {
+					Block b1 = expected.getBlockAt(x, y, z);
+					Block b2 = actual.getBlockAt(x, y, z);
+					assertEquals("(" + x + "," + y + "," + z + ")", b1 == null, b2 == null);
+					if (b1 != null)
+						assertEquals(b1.getType(), b2.getType());
+					ItemStack i1 = expected.getItemsAt(x, y, z);
+					ItemStack i2 = actual.getItemsAt(x, y, z);
+					assertEquals(i1 == null ? null : i1.toString(), i2 == null ? null : i2.toString());
+					Creature c1 = expected.getCreatureAt(x, y, z);
+					Creature c2 = actual.getCreatureAt(x, y, z);
+					assertEquals(c1 == null ? null : c1.getSymbol(), c2 == null ? null : c2.getSymbol());
+				}
+	}
+
+	//La generación en paralelo no depende del orden en que se generan los chunks
+	@Test
+	public void testParallelIsRepeatable() {
+		World w1 = new World(7, 40, "W", GenerationMode.PARALLEL);
+		World w2 = new World(7, 40, "W", GenerationMode.PARALLEL);
+		assertEquals(GenerationMode.PARALLEL, w1.getGenerationMode());
+		assertSameWorld(w1, w2);
+	}
+
+	//Un mundo LAZY es igual al mundo PARALLEL con la misma semilla, se recorra como se recorra
+	@Test
+	public void testLazyEqualsParallel() throws Exception {
+		World parallel = new World(7, 40, "W", GenerationMode.PARALLEL);
+		World lazy = new World(7, 40, "W", GenerationMode.LAZY);
+		// primero una esquina lejana
+		assertNotNull(lazy.getHighestLocationAt(new Location(lazy, 20, 0, 20)));
+		assertSameWorld(parallel, lazy);
+	}
+
+	//Cuenta los bloques líquidos junto a un bloque vacío a la misma altura, al que podrían fluir.
+	//Devuelve {los que tienen ese bloque en otro chunk, los que lo tienen en su mismo chunk}
+	private int[] countStoppedLiquids(World world) {
+		int size = world.getSize();
+		int positiveWorldLimit = size / 2;
+		int negativeWorldLimit = (size % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+		int[] stopped = new int[2];
+		int[][] sides = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+		for (int x = negativeWorldLimit; x <= positiveWorldLimit; x++)
+			for (int z = negativeWorldLimit; z <= positiveWorldLimit; z++)
+				for (int y = 0; y <= Location.UPPER_Y_VALUE; y++) {
+					Block b = world.getBlockAt(x, y, z);
+					if (b == null || !b.getType().isLiquid())
+						continue;
+					for (int[] side : sides) {
+						int nx = x + side[0], nz = z + side[1];
+						if (nx < negativeWorldLimit || nx > positiveWorldLimit || nz < negativeWorldLimit
+								|| nz > positiveWorldLimit || world.getBlockAt(nx, y, nz) != null)
+							continue;
+						boolean sameChunk = (x - negativeWorldLimit) / Chunk.SIZE == (nx - negativeWorldLimit) / Chunk.SIZE
+								&& (z - negativeWorldLimit) / Chunk.SIZE == (nz - negativeWorldLimit) / Chunk.SIZE;
+						stopped[sameChunk ? 1 : 0]++;
+					}
+				}
+		return stopped;
+	}
+
+	//Los líquidos de un mundo CLASSIC llenan todo lo que alcanzan; en PARALLEL y LAZY se generan
+	//chunk a chunk y pueden quedarse en el borde de su chunk, pero nunca dentro de él
+	@Test
+	public void testLiquidsStopAtChunkBorders() throws Exception {
+		int[] classic = countStoppedLiquids(new World(7, 64, "W", GenerationMode.CLASSIC));
+		assertEquals(0, classic[0]);
+		assertEquals(0, classic[1]);
+		int[] parallel = countStoppedLiquids(new World(7, 64, "W", GenerationMode.PARALLEL));
+		assertTrue(parallel[0] > 0);
+		assertEquals(0, parallel[1]);
+		int[] lazy = countStoppedLiquids(new World(7, 64, "W", GenerationMode.LAZY));
+		assertEquals(parallel[0], lazy[0]);
+		assertEquals(0, lazy[1]);
+	}
+
+	//Un mundo LAZY enorme se crea sin generar todo el terreno
+	@Test
+	public void testHugeLazyWorld() throws Exception {
+		World lazy = new World(3, 1000000, "Huge", GenerationMode.LAZY);
+		Location player = lazy.getPlayer().getLocation();
+		assertNull(lazy.getBlockAt(player));
+		assertNotNull(lazy.getBlockAt(player.below()));
+		assertNotNull(lazy.getBlockAt(499999, 0, 499999));
+	}
+}
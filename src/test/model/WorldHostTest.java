@@ -0,0 +1,127 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.metrics.Metrics;
+import model.exceptions.BadLocationException;
+
+public class WorldHostTest {
+
+	WorldHost host;
+
+	@Before
+	public void setUp() throws Exception {
+		host = new WorldHost();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		host.close();
+	}
+
+	//Muchos mundos creados a la vez, cada uno igual al creado por separado
+	@Test
+	public void testManyWorlds() throws Exception {
+		List<CompletableFuture<World>> created = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+			created.add(host.createWorld(i, 16, "W" + i, GenerationMode.PARALLEL));
+		CompletableFuture.allOf(created.toArray(new CompletableFuture<?>[0])).get();
+		assertEquals(100, host.getWorldNames().size());
+		for (int i = 0; i < 100; i += 25) {
+			World hosted = host.getWorld("W" + i);
+			World alone = new World(i, 16, "W" + i, GenerationMode.PARALLEL);
+			assertEquals(alone, hosted);
+			assertEquals(alone.getPlayer().getLocation(), hosted.getPlayer().getLocation());
+		}
+	}
+
+	//Las tareas de un mismo mundo se ejecutan en orden y de una en una
+	@Test
+	public void testTasksInOrder() throws Exception {
+		host.createWorld(1, 16, "A", GenerationMode.PARALLEL);
+		host.createWorld(2, 16, "B", GenerationMode.PARALLEL);
+		List<Integer> a = new ArrayList<>();
+		List<Integer> b = new ArrayList<>();
+		List<CompletableFuture<?>> done = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			int n = i;
+			done.add(host.submit("A", game -> a.add(n)));
+			done.add(host.submit("B", game -> b.add(n)));
+		}
+		CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).get();
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i, (int) a.get(i));
+			assertEquals(i, (int) b.get(i));
+		}
+	}
+
+	//Los comandos mueven al jugador de su mundo y sus errores llegan al future
+	@Test
+	public void testCommands() throws Exception {
+		World world = host.createWorld(7, 16, "C", GenerationMode.PARALLEL).get();
+		Location start = world.getPlayer().getLocation();
+		host.execute("C", CommandJournal.MOVE, 0, 1, 0).get();
+		assertEquals(start.getY() + 1, host.getWorld("C").getPlayer().getLocation().getY(), 0);
+		try {
+			host.execute("C", CommandJournal.MOVE, 5, 0, 0).get();
+			fail("Debió saltar BadLocationException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BadLocationException);
+		}
+	}
+
+	//Nombres repetidos, mundos inexistentes y tamaños no válidos
+	@Test
+	public void testErrors() throws Exception {
+		host.createWorld(1, 16, "D", GenerationMode.PARALLEL).get();
+		try {
+			host.createWorld(1, 16, "D", GenerationMode.PARALLEL);
+			fail("Debió saltar IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			host.submit("E", game -> null);
+			fail("Debió saltar IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			host.createWorld(1, 0, "F", GenerationMode.PARALLEL).get();
+			fail("Debió saltar IllegalArgumentException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertNull(host.getWorld("F"));
+		assertTrue(host.removeWorld("D"));
+		assertFalse(host.getWorldNames().contains("D"));
+	}
+
+	//Al cerrar el host se quitan todos los juegos y no se aceptan otros nuevos
+	@Test
+	public void testClose() throws Exception {
+		host.createWorld(1, 16, "G", GenerationMode.PARALLEL, StorageMode.OFF_HEAP).get();
+		assertTrue(Metrics.getDefault().readGauge("world.G.blocks") > 0);
+		host.close();
+		assertTrue(host.getWorldNames().isEmpty());
+		try {
+			Metrics.getDefault().readGauge("world.G.blocks");
+			fail("Debió saltar IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			host.createWorld(2, 16, "H", GenerationMode.PARALLEL);
+			fail("Debió saltar IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertNull(host.getWorld("H"));
+	}
+}
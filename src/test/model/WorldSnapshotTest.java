@@ -0,0 +1,173 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Creature;
+import model.entities.Player;
+
+public class WorldSnapshotTest {
+
+	Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("world", ".bw");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	//Compara bloques (con sus drops), items y criaturas de dos mundos
+	private void assertSameContents(World expected, World actual) {
+		int size = expected.getSize();
+		int positiveWorldLimit = size / 2;
+		int negativeWorldLimit = (size % 2 == 0) ? -(positiveWorldLimit - 1) : -positiveWorldLimit;
+		for (int x = negativeWorldLimit; x <= positiveWorldLimit; x++)
+			for (int z = negativeWorldLimit; z <= positiveWorldLimit; z++)
+				for (int y = 0; y <= Location.UPPER_Y_VALUE; y++) {
+					Block b1 = expected.getBlockAt(x, y, z);
+					Block b2 = actual.getBlockAt(x, y, z);
+					assertEquals("(" + x + "," + y + "," + z + ")", b1, b2);
+					if (b1 instanceof SolidBlock)
+						assertEquals(((SolidBlock) b1).getDrops(), ((SolidBlock) b2).getDrops());
+					assertEquals(expected.getItemsAt(x, y, z), actual.getItemsAt(x, y, z));
+					Creature c1 = expected.getCreatureAt(x, y, z);
+					Creature c2 = actual.getCreatureAt(x, y, z);
+					assertEquals(c1, c2);
+					if (c1 != null)
+						assertEquals(c1.getClass(), c2.getClass());
+				}
+	}
+
+	//Un mundo guardado y cargado es igual al original
+	@Test
+	public void testRoundTrip() throws Exception {
+		World world = new World(10, 50, "Snap");
+		world.save(file);
+		World loaded = World.load(file);
+		assertEquals(world, loaded);
+		assertEquals(GenerationMode.CLASSIC, loaded.getGenerationMode());
+		assertEquals(world.getPlayer(), loaded.getPlayer());
+		assertEquals(world.getPlayer().toString(), loaded.getPlayer().toString());
+		assertSameContents(world, loaded);
+	}
+
+	//Los cambios hechos en el mundo y en el jugador se conservan
+	@Test
+	public void testEdits() throws Exception {
+		World world = new World(1, 20, "Edits", GenerationMode.PARALLEL);
+		Player player = world.getPlayer();
+		Location above = new Location(world, 0, 200, 0);
+		world.addBlock(above, BlockFactory.createBlock(Material.BEDROCK));
+		world.destroyBlockAt(player.getLocation().below());
+		player.addItemsToInventory(new ItemStack(Material.BREAD, 5));
+		player.setFoodLevel(7.5);
+		player.orientate(1, 0, 0);
+		world.save(file);
+
+		World loaded = World.load(file);
+		assertEquals(Material.BEDROCK, loaded.getBlockAt(above).getType());
+		assertEquals(world.getPlayer(), loaded.getPlayer());
+		assertEquals(1, loaded.getPlayer().getInventorySize());
+		assertEquals(7.5, loaded.getPlayer().getFoodLevel(), 0);
+		assertSameContents(world, loaded);
+	}
+
+	//Un mundo LAZY guarda sólo lo generado, y genera el resto al cargarlo
+	@Test
+	public void testLazy() throws Exception {
+		World world = new World(7, 40, "Lazy", GenerationMode.LAZY);
+		world.save(file);
+		long saved = Files.size(file);
+		World loaded = World.load(file);
+		assertSameContents(new World(7, 40, "Lazy", GenerationMode.PARALLEL), loaded);
+		loaded.save(file);
+		assertTrue(Files.size(file) > saved);
+	}
+
+	//Un mundo fuera del heap se carga también fuera del heap
+	@Test
+	public void testOffHeap() throws Exception {
+		World world = new World(3, 40, "OffHeap", GenerationMode.PARALLEL, StorageMode.OFF_HEAP);
+		world.save(file);
+		World loaded = World.load(file);
+		try {
+			assertEquals(StorageMode.OFF_HEAP, loaded.getStorageMode());
+			assertEquals(GenerationMode.PARALLEL, loaded.getGenerationMode());
+			assertSameContents(world, loaded);
+		} finally {
+			world.unload();
+			loaded.unload();
+		}
+	}
+
+	//Un fichero que no es una instantánea
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws Exception {
+		Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+		World.load(file);
+	}
+
+	//Una instantánea truncada
+	@Test(expected = IOException.class)
+	public void testTruncated() throws Exception {
+		new World(1, 5, "Cut").save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length / 2));
+		World.load(file);
+	}
+
+	//Guardar sobre una instantánea la reemplaza sin dejar el fichero temporal
+	@Test
+	public void testSaveReplaces() throws Exception {
+		new World(1, 40, "Big").save(file);
+		World small = new World(2, 5, "Small");
+		small.save(file);
+		assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+		World loaded = World.load(file);
+		assertEquals("Small", loaded.getName());
+		assertSameContents(small, loaded);
+	}
+
+	//Escribe un tamaño de mundo en la cabecera de una instantánea
+	private void corruptSize(int size) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		java.nio.ByteBuffer.wrap(bytes).putInt(4 + 4 + 8, size);
+		Files.write(file, bytes);
+	}
+
+	//Una instantánea con un tamaño de mundo negativo
+	@Test(expected = IOException.class)
+	public void testNegativeSize() throws Exception {
+		new World(1, 5, "Corrupt").save(file);
+		corruptSize(-5);
+		World.load(file);
+	}
+
+	//Una instantánea con un tamaño de mundo enorme
+	@Test(expected = IOException.class)
+	public void testHugeSize() throws Exception {
+		new World(1, 5, "Corrupt", GenerationMode.LAZY).save(file);
+		corruptSize(Integer.MAX_VALUE);
+		World.load(file);
+	}
+
+	//Una instantánea con más chunks de los que caben en el fichero
+	@Test(expected = IOException.class)
+	public void testSizeBeyondFile() throws Exception {
+		new World(1, 5, "Corrupt").save(file);
+		corruptSize(100000);
+		World.load(file);
+	}
+}
@@ -0,0 +1,193 @@
+package test.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.entities.Creature;
+import model.entities.Monster;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+public class WorldTickerTest {
+
+	World world;
+
+	@Before
+	public void setUp() throws Exception {
+		world = new World(5, 128, "Ticks", GenerationMode.PARALLEL);
+	}
+
+	//Altura del bloque más alto de la columna (x,z)
+	private int top(int x, int z) throws Exception {
+		return (int) world.getHighestLocationAt(new Location(world, x, 0, z)).getY();
+	}
+
+	//El agua colocada en el aire cae y se extiende un bloque por tick
+	@Test
+	public void testLiquidFlows() throws Exception {
+		int h = top(3, 3);
+		WorldTicker ticker = new WorldTicker(world, 20);
+		world.addBlock(new Location(world, 3, h + 2, 3), new LiquidBlock(Material.WATER));
+		assertNull(world.getBlockAt(3, h + 1, 3));
+		ticker.tick();
+		assertTrue(ticker.getLiquidUpdates() > 0);
+		assertEquals(Material.WATER, world.getBlockAt(3, h + 1, 3).getType());
+		int before = ticker.getLiquidUpdates();
+		ticker.tick();
+		assertTrue(ticker.getLiquidUpdates() >= before);
+	}
+
+	//Los chunks sin jugadores cerca no se simulan: sus bloques pendientes se descartan
+	@Test
+	public void testInactiveChunks() throws Exception {
+		int h = top(60, 60);
+		WorldTicker ticker = new WorldTicker(world, 20);
+		world.addBlock(new Location(world, 60, h + 2, 60), new LiquidBlock(Material.LAVA));
+		ticker.tick();
+		assertEquals(0, ticker.getLiquidUpdates());
+		assertNull(world.getBlockAt(60, h + 1, 60));
+		assertEquals((2 * WorldTicker.ACTIVE_RADIUS + 1) * (2 * WorldTicker.ACTIVE_RADIUS + 1), ticker.getActiveChunks());
+
+		world.addPlayer("Alex", 58, 58);
+		ticker.tick();
+		assertEquals(0, ticker.getLiquidUpdates());
+		assertNull(world.getBlockAt(60, h + 1, 60));
+		// con el jugador cerca, el líquido colocado sí fluye
+		world.addBlock(new Location(world, 61, h + 2, 60), new LiquidBlock(Material.LAVA));
+		ticker.tick();
+		assertTrue(ticker.getLiquidUpdates() > 0);
+		assertEquals(Material.LAVA, world.getBlockAt(61, h + 1, 60).getType());
+	}
+
+	//Al vaciar una caja junto a un líquido, este fluye por sus caras
+	@Test
+	public void testFlowIntoEmptiedBox() throws Exception {
+		int h = 0;
+		for (int x = 2; x <= 8; x++)
+			for (int z = 2; z <= 4; z++)
+				h = Math.max(h, top(x, z));
+		WorldTicker ticker = new WorldTicker(world, 20);
+		world.fill(new Location(world, 4, h + 1, 2), new Location(world, 8, h + 4, 4), new SolidBlock(Material.STONE));
+		world.addBlock(new Location(world, 3, h + 4, 3), new LiquidBlock(Material.WATER));
+		for (int i = 0; i < 5; i++)
+			ticker.tick();
+		assertEquals(Material.STONE, world.getBlockAt(4, h + 4, 3).getType());
+
+		world.fill(new Location(world, 4, h + 1, 2), new Location(world, 8, h + 4, 4), null);
+		ticker.tick();
+		assertEquals(Material.WATER, world.getBlockAt(4, h + 4, 3).getType());
+		assertNull(world.getBlockAt(6, h + 4, 3));
+	}
+
+	//Sin ticker no se encolan bloques, y al cerrarlo se vacía la cola
+	@Test
+	public void testPendingOnlyWithTicker() throws Exception {
+		int h = top(3, 3);
+		world.addBlock(new Location(world, 3, h + 2, 3), new LiquidBlock(Material.WATER));
+		world.destroyBlockAt(new Location(world, 3, h + 2, 3));
+		WorldTicker ticker = new WorldTicker(world, 20);
+		ticker.tick();
+		assertEquals(0, ticker.getLiquidUpdates());
+		assertNull(world.getBlockAt(3, h + 1, 3));
+
+		world.addBlock(new Location(world, 3, h + 2, 3), new LiquidBlock(Material.WATER));
+		world.destroyBlockAt(new Location(world, 3, h + 2, 3));
+		world.addBlock(new Location(world, 3, h + 2, 3), new LiquidBlock(Material.WATER));
+		ticker.close();
+		ticker.tick();
+		assertEquals(0, ticker.getLiquidUpdates());
+		assertNull(world.getBlockAt(3, h + 1, 3));
+	}
+
+	//Un monstruo se acerca al jugador más cercano y le ataca
+	@Test
+	public void testMonsterChases() throws Exception {
+		int x0 = -50, z0 = 40;
+		int height = 0;
+		for (int x = x0; x <= x0 + 8; x++)
+			height = Math.max(height, top(x, z0));
+		// plataforma por encima del terreno, a la que no pueden subir otras criaturas
+		int platform = height + 3;
+		for (int x = x0; x <= x0 + 8; x++)
+			world.addBlock(new Location(world, x, platform, z0), new SolidBlock(Material.BEDROCK));
+		Player alex = world.addPlayer("Alex", x0, z0);
+		assertEquals(platform + 1, alex.getLocation().getY(), 0);
+		world.addCreature(new Monster(new Location(world, x0 + 8, platform + 1, z0), 20));
+
+		WorldTicker ticker = new WorldTicker(world, 20);
+		for (int i = 0; i < 20; i++)
+			ticker.tick();
+		assertNull(world.getCreatureAt(x0 + 8, platform + 1, z0));
+		Creature monster = world.getCreatureAt(x0 + 1, platform + 1, z0);
+		assertNotNull(monster);
+		assertEquals(20, monster.getHealth(), 0);
+		assertTrue(alex.getHealth() < Player.MAX_HEALTH);
+	}
+
+	//El ticker ejecuta ticks a la frecuencia pedida y mide su duración
+	@Test
+	public void testScheduledTicks() throws Exception {
+		WorldTicker ticker = new WorldTicker(world, 50);
+		ticker.start();
+		try {
+			ticker.start();
+			fail("Error: el ticker ya estaba en marcha");
+		} catch (IllegalStateException e) {}
+		Thread.sleep(500);
+		ticker.close();
+		long ticks = ticker.getTickCount();
+		assertTrue("Ticks: " + ticks, ticks >= 5);
+		assertTrue(ticker.getAverageTickTime() > 0);
+		assertTrue(ticker.getMaxTickTime() >= ticker.getAverageTickTime());
+		assertTrue(ticker.report().startsWith("Ticks: " + ticks + " ticks"));
+		Thread.sleep(100);
+		assertEquals(ticks, ticker.getTickCount());
+	}
+
+	//Un tick sólo recorre los chunks activos, aunque el mundo tenga miles de millones de chunks
+	@Test
+	public void testHugeWorld() throws Exception {
+		World huge = new World(3, 1000000, "Huge", GenerationMode.LAZY);
+		WorldTicker ticker = new WorldTicker(huge, 20);
+		long start = System.nanoTime();
+		ticker.tick();
+		assertTrue(System.nanoTime() - start < 1000000000L);
+		assertEquals((2 * WorldTicker.ACTIVE_RADIUS + 1) * (2 * WorldTicker.ACTIVE_RADIUS + 1), ticker.getActiveChunks());
+		ticker.close();
+	}
+
+	//Con la simulación en marcha, colocar un líquido bloquea también las columnas vecinas, aunque sean de otro chunk
+	@Test
+	public void testLiquidLocksNeighbours() throws Exception {
+		// x=-48 es la última columna del primer chunk y x=-47 la primera del segundo
+		int h = top(-47, -55);
+		WorldTicker ticker = new WorldTicker(world, 20);
+		Block water = new LiquidBlock(Material.WATER);
+		Thread placer = new Thread(() -> {
+			try {
+				world.addBlock(new Location(world, -47, h + 2, -55), water);
+			} catch (BadLocationException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long held = world.lockAround(new Location(world, -49, h, -55));
+		try {
+			placer.start();
+			placer.join(200);
+			assertTrue(placer.isAlive());
+		} finally {
+			world.unlock(held);
+		}
+		placer.join();
+		assertEquals(Material.WATER, world.getBlockAt(-47, h + 2, -55).getType());
+		ticker.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongRate() {
+		new WorldTicker(world, 0);
+	}
+}
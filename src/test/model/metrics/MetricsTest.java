@@ -0,0 +1,128 @@
+package test.model.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Scanner;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import model.*;
+import model.metrics.Counter;
+import model.metrics.Histogram;
+import model.metrics.Metrics;
+
+public class MetricsTest {
+
+	//Contadores e histogramas se crean una vez por nombre
+	@Test
+	public void testCountersAndHistograms() {
+		Metrics metrics = new Metrics();
+		Counter counter = metrics.counter("a.counter");
+		assertSame(counter, metrics.counter("a.counter"));
+		counter.increment();
+		counter.add(4);
+		assertEquals(5, counter.getCount());
+
+		Histogram histogram = metrics.histogram("a.histogram");
+		assertSame(histogram, metrics.histogram("a.histogram"));
+		assertEquals(0, histogram.getPercentile(0.5));
+		for (int i = 1; i <= 100; i++)
+			histogram.record(i);
+		histogram.record(-5);
+		assertEquals(101, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.0, histogram.getMean(), 0.01);
+		// los percentiles se redondean al límite de su potencia de dos
+		assertEquals(63, histogram.getPercentile(0.5));
+		assertEquals(100, histogram.getPercentile(0.99));
+		assertEquals(0, histogram.getPercentile(0));
+
+		metrics.reset();
+		assertEquals(0, counter.getCount());
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+
+	//Los medidores se leen al volcar y solo se quitan si no se han reemplazado
+	@Test
+	public void testGaugesAndDump() {
+		Metrics metrics = new Metrics();
+		metrics.counter("b").add(3);
+		metrics.histogram("c").record(8);
+		LongSupplier gauge = () -> 42;
+		metrics.gauge("a", gauge);
+		assertEquals(42, metrics.readGauge("a"));
+		assertEquals("a 42\nb 3\nc count=1 mean=8.0 p50=8 p99=8 max=8\n", metrics.dump());
+		LongSupplier other = () -> 7;
+		metrics.gauge("a", other);
+		assertFalse(metrics.removeGauge("a", gauge));
+		assertEquals(7, metrics.readGauge("a"));
+		assertTrue(metrics.removeGauge("a", other));
+		try {
+			metrics.readGauge("a");
+			fail("Debió saltar IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	//Las métricas se ven por JMX
+	@Test
+	public void testJmx() throws Exception {
+		Metrics metrics = new Metrics();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("blockworld:type=Metrics,name=MetricsTest");
+		metrics.register(server, name);
+		try {
+			metrics.counter("jmx.counter").add(2);
+			metrics.histogram("jmx.histogram").record(1000);
+			metrics.gauge("jmx.gauge", () -> 9);
+			assertEquals(2L, server.getAttribute(name, "jmx.counter"));
+			assertEquals(9L, server.getAttribute(name, "jmx.gauge"));
+			assertEquals(1L, server.getAttribute(name, "jmx.histogram.count"));
+			assertEquals(1000L, server.getAttribute(name, "jmx.histogram.max"));
+			assertEquals(7, server.getMBeanInfo(name).getAttributes().length);
+			assertEquals(metrics.dump(), server.invoke(name, "dump", null, null));
+		} finally {
+			server.unregisterMBean(name);
+		}
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(Metrics.DEFAULT_NAME)));
+	}
+
+	//Generar un mundo, jugar y desbordar líquidos quedan registrados en las métricas por defecto
+	@Test
+	public void testInstrumentation() throws Exception {
+		Metrics metrics = Metrics.getDefault();
+		long generated = metrics.histogram("world.generate.caves").getCount();
+		long total = metrics.histogram("world.generate.total").getCount();
+		long fills = metrics.histogram("floodfill.volume").getCount();
+		long moves = metrics.histogram("blockworld.command.move").getCount();
+		long shows = metrics.histogram("blockworld.command.show").getCount();
+		long unknown = metrics.counter("blockworld.exceptions.UnknownGameCommandException").getCount();
+
+		BlockWorld game = BlockWorld.getInstance();
+		game.play(new Scanner("3 30 Metricas\nmove 0 0 1\nfly\nshow\n"));
+		assertEquals(generated + 1, metrics.histogram("world.generate.caves").getCount());
+		assertEquals(total + 1, metrics.histogram("world.generate.total").getCount());
+		assertTrue(metrics.histogram("floodfill.volume").getCount() > fills);
+		assertEquals(moves + 1, metrics.histogram("blockworld.command.move").getCount());
+		assertEquals(shows + 1, metrics.histogram("blockworld.command.show").getCount());
+		assertEquals(unknown + 1, metrics.counter("blockworld.exceptions.UnknownGameCommandException").getCount());
+		assertTrue(metrics.counter("blockworld.exceptions").getCount() > 0);
+
+		// los medidores del mundo sólo están mientras se juega, para no retener el mundo
+		assertFalse(metrics.dump().contains("world.Metricas."));
+		World world = game.getWorld();
+		world.registerMetrics(metrics);
+		assertEquals(1, metrics.readGauge("world.Metricas.players"));
+		assertTrue(metrics.readGauge("world.Metricas.blocks") > 0);
+		assertTrue(metrics.dump().contains("world.Metricas.creatures "));
+		game.createWorld(4, 10, "Otro");
+		assertFalse(metrics.dump().contains("world.Metricas."));
+	}
+}
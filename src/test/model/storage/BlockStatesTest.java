@@ -0,0 +1,69 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import model.*;
+import model.exceptions.WrongMaterialException;
+import model.storage.BlockStates;
+import model.storage.ChunkStore;
+
+public class BlockStatesTest {
+
+	//Hay un único bloque compartido por material y configuración de drops
+	@Test
+	public void testSolid() throws Exception {
+		SolidBlock plain = BlockStates.solid(Material.STONE, false);
+		SolidBlock dropping = BlockStates.solid(Material.STONE, true);
+		assertSame(plain, BlockStates.solid(Material.STONE, false));
+		assertSame(dropping, BlockStates.solid(Material.STONE, true));
+		assertNotSame(plain, dropping);
+		assertEquals(Material.STONE, plain.getType());
+		assertNull(plain.getDrops());
+		assertEquals(new ItemStack(Material.STONE, 1), dropping.getDrops());
+		assertEquals(SolidBlock.class, dropping.getClass());
+	}
+
+	@Test(expected = WrongMaterialException.class)
+	public void testLiquid() throws Exception {
+		BlockStates.solid(Material.WATER, false);
+	}
+
+	//El almacén guarda los bloques compartidos sin copiarlos, y las copias con el mismo estado dejan su sitio
+	@Test
+	public void testStoredWithoutCopy() throws Exception {
+		ChunkStore store = new ChunkStore(40);
+		SolidBlock shared = BlockStates.solid(Material.DIRT, true);
+		SolidBlock own = new SolidBlock(Material.DIRT);
+		own.setDrops(Material.DIRT, 1);
+		store.put(0, 10, 0, own);
+		assertNotSame(own, store.get(0, 10, 0));
+		store.put(1, 10, 0, shared);
+		assertSame(shared, store.get(1, 10, 0));
+		assertSame(shared, store.get(0, 10, 0));
+
+		// al leer el almacén se usan los bloques compartidos
+		ByteBuffer buffer = ByteBuffer.allocate((int) store.serializedSize());
+		store.writeTo(buffer);
+		buffer.flip();
+		ChunkStore read = new ChunkStore(40);
+		read.readFrom(buffer);
+		assertSame(shared, read.get(0, 10, 0));
+	}
+
+	//El mundo devuelve copias de los bloques compartidos, que se pueden modificar
+	@Test
+	public void testWorldCopies() throws Exception {
+		World world = new World(3, 10, "Compartidos");
+		SolidBlock bedrock = (SolidBlock) world.getBlockAt(new Location(world, 0, 0, 0));
+		assertEquals(Material.BEDROCK, bedrock.getType());
+		assertNotSame(BlockStates.solid(Material.BEDROCK, bedrock.getDrops() != null), bedrock);
+		bedrock.setDrops(Material.CHEST, 1);
+		assertNotEquals(new ItemStack(Material.CHEST, 1), ((SolidBlock) world.getBlockAt(new Location(world, 0, 0, 0))).getDrops());
+		assertNull(BlockStates.solid(Material.BEDROCK, false).getDrops());
+		assertEquals(new ItemStack(Material.BEDROCK, 1), BlockStates.solid(Material.BEDROCK, true).getDrops());
+	}
+}
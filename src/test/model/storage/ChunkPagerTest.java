@@ -0,0 +1,155 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.*;
+import model.storage.ChunkPager;
+import model.storage.ChunkStore;
+
+public class ChunkPagerTest {
+
+	Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("region", ".bwr");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	//Contenido de un almacén tal como lo escribe writeTo()
+	private byte[] bytes(ChunkStore store) {
+		ByteBuffer buffer = ByteBuffer.allocate((int) store.serializedSize());
+		store.writeTo(buffer);
+		return buffer.array();
+	}
+
+	//Un almacén con 4 chunks en memoria se comporta como uno que los tiene todos (también fuera del heap)
+	@Test
+	public void testAgainstMemory() throws Exception {
+		for (StorageMode storage : StorageMode.values()) {
+			ChunkStore expected = new ChunkStore(100);
+			ChunkStore paged = new ChunkStore(100, storage);
+			ChunkPager pager = paged.enablePaging(file, 4);
+			Random rng = new Random(24);
+			for (int i = 0; i < 20000; i++) {
+				int x = rng.nextInt(100) - 49, y = rng.nextInt(40), z = rng.nextInt(100) - 49;
+				switch (rng.nextInt(5)) {
+					case 0:
+						assertEquals(expected.remove(x, y, z), paged.remove(x, y, z));
+						break;
+					case 1:
+						expected.setHeight(x, z, y);
+						paged.setHeight(x, z, y);
+						break;
+					case 2:
+						assertEquals(expected.get(x, y, z), paged.get(x, y, z));
+						assertEquals(expected.topBelow(x, 256, z), paged.topBelow(x, 256, z));
+						assertEquals(expected.getHeight(x, z), paged.getHeight(x, z), 0.0);
+						break;
+					default:
+						Material material = rng.nextBoolean() ? Material.STONE : Material.DIRT;
+						assertEquals(expected.put(x, y, z, new SolidBlock(material)), paged.put(x, y, z, new SolidBlock(material)));
+				}
+				assertTrue(pager.getResidentChunks() <= 4);
+			}
+			assertEquals(expected.size(), paged.size());
+			assertTrue(pager.getPagedChunks() > 0);
+			assertTrue(pager.getPageIns() > 0 && pager.getEvictions() >= pager.getPageIns());
+			assertTrue(pager.getHitRate() > 0 && pager.getHitRate() < 1);
+			assertTrue(pager.getMaxPageInNanos() > 0 && pager.getFileSize() > 0);
+			// el volcado copia los chunks expulsados sin volver a leerlos
+			long pageIns = pager.getPageIns();
+			byte[] snapshot = bytes(expected);
+			assertArrayEquals(snapshot, bytes(paged));
+			assertEquals(pageIns, pager.getPageIns());
+
+			// leer el volcado en el almacén paginado
+			paged.readFrom(ByteBuffer.wrap(snapshot));
+			assertTrue(pager.getResidentChunks() <= 4);
+			assertArrayEquals(snapshot, bytes(paged));
+			paged.release();
+			assertFalse(Files.exists(file));
+		}
+	}
+
+	//Cambiar el presupuesto expulsa los chunks que sobran
+	@Test
+	public void testBudget() throws Exception {
+		ChunkStore store = new ChunkStore(100);
+		for (int x = -49; x <= 50; x += 16)
+			store.put(x, 0, 0, new SolidBlock(Material.STONE));
+		ChunkPager pager = store.enablePaging(file, 10);
+		assertEquals(7, pager.getResidentChunks());
+		pager.setBudget(ChunkPager.MIN_BUDGET);
+		assertEquals(ChunkPager.MIN_BUDGET, pager.getBudget());
+		assertEquals(ChunkPager.MIN_BUDGET, pager.getResidentChunks());
+		assertEquals(3, pager.getPagedChunks());
+		assertEquals(7, store.size());
+		pager.resetStatistics();
+		for (int x = -49; x <= 50; x += 16)
+			assertNotNull(store.get(x, 0, 0));
+		assertEquals(7, pager.getHits() + pager.getPageIns());
+		assertTrue(pager.getPageIns() >= 3);
+		// los chunks sin cambios que ya están en el fichero no se vuelven a escribir
+		pager.resetStatistics();
+		for (int x = -49; x <= 50; x += 16)
+			assertNotNull(store.get(x, 0, 0));
+		assertTrue(pager.getEvictions() > 0);
+		assertEquals(0, pager.getWrites());
+		assertTrue(pager.toString().startsWith("ChunkPager(budget=4, resident=4, paged=3"));
+		try {
+			pager.setBudget(ChunkPager.MIN_BUDGET - 1);
+			fail("Debió saltar IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			store.enablePaging(file, 10);
+			fail("Debió saltar IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		store.release();
+	}
+
+	//Un mundo LAZY paginado es igual al mismo mundo sin paginar
+	@Test
+	public void testWorld() throws Exception {
+		World expected = new World(12, 200, "Paginado", GenerationMode.LAZY);
+		World world = new World(12, 200, "Paginado", GenerationMode.LAZY);
+		ChunkPager pager = world.enablePaging(file, 6);
+		assertSame(pager, world.getPager());
+		assertNull(expected.getPager());
+		NeighbourhoodRenderer renderer = new NeighbourhoodRenderer(world, 3);
+		NeighbourhoodRenderer expectedRenderer = new NeighbourhoodRenderer(expected, 3);
+		for (int i = 0; i < 3; i++)
+			for (int x = -99; x <= 100; x += 9)
+				for (int z = -99; z <= 100; z += 13) {
+					Location location = expected.getHighestLocationAt(new Location(expected, x, 0, z));
+					assertEquals(location.getY(), world.getHighestLocationAt(new Location(world, x, 0, z)).getY(), 0.0);
+					assertEquals(expected.getBlockAt(x, (int) location.getY() - 1, z), world.getBlockAt(x, (int) location.getY() - 1, z));
+					assertEquals(expected.isFree(location.above()), world.isFree(new Location(world, x, location.getY() + 1, z)));
+					assertEquals(expectedRenderer.render(location), renderer.renderChanges(new Location(world, x, location.getY(), z)));
+				}
+		assertTrue(pager.getResidentChunks() <= 6);
+		assertTrue(pager.getPageIns() > 0);
+		world.unload();
+		assertFalse(Files.exists(file));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotLazy() throws Exception {
+		new World(1, 20, "Clásico").enablePaging(file, 10);
+	}
+}
@@ -0,0 +1,121 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Material;
+import model.SolidBlock;
+import model.storage.ChunkStore;
+
+public class ChunkStoreTest {
+
+	ChunkStore store;
+
+	//Un mundo de tamaño 40 (de -19 a 20)
+	@Before
+	public void setUp() throws Exception {
+		store = new ChunkStore(40);
+	}
+
+	//Bloque más alto de la columna por debajo de y, buscado bloque a bloque
+	private int scan(int x, int y, int z) {
+		for (int top = Math.min(y, 256) - 1; top >= 0; top--)
+			if (store.contains(x, top, z))
+				return top;
+		return -1;
+	}
+
+	//topBelow() coincide con recorrer la columna al poner y quitar bloques
+	@Test
+	public void testTopBelow() throws Exception {
+		Random rng = new Random(15);
+		for (int i = 0; i < 20000; i++) {
+			int x = rng.nextInt(8) - 4, y = rng.nextInt(256), z = rng.nextInt(8) - 4;
+			if (rng.nextInt(3) == 0)
+				store.remove(x, y, z);
+			else
+				store.put(x, y, z, new SolidBlock(Material.STONE));
+			int below = rng.nextInt(300);
+			assertEquals(scan(x, below, z), store.topBelow(x, below, z));
+		}
+		for (int x = -4; x < 4; x++)
+			for (int z = -4; z < 4; z++)
+				for (int y = 0; y <= 256; y++)
+					assertEquals(scan(x, y, z), store.topBelow(x, y, z));
+	}
+
+	//Las columnas vacías o fuera del mundo no tienen bloques
+	@Test
+	public void testEmptyColumns() throws Exception {
+		assertEquals(-1, store.topBelow(0, 256, 0));
+		store.put(0, 0, 0, new SolidBlock(Material.BEDROCK));
+		assertEquals(0, store.topBelow(0, 256, 0));
+		assertEquals(-1, store.topBelow(0, 0, 0));
+		assertEquals(-1, store.topBelow(21, 256, 0));
+	}
+
+	//replaceRow() equivale a reemplazar o quitar los bloques de la fila uno a uno
+	@Test
+	public void testReplaceRow() throws Exception {
+		ChunkStore expected = new ChunkStore(40);
+		Random rng = new Random(17);
+		for (int i = 0; i < 5000; i++) {
+			int x = rng.nextInt(40) - 19, y = rng.nextInt(40), z = rng.nextInt(40) - 19;
+			store.put(x, y, z, new SolidBlock(Material.STONE));
+			expected.put(x, y, z, new SolidBlock(Material.STONE));
+		}
+		SolidBlock granite = new SolidBlock(Material.GRANITE);
+		for (int i = 0; i < 500; i++) {
+			int x = rng.nextInt(44) - 21, y = rng.nextInt(42) - 1;
+			int minZ = rng.nextInt(50) - 25, maxZ = minZ + rng.nextInt(30);
+			SolidBlock block = rng.nextBoolean() ? granite : null;
+			int changed = 0;
+			for (int z = minZ; z <= maxZ; z++)
+				if (block == null ? expected.remove(x, y, z) != null : expected.replace(x, y, z, block))
+					changed++;
+			assertEquals(changed, store.replaceRow(x, y, minZ, maxZ, block));
+		}
+		assertEquals(expected.size(), store.size());
+		for (int x = -19; x <= 20; x++)
+			for (int z = -19; z <= 20; z++) {
+				assertEquals(expected.topBelow(x, 256, z), store.topBelow(x, 256, z));
+				for (int y = 0; y < 42; y++)
+					assertEquals(expected.get(x, y, z), store.get(x, y, z));
+			}
+	}
+
+	//Las alturas de las columnas se guardan como enteros
+	@Test
+	public void testHeights() {
+		store.setHeight(3, -7, 70.0);
+		assertEquals(70.0, store.getHeight(3, -7), 0);
+		store.setHeight(3, -7, 255.0);
+		assertEquals(255.0, store.getHeight(3, -7), 0);
+		assertEquals(0.0, store.getHeight(4, -7), 0);
+	}
+
+	//Unos datos no válidos no cambian el contenido del almacén
+	@Test
+	public void testCorruptReadKeepsContents() throws Exception {
+		ChunkStore other = new ChunkStore(40);
+		other.put(5, 5, 5, new SolidBlock(Material.STONE));
+		ByteBuffer buffer = ByteBuffer.allocate((int) other.serializedSize());
+		other.writeTo(buffer);
+		buffer.flip();
+		buffer.limit(buffer.limit() / 2);
+
+		store.put(1, 2, 3, new SolidBlock(Material.BEDROCK));
+		try {
+			store.readFrom(buffer);
+			fail("Error: se han leído datos truncados");
+		} catch (RuntimeException e) {}
+		assertEquals(Material.BEDROCK, store.get(1, 2, 3).getType());
+		assertNull(store.get(5, 5, 5));
+		assertEquals(1, store.size());
+	}
+}
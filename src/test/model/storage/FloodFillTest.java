@@ -0,0 +1,78 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Block;
+import model.BlockFactory;
+import model.Material;
+import model.storage.ChunkStore;
+import model.storage.FloodFill;
+
+public class FloodFillTest {
+
+	ChunkStore store;
+	Block water, stone;
+
+	//Un suelo de piedra en y=10 en un mundo de tamaño 40 (de -19 a 20)
+	@Before
+	public void setUp() throws Exception {
+		store = new ChunkStore(40);
+		water = BlockFactory.createBlock(Material.WATER);
+		stone = BlockFactory.createBlock(Material.STONE);
+		for (int x = -19; x <= 20; x++)
+			for (int z = -19; z <= 20; z++)
+				store.put(x, 10, z, stone);
+	}
+
+	//El agua cubre la capa sobre el suelo, sin subir
+	@Test
+	public void testFillsLayer() {
+		int filled = new FloodFill(store).fill(0, 11, 0, water, null);
+		assertEquals(40 * 40, filled);
+		assertEquals(Material.WATER, store.get(-19, 11, 20).getType());
+		assertNull(store.get(0, 12, 0));
+		assertEquals(Material.STONE, store.get(0, 10, 0).getType());
+	}
+
+	//Una pared de piedra detiene el agua
+	@Test
+	public void testWall() {
+		for (int z = -19; z <= 20; z++)
+			store.put(5, 11, z, stone);
+		int filled = new FloodFill(store).fill(0, 11, 0, water, null);
+		assertEquals(24 * 40, filled);
+		assertNull(store.get(6, 11, 0));
+	}
+
+	//Un bloque ocupado no se rellena
+	@Test
+	public void testOccupiedStart() {
+		assertEquals(0, new FloodFill(store).fill(0, 10, 0, water, null));
+		assertEquals(Material.STONE, store.get(0, 10, 0).getType());
+	}
+
+	//Límites en x y z, y volumen máximo
+	@Test
+	public void testLimits() {
+		int filled = new FloodFill(store, 0, 9, 0, 9, Integer.MAX_VALUE).fill(0, 11, 0, water, null);
+		assertEquals(100, filled);
+		assertNull(store.get(10, 11, 0));
+		assertNull(store.get(-1, 11, 0));
+		final int[] listened = {0};
+		filled = new FloodFill(store, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, 50)
+				.fill(-10, 11, -10, water, (x, y, z) -> listened[0]++);
+		assertEquals(50, filled);
+		assertEquals(50, listened[0]);
+	}
+
+	//Un lago grande, que con la versión recursiva desbordaba la pila
+	@Test
+	public void testDeepLake() {
+		ChunkStore big = new ChunkStore(100);
+		int filled = new FloodFill(big).fill(0, 60, 0, water, null);
+		assertEquals(100 * 100 * 61, filled);
+	}
+}
@@ -0,0 +1,84 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.storage.BlockKey;
+import model.storage.LongMap;
+
+public class LongMapTest {
+
+	LongMap<String> map;
+
+	@Before
+	public void setUp() throws Exception {
+		map = new LongMap<>();
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		assertNull(map.put(BlockKey.pack(1, 2, 3), "a"));
+		assertEquals("a", map.get(BlockKey.pack(1, 2, 3)));
+		assertEquals("a", map.put(BlockKey.pack(1, 2, 3), "b"));
+		assertEquals(1, map.size());
+		assertNull(map.get(BlockKey.pack(3, 2, 1)));
+		assertEquals("b", map.remove(BlockKey.pack(1, 2, 3)));
+		assertNull(map.remove(BlockKey.pack(1, 2, 3)));
+		assertTrue(map.isEmpty());
+	}
+
+	//La clave 0 (posición 0,0,0) se guarda fuera de la tabla
+	@Test
+	public void testZeroKey() {
+		assertFalse(map.containsKey(0));
+		map.put(BlockKey.pack(0, 0, 0), "origin");
+		assertTrue(map.containsKey(0));
+		assertEquals("origin", map.get(0));
+		assertEquals(1, map.size());
+		assertEquals("origin", map.remove(0));
+		assertFalse(map.containsKey(0));
+	}
+
+	//Comparamos con un HashMap tras muchas inserciones y borrados aleatorios
+	@Test
+	public void testAgainstHashMap() {
+		Map<Long, String> expected = new HashMap<>();
+		Random rng = new Random(1L);
+		for (int i = 0; i < 20000; i++) {
+			long key = BlockKey.pack(rng.nextInt(40) - 20, rng.nextInt(256), rng.nextInt(40) - 20);
+			if (rng.nextBoolean()) {
+				assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (Map.Entry<Long, String> e : expected.entrySet())
+			assertEquals(e.getValue(), map.get(e.getKey()));
+		final int[] visited = {0};
+		map.forEach((key, value) -> {
+			assertEquals(expected.get(key), value);
+			visited[0]++;
+		});
+		assertEquals(expected.size(), visited[0]);
+	}
+
+	@Test
+	public void testBlockKey() {
+		long key = BlockKey.pack(-25, 63, 24);
+		assertEquals(-25, BlockKey.x(key));
+		assertEquals(63, BlockKey.y(key));
+		assertEquals(24, BlockKey.z(key));
+		key = BlockKey.offset(key, 1, -64, -1);
+		assertEquals(-24, BlockKey.x(key));
+		assertEquals(-1, BlockKey.y(key));
+		assertEquals(23, BlockKey.z(key));
+		assertNotEquals(BlockKey.pack(1, 0, 0), BlockKey.pack(0, 0, 1));
+	}
+}
@@ -0,0 +1,111 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import model.*;
+import model.storage.ChunkStore;
+
+public class OffHeapStoreTest {
+
+	//Contenido de un almacén tal como lo escribe writeTo()
+	private byte[] bytes(ChunkStore store) {
+		ByteBuffer buffer = ByteBuffer.allocate((int) store.serializedSize());
+		store.writeTo(buffer);
+		return buffer.array();
+	}
+
+	//Poner y quitar bloques de muchos materiales da lo mismo dentro y fuera del heap
+	@Test
+	public void testAgainstHeap() throws Exception {
+		ChunkStore heap = new ChunkStore(40);
+		ChunkStore offHeap = new ChunkStore(40, StorageMode.OFF_HEAP);
+		assertEquals(StorageMode.HEAP, heap.getStorageMode());
+		assertEquals(StorageMode.OFF_HEAP, offHeap.getStorageMode());
+		assertEquals(0, offHeap.getOffHeapBytes());
+		Random rng = new Random(23);
+		for (int i = 0; i < 30000; i++) {
+			int x = rng.nextInt(40) - 19, y = rng.nextInt(48), z = rng.nextInt(40) - 19;
+			SolidBlock block = new SolidBlock(Material.STONE);
+			// las secciones de abajo llegan a tener más de 16 estados distintos
+			if (y < 16) {
+				block = new SolidBlock(Material.CHEST);
+				block.setDrops(Material.APPLE, 1 + rng.nextInt(30));
+			}
+			if (rng.nextInt(4) == 0)
+				assertEquals(heap.remove(x, y, z), offHeap.remove(x, y, z));
+			else
+				assertEquals(heap.put(x, y, z, block), offHeap.put(x, y, z, block));
+		}
+		assertEquals(heap.size(), offHeap.size());
+		for (int x = -19; x <= 20; x++)
+			for (int z = -19; z <= 20; z++) {
+				assertEquals(heap.topBelow(x, 256, z), offHeap.topBelow(x, 256, z));
+				for (int y = 0; y < 48; y++)
+					assertEquals(heap.get(x, y, z), offHeap.get(x, y, z));
+			}
+		assertTrue(offHeap.getOffHeapBytes() > 0);
+		assertArrayEquals(bytes(heap), bytes(offHeap));
+
+		// una copia leída fuera del heap es igual
+		ChunkStore read = new ChunkStore(40, StorageMode.OFF_HEAP);
+		read.readFrom(ByteBuffer.wrap(bytes(heap)));
+		assertArrayEquals(bytes(heap), bytes(read));
+	}
+
+	//Al liberar el almacén se vacía y ya no admite bloques
+	@Test
+	public void testRelease() throws Exception {
+		ChunkStore store = new ChunkStore(40, StorageMode.OFF_HEAP);
+		store.put(0, 0, 0, new SolidBlock(Material.BEDROCK));
+		long reserved = store.getOffHeapBytes();
+		assertTrue(reserved > 0);
+		store.remove(0, 0, 0);
+		store.put(5, 100, 5, new SolidBlock(Material.BEDROCK));
+		// la memoria de las secciones vacías se reutiliza
+		assertEquals(reserved, store.getOffHeapBytes());
+		store.release();
+		assertEquals(0, store.size());
+		assertEquals(0, store.getOffHeapBytes());
+		assertNull(store.get(5, 100, 5));
+		try {
+			store.put(0, 0, 0, new SolidBlock(Material.BEDROCK));
+			fail("Debió saltar IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	//Un mundo fuera del heap se genera y se guarda igual que uno en el heap
+	@Test
+	public void testWorld() throws Exception {
+		World heap = new World(9, 60, "Heap", GenerationMode.PARALLEL);
+		World offHeap = BlockWorld.getInstance().createWorld(9, 60, "OffHeap", GenerationMode.PARALLEL, StorageMode.OFF_HEAP);
+		assertEquals(StorageMode.HEAP, heap.getStorageMode());
+		assertEquals(StorageMode.OFF_HEAP, offHeap.getStorageMode());
+		Path file1 = Files.createTempFile("heap", ".bw"), file2 = Files.createTempFile("offheap", ".bw");
+		try {
+			heap.save(file1);
+			offHeap.save(file2);
+			byte[] expected = Files.readAllBytes(file1), actual = Files.readAllBytes(file2);
+			// solo cambia el nombre del mundo
+			assertEquals(expected.length + 3, actual.length);
+			assertEquals(heap.getNeighbourhoodString(heap.getPlayer().getLocation()),
+					offHeap.getNeighbourhoodString(offHeap.getPlayer().getLocation()));
+			for (int x = -29; x <= 30; x += 7)
+				for (int z = -29; z <= 30; z += 5)
+					for (int y = 0; y <= Location.UPPER_Y_VALUE; y++)
+						assertEquals(heap.getBlockAt(x, y, z), offHeap.getBlockAt(x, y, z));
+		} finally {
+			Files.deleteIfExists(file1);
+			Files.deleteIfExists(file2);
+		}
+		offHeap.unload();
+		assertNull(offHeap.getBlockAt(0, 0, 0));
+	}
+}
@@ -0,0 +1,90 @@
+package test.model.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.storage.BlockKey;
+import model.storage.RegionLocks;
+import model.storage.SpatialLongMap;
+
+public class SpatialLongMapTest {
+
+	SpatialLongMap<String> map;
+
+	//Un mundo de tamaño 200 (de -99 a 100)
+	@Before
+	public void setUp() throws Exception {
+		map = new SpatialLongMap<>(new RegionLocks(200, true), 200);
+	}
+
+	//Cuenta las entradas dentro de una caja
+	private int count(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		int[] found = {0};
+		map.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (key, value) -> {
+			assertEquals(map.get(key), value);
+			found[0]++;
+		});
+		return found[0];
+	}
+
+	//Las consultas por caja devuelven lo mismo que recorrer todo el mapa
+	@Test
+	public void testBoxAgainstScan() {
+		Random rng = new Random(7);
+		Map<Long, String> expected = new HashMap<>();
+		for (int i = 0; i < 3000; i++) {
+			long key = BlockKey.pack(rng.nextInt(200) - 99, rng.nextInt(256), rng.nextInt(200) - 99);
+			String value = "v" + i;
+			assertEquals(expected.put(key, value), map.put(key, value));
+		}
+		// se borran o mueven algunas entradas
+		for (Long key : expected.keySet().toArray(new Long[0])) {
+			if (rng.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else if (rng.nextInt(3) == 0) {
+				long moved = BlockKey.offset(key, 0, 0, 1);
+				if (BlockKey.z(moved) <= 100 && !expected.containsKey(moved)) {
+					String value = map.remove(key);
+					map.put(moved, value);
+					expected.put(moved, expected.remove(key));
+				}
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (int i = 0; i < 50; i++) {
+			int minX = rng.nextInt(200) - 99, minZ = rng.nextInt(200) - 99, minY = rng.nextInt(256);
+			int maxX = minX + rng.nextInt(40), maxZ = minZ + rng.nextInt(40), maxY = minY + rng.nextInt(60);
+			int inBox = 0;
+			for (long key : expected.keySet()) {
+				int x = BlockKey.x(key), y = BlockKey.y(key), z = BlockKey.z(key);
+				if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+					inBox++;
+			}
+			assertEquals(inBox, count(minX, minY, minZ, maxX, maxY, maxZ));
+		}
+		assertEquals(expected.size(), count(-1000, 0, -1000, 1000, 255, 1000));
+	}
+
+	//Reemplazar un valor no duplica la entrada en su cubo
+	@Test
+	public void testReplace() {
+		long key = BlockKey.pack(5, 70, -5);
+		map.put(key, "a");
+		assertEquals("a", map.put(key, "b"));
+		assertEquals(1, count(0, 0, -10, 10, 255, 0));
+		map.forEachInBox(5, 70, -5, 5, 70, -5, (k, value) -> assertEquals("b", value));
+		map.clear();
+		assertEquals(0, count(-99, 0, -99, 100, 255, 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutside() {
+		map.put(BlockKey.pack(101, 0, 0), "fuera");
+	}
+}